@@ -0,0 +1,440 @@
+package datadog.communication.http;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import datadog.common.socket.UnixDomainSocketFactory;
+import datadog.trace.util.AgentTaskScheduler;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.HttpUrl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal HTTP/1.1 client for sending serialized payloads to the agent over plain HTTP or a unix
+ * domain socket.
+ *
+ * <p>OkHttp copies request bodies into its own segments before they reach the socket. This client
+ * instead writes the payload's buffers to the connection's channel with gathering writes, so
+ * payloads serialized into direct buffers reach the socket without being copied at all (heap
+ * buffers are still copied once, by the JDK). It only supports what talking to the agent needs:
+ * requests with a known content length, keep-alive, and responses with a content length or chunked
+ * encoding.
+ *
+ * <p>Each request is an {@link Exchange} on a connection. The connection is owned by at most one
+ * exchange at a time, and the timeout of an exchange and its release to the idle connections both
+ * take the connection over from the exchange with a CAS, so a late timeout can't close a
+ * connection which was released, or which is already used by another exchange.
+ */
+public final class ChannelHttpClient implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ChannelHttpClient.class);
+
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  public static final class Response {
+    private final int code;
+    private final String message;
+    private final Map<String, String> headers;
+    private final String body;
+    private long copiedBytes;
+
+    Response(int code, String message, Map<String, String> headers, String body) {
+      this.code = code;
+      this.message = message;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    public int code() {
+      return code;
+    }
+
+    public String message() {
+      return message;
+    }
+
+    /** @return the value of the header, or null if the response doesn't have it */
+    public String header(String name) {
+      return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public String body() {
+      return body;
+    }
+
+    /**
+     * @return the bytes of the request which were copied on their way to the socket: those of heap
+     *     buffers, which the JDK copies to a direct buffer, including when the request was retried
+     */
+    public long copiedBytes() {
+      return copiedBytes;
+    }
+  }
+
+  private final String host;
+  private final int port;
+  private final UnixDomainSocketFactory unixDomainSocket;
+  private final long timeoutMillis;
+  private final byte[] metaHeaders;
+  private final ConcurrentLinkedQueue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+  private volatile boolean closed;
+
+  public ChannelHttpClient(HttpUrl agentUrl, String unixDomainSocketPath, long timeoutMillis) {
+    this.host = agentUrl.host();
+    this.port = agentUrl.port();
+    this.unixDomainSocket =
+        null == unixDomainSocketPath
+            ? null
+            : new UnixDomainSocketFactory(new File(unixDomainSocketPath));
+    this.timeoutMillis = timeoutMillis;
+    StringBuilder headers = new StringBuilder();
+    headers.append("Host: ").append(host).append(':').append(port).append("\r\n");
+    for (Map.Entry<String, String> header : OkHttpUtils.metaHeaders().entrySet()) {
+      headers.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+    }
+    this.metaHeaders = headers.toString().getBytes(ISO_8859_1);
+  }
+
+  /**
+   * Sends the buffers, from their positions to their limits, as the body of a PUT request. The
+   * buffers' positions aren't modified.
+   */
+  public Response put(
+      String path, String contentType, Map<String, String> headers, List<ByteBuffer> body)
+      throws IOException {
+    ByteBuffer[] request = new ByteBuffer[body.size() + 1];
+    long contentLength = 0;
+    for (int i = 0; i < body.size(); ++i) {
+      contentLength += body.get(i).remaining();
+    }
+    ByteBuffer head = requestHead(path, contentType, headers, contentLength);
+    long copiedBytes = 0;
+    Connection connection = idleConnections.poll();
+    boolean reused = null != connection;
+    while (true) {
+      if (null == connection) {
+        connection = connect();
+      }
+      Exchange exchange = new Exchange(connection);
+      if (!connection.begin(exchange)) {
+        // closed while idle, by the client being closed
+        connection = null;
+        reused = false;
+        continue;
+      }
+      // duplicates keep the caller's buffers untouched, and allow sending them again on retry
+      request[0] = head.duplicate();
+      for (int i = 0; i < body.size(); ++i) {
+        request[i + 1] = body.get(i).duplicate();
+      }
+      for (ByteBuffer buffer : request) {
+        if (!buffer.isDirect()) {
+          copiedBytes += buffer.remaining();
+        }
+      }
+      AgentTaskScheduler.Scheduled<Exchange> timeout =
+          AgentTaskScheduler.INSTANCE.schedule(
+              CloseOnTimeout.INSTANCE, exchange, timeoutMillis, MILLISECONDS);
+      try {
+        connection.write(request);
+        Response response = connection.readResponse();
+        response.copiedBytes = copiedBytes;
+        release(exchange);
+        return response;
+      } catch (IOException e) {
+        connection.close();
+        if (!reused || connection.responseStarted) {
+          throw e;
+        }
+        // the agent may have closed an idle connection, try once more on a new one
+        log.debug("Retrying request on a new connection", e);
+        connection = null;
+        reused = false;
+      } finally {
+        timeout.cancel();
+      }
+    }
+  }
+
+  /** Hands the connection over to the idle connections, unless the exchange timed out. */
+  private void release(Exchange exchange) {
+    Connection connection = exchange.connection;
+    if (!connection.reusable || closed || !connection.end(exchange)) {
+      connection.close();
+      return;
+    }
+    idleConnections.offer(connection);
+    if (closed) {
+      // closed meanwhile, the connection may have been offered after the idle ones were closed
+      closeIdleConnections();
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    closeIdleConnections();
+  }
+
+  private void closeIdleConnections() {
+    Connection connection = idleConnections.poll();
+    while (null != connection) {
+      connection.close();
+      connection = idleConnections.poll();
+    }
+  }
+
+  private ByteBuffer requestHead(
+      String path, String contentType, Map<String, String> headers, long contentLength) {
+    StringBuilder head = new StringBuilder(256);
+    head.append("PUT ")
+        .append(path.startsWith("/") ? "" : "/")
+        .append(path)
+        .append(" HTTP/1.1\r\n");
+    head.append("Content-Type: ").append(contentType).append("\r\n");
+    head.append("Content-Length: ").append(contentLength).append("\r\n");
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+    }
+    byte[] custom = head.toString().getBytes(ISO_8859_1);
+    ByteBuffer buffer = ByteBuffer.allocate(custom.length + metaHeaders.length + CRLF.length);
+    buffer.put(custom).put(metaHeaders).put(CRLF);
+    buffer.flip();
+    return buffer;
+  }
+
+  private Connection connect() throws IOException {
+    if (null != unixDomainSocket) {
+      return new Connection(unixDomainSocket.openChannel());
+    }
+    SocketChannel channel = SocketChannel.open();
+    try {
+      channel.socket().setTcpNoDelay(true);
+      channel.socket().connect(new InetSocketAddress(host, port), (int) timeoutMillis);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return new Connection(channel);
+  }
+
+  private static final class CloseOnTimeout implements AgentTaskScheduler.Task<Exchange> {
+    static final CloseOnTimeout INSTANCE = new CloseOnTimeout();
+
+    @Override
+    public void run(Exchange exchange) {
+      // unblocks the thread waiting on the channel, unless the exchange is already over
+      if (exchange.connection.end(exchange)) {
+        log.debug("Request to the agent timed out");
+        exchange.connection.close();
+      }
+    }
+  }
+
+  /** A request and its response on a connection. */
+  private static final class Exchange {
+    final Connection connection;
+
+    Exchange(Connection connection) {
+      this.connection = connection;
+    }
+  }
+
+  private static final class Connection {
+    /** Owner of closed connections, which can't be used anymore. */
+    private static final Exchange CLOSED = new Exchange(null);
+
+    private final ByteChannel channel;
+    private final ByteBuffer input = ByteBuffer.allocate(8192);
+    // the exchange using the connection, null when it's idle
+    private final AtomicReference<Exchange> owner = new AtomicReference<>();
+    boolean reusable;
+    boolean responseStarted;
+
+    Connection(ByteChannel channel) {
+      this.channel = channel;
+      input.flip();
+    }
+
+    /** @return whether the exchange now owns the connection, which is false once it's closed */
+    boolean begin(Exchange exchange) {
+      if (!owner.compareAndSet(null, exchange)) {
+        return false;
+      }
+      // a write failing on a reused connection must not see the state of the previous exchange
+      reusable = false;
+      responseStarted = false;
+      return true;
+    }
+
+    /** @return whether the exchange still owned the connection, which is now idle */
+    boolean end(Exchange exchange) {
+      return owner.compareAndSet(exchange, null);
+    }
+
+    void write(ByteBuffer[] buffers) throws IOException {
+      if (channel instanceof GatheringByteChannel) {
+        GatheringByteChannel gathering = (GatheringByteChannel) channel;
+        int first = 0;
+        while (first < buffers.length) {
+          gathering.write(buffers, first, buffers.length - first);
+          while (first < buffers.length && !buffers[first].hasRemaining()) {
+            ++first;
+          }
+        }
+      } else {
+        for (ByteBuffer buffer : buffers) {
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+      }
+    }
+
+    Response readResponse() throws IOException {
+      String statusLine = readLine();
+      responseStarted = true;
+      // HTTP/1.1 200 OK
+      int codeStart = statusLine.indexOf(' ');
+      int codeEnd = statusLine.indexOf(' ', codeStart + 1);
+      if (codeStart < 0) {
+        throw new IOException("Unexpected status line: " + statusLine);
+      }
+      int code =
+          Integer.parseInt(
+              statusLine.substring(codeStart + 1, codeEnd < 0 ? statusLine.length() : codeEnd));
+      String message = codeEnd < 0 ? "" : statusLine.substring(codeEnd + 1);
+      Map<String, String> headers = new HashMap<>();
+      String line = readLine();
+      while (!line.isEmpty()) {
+        int colon = line.indexOf(':');
+        if (colon > 0) {
+          headers.put(
+              line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+              line.substring(colon + 1).trim());
+        }
+        line = readLine();
+      }
+      byte[] body;
+      boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+      String contentLength = headers.get("content-length");
+      if (null != contentLength) {
+        body = readBytes(Integer.parseInt(contentLength));
+      } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+        body = readChunked();
+      } else {
+        body = readToEnd();
+        keepAlive = false;
+      }
+      reusable = keepAlive;
+      return new Response(code, message, headers, new String(body, UTF_8));
+    }
+
+    private byte[] readChunked() throws IOException {
+      byte[] body = new byte[0];
+      while (true) {
+        String sizeLine = readLine();
+        int extension = sizeLine.indexOf(';');
+        int size =
+            Integer.parseInt(
+                (extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+        if (size == 0) {
+          // skip any trailers
+          while (!readLine().isEmpty()) {}
+          return body;
+        }
+        byte[] chunk = readBytes(size);
+        byte[] joined = new byte[body.length + chunk.length];
+        System.arraycopy(body, 0, joined, 0, body.length);
+        System.arraycopy(chunk, 0, joined, body.length, chunk.length);
+        body = joined;
+        readLine();
+      }
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+      byte[] bytes = new byte[length];
+      int read = 0;
+      while (read < length) {
+        if (!input.hasRemaining()) {
+          fill();
+        }
+        int count = Math.min(input.remaining(), length - read);
+        input.get(bytes, read, count);
+        read += count;
+      }
+      return bytes;
+    }
+
+    private byte[] readToEnd() throws IOException {
+      byte[] body = new byte[0];
+      while (true) {
+        if (!input.hasRemaining()) {
+          input.clear();
+          int read = channel.read(input);
+          input.flip();
+          if (read < 0) {
+            return body;
+          }
+        }
+        byte[] joined = new byte[body.length + input.remaining()];
+        System.arraycopy(body, 0, joined, 0, body.length);
+        input.get(joined, body.length, input.remaining());
+        body = joined;
+      }
+    }
+
+    /** Reads a line terminated by CRLF, which isn't included. */
+    private String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      while (true) {
+        if (!input.hasRemaining()) {
+          fill();
+        }
+        char c = (char) (input.get() & 0xFF);
+        if (c == '\n') {
+          int length = line.length();
+          if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+          }
+          return line.toString();
+        }
+        line.append(c);
+      }
+    }
+
+    private void fill() throws IOException {
+      input.clear();
+      int read = channel.read(input);
+      input.flip();
+      if (read < 0) {
+        throw new EOFException("Connection closed by the agent");
+      }
+    }
+
+    void close() {
+      owner.set(CLOSED);
+      reusable = false;
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -10,6 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import okhttp3.ConnectionSpec;
@@ -80,6 +81,20 @@ public final class OkHttpUtils {
     return builder.build();
   }
 
+  /** The headers {@link #prepareRequest(HttpUrl, Map)} adds to every request. */
+  static Map<String, String> metaHeaders() {
+    final Map<String, String> headers = new LinkedHashMap<>();
+    headers.put(DATADOG_META_LANG, "java");
+    headers.put(DATADOG_META_LANG_VERSION, JAVA_VERSION);
+    headers.put(DATADOG_META_LANG_INTERPRETER, JAVA_VM_NAME);
+    headers.put(DATADOG_META_LANG_INTERPRETER_VENDOR, JAVA_VM_VENDOR);
+    final String containerId = ContainerInfo.get().getContainerId();
+    if (containerId != null) {
+      headers.put(DATADOG_CONTAINER_ID, containerId);
+    }
+    return headers;
+  }
+
   public static Request.Builder prepareRequest(final HttpUrl url, Map<String, String> headers) {
     final Request.Builder builder =
         new Request.Builder()
@@ -4,15 +4,32 @@ import java.nio.ByteBuffer;
 
 public final class FlushingBuffer implements StreamingBuffer {
 
-  private final ByteBuffer buffer;
   private final ByteBufferConsumer consumer;
+  private final HandoffByteBufferConsumer handoff;
+  private ByteBuffer buffer;
 
   private int messageCount;
   private int mark;
 
   public FlushingBuffer(int capacity, ByteBufferConsumer consumer) {
-    this.buffer = ByteBuffer.allocate(capacity);
+    this(ByteBuffer.allocate(capacity), consumer);
+  }
+
+  /** Serializes into the given buffer, which may be direct, reusing it after each flush. */
+  public FlushingBuffer(ByteBuffer buffer, ByteBufferConsumer consumer) {
+    this.buffer = buffer;
+    this.consumer = consumer;
+    this.handoff = null;
+  }
+
+  /**
+   * Creates a buffer which hands its whole backing buffer over to the consumer on flush, rather
+   * than a slice of a buffer which is reused as soon as the consumer returns.
+   */
+  public FlushingBuffer(HandoffByteBufferConsumer consumer) {
+    this.buffer = consumer.nextBuffer();
     this.consumer = consumer;
+    this.handoff = consumer;
   }
 
   @Override
@@ -38,8 +55,13 @@ public final class FlushingBuffer implements StreamingBuffer {
     }
     buffer.limit(mark);
     buffer.flip();
-    ByteBuffer toPublish = buffer.slice();
-    consumer.accept(messageCount, toPublish);
+    if (null == handoff) {
+      ByteBuffer toPublish = buffer.slice();
+      consumer.accept(messageCount, toPublish);
+    } else {
+      handoff.accept(messageCount, buffer);
+      buffer = handoff.nextBuffer();
+    }
     reset();
     return true;
   }
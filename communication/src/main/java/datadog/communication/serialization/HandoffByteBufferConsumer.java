@@ -0,0 +1,17 @@
+package datadog.communication.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteBufferConsumer} which takes ownership of the buffers it accepts, for instance to
+ * write them out on another thread, and supplies the buffer serialization continues into.
+ */
+public interface HandoffByteBufferConsumer extends ByteBufferConsumer {
+
+  /**
+   * Called after each buffer handed off to {@link #accept(int, ByteBuffer)}.
+   *
+   * @return an empty buffer to continue writing into, may block until one is available.
+   */
+  ByteBuffer nextBuffer();
+}
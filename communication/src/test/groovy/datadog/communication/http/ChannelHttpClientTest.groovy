@@ -0,0 +1,190 @@
+package datadog.communication.http
+
+import datadog.trace.test.util.DDSpecification
+import okhttp3.HttpUrl
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.LinkedBlockingQueue
+
+class ChannelHttpClientTest extends DDSpecification {
+
+  ServerSocket server = new ServerSocket(0)
+  LinkedBlockingQueue<String> requests = new LinkedBlockingQueue<>()
+  LinkedBlockingQueue<String> responses = new LinkedBlockingQueue<>()
+  int connections = 0
+  Thread serverThread
+
+  def setup() {
+    serverThread = Thread.start {
+      while (!server.closed) {
+        Socket socket
+        try {
+          socket = server.accept()
+        } catch (IOException ignored) {
+          return
+        }
+        ++connections
+        Thread.start {
+          serve(socket)
+        }
+      }
+    }
+  }
+
+  def cleanup() {
+    server.close()
+  }
+
+  def "sends the buffers as the request body and parses #description responses"() {
+    setup:
+    def client = new ChannelHttpClient(HttpUrl.parse("http://localhost:" + server.localPort), null, 5000)
+    def first = ByteBuffer.wrap("hello ".getBytes(StandardCharsets.UTF_8))
+    def second = ByteBuffer.allocateDirect(5).put("world".getBytes(StandardCharsets.UTF_8))
+    second.flip()
+    responses.add(response)
+
+    when:
+    def received = client.put("v0.4/traces", "application/msgpack", ["X-Datadog-Trace-Count": "2"], [first, second])
+    def request = requests.take()
+
+    then:
+    received.code() == 200
+    received.message() == "OK"
+    received.body() == '{"rate_by_service":{}}'
+    received.header("Content-Type") == "application/json"
+    request.startsWith("PUT /v0.4/traces HTTP/1.1\r\n")
+    request.contains("Content-Type: application/msgpack\r\n")
+    request.contains("Content-Length: 11\r\n")
+    request.contains("X-Datadog-Trace-Count: 2\r\n")
+    request.contains("Datadog-Meta-Lang: java\r\n")
+    request.endsWith("\r\n\r\nhello world")
+    // the caller's buffers are left untouched
+    first.remaining() == 6
+    second.remaining() == 5
+    // only the direct buffer isn't copied
+    received.copiedBytes() == request.length() - 5
+
+    cleanup:
+    client.close()
+
+    where:
+    description      | response
+    "content length" | 'HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 22\r\n\r\n{"rate_by_service":{}}'
+    "chunked"        | 'HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n5\r\n{"rat\r\n11;ext=1\r\ne_by_service":{}}\r\n0\r\n\r\n'
+    "unbounded"      | 'HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nConnection: close\r\n\r\n{"rate_by_service":{}}'
+  }
+
+  def "reuses kept alive connections"() {
+    setup:
+    def client = new ChannelHttpClient(HttpUrl.parse("http://localhost:" + server.localPort), null, 5000)
+
+    when:
+    3.times {
+      responses.add("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n")
+      def response = client.put("v0.5/traces", "application/msgpack", [:], [ByteBuffer.allocate(10)])
+      assert response.code() == 404
+      assert response.message() == "Not Found"
+      assert response.header("X-Missing") == null
+      requests.take()
+    }
+
+    then:
+    connections == 1
+
+    cleanup:
+    client.close()
+  }
+
+  def "retries once when the agent closed a kept alive connection"() {
+    setup:
+    def client = new ChannelHttpClient(HttpUrl.parse("http://localhost:" + server.localPort), null, 5000)
+    // the server resets the connection after this response, so the next write fails
+    responses.add("HTTP/1.1 200 OK\r\nX-Reset: true\r\nContent-Length: 0\r\n\r\n")
+    assert client.put("v0.5/traces", "application/msgpack", [:], [ByteBuffer.allocate(10)]).code() == 200
+    requests.take()
+    Thread.sleep(100)
+    responses.add("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n")
+
+    when:
+    def response = client.put("v0.5/traces", "application/msgpack", [:], [ByteBuffer.allocate(100_000)])
+
+    then:
+    response.code() == 200
+    requests.size() == 1
+    connections == 2
+
+    cleanup:
+    client.close()
+  }
+
+  def "closed clients don't keep connections alive"() {
+    setup:
+    def client = new ChannelHttpClient(HttpUrl.parse("http://localhost:" + server.localPort), null, 5000)
+    client.close()
+
+    when:
+    2.times {
+      responses.add("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n")
+      assert client.put("v0.5/traces", "application/msgpack", [:], [ByteBuffer.allocate(10)]).code() == 200
+      requests.take()
+    }
+
+    then:
+    connections == 2
+  }
+
+  def "times out when the agent doesn't respond"() {
+    setup:
+    def client = new ChannelHttpClient(HttpUrl.parse("http://localhost:" + server.localPort), null, 100)
+    responses.add("")
+
+    when:
+    client.put("v0.4/traces", "application/msgpack", [:], [ByteBuffer.allocate(10)])
+
+    then:
+    thrown(IOException)
+
+    cleanup:
+    client.close()
+  }
+
+  private void serve(Socket socket) {
+    def input = new DataInputStream(new BufferedInputStream(socket.inputStream))
+    def output = socket.outputStream
+    try {
+      while (true) {
+        def head = new StringBuilder()
+        while (!head.toString().endsWith("\r\n\r\n")) {
+          int c = input.read()
+          if (c < 0) {
+            return
+          }
+          head.append((char) c)
+        }
+        def length = head.toString().readLines().find { it.startsWith("Content-Length: ") }.substring(16) as int
+        def body = new byte[length]
+        input.readFully(body)
+        requests.add(head.toString() + new String(body, StandardCharsets.UTF_8))
+        def response = responses.take()
+        if (response.isEmpty()) {
+          // never respond, the client has to give up
+          input.read()
+          return
+        }
+        output.write(response.getBytes(StandardCharsets.ISO_8859_1))
+        output.flush()
+        if (response.contains("Connection: close")) {
+          return
+        }
+        if (response.contains("X-Reset: true")) {
+          // closes with a reset, unlike an orderly close which doesn't fail the peer's writes
+          socket.setSoLinger(true, 0)
+          return
+        }
+      }
+    } finally {
+      socket.close()
+    }
+  }
+}
@@ -1,8 +1,12 @@
 package datadog.communication.serialization;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 
 public class FlushingBufferTest {
@@ -19,4 +23,55 @@ public class FlushingBufferTest {
                 })
             .capacity());
   }
+
+  @Test
+  public void testHandoffTransfersOwnership() {
+    final List<ByteBuffer> free = new ArrayList<>();
+    free.add(ByteBuffer.allocate(8));
+    free.add(ByteBuffer.allocate(8));
+    final List<ByteBuffer> accepted = new ArrayList<>();
+    final ByteBuffer first = free.get(0);
+    FlushingBuffer buffer =
+        new FlushingBuffer(
+            new HandoffByteBufferConsumer() {
+              @Override
+              public ByteBuffer nextBuffer() {
+                return free.remove(0);
+              }
+
+              @Override
+              public void accept(int messageCount, ByteBuffer buffer) {
+                assertEquals(2, messageCount);
+                accepted.add(buffer);
+              }
+            });
+    buffer.putInt(1);
+    buffer.mark();
+    buffer.put((byte) 2);
+    buffer.mark();
+    buffer.put((byte) 3);
+    buffer.flush();
+
+    assertEquals(1, accepted.size());
+    assertSame(first, accepted.get(0));
+    assertEquals(0, accepted.get(0).position());
+    assertEquals(5, accepted.get(0).remaining());
+    assertEquals(1, accepted.get(0).getInt(0));
+    assertEquals(0, free.size());
+
+    // continues into the next buffer, the first one is still owned by the consumer
+    buffer.put((byte) 4);
+    buffer.mark();
+    buffer.put((byte) 5);
+    buffer.mark();
+    accepted.get(0).clear();
+    free.add(accepted.get(0));
+    buffer.flush();
+
+    assertEquals(2, accepted.size());
+    assertNotSame(first, accepted.get(1));
+    assertEquals(2, accepted.get(1).remaining());
+    assertEquals(4, accepted.get(1).get(0));
+    assertEquals(0, free.size());
+  }
 }
@@ -0,0 +1,102 @@
+package datadog.trace.bootstrap.instrumentation.decorator.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Finds the first of 500 configured resource name patterns matching request paths, by trying each
+ * pattern with {@link AntPathMatcher} in turn, or with the trie of the patterns. Neither caches
+ * results, as most paths carry ids and are seen once.
+ */
+@State(Scope.Benchmark)
+public class AntPatternMatching {
+
+  private static final String[] SERVICES = {
+    "users", "orders", "products", "carts", "payments", "invoices", "shipments", "reviews"
+  };
+
+  @Param({"500"})
+  int patterns;
+
+  private final AntPathMatcher matcher = new AntPathMatcher();
+  private Map<String, String> resourceNames;
+  private AntPatternTrie trie;
+  private String[] paths;
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  @Setup(Level.Trial)
+  public void init() {
+    Random random = new Random(0);
+    resourceNames = new LinkedHashMap<>();
+    while (resourceNames.size() < patterns) {
+      String service = SERVICES[random.nextInt(SERVICES.length)];
+      int version = 1 + random.nextInt(4);
+      String pattern;
+      switch (random.nextInt(4)) {
+        case 0:
+          pattern = "/api/v" + version + "/" + service + "/*/item" + random.nextInt(100);
+          break;
+        case 1:
+          pattern = "/api/v" + version + "/" + service + random.nextInt(100) + "/**";
+          break;
+        case 2:
+          pattern = "/static/" + service + random.nextInt(100) + "/**/*.js";
+          break;
+        default:
+          pattern = "/" + service + random.nextInt(100) + "/?/details*";
+          break;
+      }
+      resourceNames.put(pattern, pattern);
+    }
+    trie = new AntPatternTrie(resourceNames);
+    paths = new String[1024];
+    for (int i = 0; i < paths.length; ++i) {
+      String service = SERVICES[random.nextInt(SERVICES.length)];
+      int version = 1 + random.nextInt(4);
+      switch (random.nextInt(4)) {
+        case 0:
+          paths[i] =
+              "/api/v" + version + "/" + service + "/" + random.nextInt(1000000) + "/item"
+                  + random.nextInt(150);
+          break;
+        case 1:
+          paths[i] = "/api/v" + version + "/" + service + random.nextInt(150) + "/a/b/c";
+          break;
+        case 2:
+          paths[i] = "/static/" + service + random.nextInt(150) + "/js/lib/app.js";
+          break;
+        default:
+          // most requests don't match any pattern
+          paths[i] = "/health/" + service + "/" + random.nextInt(1000000);
+          break;
+      }
+    }
+  }
+
+  @Benchmark
+  public String eachPattern(Cursor cursor) {
+    String path = paths[cursor.next++ & (paths.length - 1)];
+    for (Map.Entry<String, String> resourceName : resourceNames.entrySet()) {
+      if (matcher.match(resourceName.getKey(), path)) {
+        return resourceName.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public String trie(Cursor cursor) {
+    return trie.match(paths[cursor.next++ & (paths.length - 1)]);
+  }
+}
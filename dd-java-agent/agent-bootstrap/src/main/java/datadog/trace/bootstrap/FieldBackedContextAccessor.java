@@ -9,4 +9,12 @@ public interface FieldBackedContextAccessor {
 
   /** Stores context in the field backing the given store. */
   void $put$__datadogContext$(int storeId, Object context);
+
+  /**
+   * Atomically replaces the context in the field backing the given store, when it is the expected
+   * one.
+   *
+   * @return whether the context was replaced
+   */
+  boolean $cas$__datadogContext$(int storeId, Object expectedContext, Object context);
 }
@@ -3,9 +3,14 @@ package datadog.trace.bootstrap;
 /**
  * {@link ContextStore} that attempts to store context in its keys by using bytecode-injected
  * fields. Delegates to a lazy {@link WeakMap} for keys that don't have a field for this store.
+ *
+ * <p>Contexts are conditionally put and removed with compare-and-set on the injected fields, never
+ * by locking the keys, which are application objects. Like the weak-map, context factories are
+ * called under a lock picked by the identity of the key, so they are only called once for a key.
  */
 public final class FieldBackedContextStore implements ContextStore<Object, Object> {
   final int storeId;
+  private final StripedLocks factoryLocks = new StripedLocks();
 
   FieldBackedContextStore(final int storeId) {
     this.storeId = storeId;
@@ -34,14 +39,11 @@ public final class FieldBackedContextStore implements ContextStore<Object, Objec
     if (key instanceof FieldBackedContextAccessor) {
       final FieldBackedContextAccessor accessor = (FieldBackedContextAccessor) key;
       Object existingContext = accessor.$get$__datadogContext$(storeId);
-      if (null == existingContext) {
-        synchronized (accessor) {
-          existingContext = accessor.$get$__datadogContext$(storeId);
-          if (null == existingContext) {
-            existingContext = context;
-            accessor.$put$__datadogContext$(storeId, existingContext);
-          }
+      while (null == existingContext) {
+        if (accessor.$cas$__datadogContext$(storeId, null, context)) {
+          return context;
         }
+        existingContext = accessor.$get$__datadogContext$(storeId);
       }
       return existingContext;
     } else {
@@ -55,11 +57,11 @@ public final class FieldBackedContextStore implements ContextStore<Object, Objec
       final FieldBackedContextAccessor accessor = (FieldBackedContextAccessor) key;
       Object existingContext = accessor.$get$__datadogContext$(storeId);
       if (null == existingContext) {
-        synchronized (accessor) {
+        synchronized (factoryLocks.lockFor(key)) {
           existingContext = accessor.$get$__datadogContext$(storeId);
           if (null == existingContext) {
-            existingContext = contextFactory.create();
-            accessor.$put$__datadogContext$(storeId, existingContext);
+            // a concurrent put may still win, as it would right after this call
+            existingContext = putIfAbsent(key, contextFactory.create());
           }
         }
       }
@@ -74,15 +76,13 @@ public final class FieldBackedContextStore implements ContextStore<Object, Objec
     if (key instanceof FieldBackedContextAccessor) {
       final FieldBackedContextAccessor accessor = (FieldBackedContextAccessor) key;
       Object existingContext = accessor.$get$__datadogContext$(storeId);
-      if (null != existingContext) {
-        synchronized (accessor) {
-          existingContext = accessor.$get$__datadogContext$(storeId);
-          if (null != existingContext) {
-            accessor.$put$__datadogContext$(storeId, null);
-          }
+      while (null != existingContext) {
+        if (accessor.$cas$__datadogContext$(storeId, existingContext, null)) {
+          return existingContext;
         }
+        existingContext = accessor.$get$__datadogContext$(storeId);
       }
-      return existingContext;
+      return null;
     } else {
       return weakStore().remove(key);
     }
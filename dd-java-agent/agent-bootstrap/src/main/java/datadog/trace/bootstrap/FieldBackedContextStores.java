@@ -144,4 +144,10 @@ public final class FieldBackedContextStores {
   public static void weakPut(final Object key, final int storeId, final Object context) {
     getContextStore(storeId).weakStore().put(key, context);
   }
+
+  /** Injection helper that immediately delegates to the weak-map for the given context store. */
+  public static boolean weakCompareAndSet(
+      final Object key, final int storeId, final Object expectedContext, final Object context) {
+    return getContextStore(storeId).weakStore().compareAndSet(key, expectedContext, context);
+  }
 }
@@ -0,0 +1,21 @@
+package datadog.trace.bootstrap;
+
+/**
+ * A few locks picked among by the identity of a key, so unrelated keys rarely wait on each other
+ * and the keys themselves, which are application objects, are never locked.
+ */
+final class StripedLocks {
+  private static final int STRIPES = 16;
+
+  private final Object[] locks = new Object[STRIPES];
+
+  StripedLocks() {
+    for (int i = 0; i < STRIPES; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  Object lockFor(final Object key) {
+    return locks[System.identityHashCode(key) & (STRIPES - 1)];
+  }
+}
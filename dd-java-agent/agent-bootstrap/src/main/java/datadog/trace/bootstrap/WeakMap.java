@@ -12,7 +12,8 @@ public interface WeakMap<K, V> {
 
   void put(K key, V value);
 
-  void putIfAbsent(K key, V value);
+  /** @return the existing value, or {@code null} when the given value was put */
+  V putIfAbsent(K key, V value);
 
   V computeIfAbsent(K key, Function<? super K, ? extends V> supplier);
 
@@ -4,12 +4,16 @@ package datadog.trace.bootstrap;
  * Weak {@link ContextStore} that acts as a fall-back when field-injection isn't possible.
  *
  * <p>This class should be created lazily because it uses weak maps with background cleanup.
+ *
+ * <p>Contexts are put and removed under a lock, which is picked among a few by the identity of
+ * the key, so that conditional updates can't be interleaved with other updates of the same key.
  */
 final class WeakMapContextStore<K, V> implements ContextStore<K, V> {
   private static final int DEFAULT_MAX_SIZE = 50_000;
 
   private final int maxSize;
   private final WeakMap<Object, Object> map = WeakMap.Supplier.newWeakMap();
+  private final StripedLocks locks = new StripedLocks();
 
   public WeakMapContextStore(int maxSize) {
     this.maxSize = maxSize;
@@ -27,8 +31,10 @@ final class WeakMapContextStore<K, V> implements ContextStore<K, V> {
 
   @Override
   public void put(final K key, final V context) {
-    if (map.size() < maxSize) {
-      map.put(key, context);
+    synchronized (locks.lockFor(key)) {
+      if (map.size() < maxSize) {
+        map.put(key, context);
+      }
     }
   }
 
@@ -36,13 +42,7 @@ final class WeakMapContextStore<K, V> implements ContextStore<K, V> {
   public V putIfAbsent(final K key, final V context) {
     V existingContext = get(key);
     if (null == existingContext) {
-      // This whole part with using synchronized is only because
-      // we want to avoid prematurely calling the factory if
-      // someone else is doing a putIfAbsent at the same time.
-      // There is still the possibility that there is a concurrent
-      // call to put that will win, but that is indistinguishable
-      // from the put happening right after the putIfAbsent.
-      synchronized (map) {
+      synchronized (locks.lockFor(key)) {
         existingContext = get(key);
         if (null == existingContext) {
           existingContext = context;
@@ -57,13 +57,9 @@ final class WeakMapContextStore<K, V> implements ContextStore<K, V> {
   public V putIfAbsent(final K key, final Factory<V> contextFactory) {
     V existingContext = get(key);
     if (null == existingContext) {
-      // This whole part with using synchronized is only because
-      // we want to avoid prematurely calling the factory if
-      // someone else is doing a putIfAbsent at the same time.
-      // There is still the possibility that there is a concurrent
-      // call to put that will win, but that is indistinguishable
-      // from the put happening right after the putIfAbsent.
-      synchronized (map) {
+      // Holding the lock while calling the factory means it is only called
+      // once for a key, even when several threads race to put its context.
+      synchronized (locks.lockFor(key)) {
         existingContext = get(key);
         if (null == existingContext) {
           existingContext = contextFactory.create();
@@ -74,10 +70,32 @@ final class WeakMapContextStore<K, V> implements ContextStore<K, V> {
     return existingContext;
   }
 
+  /**
+   * Replaces the context of the key with the given context when it is the expected one, a {@code
+   * null} context removes the key.
+   *
+   * @return whether the context was replaced
+   */
+  boolean compareAndSet(final K key, final V expectedContext, final V context) {
+    synchronized (locks.lockFor(key)) {
+      if (expectedContext != get(key)) {
+        return false;
+      }
+      if (null != context) {
+        put(key, context);
+        return context == get(key);
+      }
+      map.remove(key);
+      return true;
+    }
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public V remove(final K key) {
-    return (V) map.remove(key);
+    synchronized (locks.lockFor(key)) {
+      return (V) map.remove(key);
+    }
   }
 
   // Package reachable for testing
@@ -15,18 +15,14 @@ final class AntPatternPathNormalizer extends PathNormalizer {
 
   private final Map<String, String> resourceNameMatchers;
   private final AntPathMatcher matcher = new AntPathMatcher();
+  private final AntPatternTrie trie;
 
   private final DDCache<String, String> cache = DDCaches.newFixedSizeCache(512);
   private final Function<String, String> cacheLoader =
       new Function<String, String>() {
         @Override
         public String apply(String path) {
-          for (Map.Entry<String, String> resourceNameMatcher : resourceNameMatchers.entrySet()) {
-            if (matcher.match(resourceNameMatcher.getKey(), path)) {
-              return resourceNameMatcher.getValue();
-            }
-          }
-          return null;
+          return trie.match(path);
         }
       };
 
@@ -44,10 +40,14 @@ final class AntPatternPathNormalizer extends PathNormalizer {
       log.warn("Invalid pattern {} removed from matchers", invalid);
       resourceNameMatchers.remove(invalid);
     }
+    trie = new AntPatternTrie(resourceNameMatchers);
   }
 
   @Override
   public String normalize(String path, boolean encoded) {
+    if (resourceNameMatchers.isEmpty()) {
+      return null;
+    }
     if (encoded) {
       path = URIUtils.decode(path);
     }
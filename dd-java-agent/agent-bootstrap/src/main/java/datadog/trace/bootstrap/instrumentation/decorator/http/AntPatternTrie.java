@@ -0,0 +1,301 @@
+package datadog.trace.bootstrap.instrumentation.decorator.http;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the first of a list of Ant-style path patterns which matches a path, with the same
+ * semantics as {@link AntPathMatcher}, without trying the patterns one by one.
+ *
+ * <p>The patterns are split into segments once, and the segments are arranged in a trie: the
+ * patterns sharing a prefix share the nodes of the prefix. A path is matched by walking the trie
+ * along the path's segments, looking literal segments up in a hash table and only testing the
+ * wildcard segments, with no intermediate strings. {@code **} segments make the walk try each
+ * number of skipped path segments, and subtrees which only have patterns coming after the best
+ * match found so far are skipped.
+ */
+final class AntPatternTrie {
+
+  private static final String DOUBLE_STAR = "**";
+  private static final String STAR = "*";
+
+  // patterns with and without a leading '/' never match the same paths
+  private final Node absolute = new Node();
+  private final Node relative = new Node();
+  private final String[] resourceNames;
+
+  /** @param patterns the resource names of the patterns, in order */
+  AntPatternTrie(Map<String, String> patterns) {
+    resourceNames = new String[patterns.size()];
+    int index = 0;
+    for (Map.Entry<String, String> pattern : patterns.entrySet()) {
+      resourceNames[index] = pattern.getValue();
+      add(pattern.getKey(), index++);
+    }
+    absolute.compile();
+    relative.compile();
+  }
+
+  private void add(String pattern, int index) {
+    Node node = pattern.startsWith("/") ? absolute : relative;
+    node.minIndex = Math.min(node.minIndex, index);
+    boolean hasDoubleStar = false;
+    int start = 0;
+    while (start < pattern.length()) {
+      int end = pattern.indexOf('/', start);
+      if (end < 0) {
+        end = pattern.length();
+      }
+      if (end > start) {
+        String segment = pattern.substring(start, end);
+        hasDoubleStar |= DOUBLE_STAR.equals(segment);
+        node = node.child(segment);
+        node.minIndex = Math.min(node.minIndex, index);
+      }
+      start = end + 1;
+    }
+    node.terminals.add(new Terminal(index, pattern.endsWith("/"), hasDoubleStar));
+  }
+
+  /** @return the resource name of the first pattern matching the path, or null if none does */
+  String match(String path) {
+    if (null == path) {
+      return null;
+    }
+    // the start and end of each segment, empty segments are ignored like the matcher does
+    int[] segments = new int[8];
+    int count = 0;
+    int start = 0;
+    while (start < path.length()) {
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = path.length();
+      }
+      if (end > start) {
+        if (count * 2 == segments.length) {
+          int[] grown = new int[segments.length * 2];
+          System.arraycopy(segments, 0, grown, 0, segments.length);
+          segments = grown;
+        }
+        segments[count * 2] = start;
+        segments[count * 2 + 1] = end;
+        ++count;
+      }
+      start = end + 1;
+    }
+    Search search = new Search(path, segments, count, path.endsWith("/"));
+    int first = search.first(path.startsWith("/") ? absolute : relative, 0, Integer.MAX_VALUE);
+    return first == Integer.MAX_VALUE ? null : resourceNames[first];
+  }
+
+  private static final class Search {
+    private final String path;
+    private final int[] segments;
+    private final int count;
+    private final boolean trailingSlash;
+
+    Search(String path, int[] segments, int count, boolean trailingSlash) {
+      this.path = path;
+      this.segments = segments;
+      this.count = count;
+      this.trailingSlash = trailingSlash;
+    }
+
+    /**
+     * @return the index of the first pattern below the node matching the path segments from the
+     *     given one, if it comes before the best match so far, otherwise the best match so far
+     */
+    int first(Node node, int segment, int best) {
+      if (node.minIndex >= best) {
+        return best;
+      }
+      if (segment == count) {
+        best = firstTerminal(node, best);
+      }
+      if (null != node.doubleStar) {
+        for (int skipped = segment; skipped <= count; ++skipped) {
+          best = first(node.doubleStar, skipped, best);
+        }
+      }
+      if (segment < count) {
+        int start = segments[segment * 2];
+        int end = segments[segment * 2 + 1];
+        Node literal = node.literal(path, start, end);
+        if (null != literal) {
+          best = first(literal, segment + 1, best);
+        }
+        for (int i = 0; i < node.wildcards.length; ++i) {
+          Node wildcard = node.wildcardNodes[i];
+          if (wildcard.minIndex < best && matches(node.wildcards[i], path, start, end)) {
+            best = first(wildcard, segment + 1, best);
+          }
+        }
+      }
+      return best;
+    }
+
+    private int firstTerminal(Node node, int best) {
+      for (Terminal terminal : node.terminals) {
+        if (terminal.index >= best) {
+          break;
+        }
+        // without '**', the pattern and the path have to agree on a trailing '/'
+        if (terminal.hasDoubleStar || terminal.trailingSlash == trailingSlash) {
+          best = terminal.index;
+          break;
+        }
+      }
+      // a last '*' matches the empty segment after a trailing '/', but only without '**'
+      if (trailingSlash && null != node.star) {
+        for (Terminal terminal : node.star.terminals) {
+          if (terminal.index >= best) {
+            break;
+          }
+          if (!terminal.hasDoubleStar) {
+            best = terminal.index;
+            break;
+          }
+        }
+      }
+      return best;
+    }
+  }
+
+  /**
+   * Matches a segment of the path against a segment of a pattern, where '*' matches zero or more
+   * characters and '?' matches exactly one.
+   */
+  static boolean matches(String pattern, String path, int start, int end) {
+    int p = 0;
+    int s = start;
+    int starP = -1;
+    int starS = start;
+    while (s < end) {
+      char c = p < pattern.length() ? pattern.charAt(p) : 0;
+      if (c == '*') {
+        starP = p++;
+        starS = s;
+      } else if (p < pattern.length() && (c == '?' || c == path.charAt(s))) {
+        ++p;
+        ++s;
+      } else if (starP >= 0) {
+        // let the last '*' match one more character
+        p = starP + 1;
+        s = ++starS;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') {
+      ++p;
+    }
+    return p == pattern.length();
+  }
+
+  private static final class Terminal {
+    final int index;
+    final boolean trailingSlash;
+    final boolean hasDoubleStar;
+
+    Terminal(int index, boolean trailingSlash, boolean hasDoubleStar) {
+      this.index = index;
+      this.trailingSlash = trailingSlash;
+      this.hasDoubleStar = hasDoubleStar;
+    }
+  }
+
+  private static final class Node {
+    // the smallest index of the patterns going through this node
+    int minIndex = Integer.MAX_VALUE;
+    // the patterns ending at this node, in order
+    final List<Terminal> terminals = new ArrayList<>(1);
+    Node doubleStar;
+    Node star;
+    // only used while the patterns are added
+    private Map<String, Node> literalChildren = new LinkedHashMap<>();
+    private Map<String, Node> wildcardChildren = new LinkedHashMap<>();
+    // open addressing table of the literal segments
+    private String[] literals;
+    private Node[] literalNodes;
+    private int mask;
+    String[] wildcards;
+    Node[] wildcardNodes;
+
+    Node child(String segment) {
+      if (DOUBLE_STAR.equals(segment)) {
+        if (null == doubleStar) {
+          doubleStar = new Node();
+        }
+        return doubleStar;
+      }
+      boolean wildcard = segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+      Map<String, Node> children = wildcard ? wildcardChildren : literalChildren;
+      Node child = children.get(segment);
+      if (null == child) {
+        child = new Node();
+        children.put(segment, child);
+        if (STAR.equals(segment)) {
+          star = child;
+        }
+      }
+      return child;
+    }
+
+    void compile() {
+      if (!literalChildren.isEmpty()) {
+        int size = Integer.highestOneBit(literalChildren.size() * 2 - 1) << 1;
+        literals = new String[size];
+        literalNodes = new Node[size];
+        mask = size - 1;
+        for (Map.Entry<String, Node> child : literalChildren.entrySet()) {
+          String segment = child.getKey();
+          int slot = hash(segment, 0, segment.length()) & mask;
+          while (null != literals[slot]) {
+            slot = (slot + 1) & mask;
+          }
+          literals[slot] = segment;
+          literalNodes[slot] = child.getValue();
+        }
+      }
+      wildcards = wildcardChildren.keySet().toArray(new String[0]);
+      wildcardNodes = wildcardChildren.values().toArray(new Node[0]);
+      for (Node child : literalChildren.values()) {
+        child.compile();
+      }
+      for (Node child : wildcardNodes) {
+        child.compile();
+      }
+      if (null != doubleStar) {
+        doubleStar.compile();
+      }
+      literalChildren = null;
+      wildcardChildren = null;
+    }
+
+    Node literal(String path, int start, int end) {
+      if (null == literals) {
+        return null;
+      }
+      int length = end - start;
+      int slot = hash(path, start, end) & mask;
+      String literal;
+      while (null != (literal = literals[slot])) {
+        if (literal.length() == length && path.regionMatches(start, literal, 0, length)) {
+          return literalNodes[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    private static int hash(String s, int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; ++i) {
+        hash = 31 * hash + s.charAt(i);
+      }
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
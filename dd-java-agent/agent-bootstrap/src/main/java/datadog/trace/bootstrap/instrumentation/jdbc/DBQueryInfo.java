@@ -1,15 +1,34 @@
 package datadog.trace.bootstrap.instrumentation.jdbc;
 
+import datadog.trace.api.Config;
+import datadog.trace.api.cache.CacheStats;
 import datadog.trace.api.cache.DDCache;
 import datadog.trace.api.cache.DDCaches;
 import datadog.trace.api.function.Function;
+import datadog.trace.api.function.ToIntBiFunction;
 import datadog.trace.api.normalize.SQLNormalizer;
 import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString;
 
 public final class DBQueryInfo {
 
+  // the strings, arrays and objects of an entry besides the characters of the statements
+  private static final int ENTRY_OVERHEAD = 200;
+
+  /**
+   * Approximates the bytes retained by an entry: the statement's chars, and the normalized
+   * statement's chars and UTF-8 bytes.
+   */
+  private static final ToIntBiFunction<String, DBQueryInfo> WEIGHER =
+      new ToIntBiFunction<String, DBQueryInfo>() {
+        @Override
+        public int applyAsInt(String sql, DBQueryInfo info) {
+          return ENTRY_OVERHEAD + 2 * sql.length() + 3 * info.sql.length();
+        }
+      };
+
   private static final DDCache<String, DBQueryInfo> CACHED_PREPARED_STATEMENTS =
-      DDCaches.newFixedSizeCache(512);
+      DDCaches.newWeightedCache(
+          Config.get().getJdbcSqlCacheSize(), 1024, WEIGHER, CacheStats.NORMALIZED_SQL);
   private static final Function<String, DBQueryInfo> NORMALIZE =
       new Function<String, DBQueryInfo>() {
 
@@ -0,0 +1,81 @@
+package datadog.trace.bootstrap.instrumentation.decorator.http
+
+import datadog.trace.test.util.DDSpecification
+
+class AntPatternTrieTest extends DDSpecification {
+
+  static final List<String> PATTERNS = [
+    "/a/*",
+    "/a/*/",
+    "/a/**/b",
+    "/a/b?/**",
+    "/*/b",
+    "/**/*.js",
+    "/**/c/**/d",
+    "a/**",
+    "/a*b/c",
+    "/x/**/**/y",
+    "/x/*"
+  ]
+
+  static final List<String> PATHS = [
+    null,
+    "",
+    "/",
+    "/a",
+    "/a/",
+    "/a/b",
+    "/a/b/",
+    "/a//b",
+    "/a/x/y/b",
+    "/a/bc/d/e",
+    "/z/b",
+    "/lib/app.js",
+    "/c/d",
+    "/q/c/r/s/d",
+    "a/b",
+    "a",
+    "/ab/c",
+    "/axxb/c",
+    "/x/y",
+    "/x/1/2/y",
+    "/x/"
+  ]
+
+  def "finds the first pattern matching #path like the matcher"() {
+    setup:
+    def matcher = new AntPathMatcher()
+
+    expect:
+    // the patterns in every order, rotating them
+    PATTERNS.indices.every { rotation ->
+      def patterns = new LinkedHashMap<String, String>()
+      (PATTERNS.drop(rotation) + PATTERNS.take(rotation)).each { patterns.put(it, it) }
+      def expected = patterns.keySet().find { matcher.match(it, path) }
+      new AntPatternTrie(patterns).match(path) == expected
+    }
+
+    where:
+    path << PATHS
+  }
+
+  def "matches segments with wildcards"() {
+    expect:
+    AntPatternTrie.matches(pattern, "x" + segment + "y", 1, segment.length() + 1) == matches
+
+    where:
+    pattern  | segment   | matches
+    "*"      | ""        | true
+    "*"      | "abc"     | true
+    "a?c"    | "abc"     | true
+    "a?c"    | "ac"      | false
+    "a*c"    | "abbbc"   | true
+    "a*c"    | "abbbcd"  | false
+    "*b*"    | "abc"     | true
+    "*b*"    | "acd"     | false
+    "a*b*c"  | "aXbYbc"  | true
+    "a**"    | "a"       | true
+    "abc"    | "abc"     | true
+    "abc"    | "abd"     | false
+  }
+}
@@ -8,8 +8,10 @@ import datadog.trace.api.Config;
 import datadog.trace.bootstrap.FieldBackedContextAccessor;
 import datadog.trace.bootstrap.instrumentation.java.concurrent.ExcludeFilter;
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -105,9 +107,32 @@ public class AgentInstaller {
     for (final AgentBuilder.Listener listener : listeners) {
       agentBuilder = agentBuilder.with(listener);
     }
+    ClassLoader instrumenterLoader = AgentInstaller.class.getClassLoader();
+    InstrumenterIndex index = InstrumenterIndex.readIndex(instrumenterLoader);
+
+    AgentTransformerBuilder transformerBuilder = new AgentTransformerBuilder(agentBuilder);
+    Set<Instrumenter.TargetSystem> enabledSystems = getEnabledSystems();
+    int numInstrumenters;
+    if (index != null) {
+      numInstrumenters =
+          applyIndexedInstrumenters(index, instrumenterLoader, transformerBuilder, enabledSystems);
+    } else {
+      numInstrumenters = applyInstrumenters(instrumenterLoader, transformerBuilder, enabledSystems);
+    }
+    if (DEBUG) {
+      log.debug("Installed {} instrumenter(s)", numInstrumenters);
+    }
+
+    return transformerBuilder.installOn(inst);
+  }
+
+  /** Loads and instantiates all the instrumenters found by the service loader. */
+  private static int applyInstrumenters(
+      final ClassLoader instrumenterLoader,
+      final AgentTransformerBuilder transformerBuilder,
+      final Set<Instrumenter.TargetSystem> enabledSystems) {
     int numInstrumenters = 0;
-    ServiceLoader<Instrumenter> loader =
-        ServiceLoader.load(Instrumenter.class, AgentInstaller.class.getClassLoader());
+    ServiceLoader<Instrumenter> loader = ServiceLoader.load(Instrumenter.class, instrumenterLoader);
     // This needs to be a separate loop through all the instrumenters before we start adding
     // transfomers so that we can exclude field injection, since that will try to check exclusion
     // immediately and we don't have the ability to express dependencies between different
@@ -124,9 +149,6 @@ public class AgentInstaller {
       }
     }
 
-    AgentTransformerBuilder transformerBuilder = new AgentTransformerBuilder(agentBuilder);
-
-    Set<Instrumenter.TargetSystem> enabledSystems = getEnabledSystems();
     for (final Instrumenter instrumenter : loader) {
       if (!instrumenter.isApplicable(enabledSystems)) {
         if (DEBUG) {
@@ -146,11 +168,90 @@ public class AgentInstaller {
             "Failed to load - instrumentation.class={}", instrumenter.getClass().getName(), e);
       }
     }
-    if (DEBUG) {
-      log.debug("Installed {} instrumenter(s)", numInstrumenters);
+    return numInstrumenters;
+  }
+
+  /**
+   * Only loads the instrumenters of the index which apply and aren't disabled, and defers the
+   * instantiation of those matching exact type names until one of these types is loaded.
+   */
+  private static int applyIndexedInstrumenters(
+      final InstrumenterIndex index,
+      final ClassLoader instrumenterLoader,
+      final AgentTransformerBuilder transformerBuilder,
+      final Set<Instrumenter.TargetSystem> enabledSystems) {
+    int numInstrumenters = 0;
+    // exclude filters are added before any transformer, like when loading all instrumenters
+    Map<InstrumenterIndex.Entry, Instrumenter> excludeFilterProviders = new HashMap<>();
+    for (InstrumenterIndex.Entry entry : index.entries) {
+      if (entry.excludeFilterProvider) {
+        Instrumenter instrumenter = instantiate(entry, instrumenterLoader);
+        if (instrumenter instanceof ExcludeFilterProvider) {
+          ExcludeFilter.add(((ExcludeFilterProvider) instrumenter).excludedClasses());
+          if (DEBUG) {
+            log.debug("Adding filtered classes - instrumentation.class={}", entry.className);
+          }
+          excludeFilterProviders.put(entry, instrumenter);
+        }
+      }
     }
 
-    return transformerBuilder.installOn(inst);
+    for (InstrumenterIndex.Entry entry : index.entries) {
+      if (!entry.mayBeApplicable(enabledSystems)) {
+        if (DEBUG) {
+          log.debug("Not applicable - instrumentation.class={}", entry.className);
+        }
+        continue;
+      }
+      if (entry.isDisabled()) {
+        if (DEBUG) {
+          log.debug("Disabled - instrumentation.class={}", entry.className);
+        }
+        continue;
+      }
+      if (entry.isLazy()) {
+        if (DEBUG) {
+          log.debug("Deferring - instrumentation.class={}", entry.className);
+        }
+        transformerBuilder.applyLazyInstrumentation(entry, instrumenterLoader);
+        numInstrumenters++;
+        continue;
+      }
+      Instrumenter instrumenter =
+          entry.excludeFilterProvider
+              ? excludeFilterProviders.get(entry)
+              : instantiate(entry, instrumenterLoader);
+      if (instrumenter == null) {
+        continue;
+      }
+      // the index only knows whether the instrumenters of the base classes apply
+      if (!instrumenter.isApplicable(enabledSystems)) {
+        if (DEBUG) {
+          log.debug("Not applicable - instrumentation.class={}", entry.className);
+        }
+        continue;
+      }
+      if (DEBUG) {
+        log.debug("Loading - instrumentation.class={}", entry.className);
+      }
+      try {
+        instrumenter.instrument(transformerBuilder);
+        numInstrumenters++;
+      } catch (final Exception | LinkageError e) {
+        log.error("Failed to load - instrumentation.class={}", entry.className, e);
+      }
+    }
+    return numInstrumenters;
+  }
+
+  private static Instrumenter instantiate(
+      final InstrumenterIndex.Entry entry, final ClassLoader instrumenterLoader) {
+    try {
+      return entry.instantiate(instrumenterLoader);
+    } catch (final Exception | LinkageError e) {
+      log.error("Failed to load - instrumentation.class={}", entry.className, e);
+      return null;
+    }
   }
 
   private static Set<Instrumenter.TargetSystem> getEnabledSystems() {
@@ -28,12 +28,15 @@ import net.bytebuddy.utility.JavaModule;
 public class AgentTransformerBuilder
     implements Instrumenter.TransformerBuilder, Instrumenter.AdviceTransformation {
 
-  private AgentBuilder agentBuilder;
+  private final KnownTypesDispatcher knownTypesDispatcher = new KnownTypesDispatcher();
+
+  private AgentBuilder.Identified.Extendable agentBuilder;
   private ElementMatcher<? super MethodDescription> ignoreMatcher;
   private AgentBuilder.Identified.Extendable adviceBuilder;
 
   AgentTransformerBuilder(AgentBuilder agentBuilder) {
-    this.agentBuilder = agentBuilder;
+    // instrumenters matching exact names share this transformation, see applyKnownTypes
+    this.agentBuilder = agentBuilder.type(knownTypesDispatcher).transform(knownTypesDispatcher);
   }
 
   @Override
@@ -47,11 +50,23 @@ public class AgentTransformerBuilder
     }
   }
 
+  /** Adds an indexed instrumenter, which is only instantiated once one of its types is loaded. */
+  void applyLazyInstrumentation(InstrumenterIndex.Entry entry, ClassLoader instrumenterLoader) {
+    knownTypesDispatcher.add(new LazyInstrumenter(entry, instrumenterLoader), entry.knownTypes);
+  }
+
   public ResettableClassFileTransformer installOn(Instrumentation instrumentation) {
+    knownTypesDispatcher.build();
     return agentBuilder.installOn(instrumentation);
   }
 
-  private AgentBuilder buildInstrumentation(final Instrumenter.Default instrumenter) {
+  private AgentBuilder.Identified.Extendable buildInstrumentation(
+      final Instrumenter.Default instrumenter) {
+    String[] knownTypes = knownTypes(instrumenter);
+    if (null != knownTypes) {
+      return applyKnownTypes(instrumenter, knownTypes);
+    }
+
     AgentBuilder.RawMatcher matcher = matcher(instrumenter);
 
     ignoreMatcher = instrumenter.methodIgnoreMatcher();
@@ -94,18 +109,7 @@ public class AgentTransformerBuilder
 
     final Instrumenter.AdviceTransformer customTransformer = instrumenter.transformer();
     if (customTransformer != null) {
-      adviceBuilder =
-          adviceBuilder.transform(
-              new AgentBuilder.Transformer() {
-                @Override
-                public DynamicType.Builder<?> transform(
-                    DynamicType.Builder<?> builder,
-                    TypeDescription typeDescription,
-                    ClassLoader classLoader,
-                    JavaModule module) {
-                  return customTransformer.transform(builder, typeDescription, classLoader, module);
-                }
-              });
+      adviceBuilder = adviceBuilder.transform(customTransformer(customTransformer));
     }
 
     instrumenter.adviceTransformations(this);
@@ -115,6 +119,42 @@ public class AgentTransformerBuilder
     return adviceBuilder;
   }
 
+  /** @return the exact names matched by the instrumenter, or {@code null} if it matches others */
+  private static String[] knownTypes(Instrumenter.Default instrumenter) {
+    if (instrumenter instanceof Instrumenter.ForTypeHierarchy
+        && !(instrumenter instanceof Instrumenter.CanShortcutTypeMatching
+            && ((Instrumenter.CanShortcutTypeMatching) instrumenter).onlyMatchKnownTypes())) {
+      return null;
+    }
+    if (instrumenter instanceof Instrumenter.ForSingleType) {
+      return new String[] {((Instrumenter.ForSingleType) instrumenter).instrumentedType()};
+    }
+    if (instrumenter instanceof Instrumenter.ForKnownTypes) {
+      return ((Instrumenter.ForKnownTypes) instrumenter).knownMatchingTypes();
+    }
+    return null;
+  }
+
+  /**
+   * Adds an instrumenter matching exact names to the dispatcher, which only consults it when one of
+   * these names is loaded. Its context store fields are still injected by separate transformations,
+   * as these match the hierarchy of the context keys.
+   */
+  private AgentBuilder.Identified.Extendable applyKnownTypes(
+      final Instrumenter.Default instrumenter, final String[] knownTypes) {
+    Map<String, String> matchedContextStores = instrumenter.contextStore();
+    if (matchedContextStores.isEmpty()) {
+      knownTypesDispatcher.add(new LazyInstrumenter(instrumenter, null), knownTypes);
+      return agentBuilder;
+    }
+    FieldBackedContextProvider contextProvider =
+        new FieldBackedContextProvider(
+            instrumenter, singletonMap(instrumenter.classLoaderMatcher(), matchedContextStores));
+    knownTypesDispatcher.add(
+        new LazyInstrumenter(instrumenter, contextProvider.contextRequestRewriter()), knownTypes);
+    return contextProvider.additionalInstrumentation(agentBuilder);
+  }
+
   private AgentBuilder.RawMatcher matcher(Instrumenter.Default instrumenter) {
     ElementMatcher<? super TypeDescription> typeMatcher;
     if (instrumenter instanceof Instrumenter.ForSingleType) {
@@ -160,7 +200,8 @@ public class AgentTransformerBuilder
             + instrumenter.getClass().getName());
   }
 
-  private AgentBuilder buildSingleAdvice(Instrumenter.HasAdvice instrumenter) {
+  private AgentBuilder.Identified.Extendable buildSingleAdvice(
+      Instrumenter.HasAdvice instrumenter) {
     AgentBuilder.RawMatcher matcher =
         new SingleTypeMatcher(((Instrumenter.ForSingleType) instrumenter).instrumentedType());
 
@@ -173,6 +214,30 @@ public class AgentTransformerBuilder
     return adviceBuilder;
   }
 
+  static AgentBuilder.Transformer customTransformer(
+      final Instrumenter.AdviceTransformer customTransformer) {
+    return new AgentBuilder.Transformer() {
+      @Override
+      public DynamicType.Builder<?> transform(
+          DynamicType.Builder<?> builder,
+          TypeDescription typeDescription,
+          ClassLoader classLoader,
+          JavaModule module) {
+        return customTransformer.transform(builder, typeDescription, classLoader, module);
+      }
+    };
+  }
+
+  static AgentBuilder.Transformer adviceTransformer(
+      ElementMatcher<? super MethodDescription> ignoreMatcher,
+      ElementMatcher<? super MethodDescription> matcher,
+      String name) {
+    return new AgentBuilder.Transformer.ForAdvice()
+        .include(Utils.getBootstrapProxy(), Utils.getAgentClassLoader())
+        .withExceptionHandler(ExceptionHandlers.defaultExceptionHandler())
+        .advice(not(ignoreMatcher).and(matcher), name);
+  }
+
   static class HelperTransformer extends HelperInjector implements AgentBuilder.Transformer {
     HelperTransformer(String requestingName, String... helperClassNames) {
       super(requestingName, helperClassNames);
@@ -181,11 +246,6 @@ public class AgentTransformerBuilder
 
   @Override
   public void applyAdvice(ElementMatcher<? super MethodDescription> matcher, String name) {
-    adviceBuilder =
-        adviceBuilder.transform(
-            new AgentBuilder.Transformer.ForAdvice()
-                .include(Utils.getBootstrapProxy(), Utils.getAgentClassLoader())
-                .withExceptionHandler(ExceptionHandlers.defaultExceptionHandler())
-                .advice(not(ignoreMatcher).and(matcher), name));
+    adviceBuilder = adviceBuilder.transform(adviceTransformer(ignoreMatcher, matcher, name));
   }
 }
@@ -0,0 +1,247 @@
+package datadog.trace.agent.tooling;
+
+import datadog.trace.api.Config;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of all the {@link Instrumenter}s of the agent, generated when the agent is built so that
+ * the agent doesn't have to load and instantiate every instrumenter when it starts.
+ *
+ * <p>For each instrumenter the index records its class, its instrumentation names, the target
+ * system declared by its base class and, when it only matches a single type name and doesn't need
+ * context stores, that type name. Instrumenters which don't apply or are disabled are never loaded,
+ * and instrumenters matching a single type name are only instantiated once that type is loaded.
+ *
+ * <p>The index is generated with the configuration of the build, so it only records what doesn't
+ * depend on the configuration: disabled integrations are checked when the agent starts, and the
+ * instrumenters deciding by themselves whether they apply, or matching a list of types which may
+ * be configured, are instantiated when the agent starts to ask them.
+ */
+public final class InstrumenterIndex {
+  private static final Logger log = LoggerFactory.getLogger(InstrumenterIndex.class);
+
+  static final String INDEX_NAME = "instrumenter.index";
+
+  private static final int INDEX_VERSION = 2;
+
+  private static final Instrumenter.TargetSystem[] TARGET_SYSTEMS =
+      Instrumenter.TargetSystem.values();
+
+  /** Target system of the instrumenters which decide by themselves whether they apply. */
+  static final int ANY_SYSTEM = -1;
+
+  final List<Entry> entries;
+
+  InstrumenterIndex(final List<Entry> entries) {
+    this.entries = entries;
+  }
+
+  /** @return the index packaged with the agent, or {@code null} when there is none */
+  static InstrumenterIndex readIndex(final ClassLoader classLoader) {
+    InputStream resource = classLoader.getResourceAsStream(INDEX_NAME);
+    if (resource == null) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource))) {
+      return readIndex(in);
+    } catch (IOException e) {
+      log.warn("Failed to read the instrumenter index, loading all instrumenters", e);
+      return null;
+    }
+  }
+
+  static InstrumenterIndex readIndex(final DataInputStream in) throws IOException {
+    int version = in.readInt();
+    if (version != INDEX_VERSION) {
+      throw new IOException("Unexpected instrumenter index version " + version);
+    }
+    int size = in.readInt();
+    List<Entry> entries = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      entries.add(
+          new Entry(
+              in.readUTF(),
+              readStrings(in),
+              in.readByte(),
+              in.readBoolean(),
+              readStrings(in)));
+    }
+    return new InstrumenterIndex(entries);
+  }
+
+  void writeIndex(final DataOutputStream out) throws IOException {
+    out.writeInt(INDEX_VERSION);
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      out.writeUTF(entry.className);
+      writeStrings(out, entry.names);
+      out.writeByte(entry.targetSystem);
+      out.writeBoolean(entry.excludeFilterProvider);
+      writeStrings(out, entry.knownTypes);
+    }
+  }
+
+  static InstrumenterIndex buildIndex(final Iterable<Instrumenter> instrumenters) {
+    List<Entry> entries = new ArrayList<>();
+    for (Instrumenter instrumenter : instrumenters) {
+      entries.add(Entry.of(instrumenter));
+    }
+    return new InstrumenterIndex(entries);
+  }
+
+  private static String[] readStrings(final DataInputStream in) throws IOException {
+    String[] strings = new String[in.readShort()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+    return strings;
+  }
+
+  private static void writeStrings(final DataOutputStream out, final String[] strings)
+      throws IOException {
+    out.writeShort(strings.length);
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+  }
+
+  /**
+   * @return the ordinal of the target system of the base class which decides whether the
+   *     instrumenter applies, or {@link #ANY_SYSTEM} when the instrumenter decides by itself
+   */
+  static int targetSystem(final Instrumenter instrumenter) {
+    Class<?> decidingClass;
+    try {
+      decidingClass =
+          instrumenter.getClass().getMethod("isApplicable", Set.class).getDeclaringClass();
+    } catch (NoSuchMethodException e) {
+      return ANY_SYSTEM;
+    }
+    if (decidingClass == Instrumenter.Tracing.class) {
+      return Instrumenter.TargetSystem.TRACING.ordinal();
+    } else if (decidingClass == Instrumenter.Profiling.class) {
+      return Instrumenter.TargetSystem.PROFILING.ordinal();
+    } else if (decidingClass == Instrumenter.AppSec.class) {
+      return Instrumenter.TargetSystem.APPSEC.ordinal();
+    } else if (decidingClass == Instrumenter.CiVisibility.class) {
+      return Instrumenter.TargetSystem.CIVISIBILITY.ordinal();
+    }
+    return ANY_SYSTEM;
+  }
+
+  static final class Entry {
+    private static final String[] NO_TYPES = new String[0];
+
+    final String className;
+    final String[] names;
+    /** Ordinal of the target system of the instrumenter, or {@link #ANY_SYSTEM}. */
+    final int targetSystem;
+    final boolean excludeFilterProvider;
+    /** The exact type matched by the instrumenter, empty when it can't be instantiated lazily. */
+    final String[] knownTypes;
+
+    Entry(
+        final String className,
+        final String[] names,
+        final int targetSystem,
+        final boolean excludeFilterProvider,
+        final String[] knownTypes) {
+      this.className = className;
+      this.names = names;
+      this.targetSystem = targetSystem;
+      this.excludeFilterProvider = excludeFilterProvider;
+      this.knownTypes = knownTypes;
+    }
+
+    static Entry of(final Instrumenter instrumenter) {
+      List<String> names = new ArrayList<>();
+      int targetSystem = targetSystem(instrumenter);
+      String[] knownTypes = NO_TYPES;
+      if (instrumenter instanceof Instrumenter.Default) {
+        Instrumenter.Default instrumenterDefault = (Instrumenter.Default) instrumenter;
+        for (String name : instrumenterDefault.names()) {
+          names.add(name);
+        }
+        // the known types of other instrumenters can be configured, like the executors to trace
+        if (instrumenter instanceof Instrumenter.ForSingleType
+            && !(instrumenter instanceof Instrumenter.ForKnownTypes)
+            && !(instrumenter instanceof Instrumenter.ForTypeHierarchy)
+            && !(instrumenter instanceof ExcludeFilterProvider)
+            && targetSystem != ANY_SYSTEM
+            && instrumenterDefault.contextStore().isEmpty()) {
+          knownTypes =
+              new String[] {((Instrumenter.ForSingleType) instrumenter).instrumentedType()};
+        }
+      }
+      return new Entry(
+          instrumenter.getClass().getName(),
+          names.toArray(new String[0]),
+          targetSystem,
+          instrumenter instanceof ExcludeFilterProvider,
+          knownTypes);
+    }
+
+    /**
+     * @return false when the instrumenter doesn't apply to the enabled systems, true when it does
+     *     or when it has to be instantiated to know
+     */
+    boolean mayBeApplicable(final Set<Instrumenter.TargetSystem> enabledSystems) {
+      return targetSystem == ANY_SYSTEM || enabledSystems.contains(TARGET_SYSTEMS[targetSystem]);
+    }
+
+    /** @return whether the instrumenter is disabled, whatever it is enabled by default or not */
+    boolean isDisabled() {
+      if (names.length == 0) {
+        return false;
+      }
+      List<String> integrationNames = new ArrayList<>(names.length);
+      for (String name : names) {
+        integrationNames.add(name);
+      }
+      Config config = Config.get();
+      return !config.isIntegrationEnabled(integrationNames, true)
+          && !config.isIntegrationEnabled(integrationNames, false);
+    }
+
+    boolean isLazy() {
+      return knownTypes.length > 0;
+    }
+
+    Instrumenter instantiate(final ClassLoader classLoader) throws Exception {
+      return (Instrumenter) classLoader.loadClass(className).getConstructor().newInstance();
+    }
+  }
+
+  /**
+   * Generates the index from the instrumenters found on the class-path, in the given directory.
+   */
+  public static final class IndexGenerator {
+    public static void main(String[] args) throws IOException {
+      File indexDir = new File(args[0]);
+      if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+        throw new IOException("Cannot create " + indexDir);
+      }
+      InstrumenterIndex index =
+          buildIndex(
+              ServiceLoader.load(Instrumenter.class, IndexGenerator.class.getClassLoader()));
+      try (OutputStream file = new FileOutputStream(new File(indexDir, INDEX_NAME));
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+        index.writeIndex(out);
+      }
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package datadog.trace.agent.tooling;
+
+import static datadog.trace.agent.tooling.bytebuddy.matcher.DDElementMatchers.NOT_DECORATOR_MATCHER;
+import static java.util.Collections.emptyList;
+
+import datadog.trace.agent.tooling.bytebuddy.matcher.KnownTypesIndex;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * Single transformation applying all the instrumenters which only match exact type names: the name
+ * of each loaded type is looked up once in the {@link KnownTypesIndex}, and only the instrumenters
+ * found there are matched against the type and then applied to it.
+ */
+final class KnownTypesDispatcher implements AgentBuilder.RawMatcher, AgentBuilder.Transformer {
+
+  /** Instrumenters which matched the type being transformed by the current thread. */
+  private static final class Matched {
+    final TypeDescription type;
+    final List<LazyInstrumenter> instrumenters;
+
+    Matched(final TypeDescription type, final List<LazyInstrumenter> instrumenters) {
+      this.type = type;
+      this.instrumenters = instrumenters;
+    }
+  }
+
+  private final KnownTypesIndex index = new KnownTypesIndex();
+  private final List<LazyInstrumenter> instrumenters = new ArrayList<>();
+  private final ThreadLocal<Matched> matched = new ThreadLocal<>();
+
+  /** Adds an instrumenter for the given names, only possible before the index is built. */
+  void add(final LazyInstrumenter instrumenter, final String... names) {
+    index.add(names);
+    instrumenters.add(instrumenter);
+  }
+
+  void build() {
+    index.build();
+  }
+
+  @Override
+  public boolean matches(
+      final TypeDescription typeDescription,
+      final ClassLoader classLoader,
+      final JavaModule module,
+      final Class<?> classBeingRedefined,
+      final ProtectionDomain protectionDomain) {
+    List<LazyInstrumenter> candidates =
+        match(typeDescription, classLoader, module, classBeingRedefined, protectionDomain);
+    if (candidates.isEmpty()) {
+      return false;
+    }
+    // ByteBuddy calls transform right after a match on the same thread
+    matched.set(new Matched(typeDescription, candidates));
+    return true;
+  }
+
+  @Override
+  public DynamicType.Builder<?> transform(
+      DynamicType.Builder<?> builder,
+      final TypeDescription typeDescription,
+      final ClassLoader classLoader,
+      final JavaModule module) {
+    Matched current = matched.get();
+    matched.remove();
+    List<LazyInstrumenter> candidates;
+    if (null != current && current.type == typeDescription) {
+      candidates = current.instrumenters;
+    } else {
+      candidates = match(typeDescription, classLoader, module, null, null);
+    }
+    for (LazyInstrumenter instrumenter : candidates) {
+      builder = instrumenter.transform(builder, typeDescription, classLoader, module);
+    }
+    return builder;
+  }
+
+  private List<LazyInstrumenter> match(
+      final TypeDescription typeDescription,
+      final ClassLoader classLoader,
+      final JavaModule module,
+      final Class<?> classBeingRedefined,
+      final ProtectionDomain protectionDomain) {
+    BitSet ids = index.lookup(typeDescription.getName());
+    if (ids.isEmpty() || !NOT_DECORATOR_MATCHER.matches(typeDescription)) {
+      return emptyList();
+    }
+    List<LazyInstrumenter> candidates = new ArrayList<>(ids.cardinality());
+    for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+      LazyInstrumenter instrumenter = instrumenters.get(id);
+      if (instrumenter.matches(
+          typeDescription, classLoader, module, classBeingRedefined, protectionDomain)) {
+        candidates.add(instrumenter);
+      }
+    }
+    return candidates;
+  }
+}
@@ -0,0 +1,155 @@
+package datadog.trace.agent.tooling;
+
+import static datadog.trace.agent.tooling.bytebuddy.DDTransformers.defaultTransformers;
+
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.utility.JavaModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stands for an instrumenter which only matches exact type names, and is applied by the {@link
+ * KnownTypesDispatcher} when one of these types is loaded. Indexed instrumenters are only
+ * instantiated at that point; instrumenters with context stores are never indexed, so they are
+ * instantiated upfront along with the transformer rewriting their context store accesses.
+ */
+final class LazyInstrumenter
+    implements AgentBuilder.RawMatcher,
+        AgentBuilder.Transformer,
+        Instrumenter.AdviceTransformation {
+  private static final Logger log = LoggerFactory.getLogger(LazyInstrumenter.class);
+
+  private final InstrumenterIndex.Entry entry;
+  private final ClassLoader instrumenterLoader;
+  private final String className;
+
+  private volatile boolean resolved;
+  private Instrumenter.Default instrumenter;
+  private ElementMatcher<? super MethodDescription> ignoreMatcher;
+  private final List<AgentBuilder.Transformer> transformers = new ArrayList<>();
+
+  LazyInstrumenter(final InstrumenterIndex.Entry entry, final ClassLoader instrumenterLoader) {
+    this.entry = entry;
+    this.instrumenterLoader = instrumenterLoader;
+    this.className = entry.className;
+  }
+
+  LazyInstrumenter(
+      final Instrumenter.Default instrumenter,
+      final AgentBuilder.Transformer contextRequestRewriter) {
+    this.entry = null;
+    this.instrumenterLoader = null;
+    this.className = instrumenter.getClass().getName();
+    this.instrumenter = prepare(instrumenter, contextRequestRewriter);
+    this.resolved = true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean matches(
+      final TypeDescription typeDescription,
+      final ClassLoader classLoader,
+      final JavaModule module,
+      final Class<?> classBeingRedefined,
+      final ProtectionDomain protectionDomain) {
+    Instrumenter.Default instrumenter = resolve();
+    if (null == instrumenter) {
+      return false;
+    }
+    try {
+      if (!instrumenter.classLoaderMatcher().matches(classLoader)) {
+        return false;
+      }
+      if (instrumenter instanceof Instrumenter.WithTypeStructure
+          && !((ElementMatcher<TypeDescription>)
+                  ((Instrumenter.WithTypeStructure) instrumenter).structureMatcher())
+              .matches(typeDescription)) {
+        return false;
+      }
+    } catch (Exception e) {
+      log.debug(
+          "Instrumentation matcher unexpected exception - "
+              + "instrumentation.names={} instrumentation.class={}",
+          instrumenter.names(),
+          className,
+          e);
+      return false;
+    }
+    return instrumenter.muzzleMatches(classLoader, classBeingRedefined);
+  }
+
+  @Override
+  public DynamicType.Builder<?> transform(
+      DynamicType.Builder<?> builder,
+      final TypeDescription typeDescription,
+      final ClassLoader classLoader,
+      final JavaModule module) {
+    for (AgentBuilder.Transformer transformer : transformers) {
+      builder = transformer.transform(builder, typeDescription, classLoader, module);
+    }
+    return builder;
+  }
+
+  @Override
+  public void applyAdvice(ElementMatcher<? super MethodDescription> matcher, String name) {
+    transformers.add(AgentTransformerBuilder.adviceTransformer(ignoreMatcher, matcher, name));
+  }
+
+  /** @return the instrumenter, or {@code null} when it is disabled or can't be instantiated */
+  private Instrumenter.Default resolve() {
+    if (!resolved) {
+      synchronized (this) {
+        if (!resolved) {
+          instrumenter = instantiate();
+          resolved = true;
+        }
+      }
+    }
+    return instrumenter;
+  }
+
+  private Instrumenter.Default instantiate() {
+    Instrumenter.Default instrumenter;
+    try {
+      instrumenter = (Instrumenter.Default) entry.instantiate(instrumenterLoader);
+    } catch (final Exception | LinkageError e) {
+      log.error("Failed to load - instrumentation.class={}", entry.className, e);
+      return null;
+    }
+    if (!instrumenter.isEnabled()) {
+      log.debug("Disabled - instrumentation.class={}", entry.className);
+      return null;
+    }
+    log.debug("Loaded lazily - instrumentation.class={}", entry.className);
+    return prepare(instrumenter, null);
+  }
+
+  private Instrumenter.Default prepare(
+      final Instrumenter.Default instrumenter,
+      final AgentBuilder.Transformer contextRequestRewriter) {
+    transformers.add(defaultTransformers());
+    String[] helperClassNames = instrumenter.helperClassNames();
+    if (helperClassNames.length > 0) {
+      transformers.add(
+          new AgentTransformerBuilder.HelperTransformer(
+              instrumenter.getClass().getSimpleName(), helperClassNames));
+    }
+    if (contextRequestRewriter != null) {
+      transformers.add(contextRequestRewriter);
+    }
+    Instrumenter.AdviceTransformer customTransformer = instrumenter.transformer();
+    if (customTransformer != null) {
+      transformers.add(AgentTransformerBuilder.customTransformer(customTransformer));
+    }
+    ignoreMatcher = instrumenter.methodIgnoreMatcher();
+    instrumenter.adviceTransformations(this);
+    return instrumenter;
+  }
+}
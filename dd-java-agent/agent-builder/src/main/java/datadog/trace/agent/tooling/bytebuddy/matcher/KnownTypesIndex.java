@@ -0,0 +1,79 @@
+package datadog.trace.agent.tooling.bytebuddy.matcher;
+
+import datadog.trace.util.ClassNameTrie;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the exact type names matched by all the instrumenters, built once at startup.
+ *
+ * <p>Each instrumenter matching exact type names is added with an id, and a single lookup of the
+ * name of a loaded type gives the ids of all the instrumenters matching it, so the other
+ * instrumenters are never consulted for that type.
+ *
+ * <p>Names can only be added before the index is {@linkplain #build() built}, which happens right
+ * before the agent is installed.
+ */
+public final class KnownTypesIndex {
+  private static final BitSet NO_MATCHES = new BitSet();
+
+  private final Map<String, BitSet> matchesByName = new HashMap<>();
+  private int instrumenters;
+
+  private boolean built;
+  private ClassNameTrie nameTrie;
+  private BitSet[] matches;
+
+  /** Adds the names matched by another instrumenter, and returns the id of that one. */
+  public int add(final String... names) {
+    if (built) {
+      throw new IllegalStateException("Known types index is already built");
+    }
+    int id = instrumenters++;
+    for (String name : names) {
+      BitSet ids = matchesByName.get(name);
+      if (ids == null) {
+        ids = new BitSet();
+        matchesByName.put(name, ids);
+      }
+      ids.set(id);
+    }
+    return id;
+  }
+
+  /** Freezes the index, each distinct set of instrumenters is kept once. */
+  public void build() {
+    built = true;
+    if (matchesByName.isEmpty()) {
+      return;
+    }
+    Map<BitSet, Integer> slots = new HashMap<>();
+    List<BitSet> distinctMatches = new ArrayList<>();
+    ClassNameTrie.Builder builder = new ClassNameTrie.Builder();
+    for (Map.Entry<String, BitSet> entry : matchesByName.entrySet()) {
+      Integer slot = slots.get(entry.getValue());
+      if (slot == null) {
+        slot = distinctMatches.size();
+        slots.put(entry.getValue(), slot);
+        distinctMatches.add(entry.getValue());
+      }
+      builder.put(entry.getKey(), slot);
+    }
+    matches = distinctMatches.toArray(new BitSet[0]);
+    nameTrie = builder.buildTrie();
+    matchesByName.clear();
+  }
+
+  /** @return the ids of the instrumenters matching the name, which must not be modified */
+  public BitSet lookup(final String name) {
+    ClassNameTrie trie = nameTrie;
+    if (trie == null) {
+      return NO_MATCHES;
+    }
+    int slot = trie.apply(name);
+    return slot >= 0 ? matches[slot] : NO_MATCHES;
+  }
+}
@@ -69,13 +69,16 @@ public final class FieldBackedContextProvider implements InstrumentationContextP
        * Install transformer that rewrites accesses to context store with specialized bytecode that
        * invokes appropriate storage implementation.
        */
-      builder =
-          builder.transform(
-              wrapVisitor(new FieldBackedContextRequestRewriter(contextStore, instrumenterName)));
+      builder = builder.transform(contextRequestRewriter());
     }
     return builder;
   }
 
+  /** @return the transformer rewriting the accesses to the context stores of the instrumenter */
+  public AgentBuilder.Transformer contextRequestRewriter() {
+    return wrapVisitor(new FieldBackedContextRequestRewriter(contextStore, instrumenterName));
+  }
+
   /** Clear set that prevents multiple matchers for same context class */
   public static void resetContextMatchers() {
     synchronized (INSTALLED_CONTEXT_MATCHERS) {
@@ -0,0 +1,153 @@
+package com.datadog.profiling.uploader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the compressed data over, in fixed size chunks, from the thread compressing a recording to
+ * the thread uploading it, so that the next chunk is compressed while the previous one is being
+ * sent. Only a few chunks are buffered: the compressing side blocks when the upload falls behind.
+ *
+ * <p>The compressing side writes to this stream, then either closes it or reports its failure, and
+ * finally calls {@linkplain #finished()}. The uploading side calls {@linkplain #drainTo}.
+ */
+final class ChunkPipe extends OutputStream {
+  private static final byte[] END = new byte[0];
+  private static final long OFFER_TIMEOUT_MS = 100;
+  private static final long CANCEL_TIMEOUT_MS = 1000;
+
+  private final BlockingQueue<byte[]> chunks;
+  private final int chunkSize;
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  private volatile Throwable failure;
+  private volatile boolean cancelled;
+
+  // only used by the compressing side
+  private byte[] chunk;
+  private int position;
+
+  ChunkPipe(int chunkSize, int maxChunks) {
+    this.chunks = new ArrayBlockingQueue<>(maxChunks);
+    this.chunkSize = chunkSize;
+    this.chunk = new byte[chunkSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (position == chunkSize) {
+      pushChunk();
+    }
+    chunk[position++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (position == chunkSize) {
+        pushChunk();
+      }
+      int copied = Math.min(len, chunkSize - position);
+      System.arraycopy(b, off, chunk, position, copied);
+      position += copied;
+      off += copied;
+      len -= copied;
+    }
+  }
+
+  @Override
+  public void flush() {
+    // chunks are only pushed once full, flushing would just make more of them
+  }
+
+  /** Pushes the last, partial chunk and marks the end of the data. */
+  @Override
+  public void close() throws IOException {
+    if (position > 0) {
+      push(Arrays.copyOf(chunk, position));
+      position = 0;
+    }
+    push(END);
+  }
+
+  /** Fails the upload with the exception which interrupted the compression. */
+  void fail(Throwable t) {
+    failure = t;
+    try {
+      push(END);
+    } catch (IOException ignored) {
+      // the upload has been cancelled already
+    }
+  }
+
+  /** Signals that the compressing side doesn't use the recording any more. */
+  void finished() {
+    finished.countDown();
+  }
+
+  boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Writes the chunks to the given stream as they become available, until the end of the data.
+   * When this fails, the compression is cancelled and this waits a little for it to stop, so that
+   * the recording can be closed.
+   */
+  void drainTo(OutputStream out) throws IOException {
+    boolean complete = false;
+    try {
+      byte[] next;
+      while ((next = chunks.take()) != END) {
+        out.write(next);
+      }
+      complete = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for compressed data");
+    } finally {
+      if (!complete) {
+        cancel();
+      }
+    }
+    Throwable t = failure;
+    if (t != null) {
+      throw t instanceof IOException ? (IOException) t : new IOException(t);
+    }
+  }
+
+  private void cancel() {
+    cancelled = true;
+    chunks.clear();
+    try {
+      finished.await(CANCEL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void pushChunk() throws IOException {
+    push(chunk);
+    chunk = new byte[chunkSize];
+    position = 0;
+  }
+
+  private void push(byte[] data) throws IOException {
+    try {
+      do {
+        if (cancelled) {
+          throw new IOException("Upload cancelled");
+        }
+      } while (!chunks.offer(data, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while passing compressed data");
+    }
+  }
+}
@@ -5,10 +5,16 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okio.BufferedSink;
@@ -18,6 +24,11 @@ import okio.Source;
 /**
  * A specialized {@linkplain RequestBody} subclass performing on-the fly compression of the uploaded
  * data.
+ *
+ * <p>When given a compression executor, the data is compressed there, one chunk ahead of the
+ * upload: the thread writing the request only sends the chunks compressed already, and the CPU
+ * used by the compression is bounded by the executor's threads rather than by the number of
+ * concurrent uploads.
  */
 final class CompressingRequestBody extends RequestBody {
   static final class MissingInputException extends IOException {
@@ -71,13 +82,22 @@ final class CompressingRequestBody extends RequestBody {
   private static final int ZIP_MAGIC[] = new int[] {80, 75, 3, 4};
   private static final int GZ_MAGIC[] = new int[] {31, 139};
 
+  // the highest level of LZ4 high compression, LZ4Constants is not public
+  private static final int LZ4_MAX_COMPRESSION_LEVEL = 17;
+
+  private static final int PIPELINE_CHUNK_SIZE = 64 * 1024;
+  private static final int PIPELINE_MAX_CHUNKS = 4;
+
   private final InputStreamSupplier inputStreamSupplier;
   private final OutputStreamMappingFunction outputStreamMapper;
   private final RetryPolicy retryPolicy;
   private final RetryBackoff retryBackoff;
+  @Nullable private final Executor compressionExecutor;
 
   private long readBytes = 0;
   private long writtenBytes = 0;
+  // written by the compressing thread, which is not the writing one when pipelined
+  private volatile long compressionCpuNanos = 0;
 
   /**
    * Create a new instance configured with 1 retry and constant 10ms backoff delay.
@@ -117,8 +137,55 @@ final class CompressingRequestBody extends RequestBody {
       @Nonnull InputStreamSupplier inputStreamSupplier,
       @Nonnull RetryPolicy retryPolicy,
       @Nonnull RetryBackoff retryBackoff) {
+    this(compressionType, 0, null, inputStreamSupplier, retryPolicy, retryBackoff);
+  }
+
+  /**
+   * Create a new instance configured with 1 retry and constant 10ms backoff delay.
+   *
+   * @param compressionType {@linkplain CompressionType} value
+   * @param compressionLevel 0 for the default level of the compression type, a negative value for
+   *     its fastest level, or its level between 1 and 9 for gzip, 1 and 17 for LZ4
+   * @param compressionExecutor executor compressing the data ahead of the upload, or {@literal
+   *     null} to compress it while uploading
+   * @param inputStreamSupplier supplier of the data input stream
+   */
+  CompressingRequestBody(
+      @Nonnull CompressionType compressionType,
+      int compressionLevel,
+      @Nullable Executor compressionExecutor,
+      @Nonnull InputStreamSupplier inputStreamSupplier) {
+    this(
+        compressionType,
+        compressionLevel,
+        compressionExecutor,
+        inputStreamSupplier,
+        r -> r <= 1,
+        r -> 10);
+  }
+
+  /**
+   * Create a new instance.
+   *
+   * @param compressionType {@linkplain CompressionType} value
+   * @param compressionLevel 0 for the default level of the compression type, a negative value for
+   *     its fastest level, or its level between 1 and 9 for gzip, 1 and 17 for LZ4
+   * @param compressionExecutor executor compressing the data ahead of the upload, or {@literal
+   *     null} to compress it while uploading
+   * @param inputStreamSupplier supplier of the data input stream
+   * @param retryPolicy {@linkplain RetryPolicy} instance
+   * @param retryBackoff {@linkplain RetryBackoff} instance
+   */
+  CompressingRequestBody(
+      @Nonnull CompressionType compressionType,
+      int compressionLevel,
+      @Nullable Executor compressionExecutor,
+      @Nonnull InputStreamSupplier inputStreamSupplier,
+      @Nonnull RetryPolicy retryPolicy,
+      @Nonnull RetryBackoff retryBackoff) {
     this.inputStreamSupplier = inputStreamSupplier;
-    this.outputStreamMapper = getOutputStreamMapper(compressionType);
+    this.outputStreamMapper = getOutputStreamMapper(compressionType, compressionLevel);
+    this.compressionExecutor = compressionExecutor;
     this.retryPolicy = retryPolicy;
     this.retryBackoff = retryBackoff;
   }
@@ -164,7 +231,11 @@ final class CompressingRequestBody extends RequestBody {
         try {
           ByteCountingOutputStream outputStream =
               new ByteCountingOutputStream(bufferedSink.outputStream());
-          attemptWrite(inputStream, outputStream);
+          if (compressionExecutor != null) {
+            pipelinedWrite(inputStream, outputStream);
+          } else {
+            timedWrite(inputStream, outputStream);
+          }
           readBytes = inputStream.getReadBytes();
           writtenBytes = outputStream.getWrittenBytes();
         } catch (Throwable t) {
@@ -209,6 +280,49 @@ final class CompressingRequestBody extends RequestBody {
     return writtenBytes;
   }
 
+  /** @return the CPU time used to read and compress the data, when the JVM measures it */
+  long getCompressionCpuNanos() {
+    return compressionCpuNanos;
+  }
+
+  private void pipelinedWrite(
+      @Nonnull InputStream inputStream, @Nonnull OutputStream outputStream) throws IOException {
+    ChunkPipe pipe = new ChunkPipe(PIPELINE_CHUNK_SIZE, PIPELINE_MAX_CHUNKS);
+    try {
+      compressionExecutor.execute(() -> compress(inputStream, pipe));
+    } catch (RejectedExecutionException e) {
+      // the uploader is shutting down, compress on this thread instead
+      timedWrite(inputStream, outputStream);
+      return;
+    }
+    pipe.drainTo(outputStream);
+    outputStream.flush();
+  }
+
+  private void compress(@Nonnull InputStream inputStream, @Nonnull ChunkPipe pipe) {
+    try {
+      // skip the recording when the upload gave up while this was queued
+      if (!pipe.isCancelled()) {
+        timedWrite(inputStream, pipe);
+        pipe.close();
+      }
+    } catch (Throwable t) {
+      pipe.fail(t);
+    } finally {
+      pipe.finished();
+    }
+  }
+
+  private void timedWrite(@Nonnull InputStream inputStream, @Nonnull OutputStream outputStream)
+      throws IOException {
+    long start = UploadMetrics.currentThreadCpuTime();
+    try {
+      attemptWrite(inputStream, outputStream);
+    } finally {
+      compressionCpuNanos = UploadMetrics.currentThreadCpuTime() - start;
+    }
+  }
+
   private void attemptWrite(@Nonnull InputStream inputStream, @Nonnull OutputStream outputStream)
       throws IOException {
     try (OutputStream sinkStream =
@@ -314,13 +428,17 @@ final class CompressingRequestBody extends RequestBody {
   }
 
   private static OutputStreamMappingFunction getOutputStreamMapper(
-      @Nonnull CompressionType compressionType) {
-    // currently only gzip and off are supported
-    // this needs to be updated once more compression types are added
+      @Nonnull CompressionType compressionType, int compressionLevel) {
     switch (compressionType) {
       case GZIP:
         {
-          return GZIPOutputStream::new;
+          int level =
+              compressionLevel == 0
+                  ? Deflater.DEFAULT_COMPRESSION
+                  : compressionLevel < 0
+                      ? Deflater.BEST_SPEED
+                      : Math.min(compressionLevel, Deflater.BEST_COMPRESSION);
+          return out -> new LeveledGZIPOutputStream(out, level);
         }
       case OFF:
         {
@@ -330,6 +448,13 @@ final class CompressingRequestBody extends RequestBody {
       case LZ4:
       default:
         {
+          if (compressionLevel > 0) {
+            // trade CPU for a better compression ratio
+            LZ4Compressor compressor =
+                LZ4Factory.fastestInstance()
+                    .highCompressor(Math.min(compressionLevel, LZ4_MAX_COMPRESSION_LEVEL));
+            return os -> toLz4Stream(os, compressor);
+          }
           return CompressingRequestBody::toLz4Stream;
         }
     }
@@ -343,6 +468,25 @@ final class CompressingRequestBody extends RequestBody {
         LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
   }
 
+  private static OutputStream toLz4Stream(
+      @Nonnull OutputStream os, @Nonnull LZ4Compressor compressor) throws IOException {
+    return new LZ4FrameOutputStream(
+        os,
+        LZ4FrameOutputStream.BLOCKSIZE.SIZE_64KB,
+        -1L,
+        compressor,
+        XXHashFactory.fastestInstance().hash32(),
+        LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+  }
+
+  /** A {@linkplain GZIPOutputStream} using the given compression level. */
+  private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+    LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+      super(out);
+      def.setLevel(level);
+    }
+  }
+
   private static boolean hasMagic(InputStream is, int[] magic) throws IOException {
     for (int element : magic) {
       int b = is.read();
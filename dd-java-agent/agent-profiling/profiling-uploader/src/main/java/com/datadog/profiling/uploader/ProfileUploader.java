@@ -17,6 +17,7 @@ package com.datadog.profiling.uploader;
 
 import static datadog.common.socket.SocketUtils.discoverApmSocket;
 import static datadog.trace.util.AgentThreadFactory.AgentThread.PROFILER_HTTP_DISPATCHER;
+import static datadog.trace.util.AgentThreadFactory.AgentThread.PROFILER_UPLOAD_COMPRESSOR;
 
 import com.datadog.profiling.controller.RecordingData;
 import com.datadog.profiling.controller.RecordingType;
@@ -41,6 +42,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -109,6 +111,7 @@ public final class ProfileUploader {
               + "\"");
 
   private final ExecutorService okHttpExecutorService;
+  private final ThreadPoolExecutor compressionExecutor;
   private final OkHttpClient client;
   private final IOLogger ioLogger;
   private final boolean agentless;
@@ -118,7 +121,9 @@ public final class ProfileUploader {
   private final String containerId;
   private final int terminationTimeout;
   private final CompressionType compressionType;
+  private final int compressionLevel;
   private final String tags;
+  private final UploadMetrics metrics = new UploadMetrics();
 
   public ProfileUploader(final Config config, final ConfigProvider configProvider) {
     this(
@@ -235,6 +240,22 @@ public final class ProfileUploader {
     client.dispatcher().setMaxRequestsPerHost(MAX_RUNNING_REQUESTS);
 
     compressionType = CompressionType.of(config.getProfilingUploadCompression());
+    compressionLevel = config.getProfilingUploadCompressionLevel();
+    if (config.isProfilingUploadPipelined()) {
+      // A single thread compresses the recordings ahead of their upload, one after the other, so
+      // that several large recordings don't use several cores at once
+      compressionExecutor =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              60,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new AgentThreadFactory(PROFILER_UPLOAD_COMPRESSOR));
+      compressionExecutor.allowCoreThreadTimeOut(true);
+    } else {
+      compressionExecutor = null;
+    }
   }
 
   /**
@@ -275,6 +296,9 @@ public final class ProfileUploader {
   }
 
   public void shutdown() {
+    if (compressionExecutor != null) {
+      compressionExecutor.shutdownNow();
+    }
     okHttpExecutorService.shutdownNow();
     try {
       okHttpExecutorService.awaitTermination(terminationTimeout, TimeUnit.SECONDS);
@@ -317,7 +341,8 @@ public final class ProfileUploader {
       @Nonnull final Runnable onCompletion) {
 
     final CompressingRequestBody body =
-        new CompressingRequestBody(compressionType, data::getStream);
+        new CompressingRequestBody(
+            compressionType, compressionLevel, compressionExecutor, data::getStream);
     final RequestBody requestBody = makeRequestBody(data, body);
 
     final Request.Builder requestBuilder =
@@ -340,12 +365,14 @@ public final class ProfileUploader {
     if (containerId != null) {
       requestBuilder.addHeader(HEADER_DD_CONTAINER_ID, containerId);
     }
+    final long start = System.nanoTime();
     client
         .newCall(requestBuilder.build())
         .enqueue(
             new Callback() {
               @Override
               public void onFailure(final Call call, final IOException e) {
+                metrics.record(body, System.nanoTime() - start, false);
                 if (isEmptyReplyFromServer(e)) {
                   ioLogger.error(
                       "Failed to upload profile, received empty reply from "
@@ -360,6 +387,7 @@ public final class ProfileUploader {
 
               @Override
               public void onResponse(final Call call, final Response response) throws IOException {
+                metrics.record(body, System.nanoTime() - start, response.isSuccessful());
                 if (response.isSuccessful()) {
                   ioLogger.success("Upload done");
                 } else {
@@ -430,4 +458,12 @@ public final class ProfileUploader {
   OkHttpClient getClient() {
     return client;
   }
+
+  /**
+   * Note that this method is only visible for testing and should not be used from outside this
+   * class.
+   */
+  UploadMetrics getMetrics() {
+    return metrics;
+  }
 }
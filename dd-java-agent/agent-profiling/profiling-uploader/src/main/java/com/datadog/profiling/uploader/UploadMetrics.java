@@ -0,0 +1,92 @@
+package com.datadog.profiling.uploader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Totals of the sizes, latencies and compression CPU time of the profile uploads. Each upload is
+ * also logged at debug level.
+ */
+final class UploadMetrics {
+  private static final Logger log = LoggerFactory.getLogger(UploadMetrics.class);
+
+  private final AtomicLong uploads = new AtomicLong();
+  private final AtomicLong failedUploads = new AtomicLong();
+  private final AtomicLong recordingBytes = new AtomicLong();
+  private final AtomicLong uploadedBytes = new AtomicLong();
+  private final AtomicLong latencyNanos = new AtomicLong();
+  private final AtomicLong compressionCpuNanos = new AtomicLong();
+
+  void record(CompressingRequestBody body, long latency, boolean success) {
+    uploads.incrementAndGet();
+    if (!success) {
+      failedUploads.incrementAndGet();
+    }
+    recordingBytes.addAndGet(body.getReadBytes());
+    uploadedBytes.addAndGet(body.getWrittenBytes());
+    latencyNanos.addAndGet(latency);
+    compressionCpuNanos.addAndGet(body.getCompressionCpuNanos());
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Uploaded {} bytes of recording as {} bytes in {} ms, using {} ms of CPU to compress, {}",
+          body.getReadBytes(),
+          body.getWrittenBytes(),
+          TimeUnit.NANOSECONDS.toMillis(latency),
+          TimeUnit.NANOSECONDS.toMillis(body.getCompressionCpuNanos()),
+          success ? "succeeded" : "failed");
+    }
+  }
+
+  long getUploads() {
+    return uploads.get();
+  }
+
+  long getFailedUploads() {
+    return failedUploads.get();
+  }
+
+  long getRecordingBytes() {
+    return recordingBytes.get();
+  }
+
+  long getUploadedBytes() {
+    return uploadedBytes.get();
+  }
+
+  long getLatencyNanos() {
+    return latencyNanos.get();
+  }
+
+  long getCompressionCpuNanos() {
+    return compressionCpuNanos.get();
+  }
+
+  /** @return the CPU time used by the current thread, or 0 when the JVM doesn't measure it */
+  static long currentThreadCpuTime() {
+    ThreadMXBean threads = CpuTime.THREADS;
+    return threads != null ? threads.getCurrentThreadCpuTime() : 0;
+  }
+
+  /** Only initialized with the first upload, long after the JMX subsystem is safe to touch. */
+  private static final class CpuTime {
+    static final ThreadMXBean THREADS;
+
+    static {
+      ThreadMXBean threads = null;
+      try {
+        threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isCurrentThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+          threads = null;
+        }
+      } catch (Throwable t) {
+        threads = null;
+        log.debug("Thread CPU time is not available", t);
+      }
+      THREADS = threads;
+    }
+  }
+}
@@ -13,6 +13,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -21,21 +23,30 @@ import net.jpountz.lz4.LZ4FrameOutputStream;
 import okio.BufferedSink;
 import okio.Okio;
 import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.internal.verification.VerificationModeFactory;
 import org.mockito.stubbing.Answer;
 
 class CompressingRequestBodyTest {
   private static byte[] recordingData;
+  private static ExecutorService compressionExecutor;
 
   @BeforeAll
   static void setupAll() throws Exception {
     InputStream dataStream = testRecordingStream();
     recordingData = new byte[dataStream.available()];
     IOUtils.readFully(dataStream, recordingData);
+    compressionExecutor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterAll
+  static void tearDownAll() {
+    compressionExecutor.shutdownNow();
   }
 
   @ParameterizedTest
@@ -189,6 +200,65 @@ class CompressingRequestBodyTest {
     }
   }
 
+  @ParameterizedTest
+  @EnumSource(CompressionType.class)
+  void writeToPipelined(CompressionType compressionType) throws IOException {
+    CompressingRequestBody inline =
+        new CompressingRequestBody(
+            compressionType, CompressingRequestBodyTest::testRecordingStream);
+    CompressingRequestBody pipelined =
+        new CompressingRequestBody(
+            compressionType,
+            0,
+            compressionExecutor,
+            CompressingRequestBodyTest::testRecordingStream);
+
+    byte[] expected = instanceWriteAsBytes(inline);
+    byte[] compressed = instanceWriteAsBytes(pipelined);
+
+    assertArrayEquals(expected, compressed);
+    assertEquals(recordingData.length, pipelined.getReadBytes());
+    assertEquals(compressed.length, pipelined.getWrittenBytes());
+  }
+
+  @Test
+  void writeToPipelinedFailure() {
+    CompressingRequestBody instance =
+        new CompressingRequestBody(
+            CompressionType.LZ4,
+            0,
+            compressionExecutor,
+            () ->
+                new RecordingInputStream(
+                    new ByteArrayInputStream(recordingData) {
+                      @Override
+                      public synchronized int read(byte[] b, int off, int len) {
+                        if (pos > 300) {
+                          throw new IllegalStateException();
+                        }
+                        return super.read(b, off, len);
+                      }
+                    }));
+    assertThrows(IOException.class, () -> instanceWriteAsBytes(instance));
+  }
+
+  @ParameterizedTest
+  @CsvSource({"LZ4, -1", "LZ4, 1", "LZ4, 17", "LZ4, 100", "GZIP, -1", "GZIP, 1", "GZIP, 9"})
+  void writeToWithLevel(CompressionType compressionType, int level) throws IOException {
+    CompressingRequestBody instance =
+        new CompressingRequestBody(
+            compressionType, level, null, CompressingRequestBodyTest::testRecordingStream);
+
+    byte[] compressed = instanceWriteAsBytes(instance);
+    InputStream uncompressedStream =
+        compressionType == CompressionType.GZIP
+            ? new GZIPInputStream(new ByteArrayInputStream(compressed))
+            : new LZ4FrameInputStream(new ByteArrayInputStream(compressed));
+
+    assertArrayEquals(recordingData, IOUtils.toByteArray(uncompressedStream));
+    assertEquals(compressed.length, instance.getWrittenBytes());
+  }
+
   @ParameterizedTest
   @EnumSource(CompressionType.class)
   void writeToRecompression(CompressionType targetType) throws IOException {
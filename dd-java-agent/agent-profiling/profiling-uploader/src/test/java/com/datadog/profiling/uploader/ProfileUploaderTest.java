@@ -76,6 +76,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.internal.verification.VerificationModeFactory;
@@ -295,6 +296,44 @@ public class ProfileUploaderTest {
     assertArrayEquals(expectedBytes, uploadedBytes);
   }
 
+  @ParameterizedTest
+  @CsvSource({"on, 0", "lz4, -1", "lz4, 9", "gzip, -1", "gzip, 9", "off, 0"})
+  public void testPipelinedCompression(final String compression, final int level)
+      throws Exception {
+    when(config.getProfilingUploadCompression()).thenReturn(compression);
+    when(config.getProfilingUploadCompressionLevel()).thenReturn(level);
+    when(config.isProfilingUploadPipelined()).thenReturn(true);
+    when(config.getProfilingUploadTimeout()).thenReturn(500000);
+    uploader = new ProfileUploader(config, configProvider);
+
+    server.enqueue(new MockResponse().setResponseCode(200));
+
+    uploadAndWait(RECORDING_TYPE, mockRecordingData());
+
+    final RecordedRequest recordedRequest = server.takeRequest(5, TimeUnit.SECONDS);
+    final List<FileItem> multiPartItems =
+        FileUpload.parse(
+            recordedRequest.getBody().readByteArray(), recordedRequest.getHeader("Content-Type"));
+    final FileItem rawJfr = multiPartItems.get(1);
+
+    final byte[] expectedBytes = ByteStreams.toByteArray(recordingStream(false));
+
+    byte[] uploadedBytes = rawJfr.get();
+    if (compression.equals("gzip")) {
+      uploadedBytes = unGzip(uploadedBytes);
+    } else if (!compression.equals("off")) {
+      uploadedBytes = unLz4(uploadedBytes);
+    }
+    assertArrayEquals(expectedBytes, uploadedBytes);
+
+    final UploadMetrics metrics = uploader.getMetrics();
+    assertEquals(1, metrics.getUploads());
+    assertEquals(0, metrics.getFailedUploads());
+    assertEquals(expectedBytes.length, metrics.getRecordingBytes());
+    assertEquals(rawJfr.get().length, metrics.getUploadedBytes());
+    assertTrue(metrics.getLatencyNanos() > 0);
+  }
+
   @Test
   public void testRequestWithContainerId() throws Exception {
     uploader =
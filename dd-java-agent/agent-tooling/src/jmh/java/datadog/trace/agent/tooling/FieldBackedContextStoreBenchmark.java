@@ -0,0 +1,119 @@
+package datadog.trace.agent.tooling;
+
+import datadog.trace.bootstrap.ContextStore;
+import datadog.trace.bootstrap.FieldBackedContextAccessor;
+import datadog.trace.bootstrap.FieldBackedContextStore;
+import datadog.trace.bootstrap.FieldBackedContextStores;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 32 threads putting and removing contexts of a few shared keys, like requests or messages handled
+ * concurrently by several instrumentations: keys with an injected field, with the previous locking
+ * of the key as baseline, and keys without field which go through the agent's weak map fall-back.
+ */
+@State(Scope.Benchmark)
+@Threads(32)
+public class FieldBackedContextStoreBenchmark {
+
+  @Param({"16"})
+  int keys;
+
+  private FieldKey[] fieldKeys;
+  private Object[] plainKeys;
+  private FieldBackedContextStore store;
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  private static final ContextStore.Factory<Object> FACTORY =
+      new ContextStore.Factory<Object>() {
+        @Override
+        public Object create() {
+          return new Object();
+        }
+      };
+
+  @Setup(Level.Trial)
+  public void init() {
+    WeakMaps.registerAsSupplier();
+    store = FieldBackedContextStores.getContextStore(0);
+    fieldKeys = new FieldKey[keys];
+    plainKeys = new Object[keys];
+    for (int i = 0; i < keys; i++) {
+      fieldKeys[i] = new FieldKey();
+      plainKeys[i] = new Object();
+    }
+  }
+
+  @Benchmark
+  public Object fieldPutIfAbsentAndRemove(final Cursor cursor) {
+    FieldKey key = fieldKeys[cursor.next++ % keys];
+    Object context = store.putIfAbsent(key, FACTORY);
+    return store.remove(key) == context ? context : null;
+  }
+
+  @Benchmark
+  public Object lockingPutIfAbsentAndRemove(final Cursor cursor) {
+    FieldKey key = fieldKeys[cursor.next++ % keys];
+    Object context = key.$get$__datadogContext$(0);
+    if (null == context) {
+      synchronized (key) {
+        context = key.$get$__datadogContext$(0);
+        if (null == context) {
+          context = FACTORY.create();
+          key.$put$__datadogContext$(0, context);
+        }
+      }
+    }
+    Object removed = key.$get$__datadogContext$(0);
+    if (null != removed) {
+      synchronized (key) {
+        removed = key.$get$__datadogContext$(0);
+        if (null != removed) {
+          key.$put$__datadogContext$(0, null);
+        }
+      }
+    }
+    return removed == context ? context : null;
+  }
+
+  @Benchmark
+  public Object weakPutIfAbsentAndRemove(final Cursor cursor) {
+    Object key = plainKeys[cursor.next++ % keys];
+    Object context = store.putIfAbsent(key, FACTORY);
+    return store.remove(key) == context ? context : null;
+  }
+
+  /** Key with the field and accessors injected for store 0. */
+  static final class FieldKey implements FieldBackedContextAccessor {
+    private static final AtomicReferenceFieldUpdater<FieldKey, Object> UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(FieldKey.class, Object.class, "context");
+
+    private transient volatile Object context;
+
+    @Override
+    public Object $get$__datadogContext$(final int storeId) {
+      return context;
+    }
+
+    @Override
+    public void $put$__datadogContext$(final int storeId, final Object context) {
+      this.context = context;
+    }
+
+    @Override
+    public boolean $cas$__datadogContext$(
+        final int storeId, final Object expectedContext, final Object context) {
+      return UPDATER.compareAndSet(this, expectedContext, context);
+    }
+  }
+}
@@ -75,8 +75,8 @@ public class WeakMaps {
     }
 
     @Override
-    public void putIfAbsent(final K key, final V value) {
-      map.putIfAbsent(key, value);
+    public V putIfAbsent(final K key, final V value) {
+      return map.putIfAbsent(key, value);
     }
 
     @Override
@@ -8,6 +8,8 @@ import datadog.trace.api.Config;
 import datadog.trace.api.function.Function;
 import datadog.trace.bootstrap.WeakCache;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import net.bytebuddy.description.annotation.AnnotationList;
 import net.bytebuddy.description.method.MethodDescription;
@@ -41,6 +43,10 @@ import org.slf4j.LoggerFactory;
  *
  * <p>Eviction is handled almost entirely through a size restriction; however, softValues are still
  * used as a further safeguard.
+ *
+ * <p>When a resolver cache directory is configured, the types of the application jars which aren't
+ * in the shared cache are looked up in a {@link PersistentTypeCache} before their class files are
+ * parsed, and the types parsed are added to it for the next run.
  */
 public class DDCachingPoolStrategy {
   private static final Logger log = LoggerFactory.getLogger(DDCachingPoolStrategy.class);
@@ -62,7 +68,8 @@ public class DDCachingPoolStrategy {
       };
 
   public static final DDCachingPoolStrategy INSTANCE =
-      new DDCachingPoolStrategy(Config.get().isResolverUseLoadClassEnabled());
+      new DDCachingPoolStrategy(
+          Config.get().isResolverUseLoadClassEnabled(), openPersistentTypeCache());
 
   /**
    * Cache of recent ClassLoader WeakReferences; used to...
@@ -89,16 +96,31 @@ public class DDCachingPoolStrategy {
 
   private final boolean fallBackToLoadClass;
 
+  /** Types of the application jars recorded by previous runs, {@code null} when disabled */
+  private final PersistentTypeCache persistentTypeCache;
+
   // visible for testing
   DDCachingPoolStrategy() {
     this(true);
   }
 
   private DDCachingPoolStrategy(boolean fallBackToLoadClass) {
+    this(fallBackToLoadClass, null);
+  }
+
+  // visible for testing
+  DDCachingPoolStrategy(
+      boolean fallBackToLoadClass, final PersistentTypeCache persistentTypeCache) {
     this.fallBackToLoadClass = fallBackToLoadClass;
+    this.persistentTypeCache = persistentTypeCache;
     bootstrapCacheProvider =
         new SharedResolutionCacheAdapter(
-            BOOTSTRAP_HASH, null, sharedResolutionCache, fallBackToLoadClass);
+            BOOTSTRAP_HASH, null, sharedResolutionCache, fallBackToLoadClass, null, null);
+  }
+
+  private static PersistentTypeCache openPersistentTypeCache() {
+    String cacheDir = Config.get().getResolverCacheDir();
+    return null != cacheDir ? PersistentTypeCache.open(cacheDir) : null;
   }
 
   public final TypePool typePool(
@@ -114,9 +136,16 @@ public class DDCachingPoolStrategy {
   }
 
   private TypePool.CacheProvider createCacheProvider(
-      final int loaderHash, final WeakReference<ClassLoader> loaderRef) {
+      final int loaderHash,
+      final WeakReference<ClassLoader> loaderRef,
+      final ClassFileLocator classFileLocator) {
     return new SharedResolutionCacheAdapter(
-        loaderHash, loaderRef, sharedResolutionCache, fallBackToLoadClass);
+        loaderHash,
+        loaderRef,
+        sharedResolutionCache,
+        fallBackToLoadClass,
+        persistentTypeCache,
+        classFileLocator);
   }
 
   private TypePool createCachingTypePool(
@@ -124,7 +153,7 @@ public class DDCachingPoolStrategy {
       final WeakReference<ClassLoader> loaderRef,
       final ClassFileLocator classFileLocator) {
     return new TypePool.Default.WithLazyResolution(
-        createCacheProvider(loaderHash, loaderRef),
+        createCacheProvider(loaderHash, loaderRef, classFileLocator),
         classFileLocator,
         TypePool.Default.ReaderMode.FAST);
   }
@@ -218,22 +247,28 @@ public class DDCachingPoolStrategy {
   static final class SharedResolutionCacheAdapter implements TypePool.CacheProvider {
     private static final String OBJECT_NAME = "java.lang.Object";
     private static final TypePool.Resolution OBJECT_RESOLUTION =
-        new TypePool.Resolution.Simple(new CachingTypeDescription(TypeDescription.OBJECT));
+        new TypePool.Resolution.Simple(new CachingTypeDescription(TypeDescription.OBJECT, null));
 
     private final int loaderHash;
     private final WeakReference<ClassLoader> loaderRef;
     private final ConcurrentMap<TypeCacheKey, TypePool.Resolution> sharedResolutionCache;
     private final boolean fallBackToLoadClass;
+    private final PersistentTypeCache persistentTypeCache;
+    private final ClassFileLocator classFileLocator;
 
     SharedResolutionCacheAdapter(
         final int loaderHash,
         final WeakReference<ClassLoader> loaderRef,
         final ConcurrentMap<TypeCacheKey, TypePool.Resolution> sharedResolutionCache,
-        final boolean fallBackToLoadClass) {
+        final boolean fallBackToLoadClass,
+        final PersistentTypeCache persistentTypeCache,
+        final ClassFileLocator classFileLocator) {
       this.loaderHash = loaderHash;
       this.loaderRef = loaderRef;
       this.sharedResolutionCache = sharedResolutionCache;
       this.fallBackToLoadClass = fallBackToLoadClass;
+      this.persistentTypeCache = persistentTypeCache;
+      this.classFileLocator = classFileLocator;
     }
 
     @Override
@@ -248,9 +283,40 @@ public class DDCachingPoolStrategy {
         return OBJECT_RESOLUTION;
       }
 
+      if (null != persistentTypeCache) {
+        return findPersisted(className);
+      }
+
       return null;
     }
 
+    private TypePool.Resolution findPersisted(final String className) {
+      final ClassLoader classLoader = loaderRef.get();
+      if (null == classLoader) {
+        return null;
+      }
+      final PersistentTypeCache.TypeRecord type = persistentTypeCache.find(classLoader, className);
+      if (null == type) {
+        return null;
+      }
+      final TypePool.Resolution resolution =
+          new TypePool.Resolution.Simple(new PersistedTypeDescription(this, className, type));
+      sharedResolutionCache.put(new TypeCacheKey(loaderHash, loaderRef, className), resolution);
+      return resolution;
+    }
+
+    /** Resolves the persisted super types, and the type itself when more than that is needed. */
+    TypePool typePool(final String skippedClassName) {
+      final TypePool.CacheProvider cacheProvider;
+      if (null == skippedClassName) {
+        cacheProvider = this;
+      } else {
+        cacheProvider = new SkippingCacheProvider(this, skippedClassName);
+      }
+      return new TypePool.Default.WithLazyResolution(
+          cacheProvider, classFileLocator, TypePool.Default.ReaderMode.FAST);
+    }
+
     @Override
     public TypePool.Resolution register(final String className, TypePool.Resolution resolution) {
       if (OBJECT_NAME.equals(className)) {
@@ -263,8 +329,10 @@ public class DDCachingPoolStrategy {
         // here to handle classes that are injected directly via calls to defineClass without
         // providing a way to get the class bytes.
         resolution = new CachingResolutionForMaybeLoadableType(loaderRef, className);
+      } else if (null != persistentTypeCache) {
+        resolution = new CachingResolution(resolution, persistentTypeCache.recorder(className));
       } else {
-        resolution = new CachingResolution(resolution);
+        resolution = new CachingResolution(resolution, null);
       }
 
       sharedResolutionCache.put(new TypeCacheKey(loaderHash, loaderRef, className), resolution);
@@ -336,12 +404,40 @@ public class DDCachingPoolStrategy {
     }
   }
 
+  /** Parses the class file of a persisted type, which is otherwise cached as usual. */
+  private static final class SkippingCacheProvider implements TypePool.CacheProvider {
+    private final TypePool.CacheProvider delegate;
+    private final String skippedClassName;
+
+    SkippingCacheProvider(final TypePool.CacheProvider delegate, final String skippedClassName) {
+      this.delegate = delegate;
+      this.skippedClassName = skippedClassName;
+    }
+
+    @Override
+    public TypePool.Resolution find(final String className) {
+      return skippedClassName.equals(className) ? null : delegate.find(className);
+    }
+
+    @Override
+    public TypePool.Resolution register(
+        final String className, final TypePool.Resolution resolution) {
+      return delegate.register(className, resolution);
+    }
+
+    @Override
+    public void clear() {}
+  }
+
   private static class CachingResolution implements TypePool.Resolution {
     private final TypePool.Resolution delegate;
+    private final PersistentTypeCache.Recorder recorder;
     private TypeDescription cachedResolution;
 
-    public CachingResolution(final TypePool.Resolution delegate) {
+    public CachingResolution(
+        final TypePool.Resolution delegate, final PersistentTypeCache.Recorder recorder) {
       this.delegate = delegate;
+      this.recorder = recorder;
     }
 
     @Override
@@ -353,7 +449,7 @@ public class DDCachingPoolStrategy {
     public TypeDescription resolve() {
       // Intentionally not "thread safe". Duplicate work deemed an acceptable trade-off.
       if (cachedResolution == null) {
-        cachedResolution = new CachingTypeDescription(delegate.resolve());
+        cachedResolution = new CachingTypeDescription(delegate.resolve(), recorder);
       }
       return cachedResolution;
     }
@@ -373,9 +469,12 @@ public class DDCachingPoolStrategy {
     private TypeList.Generic interfaces;
     private AnnotationList annotations;
     private MethodList<MethodDescription.InDefinedShape> methods;
+    private PersistentTypeCache.Recorder recorder;
 
-    public CachingTypeDescription(final TypeDescription delegate) {
+    public CachingTypeDescription(
+        final TypeDescription delegate, final PersistentTypeCache.Recorder recorder) {
       this.delegate = delegate;
+      this.recorder = recorder;
     }
 
     @Override
@@ -387,6 +486,7 @@ public class DDCachingPoolStrategy {
     public Generic getSuperClass() {
       if (superClass == null) {
         superClass = delegate.getSuperClass();
+        record();
       }
       return superClass;
     }
@@ -395,10 +495,20 @@ public class DDCachingPoolStrategy {
     public TypeList.Generic getInterfaces() {
       if (interfaces == null) {
         interfaces = delegate.getInterfaces();
+        record();
       }
       return interfaces;
     }
 
+    /** Records the type once its class file has been parsed to match its hierarchy. */
+    private void record() {
+      final PersistentTypeCache.Recorder recorder = this.recorder;
+      if (null != recorder) {
+        this.recorder = null;
+        recorder.record(delegate);
+      }
+    }
+
     @Override
     public AnnotationList getDeclaredAnnotations() {
       if (annotations == null) {
@@ -420,4 +530,72 @@ public class DDCachingPoolStrategy {
       return delegate.getName();
     }
   }
+
+  /**
+   * TypeDescription of a type recorded by a previous run, which provides its modifiers, super class
+   * and interfaces without parsing its class file.
+   */
+  private static final class PersistedTypeDescription
+      extends TypeDescription.AbstractBase.OfSimpleType.WithDelegation {
+    private final SharedResolutionCacheAdapter cacheProvider;
+    private final String name;
+    private final PersistentTypeCache.TypeRecord type;
+
+    // These fields are intentionally not "thread safe".
+    // Duplicate work deemed an acceptable trade-off.
+    private Generic superClass;
+    private TypeList.Generic interfaces;
+    private TypeDescription delegate;
+
+    PersistedTypeDescription(
+        final SharedResolutionCacheAdapter cacheProvider,
+        final String name,
+        final PersistentTypeCache.TypeRecord type) {
+      this.cacheProvider = cacheProvider;
+      this.name = name;
+      this.type = type;
+    }
+
+    @Override
+    protected TypeDescription delegate() {
+      if (delegate == null) {
+        delegate = cacheProvider.typePool(name).describe(name).resolve();
+      }
+      return delegate;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int getModifiers() {
+      return type.modifiers;
+    }
+
+    @Override
+    public Generic getSuperClass() {
+      if (superClass == null && type.superName != null) {
+        superClass = describe(type.superName);
+      }
+      return superClass;
+    }
+
+    @Override
+    public TypeList.Generic getInterfaces() {
+      if (interfaces == null) {
+        List<Generic> interfaceTypes = new ArrayList<>(type.interfaceNames.length);
+        for (String interfaceName : type.interfaceNames) {
+          interfaceTypes.add(describe(interfaceName));
+        }
+        interfaces = new TypeList.Generic.Explicit(interfaceTypes);
+      }
+      return interfaces;
+    }
+
+    private Generic describe(final String typeName) {
+      return cacheProvider.typePool(null).describe(typeName).resolve().asGenericType();
+    }
+  }
 }
@@ -0,0 +1,649 @@
+package datadog.trace.agent.tooling.bytebuddy;
+
+import static datadog.trace.bootstrap.AgentClassLoading.LOCATING_CLASS;
+import static datadog.trace.util.AgentThreadFactory.AgentThread.TYPE_CACHE_WRITER;
+import static datadog.trace.util.AgentThreadFactory.newAgentThread;
+
+import datadog.trace.agent.tooling.WeakCaches;
+import datadog.trace.api.function.Function;
+import datadog.trace.bootstrap.WeakCache;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.bytebuddy.description.type.TypeDefinition;
+import net.bytebuddy.description.type.TypeDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps what the hierarchy matchers need to know about the types of the application jars (their
+ * modifiers, super class and interfaces) in a file, so that the next run of the application doesn't
+ * have to read and parse the class files of these types again.
+ *
+ * <p>Types are keyed by the path of their jar, its size and modification time, and their name: the
+ * types of a jar which changed, or doesn't exist anymore, are ignored, and dropped the next time
+ * the file is written. Types which aren't loaded from a jar file aren't kept.
+ *
+ * <p>The file is read in memory when the agent starts, rather than mapped, as a mapped file can't
+ * be replaced on Windows until it's unmapped. Its types are then decoded lazily, through a hash
+ * table of their offsets. The types found in the class files during the run are written along
+ * with the still valid types of the previous file when the JVM exits. A file which is too large,
+ * or turns out to be corrupt, is ignored.
+ *
+ * <p>The jar of a type is located once per package and class loader, so a type found in the file
+ * doesn't cost a resource lookup; types are only recorded once their own jar has been located.
+ */
+final class PersistentTypeCache {
+  private static final Logger log = LoggerFactory.getLogger(PersistentTypeCache.class);
+
+  static final String CACHE_FILE_NAME = "dd-java-agent-types.cache";
+
+  private static final int MAGIC = 0x44445443; // DDTC
+  private static final int VERSION = 1;
+
+  /** Limits the types kept in memory until the file is written. */
+  static final int MAX_NEW_TYPES = 100_000;
+
+  /** Limits the file read in memory when the agent starts. */
+  static final long MAX_FILE_SIZE = 64 << 20;
+
+  private static final JarKey NO_JAR = new JarKey("", 0, 0, -1);
+
+  private static final Function<ClassLoader, ConcurrentMap<String, JarKey>> NEW_PACKAGE_JARS =
+      new Function<ClassLoader, ConcurrentMap<String, JarKey>>() {
+        @Override
+        public ConcurrentMap<String, JarKey> apply(final ClassLoader input) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private static final AtomicBoolean warnedSaveFailure = new AtomicBoolean();
+
+  private final File cacheFile;
+
+  // the file read when the agent started, null when there was none
+  private final ByteBuffer stored;
+  // cleared when reading the file fails, the types it contains are then ignored
+  private volatile boolean storedValid;
+  private final Map<String, StoredJar> storedJars;
+  private final int slotsOffset;
+  private final int slotMask;
+
+  private final ConcurrentMap<String, JarKey> jars = new ConcurrentHashMap<>();
+  /** The jar of each package, as located by the first type of the package looked up. */
+  private final WeakCache<ClassLoader, ConcurrentMap<String, JarKey>> packageJars =
+      WeakCaches.newWeakCache(64);
+  private final ConcurrentMap<JarKey, ConcurrentMap<String, TypeRecord>> newTypes =
+      new ConcurrentHashMap<>();
+  private final AtomicInteger newTypeCount = new AtomicInteger();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /** The jar of the type which was looked up last by each thread and wasn't found. */
+  private final ThreadLocal<LastMiss> lastMiss =
+      new ThreadLocal<LastMiss>() {
+        @Override
+        protected LastMiss initialValue() {
+          return new LastMiss();
+        }
+      };
+
+  /** @return the cache kept in the given directory, written back when the JVM exits */
+  static PersistentTypeCache open(final String cacheDir) {
+    File dir = new File(cacheDir);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      log.warn("Cannot create type cache directory {}", dir);
+      return null;
+    }
+    final PersistentTypeCache cache = new PersistentTypeCache(new File(dir, CACHE_FILE_NAME));
+    try {
+      Runtime.getRuntime()
+          .addShutdownHook(
+              newAgentThread(
+                  TYPE_CACHE_WRITER,
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      cache.save();
+                    }
+                  }));
+    } catch (final IllegalStateException e) {
+      return null; // JVM is shutting down
+    }
+    return cache;
+  }
+
+  PersistentTypeCache(final File cacheFile) {
+    this.cacheFile = cacheFile;
+    ByteBuffer stored = null;
+    Map<String, StoredJar> storedJars = new HashMap<>();
+    int slotsOffset = 0;
+    int slotMask = 0;
+    if (cacheFile.isFile() && cacheFile.length() > MAX_FILE_SIZE) {
+      log.debug("Ignoring type cache {} larger than {} bytes", cacheFile, MAX_FILE_SIZE);
+    } else if (cacheFile.isFile()) {
+      try {
+        stored = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+        if (stored.getInt(0) != MAGIC || stored.getInt(4) != VERSION) {
+          throw new IOException("Unexpected header");
+        }
+        int position = 8;
+        int jarCount = stored.getInt(position);
+        position += 4;
+        for (int id = 0; id < jarCount; id++) {
+          String path = readString(stored, position);
+          position += stringSize(stored, position);
+          StoredJar jar =
+              new StoredJar(id, stored.getLong(position), stored.getLong(position + 8));
+          storedJars.put(path, jar);
+          position += 16;
+        }
+        int slotCount = stored.getInt(position);
+        slotMask = slotCount - 1;
+        slotsOffset = position + 4;
+        if (slotCount <= 0
+            || (slotCount & slotMask) != 0
+            || slotsOffset + (long) slotCount * 8 > stored.limit()) {
+          throw new IOException("Unexpected hash table size " + slotCount);
+        }
+      } catch (final IOException | RuntimeException e) {
+        log.debug("Ignoring invalid type cache {}", cacheFile, e);
+        stored = null;
+        storedJars.clear();
+      }
+    }
+    this.stored = stored;
+    this.storedValid = stored != null;
+    this.storedJars = storedJars;
+    this.slotsOffset = slotsOffset;
+    this.slotMask = slotMask;
+  }
+
+  /**
+   * @return the type as recorded by a previous run, or {@code null} when it wasn't, or its jar
+   *     changed since
+   */
+  TypeRecord find(final ClassLoader classLoader, final String className) {
+    LastMiss miss = lastMiss.get();
+    if (miss.jar != null && className.equals(miss.className)) {
+      return null; // lazy type pools look the type up again before parsing its class file
+    }
+    String packageName = packageOf(className);
+    ConcurrentMap<String, JarKey> jarsOfPackages =
+        packageJars.computeIfAbsent(classLoader, NEW_PACKAGE_JARS);
+    JarKey jar = jarsOfPackages.get(packageName);
+    boolean located = false;
+    if (jar == null) {
+      jar = jarOf(classLoader, className);
+      jarsOfPackages.putIfAbsent(packageName, jar);
+      located = true;
+    }
+    TypeRecord type = null;
+    if (jar.storedId >= 0 && storedValid) {
+      try {
+        type = findStored(jar.storedId, className);
+      } catch (final RuntimeException e) {
+        invalidateStored(e);
+      }
+    }
+    if (type != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      miss.className = className;
+      miss.jar = jar;
+      // the type is recorded in its own jar, which is only located when it's parsed
+      miss.classLoader = located ? null : new WeakReference<>(classLoader);
+    }
+    return type;
+  }
+
+  /**
+   * @return a recorder for the type which was just looked up by this thread and not found, or
+   *     {@code null} when the type can't be recorded
+   */
+  Recorder recorder(final String className) {
+    LastMiss miss = lastMiss.get();
+    JarKey jar = miss.jar;
+    WeakReference<ClassLoader> classLoaderRef = miss.classLoader;
+    miss.jar = null;
+    miss.classLoader = null;
+    if (jar == null || !className.equals(miss.className)) {
+      return null;
+    }
+    if (classLoaderRef != null) {
+      ClassLoader classLoader = classLoaderRef.get();
+      jar = classLoader != null ? jarOf(classLoader, className) : NO_JAR;
+    }
+    return jar != NO_JAR ? new Recorder(this, jar, className) : null;
+  }
+
+  void record(final JarKey jar, final String className, final TypeRecord type) {
+    if (newTypeCount.get() >= MAX_NEW_TYPES) {
+      return;
+    }
+    ConcurrentMap<String, TypeRecord> types = newTypes.get(jar);
+    if (types == null) {
+      ConcurrentMap<String, TypeRecord> existing =
+          newTypes.putIfAbsent(jar, types = new ConcurrentHashMap<String, TypeRecord>());
+      if (existing != null) {
+        types = existing;
+      }
+    }
+    if (types.put(className, type) == null) {
+      newTypeCount.incrementAndGet();
+    }
+  }
+
+  /** Writes the types recorded during this run along with those still valid in the file read. */
+  void save() {
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Type cache hits: {}, misses: {}, new types: {}",
+          hits.get(),
+          misses.get(),
+          newTypeCount.get());
+    }
+    if (newTypeCount.get() == 0 && !hasChangedJars()) {
+      return;
+    }
+    Map<String, JarTypes> types = new HashMap<>();
+    if (storedValid) {
+      try {
+        collectStored(types);
+      } catch (final RuntimeException e) {
+        invalidateStored(e);
+        types.clear();
+      }
+    }
+    for (Map.Entry<JarKey, ConcurrentMap<String, TypeRecord>> entry : newTypes.entrySet()) {
+      JarKey jar = entry.getKey();
+      JarTypes jarTypes = types.get(jar.path);
+      if (jarTypes == null
+          || jarTypes.lastModified != jar.lastModified
+          || jarTypes.size != jar.size) {
+        jarTypes = new JarTypes(jar.lastModified, jar.size);
+        types.put(jar.path, jarTypes);
+      }
+      jarTypes.types.putAll(entry.getValue());
+    }
+    try {
+      File tmpFile = File.createTempFile(CACHE_FILE_NAME, ".tmp", cacheFile.getParentFile());
+      try {
+        write(tmpFile, types);
+        Files.move(
+            tmpFile.toPath(),
+            cacheFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmpFile.toPath());
+      }
+    } catch (final IOException | RuntimeException e) {
+      if (warnedSaveFailure.compareAndSet(false, true)) {
+        log.warn("Failed to write type cache {}", cacheFile, e);
+      } else {
+        log.debug("Failed to write type cache {}", cacheFile, e);
+      }
+    }
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long misses() {
+    return misses.get();
+  }
+
+  private boolean hasChangedJars() {
+    for (JarKey jar : jars.values()) {
+      if (jar.storedId < 0 && storedJars.containsKey(jar.path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void invalidateStored(final RuntimeException e) {
+    if (storedValid) {
+      storedValid = false;
+      log.debug("Ignoring corrupt type cache {}", cacheFile, e);
+    }
+  }
+
+  private void collectStored(final Map<String, JarTypes> types) {
+    Map<Integer, JarTypes> typesById = new HashMap<>();
+    for (Map.Entry<String, StoredJar> entry : storedJars.entrySet()) {
+      StoredJar storedJar = entry.getValue();
+      JarKey jar = jars.get(entry.getKey());
+      if (jar == null) {
+        // not used during this run, only kept while the jar is still there unchanged
+        jar = statJar(entry.getKey());
+      }
+      if (jar.storedId == storedJar.id) {
+        JarTypes jarTypes = new JarTypes(storedJar.lastModified, storedJar.size);
+        types.put(entry.getKey(), jarTypes);
+        typesById.put(storedJar.id, jarTypes);
+      }
+    }
+    for (int slot = 0; slot <= slotMask; slot++) {
+      int offset = (int) stored.getLong(slotsOffset + slot * 8);
+      if (offset != 0) {
+        JarTypes jarTypes = typesById.get(stored.getInt(offset));
+        if (jarTypes != null) {
+          String className = readString(stored, offset + 4);
+          jarTypes.types.put(
+              className, readType(stored, offset + 4 + stringSize(stored, offset + 4)));
+        }
+      }
+    }
+  }
+
+  private TypeRecord findStored(final int jarId, final String className) {
+    int hash = hash(jarId, className);
+    for (int slot = hash & slotMask, probes = 0; probes <= slotMask; probes++) {
+      long entry = stored.getLong(slotsOffset + slot * 8);
+      int offset = (int) entry;
+      if (offset == 0) {
+        return null;
+      }
+      if ((int) (entry >>> 32) == hash && stored.getInt(offset) == jarId) {
+        int nameOffset = offset + 4;
+        if (className.equals(readString(stored, nameOffset))) {
+          return readType(stored, nameOffset + stringSize(stored, nameOffset));
+        }
+      }
+      slot = (slot + 1) & slotMask;
+    }
+    return null;
+  }
+
+  private static String packageOf(final String className) {
+    int lastDot = className.lastIndexOf('.');
+    return lastDot < 0 ? "" : className.substring(0, lastDot);
+  }
+
+  private JarKey jarOf(final ClassLoader classLoader, final String className) {
+    URL resource;
+    LOCATING_CLASS.begin();
+    try {
+      resource = classLoader.getResource(className.replace('.', '/') + ".class");
+    } catch (final Throwable ignored) {
+      resource = null;
+    } finally {
+      LOCATING_CLASS.end();
+    }
+    if (resource == null || !"jar".equals(resource.getProtocol())) {
+      return NO_JAR;
+    }
+    // jar:file:/app.jar!/a/B.class, or jar:file:/app.jar!/BOOT-INF/lib/lib.jar!/a/B.class
+    String location = resource.getFile();
+    int entrySeparator = location.lastIndexOf("!/");
+    if (entrySeparator < 0 || !location.startsWith("file:")) {
+      return NO_JAR;
+    }
+    String path = location.substring(0, entrySeparator);
+    JarKey jar = jars.get(path);
+    if (jar == null) {
+      jar = statJar(path);
+      JarKey existing = jars.putIfAbsent(path, jar);
+      if (existing != null) {
+        jar = existing;
+      }
+    }
+    return jar;
+  }
+
+  private JarKey statJar(final String path) {
+    int outerSeparator = path.indexOf("!/");
+    String outerPath = outerSeparator < 0 ? path : path.substring(0, outerSeparator);
+    File file;
+    try {
+      file = new File(new URL(outerPath).toURI());
+    } catch (final Exception e) {
+      return NO_JAR;
+    }
+    long lastModified = file.lastModified();
+    long size = file.length();
+    StoredJar storedJar = storedJars.get(path);
+    int storedId =
+        storedJar != null && storedJar.lastModified == lastModified && storedJar.size == size
+            ? storedJar.id
+            : -1;
+    return new JarKey(path, lastModified, size, storedId);
+  }
+
+  private static void write(final File file, final Map<String, JarTypes> types)
+      throws IOException {
+    int typeCount = 0;
+    for (JarTypes jarTypes : types.values()) {
+      typeCount += jarTypes.types.size();
+    }
+    // keep the hash table at most half full
+    int slotCount = Integer.highestOneBit(Math.max(typeCount, 1) * 2 - 1) << 1;
+    long[] slots = new long[slotCount];
+
+    ByteArrayBuilder header = new ByteArrayBuilder();
+    header.out.writeInt(MAGIC);
+    header.out.writeInt(VERSION);
+    header.out.writeInt(types.size());
+    for (Map.Entry<String, JarTypes> entry : types.entrySet()) {
+      writeString(header.out, entry.getKey());
+      header.out.writeLong(entry.getValue().lastModified);
+      header.out.writeLong(entry.getValue().size);
+    }
+    header.out.writeInt(slotCount);
+    int recordsOffset = header.size() + slotCount * 8;
+
+    ByteArrayBuilder records = new ByteArrayBuilder();
+    int jarId = 0;
+    for (JarTypes jarTypes : types.values()) {
+      for (Map.Entry<String, TypeRecord> entry : jarTypes.types.entrySet()) {
+        int hash = hash(jarId, entry.getKey());
+        int slot = hash & (slotCount - 1);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & (slotCount - 1);
+        }
+        slots[slot] = ((long) hash << 32) | (recordsOffset + records.size());
+        records.out.writeInt(jarId);
+        writeString(records.out, entry.getKey());
+        TypeRecord type = entry.getValue();
+        records.out.writeInt(type.modifiers);
+        writeString(records.out, type.superName);
+        records.out.writeInt(type.interfaceNames.length);
+        for (String interfaceName : type.interfaceNames) {
+          writeString(records.out, interfaceName);
+        }
+      }
+      jarId++;
+    }
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      header.writeTo(out);
+      for (long slot : slots) {
+        out.writeLong(slot);
+      }
+      records.writeTo(out);
+    }
+  }
+
+  private static int hash(final int jarId, final String className) {
+    int hash = 31 * jarId + className.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static void writeString(final DataOutputStream out, final String string)
+      throws IOException {
+    if (string == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(final ByteBuffer buffer, final int offset) {
+    int length = buffer.getInt(offset);
+    if (length < 0) {
+      return null;
+    }
+    if (length > buffer.limit() - offset - 4) {
+      throw new IndexOutOfBoundsException("String of " + length + " bytes at " + offset);
+    }
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(offset + 4 + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int stringSize(final ByteBuffer buffer, final int offset) {
+    return 4 + Math.max(0, buffer.getInt(offset));
+  }
+
+  private static TypeRecord readType(final ByteBuffer buffer, int offset) {
+    int modifiers = buffer.getInt(offset);
+    offset += 4;
+    String superName = readString(buffer, offset);
+    offset += stringSize(buffer, offset);
+    int interfaceCount = buffer.getInt(offset);
+    // each name takes at least 4 bytes
+    if (interfaceCount < 0 || interfaceCount > (buffer.limit() - offset - 4) / 4) {
+      throw new IndexOutOfBoundsException(interfaceCount + " interfaces at " + offset);
+    }
+    String[] interfaceNames = new String[interfaceCount];
+    offset += 4;
+    for (int i = 0; i < interfaceNames.length; i++) {
+      interfaceNames[i] = readString(buffer, offset);
+      offset += stringSize(buffer, offset);
+    }
+    return new TypeRecord(modifiers, superName, interfaceNames);
+  }
+
+  /** What the hierarchy matchers need to know about a type. */
+  static final class TypeRecord {
+    final int modifiers;
+    final String superName;
+    final String[] interfaceNames;
+
+    TypeRecord(final int modifiers, final String superName, final String[] interfaceNames) {
+      this.modifiers = modifiers;
+      this.superName = superName;
+      this.interfaceNames = interfaceNames;
+    }
+
+    static TypeRecord of(final TypeDescription type) {
+      TypeDescription.Generic superClass = type.getSuperClass();
+      List<String> interfaceNames = new ArrayList<>();
+      for (TypeDefinition interfaceType : type.getInterfaces()) {
+        interfaceNames.add(interfaceType.asErasure().getName());
+      }
+      return new TypeRecord(
+          type.getModifiers(),
+          superClass != null ? superClass.asErasure().getName() : null,
+          interfaceNames.toArray(new String[0]));
+    }
+  }
+
+  /** Records a type once its class file has been parsed anyway. */
+  static final class Recorder {
+    private final PersistentTypeCache cache;
+    private final JarKey jar;
+    private final String className;
+
+    Recorder(final PersistentTypeCache cache, final JarKey jar, final String className) {
+      this.cache = cache;
+      this.jar = jar;
+      this.className = className;
+    }
+
+    void record(final TypeDescription type) {
+      try {
+        cache.record(jar, className, TypeRecord.of(type));
+      } catch (final Exception e) {
+        log.debug("Cannot record type {}", className, e);
+      }
+    }
+  }
+
+  static final class JarKey {
+    final String path;
+    final long lastModified;
+    final long size;
+    /** The id of the jar in the file read, -1 when it wasn't there or changed since. */
+    final int storedId;
+
+    JarKey(final String path, final long lastModified, final long size, final int storedId) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.storedId = storedId;
+    }
+  }
+
+  private static final class StoredJar {
+    final int id;
+    final long lastModified;
+    final long size;
+
+    StoredJar(final int id, final long lastModified, final long size) {
+      this.id = id;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+
+  private static final class JarTypes {
+    final long lastModified;
+    final long size;
+    final Map<String, TypeRecord> types = new HashMap<>();
+
+    JarTypes(final long lastModified, final long size) {
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+
+  private static final class LastMiss {
+    String className;
+    JarKey jar;
+    /** The class loader of the type when its jar is only known from its package, else null. */
+    WeakReference<ClassLoader> classLoader;
+  }
+
+  private static final class ByteArrayBuilder {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    int size() {
+      return bytes.size();
+    }
+
+    void writeTo(final DataOutputStream target) throws IOException {
+      out.flush();
+      bytes.writeTo(target);
+    }
+  }
+}
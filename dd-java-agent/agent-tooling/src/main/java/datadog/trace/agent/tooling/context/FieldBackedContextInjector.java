@@ -11,6 +11,7 @@ import datadog.trace.bootstrap.FieldBackedContextStores;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import net.bytebuddy.ClassFileVersion;
 import net.bytebuddy.asm.AsmVisitorWrapper;
 import net.bytebuddy.description.field.FieldDescription;
@@ -50,6 +51,33 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
   static final String PUTTER_METHOD_DESCRIPTOR =
       Type.getMethodDescriptor(Type.VOID_TYPE, Type.INT_TYPE, Type.getType(Object.class));
 
+  static final String CAS_METHOD = "$cas$" + CONTEXT_STORE_ACCESS_PREFIX;
+  static final String CAS_METHOD_DESCRIPTOR =
+      Type.getMethodDescriptor(
+          Type.BOOLEAN_TYPE, Type.INT_TYPE, Type.getType(Object.class), Type.getType(Object.class));
+
+  static final String CONTEXT_UPDATER_PREFIX = "__datadogUpdater$";
+
+  static final String UPDATER_CLASS =
+      getInternalName(AtomicReferenceFieldUpdater.class.getName());
+  static final String UPDATER_DESCRIPTOR = Type.getDescriptor(AtomicReferenceFieldUpdater.class);
+
+  static final String NEW_UPDATER_METHOD = "newUpdater";
+  static final String NEW_UPDATER_METHOD_DESCRIPTOR =
+      Type.getMethodDescriptor(
+          Type.getType(AtomicReferenceFieldUpdater.class),
+          Type.getType(Class.class),
+          Type.getType(Class.class),
+          Type.getType(String.class));
+
+  static final String UPDATER_CAS_METHOD = "compareAndSet";
+  static final String UPDATER_CAS_METHOD_DESCRIPTOR =
+      Type.getMethodDescriptor(
+          Type.BOOLEAN_TYPE,
+          Type.getType(Object.class),
+          Type.getType(Object.class),
+          Type.getType(Object.class));
+
   static final String WEAK_GET_METHOD = "weakGet";
   static final String WEAK_GET_METHOD_DESCRIPTOR =
       Type.getMethodDescriptor(
@@ -60,6 +88,15 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
       Type.getMethodDescriptor(
           Type.VOID_TYPE, Type.getType(Object.class), Type.INT_TYPE, Type.getType(Object.class));
 
+  static final String WEAK_CAS_METHOD = "weakCompareAndSet";
+  static final String WEAK_CAS_METHOD_DESCRIPTOR =
+      Type.getMethodDescriptor(
+          Type.BOOLEAN_TYPE,
+          Type.getType(Object.class),
+          Type.INT_TYPE,
+          Type.getType(Object.class),
+          Type.getType(Object.class));
+
   static final String OBJECT_DESCRIPTOR = Type.getDescriptor(Object.class);
 
   static final String LINKAGE_ERROR_CLASS = getInternalName(LinkageError.class.getName());
@@ -102,11 +139,18 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
       private final boolean frames =
           implementationContext.getClassFileVersion().isAtLeast(ClassFileVersion.JAVA_V6);
 
+      // the updaters of the injected fields need the class literal of the instrumented class
+      private final boolean classLiterals =
+          implementationContext.getClassFileVersion().isAtLeast(ClassFileVersion.JAVA_V5);
+
       private String storeFieldName;
+      private String updaterFieldName;
 
       private boolean foundField;
+      private boolean foundUpdaterField;
       private boolean foundGetter;
       private boolean foundPutter;
+      private boolean foundCompareAndSet;
 
       private SerialVersionUIDInjector serialVersionUIDInjector;
 
@@ -123,6 +167,7 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
         // because we need to switch between them in the generated getter/putter methods
         int storeId = injectContextStore(keyClassName, contextClassName);
         storeFieldName = CONTEXT_STORE_ACCESS_PREFIX + storeId;
+        updaterFieldName = CONTEXT_UPDATER_PREFIX + storeId;
 
         if (interfaces == null) {
           interfaces = new String[] {};
@@ -157,6 +202,10 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
           if (storeFieldName.equals(name)) {
             foundField = true;
           }
+        } else if (name.startsWith(CONTEXT_UPDATER_PREFIX)) {
+          if (updaterFieldName.equals(name)) {
+            foundUpdaterField = true;
+          }
         } else if (serialVersionUIDInjector != null) {
           serialVersionUIDInjector.visitField(access, name, descriptor, signature, value);
         }
@@ -174,6 +223,8 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
           foundGetter = true;
         } else if (name.equals(PUTTER_METHOD)) {
           foundPutter = true;
+        } else if (name.equals(CAS_METHOD)) {
+          foundCompareAndSet = true;
         } else if (serialVersionUIDInjector != null) {
           serialVersionUIDInjector.visitMethod(access, name, descriptor, signature, exceptions);
         }
@@ -194,11 +245,14 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
         if (!foundField) {
           addStoreField();
         }
+        if (!foundUpdaterField && classLiterals) {
+          addUpdaterField();
+        }
         // first injector to reach here is responsible for adding the generated getter and setter
         // for the class - at this point all the other injectors will have recorded their requests
         final BitSet injectedStoreIds = getInjectedContextStores();
         if (null != injectedStoreIds) {
-          if (!foundGetter || !foundPutter) {
+          if (!foundGetter || !foundPutter || !foundCompareAndSet) {
             BitSet excludedStoreIds = new BitSet();
 
             // check hierarchy to see if we might need to delegate to the superclass
@@ -211,6 +265,9 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
             if (!foundPutter) {
               addStorePutter(injectedStoreIds, hasSuperStores, excludedStoreIds);
             }
+            if (!foundCompareAndSet) {
+              addStoreCompareAndSet(injectedStoreIds, hasSuperStores, excludedStoreIds);
+            }
           }
         }
 
@@ -220,23 +277,35 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
         }
 
         storeFieldName = null;
+        updaterFieldName = null;
 
         foundField = false;
+        foundUpdaterField = false;
         foundGetter = false;
         foundPutter = false;
+        foundCompareAndSet = false;
 
         super.visitEnd();
       }
 
       private void addStoreField() {
         cv.visitField(
-            Opcodes.ACC_PRIVATE | Opcodes.ACC_TRANSIENT,
+            Opcodes.ACC_PRIVATE | Opcodes.ACC_TRANSIENT | Opcodes.ACC_VOLATILE,
             storeFieldName,
             OBJECT_DESCRIPTOR,
             null,
             null);
       }
 
+      private void addUpdaterField() {
+        cv.visitField(
+            Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_TRANSIENT,
+            updaterFieldName,
+            UPDATER_DESCRIPTOR,
+            null,
+            null);
+      }
+
       private void addStoreGetter(
           final BitSet injectedStoreIds,
           final boolean hasSuperStores,
@@ -371,6 +440,83 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
         mv.visitEnd();
       }
 
+      private void addStoreCompareAndSet(
+          final BitSet injectedStoreIds,
+          final boolean hasSuperStores,
+          final BitSet excludedStoreIds) {
+        // without class literals the fields can't have updaters, fall back to locking the key
+        int access = Opcodes.ACC_PUBLIC;
+        if (!classLiterals) {
+          access |= Opcodes.ACC_SYNCHRONIZED;
+        }
+        final MethodVisitor mv =
+            cv.visitMethod(access, CAS_METHOD, CAS_METHOD_DESCRIPTOR, null, null);
+
+        mv.visitCode();
+
+        String instrumentedName = instrumentedType.getInternalName();
+        boolean hasMoreStores = hasSuperStores || !excludedStoreIds.isEmpty();
+
+        // if...else... blocks for stores injected into this class
+        int injectedStoreId = injectedStoreIds.nextSetBit(0);
+        while (injectedStoreId >= 0) {
+          int nextStoreId = injectedStoreIds.nextSetBit(injectedStoreId + 1);
+
+          // optimization: if we know the superclass hierarchy doesn't have any context store
+          // (injected or excluded) then we can skip the id check and go straight to the field
+          Label nextStoreLabel = null;
+          if (hasMoreStores || nextStoreId >= 0) {
+            nextStoreLabel = compareStoreId(mv, injectedStoreId);
+          }
+
+          if (classLiterals) {
+            compareAndSetStoreField(mv, instrumentedName, injectedStoreId);
+          } else {
+            compareAndPutStoreField(mv, instrumentedName, injectedStoreId);
+          }
+
+          if (null != nextStoreLabel) {
+            beginNextStore(mv, nextStoreLabel);
+          }
+          injectedStoreId = nextStoreId;
+        }
+
+        // if...else... blocks for stores excluded between this class and last injected superclass
+        int excludedStoreId = excludedStoreIds.nextSetBit(0);
+        while (excludedStoreId >= 0) {
+          int nextStoreId = excludedStoreIds.nextSetBit(excludedStoreId + 1);
+          Label nextStoreLabel = compareStoreId(mv, excludedStoreId);
+
+          invokeWeakCompareAndSet(mv);
+
+          beginNextStore(mv, nextStoreLabel);
+          excludedStoreId = nextStoreId;
+        }
+
+        // else... delegate to superclass - but be prepared to fall-back to weakmap
+        if (hasMoreStores) {
+          Label superStoreLabel = new Label();
+          Label defaultStoreLabel = new Label();
+
+          mv.visitTryCatchBlock(
+              superStoreLabel, defaultStoreLabel, defaultStoreLabel, LINKAGE_ERROR_CLASS);
+          beginNextStore(mv, superStoreLabel);
+
+          invokeSuperCompareAndSet(
+              mv, instrumentedType.getSuperClass().asErasure().getInternalName());
+
+          mv.visitLabel(defaultStoreLabel);
+          if (frames) {
+            mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[] {LINKAGE_ERROR_CLASS});
+          }
+
+          invokeWeakCompareAndSet(mv);
+        }
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+      }
+
       private Label compareStoreId(final MethodVisitor mv, final int storeId) {
         mv.visitIntInsn(Opcodes.ILOAD, 1);
         Label nextStoreLabel = new Label();
@@ -417,6 +563,75 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
         mv.visitInsn(Opcodes.RETURN);
       }
 
+      private void compareAndSetStoreField(
+          final MethodVisitor mv, final String instrumentedName, final int injectedStoreId) {
+        // create the updater on first use, racing threads create equivalent updaters
+        mv.visitFieldInsn(
+            Opcodes.GETSTATIC,
+            instrumentedName,
+            CONTEXT_UPDATER_PREFIX + injectedStoreId,
+            UPDATER_DESCRIPTOR);
+        mv.visitInsn(Opcodes.DUP);
+        Label updaterLabel = new Label();
+        mv.visitJumpInsn(Opcodes.IFNONNULL, updaterLabel);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitLdcInsn(Type.getObjectType(instrumentedName));
+        mv.visitLdcInsn(Type.getType(Object.class));
+        mv.visitLdcInsn(CONTEXT_STORE_ACCESS_PREFIX + injectedStoreId);
+        mv.visitMethodInsn(
+            Opcodes.INVOKESTATIC,
+            UPDATER_CLASS,
+            NEW_UPDATER_METHOD,
+            NEW_UPDATER_METHOD_DESCRIPTOR,
+            false);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(
+            Opcodes.PUTSTATIC,
+            instrumentedName,
+            CONTEXT_UPDATER_PREFIX + injectedStoreId,
+            UPDATER_DESCRIPTOR);
+        mv.visitLabel(updaterLabel);
+        if (frames) {
+          mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[] {UPDATER_CLASS});
+        }
+        mv.visitIntInsn(Opcodes.ALOAD, 0);
+        mv.visitIntInsn(Opcodes.ALOAD, 2);
+        mv.visitIntInsn(Opcodes.ALOAD, 3);
+        mv.visitMethodInsn(
+            Opcodes.INVOKEVIRTUAL,
+            UPDATER_CLASS,
+            UPDATER_CAS_METHOD,
+            UPDATER_CAS_METHOD_DESCRIPTOR,
+            false);
+        mv.visitInsn(Opcodes.IRETURN);
+      }
+
+      private void compareAndPutStoreField(
+          final MethodVisitor mv, final String instrumentedName, final int injectedStoreId) {
+        // only used in synchronized methods of classes too old to have frames
+        mv.visitIntInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(
+            Opcodes.GETFIELD,
+            instrumentedName,
+            CONTEXT_STORE_ACCESS_PREFIX + injectedStoreId,
+            OBJECT_DESCRIPTOR);
+        mv.visitIntInsn(Opcodes.ALOAD, 2);
+        Label unexpectedLabel = new Label();
+        mv.visitJumpInsn(Opcodes.IF_ACMPNE, unexpectedLabel);
+        mv.visitIntInsn(Opcodes.ALOAD, 0);
+        mv.visitIntInsn(Opcodes.ALOAD, 3);
+        mv.visitFieldInsn(
+            Opcodes.PUTFIELD,
+            instrumentedName,
+            CONTEXT_STORE_ACCESS_PREFIX + injectedStoreId,
+            OBJECT_DESCRIPTOR);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(unexpectedLabel);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+      }
+
       private void invokeWeakGet(final MethodVisitor mv) {
         mv.visitIntInsn(Opcodes.ALOAD, 0);
         mv.visitIntInsn(Opcodes.ILOAD, 1);
@@ -442,6 +657,20 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
         mv.visitInsn(Opcodes.RETURN);
       }
 
+      private void invokeWeakCompareAndSet(final MethodVisitor mv) {
+        mv.visitIntInsn(Opcodes.ALOAD, 0);
+        mv.visitIntInsn(Opcodes.ILOAD, 1);
+        mv.visitIntInsn(Opcodes.ALOAD, 2);
+        mv.visitIntInsn(Opcodes.ALOAD, 3);
+        mv.visitMethodInsn(
+            Opcodes.INVOKESTATIC,
+            FIELD_BACKED_CONTEXT_STORES_CLASS,
+            WEAK_CAS_METHOD,
+            WEAK_CAS_METHOD_DESCRIPTOR,
+            false);
+        mv.visitInsn(Opcodes.IRETURN);
+      }
+
       private void invokeSuperGet(final MethodVisitor mv, final String superName) {
         mv.visitIntInsn(Opcodes.ALOAD, 0);
         mv.visitIntInsn(Opcodes.ILOAD, 1);
@@ -458,6 +687,16 @@ final class FieldBackedContextInjector implements AsmVisitorWrapper {
             Opcodes.INVOKESPECIAL, superName, PUTTER_METHOD, PUTTER_METHOD_DESCRIPTOR, false);
         mv.visitInsn(Opcodes.RETURN);
       }
+
+      private void invokeSuperCompareAndSet(final MethodVisitor mv, final String superName) {
+        mv.visitIntInsn(Opcodes.ALOAD, 0);
+        mv.visitIntInsn(Opcodes.ILOAD, 1);
+        mv.visitIntInsn(Opcodes.ALOAD, 2);
+        mv.visitIntInsn(Opcodes.ALOAD, 3);
+        mv.visitMethodInsn(
+            Opcodes.INVOKESPECIAL, superName, CAS_METHOD, CAS_METHOD_DESCRIPTOR, false);
+        mv.visitInsn(Opcodes.IRETURN);
+      }
     };
   }
 
@@ -0,0 +1,172 @@
+package datadog.trace.agent.tooling
+
+import datadog.trace.test.util.DDSpecification
+import net.bytebuddy.description.type.TypeDescription
+import net.bytebuddy.matcher.ElementMatcher
+
+import static datadog.trace.agent.tooling.Instrumenter.TargetSystem.APPSEC
+import static datadog.trace.agent.tooling.Instrumenter.TargetSystem.PROFILING
+import static datadog.trace.agent.tooling.Instrumenter.TargetSystem.TRACING
+import static net.bytebuddy.matcher.ElementMatchers.none
+
+class InstrumenterIndexTest extends DDSpecification {
+
+  def "test index is read back as written"() {
+    setup:
+    def index = InstrumenterIndex.buildIndex([
+      new SingleTypeInstrumenter(),
+      new KnownTypesInstrumenter(),
+      new HierarchyInstrumenter(),
+      new ContextStoreInstrumenter(),
+      new SelfDecidingInstrumenter()
+    ])
+    def bytes = new ByteArrayOutputStream()
+    index.writeIndex(new DataOutputStream(bytes))
+
+    when:
+    def entries = InstrumenterIndex.readIndex(
+      new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))).entries
+
+    then:
+    entries*.className == [
+      SingleTypeInstrumenter.name,
+      KnownTypesInstrumenter.name,
+      HierarchyInstrumenter.name,
+      ContextStoreInstrumenter.name,
+      SelfDecidingInstrumenter.name
+    ]
+    entries*.names.collect { it as List } == [["single"], ["known", "known-alias"], ["hierarchy"], ["context"], ["self"]]
+    entries*.targetSystem == [TRACING.ordinal(), TRACING.ordinal(), APPSEC.ordinal(), TRACING.ordinal(), InstrumenterIndex.ANY_SYSTEM]
+    // the known types may depend on the configuration, and so may whether the last one applies
+    entries*.knownTypes.collect { it as List } == [["java.net.URL"], [], [], [], []]
+    entries*.lazy == [true, false, false, false, false]
+    entries*.excludeFilterProvider == [false, false, false, false, false]
+  }
+
+  def "test entry may be applicable to #systems"() {
+    setup:
+    def tracing = InstrumenterIndex.Entry.of(new SingleTypeInstrumenter())
+    def appsec = InstrumenterIndex.Entry.of(new HierarchyInstrumenter())
+    def selfDeciding = InstrumenterIndex.Entry.of(new SelfDecidingInstrumenter())
+
+    expect:
+    tracing.mayBeApplicable(EnumSet.copyOf(systems)) == tracingApplicable
+    appsec.mayBeApplicable(EnumSet.copyOf(systems)) == appsecApplicable
+    selfDeciding.mayBeApplicable(EnumSet.copyOf(systems))
+
+    where:
+    systems                      | tracingApplicable | appsecApplicable
+    [TRACING]                    | true              | false
+    [APPSEC]                     | false             | true
+    [PROFILING]                  | false             | false
+    [TRACING, APPSEC]            | true              | true
+    [TRACING, PROFILING, APPSEC] | true              | true
+  }
+
+  def "test entry is only disabled when disabled whatever its default"() {
+    setup:
+    if (configured != null) {
+      injectSysConfig("integration.known-alias.enabled", configured)
+    }
+    def entry = InstrumenterIndex.Entry.of(new KnownTypesInstrumenter())
+
+    expect:
+    entry.isDisabled() == disabled
+
+    where:
+    configured | disabled
+    null       | false
+    "true"     | false
+    "false"    | true
+  }
+
+  def "test missing index"() {
+    expect:
+    InstrumenterIndex.readIndex(new URLClassLoader(new URL[0], (ClassLoader) null)) == null
+  }
+
+  static class SingleTypeInstrumenter extends Instrumenter.Tracing implements Instrumenter.ForSingleType {
+    SingleTypeInstrumenter() {
+      super("single")
+    }
+
+    @Override
+    String instrumentedType() {
+      return "java.net.URL"
+    }
+
+    @Override
+    void adviceTransformations(AdviceTransformation transformation) {
+    }
+  }
+
+  static class KnownTypesInstrumenter extends Instrumenter.Tracing implements Instrumenter.ForKnownTypes {
+    KnownTypesInstrumenter() {
+      super("known", "known-alias")
+    }
+
+    @Override
+    String[] knownMatchingTypes() {
+      return ["java.net.URLConnection", "java.net.Socket"]
+    }
+
+    @Override
+    void adviceTransformations(AdviceTransformation transformation) {
+    }
+  }
+
+  static class HierarchyInstrumenter extends Instrumenter.AppSec implements Instrumenter.ForTypeHierarchy {
+    HierarchyInstrumenter() {
+      super("hierarchy")
+    }
+
+    @Override
+    ElementMatcher<TypeDescription> hierarchyMatcher() {
+      return none()
+    }
+
+    @Override
+    void adviceTransformations(AdviceTransformation transformation) {
+    }
+  }
+
+  static class ContextStoreInstrumenter extends Instrumenter.Tracing implements Instrumenter.ForSingleType {
+    ContextStoreInstrumenter() {
+      super("context")
+    }
+
+    @Override
+    String instrumentedType() {
+      return "java.lang.Thread"
+    }
+
+    @Override
+    Map<String, String> contextStore() {
+      return ["java.lang.Thread": "java.lang.String"]
+    }
+
+    @Override
+    void adviceTransformations(AdviceTransformation transformation) {
+    }
+  }
+
+  static class SelfDecidingInstrumenter extends Instrumenter.Tracing implements Instrumenter.ForSingleType {
+    SelfDecidingInstrumenter() {
+      super("self")
+    }
+
+    @Override
+    boolean isApplicable(Set<TargetSystem> enabledSystems) {
+      return enabledSystems.contains(TargetSystem.PROFILING)
+    }
+
+    @Override
+    String instrumentedType() {
+      return "java.net.ServerSocket"
+    }
+
+    @Override
+    void adviceTransformations(AdviceTransformation transformation) {
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package datadog.trace.agent.tooling.bytebuddy
+
+import datadog.trace.test.util.DDSpecification
+import net.bytebuddy.ByteBuddy
+import net.bytebuddy.NamingStrategy
+import net.bytebuddy.description.type.TypeDescription
+import net.bytebuddy.dynamic.ClassFileLocator
+
+import static datadog.trace.agent.tooling.bytebuddy.matcher.DDElementMatchers.implementsInterface
+import static net.bytebuddy.matcher.ElementMatchers.named
+
+class PersistentTypeCacheTest extends DDSpecification {
+
+  def "types of jars are kept across runs"() {
+    setup:
+    def cacheFile = new File(File.createTempDir(), PersistentTypeCache.CACHE_FILE_NAME)
+    def loader = ByteBuddy.classLoader
+    def firstRun = new PersistentTypeCache(cacheFile)
+
+    expect:
+    firstRun.find(loader, ByteBuddy.name) == null
+
+    when:
+    firstRun.recorder(ByteBuddy.name).record(TypeDescription.ForLoadedType.of(ByteBuddy))
+    firstRun.save()
+    def secondRun = new PersistentTypeCache(cacheFile)
+    def type = secondRun.find(loader, ByteBuddy.name)
+
+    then:
+    type.modifiers == ByteBuddy.modifiers
+    type.superName == Object.name
+    type.interfaceNames as List == ByteBuddy.interfaces*.name
+    secondRun.hits() == 1
+
+    cleanup:
+    cacheFile.parentFile.deleteDir()
+  }
+
+  def "persisted types are found without locating their class file"() {
+    setup:
+    def cacheFile = new File(File.createTempDir(), PersistentTypeCache.CACHE_FILE_NAME)
+    def firstRun = new PersistentTypeCache(cacheFile)
+    [ByteBuddy, NamingStrategy].each {
+      assert firstRun.find(ByteBuddy.classLoader, it.name) == null
+      firstRun.recorder(it.name).record(TypeDescription.ForLoadedType.of(it))
+    }
+    firstRun.save()
+    def resourceLookups = 0
+    def loader = new URLClassLoader(
+      [ByteBuddy.protectionDomain.codeSource.location] as URL[], (ClassLoader) null) {
+        @Override
+        URL getResource(String name) {
+          resourceLookups++
+          return super.getResource(name)
+        }
+      }
+
+    when:
+    def secondRun = new PersistentTypeCache(cacheFile)
+    def types = [ByteBuddy, NamingStrategy].collect { secondRun.find(loader, it.name) }
+
+    then:
+    types*.modifiers == [ByteBuddy.modifiers, NamingStrategy.modifiers]
+    secondRun.hits() == 2
+    resourceLookups == 1
+
+    cleanup:
+    loader.close()
+    cacheFile.parentFile.deleteDir()
+  }
+
+  def "types of jars which no longer exist are dropped"() {
+    setup:
+    def dir = File.createTempDir()
+    def cacheFile = new File(dir, PersistentTypeCache.CACHE_FILE_NAME)
+    def jarCopy = new File(dir, "byte-buddy-copy.jar")
+    jarCopy.bytes = new File(ByteBuddy.protectionDomain.codeSource.location.toURI()).bytes
+    def copyLoader = new URLClassLoader([jarCopy.toURI().toURL()] as URL[], (ClassLoader) null)
+    def firstRun = new PersistentTypeCache(cacheFile)
+    assert firstRun.find(copyLoader, ByteBuddy.name) == null
+    firstRun.recorder(ByteBuddy.name).record(TypeDescription.ForLoadedType.of(ByteBuddy))
+    firstRun.save()
+    copyLoader.close()
+    jarCopy.delete()
+
+    when:
+    def secondRun = new PersistentTypeCache(cacheFile)
+    assert secondRun.find(ByteBuddy.classLoader, NamingStrategy.name) == null
+    secondRun.recorder(NamingStrategy.name).record(TypeDescription.ForLoadedType.of(NamingStrategy))
+    secondRun.save()
+    def thirdRun = new PersistentTypeCache(cacheFile)
+
+    then:
+    secondRun.storedJars.keySet().any { it.contains(jarCopy.name) }
+    !thirdRun.storedJars.keySet().any { it.contains(jarCopy.name) }
+    thirdRun.find(ByteBuddy.classLoader, NamingStrategy.name) != null
+
+    cleanup:
+    dir.deleteDir()
+  }
+
+  def "corrupt files are ignored"() {
+    setup:
+    def cacheFile = new File(File.createTempDir(), PersistentTypeCache.CACHE_FILE_NAME)
+    def firstRun = new PersistentTypeCache(cacheFile)
+    assert firstRun.find(ByteBuddy.classLoader, ByteBuddy.name) == null
+    firstRun.recorder(ByteBuddy.name).record(TypeDescription.ForLoadedType.of(ByteBuddy))
+    firstRun.save()
+    // cuts the type records, which the slots of the hash table still point to
+    def bytes = cacheFile.bytes
+    cacheFile.bytes = Arrays.copyOf(bytes, bytes.length - 20)
+
+    when:
+    def secondRun = new PersistentTypeCache(cacheFile)
+    def type = secondRun.find(ByteBuddy.classLoader, ByteBuddy.name)
+    secondRun.save()
+
+    then:
+    type == null
+    secondRun.misses() == 1
+    !secondRun.storedValid
+
+    cleanup:
+    cacheFile.parentFile.deleteDir()
+  }
+
+  def "types outside of jars are not recorded"() {
+    setup:
+    def cache = new PersistentTypeCache(File.createTempFile("types", ".cache"))
+
+    expect:
+    cache.find(PersistentTypeCacheTest.classLoader, PersistentTypeCacheTest.name) == null
+    cache.recorder(PersistentTypeCacheTest.name) == null
+  }
+
+  def "persisted types are matched without parsing their class file"() {
+    setup:
+    def cacheFile = new File(File.createTempDir(), PersistentTypeCache.CACHE_FILE_NAME)
+    def loader = new URLClassLoader(
+      [ByteBuddy.protectionDomain.codeSource.location] as URL[], (ClassLoader) null)
+    def firstRun = new PersistentTypeCache(cacheFile)
+    def locator = ClassFileLocator.ForClassLoader.of(loader)
+    def matcher = implementsInterface(named("net.bytebuddy.description.NamedElement"))
+
+    when:
+    def parsed = new DDCachingPoolStrategy(true, firstRun).typePool(locator, loader)
+      .describe(TypeDescription.ForLoadedType.name).resolve()
+
+    then:
+    matcher.matches(parsed)
+
+    when:
+    firstRun.save()
+    def secondRun = new PersistentTypeCache(cacheFile)
+    def persisted = new DDCachingPoolStrategy(true, secondRun).typePool(locator, loader)
+      .describe(TypeDescription.ForLoadedType.name).resolve()
+
+    then:
+    secondRun.hits() > 0
+    persisted.name == TypeDescription.ForLoadedType.name
+    persisted.superClass.asErasure().name == parsed.superClass.asErasure().name
+    matcher.matches(persisted)
+    persisted.declaredMethods.size() == parsed.declaredMethods.size()
+
+    cleanup:
+    loader.close()
+    cacheFile.parentFile.deleteDir()
+  }
+}
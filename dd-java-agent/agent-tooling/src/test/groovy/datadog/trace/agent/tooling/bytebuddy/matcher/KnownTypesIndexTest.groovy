@@ -0,0 +1,50 @@
+package datadog.trace.agent.tooling.bytebuddy.matcher
+
+import datadog.trace.test.util.DDSpecification
+
+class KnownTypesIndexTest extends DDSpecification {
+
+  def "test index finds the instrumenters matching each name"() {
+    setup:
+    def index = new KnownTypesIndex()
+    def url = index.add("java.net.URL")
+    def connections = index.add("java.net.URLConnection", "java.net.HttpURLConnection")
+    def both = index.add("java.net.URL", "java.net.HttpURLConnection")
+    index.build()
+    def ids = index.lookup(clazz.name)
+
+    expect:
+    ids.get(url) == urlMatch
+    ids.get(connections) == connectionsMatch
+    ids.get(both) == bothMatch
+
+    where:
+    clazz             | urlMatch | connectionsMatch | bothMatch
+    URL               | true     | false            | true
+    URLConnection     | false    | true             | false
+    HttpURLConnection | false    | true             | true
+    JarURLConnection  | false    | false            | false
+    Object            | false    | false            | false
+  }
+
+  def "test empty index matches nothing"() {
+    setup:
+    def index = new KnownTypesIndex()
+    index.build()
+
+    expect:
+    index.lookup(Object.name).isEmpty()
+  }
+
+  def "test names cannot be added once built"() {
+    setup:
+    def index = new KnownTypesIndex()
+    index.build()
+
+    when:
+    index.add("java.net.URL")
+
+    then:
+    thrown(IllegalStateException)
+  }
+}
@@ -18,6 +18,10 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.HttpUrl;
@@ -55,6 +59,7 @@ public class AppSecBenchmark {
   private URIDataAdapter uri;
   private String ip = "0.0.0.0";
   private int port = 5555;
+  private Order body = Order.sample();
 
   @Setup(Level.Trial)
   public void setUp() throws URISyntaxException {
@@ -114,6 +119,19 @@ public class AppSecBenchmark {
     normalRequest();
   }
 
+  /** A request whose body was parsed into objects, which are converted before the WAF runs. */
+  @Benchmark
+  public void normalRequestWithBody() {
+    RequestContext<Object> context =
+        new Context(gw.getCallback(EVENTS.requestStarted()).get().getResult());
+    gw.getCallback(EVENTS.requestMethodUriRaw()).apply(context, method, uri);
+    gw.getCallback(EVENTS.requestClientSocketAddress()).apply(context, ip, port);
+    gw.getCallback(EVENTS.requestHeader()).accept(context, "User-Agent", "Mozilla/5.0");
+    gw.getCallback(EVENTS.requestHeaderDone()).apply(context);
+    gw.getCallback(EVENTS.requestBodyProcessed()).apply(context, body);
+    gw.getCallback(EVENTS.requestEnded()).apply(context, null);
+  }
+
   static class StubOkHttpClient extends OkHttpClient {
     @Override
     public Call newCall(final Request request) {
@@ -210,6 +228,54 @@ public class AppSecBenchmark {
     }
   }
 
+  /** A typical JSON request body, as bound to objects by a web framework. */
+  static class Order {
+    private String id;
+    private Customer customer;
+    private List<Item> items = new ArrayList<>();
+    private Map<String, String> attributes = new HashMap<>();
+
+    static Order sample() {
+      Order order = new Order();
+      order.id = "ord-8f2a6c1e9b7d4f3a";
+      order.customer = new Customer();
+      order.customer.name = "Jane Doe";
+      order.customer.email = "jane.doe@example.com";
+      order.customer.address = new Address();
+      order.customer.address.street = "1 Main Street";
+      order.customer.address.city = "Springfield";
+      order.customer.address.zip = "12345";
+      for (int i = 0; i < 10; ++i) {
+        Item item = new Item();
+        item.sku = "sku-" + i;
+        item.quantity = 1 + i % 3;
+        item.price = 9.99 * (i + 1);
+        order.items.add(item);
+      }
+      order.attributes.put("channel", "web");
+      order.attributes.put("coupon", "SUMMER");
+      return order;
+    }
+  }
+
+  static class Customer {
+    private String name;
+    private String email;
+    private Address address;
+  }
+
+  static class Address {
+    private String street;
+    private String city;
+    private String zip;
+  }
+
+  static class Item {
+    private String sku;
+    private int quantity;
+    private double price;
+  }
+
   static class Context implements RequestContext<Object> {
     private final Object data;
 
@@ -1,11 +1,19 @@
 package com.datadog.appsec.event.data;
 
 import datadog.trace.api.Platform;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +24,14 @@ public final class ObjectIntrospection {
 
   private static final Method trySetAccessible;
 
+  private static final ClassValue<ClassPlan> PLANS =
+      new ClassValue<ClassPlan>() {
+        @Override
+        protected ClassPlan computeValue(Class<?> type) {
+          return new ClassPlan(type);
+        }
+      };
+
   static {
     // Method AccessibleObject.trySetAccessible introduced in Java 9
     Method method = null;
@@ -41,6 +57,10 @@ public final class ObjectIntrospection {
    * <p>Certain instance fields are excluded. Right now, this includes metaClass fields in Groovy
    * objects and this$0 fields in inner classes.
    *
+   * <p>The fields of each class are looked up and made accessible only once. Objects are converted
+   * to maps of their field values which share the field names with the other objects of their
+   * class, and which the WAF iterates over without hashing anything.
+   *
    * @param obj an arbitrary object
    * @return the converted object
    */
@@ -56,7 +76,7 @@ public final class ObjectIntrospection {
     }
   }
 
-  private static Object doConversion(Object obj, int depth, int[] elemsLeft) {
+  private static Object doConversion(Object obj, int depth, int[] elemsLeft) throws Throwable {
     elemsLeft[0]--;
     if (elemsLeft[0] <= 0 || obj == null || depth > MAX_DEPTH) {
       return null;
@@ -111,46 +131,149 @@ public final class ObjectIntrospection {
     }
 
     // else general objects
-    Map<String, Object> newMap = new HashMap<>();
-    List<Field[]> allFields = new ArrayList<>();
-    for (Class<?> classToLook = clazz;
-        classToLook != null && classToLook != Object.class;
-        classToLook = classToLook.getSuperclass()) {
-      allFields.add(classToLook.getDeclaredFields());
+    ClassPlan plan = PLANS.get(clazz);
+    if (plan.inaccessible) {
+      // One of fields is inaccessible, might be it's Strongly Encapsulated Internal class
+      // consider it as integral object without introspection
+      return obj.toString();
+    }
+    Object[] values = new Object[plan.names.length];
+    int size = 0;
+    while (size < values.length && elemsLeft[0] > 0) {
+      values[size] =
+          guardedConversion((Object) plan.getters[size].invokeExact(obj), depth + 1, elemsLeft);
+      size++;
     }
+    return new FieldValues(plan.names, values, size);
+  }
 
-    outer:
-    for (Field[] fields : allFields) {
-      for (Field f : fields) {
-        if (elemsLeft[0] <= 0) {
-          break outer;
-        }
-        if (Modifier.isStatic(f.getModifiers())) {
-          continue;
+  /**
+   * The instance fields of a class and its superclasses which are converted, with their getters,
+   * worked out once per class. A field shadowed by a superclass field of the same name is read from
+   * the superclass field, as the later of the two used to overwrite the other in the converted map.
+   */
+  private static final class ClassPlan {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    final String[] names;
+    final MethodHandle[] getters;
+    final boolean inaccessible;
+
+    ClassPlan(Class<?> clazz) {
+      List<String> names = new ArrayList<>();
+      List<MethodHandle> getters = new ArrayList<>();
+      Map<String, Integer> indexes = new HashMap<>();
+      boolean inaccessible = false;
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      outer:
+      for (Class<?> classToLook = clazz;
+          classToLook != null && classToLook != Object.class;
+          classToLook = classToLook.getSuperclass()) {
+        for (Field f : classToLook.getDeclaredFields()) {
+          if (Modifier.isStatic(f.getModifiers())) {
+            continue;
+          }
+          if (f.getType().getName().equals("groovy.lang.MetaClass")) {
+            continue;
+          }
+          String name = f.getName();
+          if (name.equals("this$0")) {
+            continue;
+          }
+          MethodHandle getter = null;
+          if (setAccessible(f)) {
+            try {
+              getter = lookup.unreflectGetter(f).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+              log.error("Unable to get field value", e);
+            }
+          }
+          if (null == getter) {
+            inaccessible = true;
+            break outer;
+          }
+          Integer shadowed = indexes.get(name);
+          if (null != shadowed) {
+            getters.set(shadowed, getter);
+            continue;
+          }
+          indexes.put(name, names.size());
+          names.add(name);
+          getters.add(getter);
         }
-        if (f.getType().getName().equals("groovy.lang.MetaClass")) {
-          continue;
+      }
+      this.names = names.toArray(new String[0]);
+      this.getters = getters.toArray(new MethodHandle[0]);
+      this.inaccessible = inaccessible;
+    }
+  }
+
+  /**
+   * The converted fields of an object, as a map the WAF can iterate over directly. The field names
+   * are shared by all the objects of a class, and nothing is hashed.
+   */
+  static final class FieldValues extends AbstractMap<String, Object> {
+    private final String[] names;
+    private final Object[] values;
+    private final int size;
+
+    FieldValues(String[] names, Object[] values, int size) {
+      this.names = names;
+      this.values = values;
+      this.size = size;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          return new EntryIterator(names, values, size);
         }
-        String name = f.getName();
-        if (name.equals("this$0")) {
-          continue;
+
+        @Override
+        public int size() {
+          return size;
         }
+      };
+    }
 
-        if (setAccessible(f)) {
-          try {
-            newMap.put(f.getName(), guardedConversion(f.get(obj), depth + 1, elemsLeft));
-          } catch (IllegalAccessException e) {
-            log.error("Unable to get field value", e);
-          }
-        } else {
-          // One of fields is inaccessible, might be it's Strongly Encapsulated Internal class
-          // consider it as integral object without introspection
-          return obj.toString();
+    private static final class EntryIterator implements Iterator<Entry<String, Object>> {
+      private final String[] names;
+      private final Object[] values;
+      private final int size;
+      private int next;
+
+      EntryIterator(String[] names, Object[] values, int size) {
+        this.names = names;
+        this.values = values;
+        this.size = size;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Entry<String, Object> next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
         }
+        int field = next++;
+        return new SimpleImmutableEntry<>(names[field], values[field]);
       }
-    }
 
-    return newMap;
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }
   }
 
   /**
@@ -67,10 +67,53 @@ class ObjectIntrospectionSpecification extends Specification {
     private String c = 'd'
   }
 
-  void 'other objects are converted into hash maps'() {
+  void 'other objects are converted into maps'() {
     expect:
-    convert(new ClassToBeConverted()) instanceof HashMap
+    convert(new ClassToBeConverted()) instanceof Map
+    convert(new ClassToBeConverted()) == [a: 'b', l: ['1', '2']]
     convert(new ClassToBeConvertedExt()) == [c: 'd', a: 'b', l: ['1', '2']]
+    convert(new ClassToBeConvertedExt()).entrySet()*.key == ['c', 'a', 'l']
+  }
+
+  void 'entries of converted objects can be kept'() {
+    when:
+    def entries = convert(new ClassToBeConvertedExt()).entrySet().toArray()
+
+    then:
+    entries*.key == ['c', 'a', 'l']
+    entries*.value == ['d', 'b', ['1', '2']]
+  }
+
+  class ClassToBeConvertedShadowing extends ClassToBeConverted {
+    @SuppressWarnings('UnusedPrivateField')
+    private String a = 'shadowing'
+    @SuppressWarnings('UnusedPrivateField')
+    private String c = 'd'
+  }
+
+  void 'shadowed fields are converted once, from the superclass'() {
+    when:
+    def converted = convert(new ClassToBeConvertedShadowing())
+
+    then:
+    converted == [a: 'b', c: 'd', l: ['1', '2']]
+    converted.size() == 3
+    converted.entrySet()*.key == ['a', 'c', 'l']
+    converted.keySet().size() == 3
+  }
+
+  void 'max number of elements is honored for objects'() {
+    setup:
+    def objects = (1..300).collect { new ClassToBeConverted() }
+
+    when:
+    def converted = convert(objects)
+
+    then:
+    converted.size() == 51
+    converted[49] == [a: 'b', l: ['1', '2']]
+    // the elements ran out in the middle of the last object
+    converted[50] == [a: 'b', l: ['1', null]]
   }
 
   void 'max number of elements is honored'() {
@@ -0,0 +1,59 @@
+package datadog.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Starts a new JVM running a main which returns right away, like a serverless function or a short
+ * batch, with the agent given as parameter, and waits for it to exit. An empty agent path starts it
+ * without agent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class AgentStartupBenchmark {
+
+  @Param({
+    "",
+    "/path/to/dd-java-agent-master.jar",
+    "/path/to/dd-trace-java/dd-java-agent/build/libs/dd-java-agent.jar"
+  })
+  String agentJar;
+
+  @Benchmark
+  public int startJvm() throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    if (!agentJar.isEmpty()) {
+      command.add("-javaagent:" + agentJar);
+      command.add("-Ddd.jmxfetch.enabled=false");
+      command.add("-Ddd.writer.type=LoggingWriter");
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Main.class.getName());
+    Process process = new ProcessBuilder(command).inheritIO().start();
+    int exitCode = process.waitFor();
+    if (exitCode != 0) {
+      throw new IllegalStateException("JVM exited with " + exitCode);
+    }
+    return exitCode;
+  }
+
+  public static class Main {
+    public static void main(String[] args) {
+      // the agent is started before main runs
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package datadog.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loads the classes of the jars on the class-path, like an application does at startup, through a
+ * new class-loader each time, so that each class load goes through the agent's type matching. The
+ * difference with the run without agent is the time spent matching and transforming.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ClassLoadingBenchmark {
+
+  @Param({"20000"})
+  int classes;
+
+  private URL[] classPath;
+  private List<String> classNames;
+
+  @Setup(Level.Trial)
+  public void findClasses() throws IOException {
+    List<URL> jars = new ArrayList<>();
+    classNames = new ArrayList<>();
+    StringTokenizer paths =
+        new StringTokenizer(System.getProperty("java.class.path"), File.pathSeparator);
+    while (paths.hasMoreTokens()) {
+      String path = paths.nextToken();
+      if (!path.endsWith(".jar")) {
+        continue;
+      }
+      jars.add(new File(path).toURI().toURL());
+      try (JarFile jar = new JarFile(path)) {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements() && classNames.size() < classes) {
+          String name = entries.nextElement().getName();
+          if (name.endsWith(".class") && !name.contains("-")) {
+            classNames.add(toClassName(name));
+          }
+        }
+      }
+    }
+    classPath = jars.toArray(new URL[0]);
+  }
+
+  @Benchmark
+  public void loadClasses(final Blackhole blackhole) throws IOException {
+    try (URLClassLoader loader = new URLClassLoader(classPath, null)) {
+      for (String name : classNames) {
+        try {
+          blackhole.consume(loader.loadClass(name));
+        } catch (ClassNotFoundException | LinkageError e) {
+          blackhole.consume(e);
+        }
+      }
+    }
+  }
+
+  private static String toClassName(String entryName) {
+    char[] chars = entryName.substring(0, entryName.length() - ".class".length()).toCharArray();
+    for (int i = 0; i < chars.length; ++i) {
+      if (chars[i] == '/') {
+        chars[i] = '.';
+      }
+    }
+    return new String(chars);
+  }
+
+  @Fork(jvmArgsAppend = "-javaagent:/path/to/dd-java-agent-master.jar")
+  public static class WithAgentMaster extends ClassLoadingBenchmark {}
+
+  @Fork(
+      jvmArgsAppend =
+          "-javaagent:/path/to/dd-trace-java/dd-java-agent/build/libs/dd-java-agent.jar")
+  public static class WithAgent extends ClassLoadingBenchmark {}
+
+  /** The warmup fork records the types, the measured fork matches them without parsing. */
+  @Fork(
+      warmups = 1,
+      jvmArgsAppend = {
+        "-javaagent:/path/to/dd-trace-java/dd-java-agent/build/libs/dd-java-agent.jar",
+        "-Ddd.resolver.cache.dir=/tmp/dd-class-loading-benchmark"
+      })
+  public static class WithAgentAndTypeCache extends ClassLoadingBenchmark {}
+}
@@ -0,0 +1,69 @@
+import datadog.trace.agent.test.AgentTestRunner
+import spock.lang.Requires
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.locks.LockSupport
+
+import static datadog.trace.agent.test.utils.TraceUtils.basicSpan
+import static datadog.trace.agent.test.utils.TraceUtils.runUnderTrace
+import static datadog.trace.api.Platform.isJavaVersionAtLeast
+import static datadog.trace.bootstrap.instrumentation.api.AgentTracer.activeSpan
+import static java.util.concurrent.TimeUnit.SECONDS
+
+@Requires({
+  isJavaVersionAtLeast(21)
+})
+class VirtualThreadTest extends AgentTestRunner {
+
+  @Override
+  void configurePreAgent() {
+    super.configurePreAgent()
+
+    injectSysConfig("dd.trace.scope.virtual.thread.mode", "true")
+  }
+
+  def "context carries across park and unpark of a virtual thread started by #description"() {
+    setup:
+    def parked = new CountDownLatch(1)
+    def unpark = new CountDownLatch(1)
+    def activeSpans = new CompletableFuture<List>()
+    def task = {
+      def beforePark = activeSpan()
+      parked.countDown()
+      // unmounts the virtual thread from its carrier until it's unparked
+      unpark.await()
+      def afterUnpark = activeSpan()
+      // and again, by parking it directly
+      LockSupport.parkNanos(1_000_000)
+      runUnderTrace("child") {}
+      activeSpans.complete([beforePark, afterUnpark, activeSpan()])
+    } as Runnable
+
+    when:
+    def parent = runUnderTrace("parent") {
+      start(task)
+      return activeSpan()
+    }
+    parked.await(5, SECONDS)
+    unpark.countDown()
+    def spans = activeSpans.get(5, SECONDS)
+
+    then:
+    spans == [parent, parent, parent]
+    assertTraces(1) {
+      trace(2) {
+        sortSpansByStart()
+        basicSpan(it, "parent")
+        basicSpan(it, "child", span(0))
+      }
+    }
+
+    where:
+    description                  | start
+    "Thread.startVirtualThread"  | { Runnable task -> Thread.startVirtualThread(task) }
+    "a virtual thread builder"   | { Runnable task -> Thread.ofVirtual().start(task) }
+    "a virtual thread executor"  | { Runnable task -> Executors.newVirtualThreadPerTaskExecutor().execute(task) }
+  }
+}
@@ -0,0 +1,86 @@
+package datadog.trace.instrumentation.java.concurrent;
+
+import static datadog.trace.agent.tooling.bytebuddy.matcher.NameMatchers.named;
+import static datadog.trace.bootstrap.instrumentation.java.concurrent.AdviceUtils.cancelTask;
+import static datadog.trace.bootstrap.instrumentation.java.concurrent.AdviceUtils.capture;
+import static datadog.trace.bootstrap.instrumentation.java.concurrent.AdviceUtils.endTaskScope;
+import static datadog.trace.bootstrap.instrumentation.java.concurrent.AdviceUtils.startTaskScope;
+import static java.util.Collections.singletonMap;
+import static net.bytebuddy.matcher.ElementMatchers.isMethod;
+import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
+import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
+
+import com.google.auto.service.AutoService;
+import datadog.trace.agent.tooling.Instrumenter;
+import datadog.trace.api.Config;
+import datadog.trace.bootstrap.InstrumentationContext;
+import datadog.trace.bootstrap.instrumentation.api.AgentScope;
+import datadog.trace.bootstrap.instrumentation.java.concurrent.State;
+import java.util.Map;
+import net.bytebuddy.asm.Advice;
+
+/**
+ * Propagates the context from where a virtual thread is started to the task it runs. This covers
+ * virtual thread executors too, since they start a virtual thread per task, without wrapping each
+ * task. Only enabled in the scope manager's virtual thread mode.
+ */
+@AutoService(Instrumenter.class)
+public final class VirtualThreadInstrumentation extends Instrumenter.Tracing
+    implements Instrumenter.ForSingleType {
+
+  public VirtualThreadInstrumentation() {
+    super(AbstractExecutorInstrumentation.EXEC_NAME, "virtual-thread");
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return super.isEnabled() && Config.get().isScopeVirtualThreadMode();
+  }
+
+  @Override
+  public String instrumentedType() {
+    return "java.lang.VirtualThread";
+  }
+
+  @Override
+  public Map<String, String> contextStore() {
+    return singletonMap("java.lang.Thread", State.class.getName());
+  }
+
+  @Override
+  public void adviceTransformations(AdviceTransformation transformation) {
+    // start() delegates to start(ThreadContainer)
+    transformation.applyAdvice(
+        isMethod().and(named("start")).and(takesArguments(1)),
+        getClass().getName() + "$Start");
+    transformation.applyAdvice(
+        isMethod().and(named("run")).and(takesArgument(0, named(Runnable.class.getName()))),
+        getClass().getName() + "$Run");
+  }
+
+  public static final class Start {
+    @Advice.OnMethodEnter
+    public static void start(@Advice.This Thread thread) {
+      capture(InstrumentationContext.get(Thread.class, State.class), thread, false);
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void cleanup(@Advice.This Thread thread, @Advice.Thrown Throwable thrown) {
+      if (null != thrown) {
+        cancelTask(InstrumentationContext.get(Thread.class, State.class), thread);
+      }
+    }
+  }
+
+  public static final class Run {
+    @Advice.OnMethodEnter
+    public static AgentScope before(@Advice.This Thread thread) {
+      return startTaskScope(InstrumentationContext.get(Thread.class, State.class), thread);
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void after(@Advice.Enter AgentScope scope) {
+      endTaskScope(scope);
+    }
+  }
+}
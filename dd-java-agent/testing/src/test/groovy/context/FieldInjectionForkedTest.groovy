@@ -16,8 +16,10 @@ import java.lang.ref.WeakReference
 import java.lang.reflect.Field
 import java.lang.reflect.Method
 import java.lang.reflect.Modifier
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicReference
 
+import static context.FieldInjectionTestInstrumentation.Context
 import static context.FieldInjectionTestInstrumentation.DisabledKeyClass
 import static context.FieldInjectionTestInstrumentation.IncorrectCallUsageKeyClass
 import static context.FieldInjectionTestInstrumentation.IncorrectContextClassUsageKeyClass
@@ -28,6 +30,7 @@ import static context.FieldInjectionTestInstrumentation.KeyClass
 import static context.FieldInjectionTestInstrumentation.UntransformableKeyClass
 import static context.FieldInjectionTestInstrumentation.ValidInheritsSerializableKeyClass
 import static context.FieldInjectionTestInstrumentation.ValidSerializableKeyClass
+import static datadog.trace.agent.test.utils.ThreadUtils.runConcurrently
 import static org.junit.Assume.assumeTrue
 
 class FieldInjectionForkedTest extends AgentTestRunner {
@@ -109,6 +112,28 @@ class FieldInjectionForkedTest extends AgentTestRunner {
     new UntransformableKeyClass() | _
   }
 
+  def "concurrent putIfAbsent creates a single context"() {
+    setup:
+    def contexts = Collections.newSetFromMap(new ConcurrentHashMap())
+    def created = Context.CREATED.get()
+
+    when:
+    runConcurrently(32, 1000, {
+      contexts.add(instance.getOrCreateContext())
+    })
+
+    then:
+    contexts.size() == 1
+    Context.CREATED.get() - created == 1
+    instance.removeContextCount() == 0
+    instance.removeContextCount() == -1
+
+    where:
+    instance                      | _
+    new KeyClass()                | _
+    new UntransformableKeyClass() | _
+  }
+
   def "serializability not impacted"() {
     setup:
     assumeTrue(Config.get().isSerialVersionUIDFieldInjection())
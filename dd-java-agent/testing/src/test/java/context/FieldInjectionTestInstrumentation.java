@@ -10,6 +10,7 @@ import datadog.trace.bootstrap.InstrumentationContext;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
@@ -33,6 +34,9 @@ public class FieldInjectionTestInstrumentation extends Instrumenter.Tracing
         named("incrementContextCount"), StoreAndIncrementApiUsageAdvice.class.getName());
     transformation.applyAdvice(named("getContextCount"), GetApiUsageAdvice.class.getName());
     transformation.applyAdvice(named("putContextCount"), PutApiUsageAdvice.class.getName());
+    transformation.applyAdvice(
+        named("getOrCreateContext"), GetOrCreateApiUsageAdvice.class.getName());
+    transformation.applyAdvice(named("removeContextCount"), RemoveApiUsageAdvice.class.getName());
     transformation.applyAdvice(
         named("incorrectKeyClassUsage"), IncorrectKeyClassContextApiUsageAdvice.class.getName());
     transformation.applyAdvice(
@@ -112,6 +116,27 @@ public class FieldInjectionTestInstrumentation extends Instrumenter.Tracing
     }
   }
 
+  public static class GetOrCreateApiUsageAdvice {
+    @Advice.OnMethodExit
+    public static void methodExit(
+        @Advice.This final KeyClass thiz, @Advice.Return(readOnly = false) Context context) {
+      final ContextStore<KeyClass, Context> contextStore =
+          InstrumentationContext.get(KeyClass.class, Context.class);
+      context = contextStore.putIfAbsent(thiz, Context.FACTORY);
+    }
+  }
+
+  public static class RemoveApiUsageAdvice {
+    @Advice.OnMethodExit
+    public static void methodExit(
+        @Advice.This final KeyClass thiz, @Advice.Return(readOnly = false) int contextCount) {
+      final ContextStore<KeyClass, Context> contextStore =
+          InstrumentationContext.get(KeyClass.class, Context.class);
+      final Context context = contextStore.remove(thiz);
+      contextCount = null != context ? context.count : -1;
+    }
+  }
+
   public static class IncorrectKeyClassContextApiUsageAdvice {
     @Advice.OnMethodExit
     public static void methodExit() {
@@ -137,10 +162,13 @@ public class FieldInjectionTestInstrumentation extends Instrumenter.Tracing
   }
 
   public static class Context {
+    public static final AtomicInteger CREATED = new AtomicInteger();
+
     public static final ContextStore.Factory<Context> FACTORY =
         new ContextStore.Factory<Context>() {
           @Override
           public Context create() {
+            CREATED.incrementAndGet();
             return new Context();
           }
         };
@@ -172,6 +200,16 @@ public class FieldInjectionTestInstrumentation extends Instrumenter.Tracing
     public void putContextCount(final int value) {
       // implementation replaced with test instrumentation
     }
+
+    public Context getOrCreateContext() {
+      // implementation replaced with test instrumentation
+      return null;
+    }
+
+    public int removeContextCount() {
+      // implementation replaced with test instrumentation
+      return -1;
+    }
   }
 
   /** A class which cannot be transformed by our instrumentation. */
@@ -50,6 +50,7 @@ public final class ConfigDefaults {
   static final boolean DEFAULT_DB_CLIENT_HOST_SPLIT_BY_INSTANCE_TYPE_SUFFIX = false;
   static final int DEFAULT_SCOPE_DEPTH_LIMIT = 100;
   static final int DEFAULT_SCOPE_ITERATION_KEEP_ALIVE = 10; // in seconds
+  static final boolean DEFAULT_SCOPE_VIRTUAL_THREAD_MODE = false;
   static final int DEFAULT_PARTIAL_FLUSH_MIN_SPANS = 1000;
   static final boolean DEFAULT_PROPAGATION_EXTRACT_LOG_HEADER_NAMES_ENABLED = false;
   static final String DEFAULT_PROPAGATION_STYLE_EXTRACT = PropagationStyle.DATADOG.name();
@@ -94,6 +95,14 @@ public final class ConfigDefaults {
   static final boolean DEFAULT_DATA_STREAMS_ENABLED = false;
 
   static final int DEFAULT_RESOLVER_TYPE_POOL_SIZE = 64;
+  static final int DEFAULT_TRACE_PENDING_SPAN_STRIPES = 0;
+  static final int DEFAULT_TRACE_SPAN_STREAMING_CHUNK_SIZE = 0;
+  static final int DEFAULT_TRACE_SERIALIZER_SHARDS = 1;
+  static final int DEFAULT_TRACE_ASYNC_SEND_BUFFERS = 0;
+  static final int DEFAULT_TRACE_SPAN_POOL_SIZE = 0;
+  static final boolean DEFAULT_TRACE_AGENT_DIRECT_TRANSPORT = false;
+  static final int DEFAULT_TRACER_METRICS_AGGREGATOR_SHARDS = 1;
+  static final int DEFAULT_JDBC_SQL_CACHE_SIZE = 2 * 1024 * 1024;
 
   private ConfigDefaults() {}
 }
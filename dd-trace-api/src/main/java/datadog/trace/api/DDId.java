@@ -1,14 +1,12 @@
 package datadog.trace.api;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-
 /**
  * Class encapsulating the unsigned 64 bit id used for Trace and Span ids.
  *
  * <p>It contains generation of new ids, parsing, and to string for both decimal and hex
  * representations. The decimal string representation is either kept from parsing, or generated on
- * demand and cached.
+ * demand and cached, as are the hex and the 16 character zero padded hex representations. Callers
+ * with their own buffers can have the representations written into them instead.
  */
 public class DDId {
 
@@ -87,6 +85,8 @@ public class DDId {
 
   private final long id;
   private String str; // cache for string representation
+  private String hexStr; // cache for hex representation
+  private String paddedHexStr; // cache for 16 character zero padded hex representation
 
   private DDId(long id, String str) {
     this.id = id;
@@ -235,46 +235,63 @@ public class DDId {
 
   /**
    * Returns the no zero padded hex representation, in lower case, of the unsigned 64 bit id. The
-   * hex {@code String} will NOT be cached.
+   * hex {@code String} will be cached.
    *
    * @return non zero padded hex String
    */
   public String toHexString() {
-    return Long.toHexString(this.id);
+    String s = this.hexStr;
+    // Same benign race condition as in toString()
+    if (s == null) {
+      this.hexStr = s = Long.toHexString(this.id);
+    }
+    return s;
   }
 
   private static final byte[] HEX_DIGITS = {
     '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
   };
 
+  private static final String ZERO_PADDING = "0000000000000000";
+
   /**
    * Returns the zero padded hex representation, in lower case, of the unsigned 64 bit id. The size
-   * will be rounded up to 16 or 32 characters. The hex {@code String} will NOT be cached.
+   * will be rounded up to 16 or 32 characters. The 16 character hex {@code String} will be cached.
    *
    * @param size the size in characters of the 0 padded String (rounded up to 16 or 32)
    * @return zero padded hex String
    */
   public String toHexStringPadded(int size) {
-    if (size > 16) {
-      size = 32;
-    } else if (size < 16) {
-      size = 16;
+    String s = this.paddedHexStr;
+    // Same benign race condition as in toString()
+    if (s == null) {
+      char[] chars = new char[16];
+      writeHexPadded(chars, 0);
+      this.paddedHexStr = s = new String(chars);
     }
-    byte[] bytes = new byte[size];
+    return size > 16 ? ZERO_PADDING + s : s;
+  }
+
+  /**
+   * Writes the 16 character zero padded hex representation, in lower case, of the unsigned 64 bit
+   * id.
+   *
+   * @param buffer the buffer to write the 16 characters to
+   * @param offset the index of the first character in the buffer
+   * @return the index following the last character written
+   */
+  public int writeHexPadded(char[] buffer, int offset) {
     long remaining = this.id;
-    int nibbleCount = Long.numberOfLeadingZeros(remaining) >>> 2;
-    Arrays.fill(bytes, 0, (size - 16) + nibbleCount, (byte) '0');
-    for (int i = 0; i < 16 - nibbleCount; i++) {
-      int b = (int) (remaining & 0xF);
-      bytes[size - 1 - i] = HEX_DIGITS[b];
+    for (int i = offset + 15; i >= offset; i--) {
+      buffer[i] = (char) HEX_DIGITS[(int) (remaining & 0xF)];
       remaining >>>= 4;
     }
-    return new String(bytes, StandardCharsets.ISO_8859_1);
+    return offset + 16;
   }
 
   /**
    * Returns the no zero padded hex representation, in lower case, of the unsigned 64 bit id, or the
-   * original {@code String} used to create this {@code DDId}. The hex {@code String} will NOT be
+   * original {@code String} used to create this {@code DDId}. The hex {@code String} will be
    * cached.
    *
    * @return non zero padded hex String
@@ -40,6 +40,8 @@ public final class TraceInstrumentationConfig {
 
   public static final String JDBC_CONNECTION_CLASS_NAME = "trace.jdbc.connection.class.name";
 
+  public static final String JDBC_SQL_CACHE_SIZE = "trace.jdbc.sql.cache.size";
+
   public static final String RUNTIME_CONTEXT_FIELD_INJECTION =
       "trace.runtime.context.field.injection";
   public static final String SERIALVERSIONUID_FIELD_INJECTION =
@@ -89,6 +91,7 @@ public final class TraceInstrumentationConfig {
 
   public static final String RESOLVER_USE_LOADCLASS = "resolver.use.loadclass";
   public static final String RESOLVER_TYPE_POOL_SIZE = "resolver.type.pool.size";
+  public static final String RESOLVER_CACHE_DIR = "resolver.cache.dir";
 
   private TraceInstrumentationConfig() {}
 }
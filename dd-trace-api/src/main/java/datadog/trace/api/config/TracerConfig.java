@@ -52,6 +52,7 @@ public final class TracerConfig {
   public static final String SCOPE_INHERIT_ASYNC_PROPAGATION =
       "trace.scope.inherit.async.propagation";
   public static final String SCOPE_ITERATION_KEEP_ALIVE = "trace.scope.iteration.keep.alive";
+  public static final String SCOPE_VIRTUAL_THREAD_MODE = "trace.scope.virtual.thread.mode";
   public static final String PARTIAL_FLUSH_MIN_SPANS = "trace.partial.flush.min.spans";
   public static final String TRACE_STRICT_WRITES_ENABLED = "trace.strict.writes.enabled";
   public static final String PROPAGATION_EXTRACT_LOG_HEADER_NAMES_ENABLED =
@@ -64,6 +65,12 @@ public final class TracerConfig {
       "trace.sampling.mechanism.validation.disabled";
 
   public static final String CLOCK_SYNC_PERIOD = "trace.clock.sync.period";
+  public static final String TRACE_PENDING_SPAN_STRIPES = "trace.pending.span.stripes";
+  public static final String TRACE_SPAN_STREAMING_CHUNK_SIZE = "trace.span.streaming.chunk.size";
+  public static final String TRACE_SERIALIZER_SHARDS = "trace.serializer.shards";
+  public static final String TRACE_ASYNC_SEND_BUFFERS = "trace.async.send.buffers";
+  public static final String TRACE_SPAN_POOL_SIZE = "trace.span.pool.size";
+  public static final String TRACE_AGENT_DIRECT_TRANSPORT = "trace.agent.direct.transport";
 
   private TracerConfig() {}
 }
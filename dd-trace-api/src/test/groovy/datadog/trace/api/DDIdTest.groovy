@@ -163,4 +163,29 @@ class DDIdTest extends DDSpecification {
     "1" * 8 + "0" * 8 + "cafebabe" | DDId.from(3405691582)
     "1" * 12 + "0123456789abcdef"  | DDId.from(81985529216486895)
   }
+
+  def "cache the hex Strings"() {
+    when:
+    final ddid = DDId.from(id)
+
+    then:
+    ddid.toHexString().is(ddid.toHexString())
+    ddid.toHexStringPadded(16).is(ddid.toHexStringPadded(16))
+    ddid.toHexStringPadded(32) == "0" * 16 + ddid.toHexStringPadded(16)
+
+    where:
+    id << [0, 1, 3405691582, Long.MAX_VALUE, Long.MIN_VALUE, -1]
+  }
+
+  def "write ids into buffers"() {
+    setup:
+    final ddid = DDId.from(id)
+    final chars = new char[40]
+
+    expect:
+    new String(chars, 2, ddid.writeHexPadded(chars, 2) - 2) == ddid.toHexStringPadded(16)
+
+    where:
+    id << [0, 1, 15, 16, 3405691582, Long.MAX_VALUE, Long.MIN_VALUE, -1]
+  }
 }
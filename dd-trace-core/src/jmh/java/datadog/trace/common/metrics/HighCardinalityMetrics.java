@@ -0,0 +1,160 @@
+package datadog.trace.common.metrics;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import datadog.communication.ddagent.DDAgentFeaturesDiscovery;
+import datadog.communication.monitor.Monitoring;
+import datadog.trace.common.writer.LoggingWriter;
+import datadog.trace.core.CoreSpan;
+import datadog.trace.core.CoreTracer;
+import datadog.trace.core.DDSpan;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Many threads publishing spans with many distinct metric keys, at well over a million spans per
+ * second, to an aggregator with a single aggregator thread (1 shard) or several. The aggregator
+ * reports every second, and the {@code aggregated} counter is the rate of spans which made it into
+ * the reported aggregates, rather than being dropped because an inbox was full, to compare with the
+ * {@code published} counter.
+ */
+@State(Scope.Benchmark)
+public class HighCardinalityMetrics {
+
+  private static final CoreTracer tracer =
+      CoreTracer.builder().writer(new LoggingWriter()).strictTraceWrites(true).build();
+
+  @Param({"1", "4"})
+  int shards;
+
+  @Param({"10000"})
+  int cardinality;
+
+  private ConflatingMetricsAggregator aggregator;
+  private CountingWriter writer;
+  private List<? extends CoreSpan<?>>[] traces;
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public long published;
+    // the reported hits are claimed by whichever thread sees them first
+    public long aggregated;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      published = 0;
+      aggregated = 0;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Setup(Level.Trial)
+  public void init() {
+    writer = new CountingWriter();
+    aggregator =
+        new ConflatingMetricsAggregator(
+            Collections.<String>emptySet(),
+            new AlwaysSupportsMetrics(),
+            new NoopSink(),
+            writer,
+            cardinality,
+            2048,
+            1,
+            SECONDS,
+            shards);
+    aggregator.start();
+    traces = new List[cardinality];
+    for (int i = 0; i < cardinality; ++i) {
+      traces[i] = Collections.singletonList(createSpan(i));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    aggregator.close();
+  }
+
+  @Threads(8)
+  @Benchmark
+  public boolean publish(Cursor cursor, Counters counters) {
+    int index = cursor.next++ % cardinality;
+    ++counters.published;
+    if ((index & 1023) == 0) {
+      counters.aggregated += writer.hits.getAndSet(0);
+    }
+    return aggregator.publish(traces[index]);
+  }
+
+  private static DDSpan createSpan(int i) {
+    // never finished, so the tracer doesn't write them
+    return (DDSpan)
+        tracer
+            .buildSpan("operation")
+            .withServiceName("service" + (i & 15))
+            .withResourceName("resource" + i)
+            .withSpanType("type")
+            .start();
+  }
+
+  private static final class CountingWriter implements MetricWriter {
+    final AtomicLong hits = new AtomicLong();
+
+    @Override
+    public void startBucket(int metricCount, long start, long duration) {}
+
+    @Override
+    public void add(MetricKey key, AggregateMetric aggregate) {
+      hits.addAndGet(aggregate.getHitCount());
+    }
+
+    @Override
+    public void finishBucket() {}
+
+    @Override
+    public void reset() {}
+  }
+
+  private static final class NoopSink implements Sink {
+    @Override
+    public void register(EventListener listener) {}
+
+    @Override
+    public void accept(int messageCount, ByteBuffer buffer) {}
+  }
+
+  private static final class AlwaysSupportsMetrics extends DDAgentFeaturesDiscovery {
+    AlwaysSupportsMetrics() {
+      super(null, Monitoring.DISABLED, null, false, true);
+    }
+
+    @Override
+    public void discover() {}
+
+    @Override
+    public boolean supportsMetrics() {
+      return true;
+    }
+
+    @Override
+    public String getMetricsEndpoint() {
+      return V6_METRICS_ENDPOINT;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package datadog.trace.common.metrics;
+
+import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString;
+import org.jctools.maps.NonBlockingHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Looking up the key of a span among known keys, by allocating a new key as the aggregator used to,
+ * or with a probe. Run with {@code -prof gc} to see the allocation per lookup.
+ */
+@State(Scope.Thread)
+public class MetricKeyLookup {
+
+  private static final UTF8BytesString SERVICE = UTF8BytesString.create("service");
+  private static final UTF8BytesString OPERATION = UTF8BytesString.create("servlet.request");
+  private static final UTF8BytesString TYPE = UTF8BytesString.create("web");
+
+  @Param({"1000"})
+  int cardinality;
+
+  private final NonBlockingHashMap<MetricKey, MetricKey> keys = new NonBlockingHashMap<>();
+  private final MetricKeyProbe probe = new MetricKeyProbe();
+  private String[] resources;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void init() {
+    resources = new String[cardinality];
+    for (int i = 0; i < cardinality; ++i) {
+      resources[i] = "GET /resource/" + i;
+      MetricKey key = new MetricKey(resources[i], SERVICE, OPERATION, TYPE, 200);
+      keys.put(key, key);
+    }
+  }
+
+  @Benchmark
+  public MetricKey newKey() {
+    MetricKey newKey = new MetricKey(nextResource(), SERVICE, OPERATION, TYPE, 200);
+    return keys.putIfAbsent(newKey, newKey);
+  }
+
+  @Benchmark
+  public MetricKey probe() {
+    MetricKey key = keys.get(probe.set(nextResource(), SERVICE, OPERATION, TYPE, 200));
+    probe.clear();
+    return key;
+  }
+
+  private String nextResource() {
+    return resources[next++ % cardinality];
+  }
+}
@@ -0,0 +1,97 @@
+package datadog.trace.common.sampling;
+
+import datadog.trace.common.writer.LoggingWriter;
+import datadog.trace.core.CoreTracer;
+import datadog.trace.core.DDSpan;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Finding the sampling rule of root spans with 50 service rules and 10 operation rules, as they
+ * would be configured: mostly literal names, some with a trailing or leading {@code .*}, and a few
+ * real regular expressions. {@link #sequential()} evaluates each rule in order, as the sampler used
+ * to.
+ */
+@State(Scope.Benchmark)
+public class SamplingRuleMatching {
+
+  private static final CoreTracer tracer =
+      CoreTracer.builder().writer(new LoggingWriter()).strictTraceWrites(true).build();
+
+  private final List<SamplingRule<DDSpan>> rules = new ArrayList<>();
+  private SamplingRuleMatcher<DDSpan> matcher;
+  private DDSpan[] spans;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void init() {
+    for (int i = 0; i < 50; ++i) {
+      String regex;
+      if (i % 10 == 8) {
+        regex = "team-" + i + "-.*";
+      } else if (i % 10 == 9) {
+        regex = "(billing|orders)-" + i + "-[a-z]+";
+      } else {
+        regex = "service-" + i;
+      }
+      rules.add(
+          new SamplingRule.ServiceSamplingRule<>(regex, new DeterministicSampler<DDSpan>(0.5)));
+    }
+    for (int i = 0; i < 10; ++i) {
+      String regex = i % 2 == 0 ? "operation-" + i : ".*\\.query-" + i;
+      rules.add(
+          new SamplingRule.OperationSamplingRule<>(regex, new DeterministicSampler<DDSpan>(0.5)));
+    }
+    rules.add(new SamplingRule.AlwaysMatchesSamplingRule<>(new DeterministicSampler<DDSpan>(1)));
+    matcher = new SamplingRuleMatcher<>(rules);
+    // a mix of spans matching the first rules, the last rules, or only the default rule
+    spans = new DDSpan[64];
+    for (int i = 0; i < spans.length; ++i) {
+      String service;
+      switch (i % 4) {
+        case 0:
+          service = "service-" + (i % 8);
+          break;
+        case 1:
+          service = "team-48-" + i;
+          break;
+        case 2:
+          service = "orders-49-web";
+          break;
+        default:
+          service = "unknown-" + i;
+      }
+      spans[i] =
+          (DDSpan)
+              tracer
+                  .buildSpan(i % 3 == 0 ? "db.query-9" : "servlet.request")
+                  .withServiceName(service)
+                  .start();
+    }
+  }
+
+  @Benchmark
+  public Object sequential() {
+    DDSpan span = nextSpan();
+    for (SamplingRule<DDSpan> rule : rules) {
+      if (rule.matches(span)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public Object compiled() {
+    return matcher.firstMatch(nextSpan());
+  }
+
+  private DDSpan nextSpan() {
+    return spans[next++ & (spans.length - 1)];
+  }
+}
@@ -0,0 +1,106 @@
+package datadog.trace.core;
+
+import static datadog.trace.api.config.TracerConfig.TRACE_PENDING_SPAN_STRIPES;
+
+import datadog.trace.api.DDId;
+import datadog.trace.api.sampling.PrioritySampling;
+import datadog.trace.api.sampling.SamplingMechanism;
+import datadog.trace.bootstrap.instrumentation.api.AgentTracer.NoopPathwayContext;
+import java.util.Collections;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Many threads finishing spans of the same, never ending, trace. Compares the single deque (0
+ * stripes) with the striped collection of finished spans.
+ */
+@State(Scope.Benchmark)
+public class PendingTraceFanOut {
+
+  CoreTracer tracer;
+  PendingTrace trace;
+
+  @Param({"0", "64"})
+  int stripes;
+
+  private DDSpan root;
+  private DDSpan span;
+
+  @Setup(Level.Trial)
+  public void init(TraceCounters counters, Blackhole blackhole) {
+    Properties properties = new Properties();
+    properties.setProperty(TRACE_PENDING_SPAN_STRIPES, String.valueOf(stripes));
+    tracer =
+        CoreTracer.builder()
+            .withProperties(properties)
+            .writer(new BlackholeWriter(blackhole, counters, 0))
+            .strictTraceWrites(false)
+            .build();
+    DDId traceId = DDId.from(1);
+    trace = tracer.createTrace(traceId);
+    root = span(trace, traceId, DDId.from(2), DDId.ZERO);
+    span = span(trace, traceId, DDId.from(3), DDId.from(2));
+    // keep the root pending so only partial flushes write spans out
+    trace.registerSpan(root);
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    tracer.close();
+  }
+
+  @Threads(1)
+  @Benchmark
+  public Object finishSpans1() {
+    return finishSpan();
+  }
+
+  @Threads(8)
+  @Benchmark
+  public Object finishSpans8() {
+    return finishSpan();
+  }
+
+  @Threads(64)
+  @Benchmark
+  public Object finishSpans64() {
+    return finishSpan();
+  }
+
+  private Object finishSpan() {
+    trace.registerSpan(span);
+    return trace.onPublish(span);
+  }
+
+  private static DDSpan span(PendingTrace trace, DDId traceId, DDId spanId, DDId parentId) {
+    return DDSpan.create(
+        System.currentTimeMillis() * 1000,
+        new DDSpanContext(
+            traceId,
+            spanId,
+            parentId,
+            null,
+            "service",
+            "operation",
+            "resource",
+            PrioritySampling.SAMPLER_KEEP,
+            SamplingMechanism.DEFAULT,
+            null,
+            Collections.<String, String>emptyMap(),
+            false,
+            "type",
+            0,
+            trace,
+            null,
+            NoopPathwayContext.INSTANCE,
+            false));
+  }
+}
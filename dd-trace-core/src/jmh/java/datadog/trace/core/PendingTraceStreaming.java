@@ -0,0 +1,127 @@
+package datadog.trace.core;
+
+import static datadog.trace.api.config.TracerConfig.PARTIAL_FLUSH_MIN_SPANS;
+import static datadog.trace.api.config.TracerConfig.TRACE_SPAN_STREAMING_CHUNK_SIZE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import datadog.trace.api.DDId;
+import datadog.trace.api.sampling.PrioritySampling;
+import datadog.trace.api.sampling.SamplingMechanism;
+import datadog.trace.bootstrap.instrumentation.api.AgentTracer.NoopPathwayContext;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Finishes the children of a single trace whose root only finishes at the end, like the traces of
+ * a consumer running for hours, and reports how many finished spans the trace holds before its root
+ * finishes and how much heap they retain. Partial flushes are disabled: without span-streaming
+ * (chunk size 0) every span is held until the end, with it at most a chunk is.
+ *
+ * <p>The heap is measured after a full GC, which is part of the measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+public class PendingTraceStreaming {
+
+  CoreTracer tracer;
+
+  @Param({"0", "100"})
+  int streamingChunkSize;
+
+  @Param({"100000", "1000000"})
+  int spans;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class HeldSpans {
+    long heldSpans;
+    long retainedBytes;
+
+    public long heldSpans() {
+      return heldSpans;
+    }
+
+    public long retainedBytes() {
+      return retainedBytes;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void init(TraceCounters counters, Blackhole blackhole) {
+    Properties properties = new Properties();
+    properties.setProperty(PARTIAL_FLUSH_MIN_SPANS, "0");
+    properties.setProperty(TRACE_SPAN_STREAMING_CHUNK_SIZE, String.valueOf(streamingChunkSize));
+    tracer =
+        CoreTracer.builder()
+            .withProperties(properties)
+            .writer(new BlackholeWriter(blackhole, counters, 0))
+            .strictTraceWrites(false)
+            .build();
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    tracer.close();
+  }
+
+  @Benchmark
+  public void longTrace(HeldSpans held) {
+    DDId traceId = DDId.from(1);
+    PendingTrace trace = tracer.createTrace(traceId);
+    // the sampling decision is made by the tracer when the first chunk is written
+    DDSpan root = span(trace, traceId, DDId.from(2), DDId.ZERO, PrioritySampling.UNSET);
+    long heapBefore = usedHeapAfterGc();
+    for (int i = 0; i < spans; ++i) {
+      span(trace, traceId, DDId.from(3 + i), DDId.from(2), PrioritySampling.UNSET).finish();
+    }
+    held.heldSpans = trace.size();
+    held.retainedBytes = Math.max(0, usedHeapAfterGc() - heapBefore);
+    root.finish();
+  }
+
+  private static long usedHeapAfterGc() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static DDSpan span(
+      PendingTrace trace, DDId traceId, DDId spanId, DDId parentId, int samplingPriority) {
+    return DDSpan.create(
+        System.currentTimeMillis() * 1000,
+        new DDSpanContext(
+            traceId,
+            spanId,
+            parentId,
+            null,
+            "service",
+            "operation",
+            "resource",
+            samplingPriority,
+            samplingPriority == PrioritySampling.UNSET
+                ? SamplingMechanism.UNKNOWN
+                : SamplingMechanism.DEFAULT,
+            null,
+            Collections.<String, String>emptyMap(),
+            false,
+            "type",
+            0,
+            trace,
+            null,
+            NoopPathwayContext.INSTANCE,
+            false));
+  }
+}
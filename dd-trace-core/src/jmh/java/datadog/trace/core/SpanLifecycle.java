@@ -0,0 +1,108 @@
+package datadog.trace.core;
+
+import static datadog.trace.api.config.TracerConfig.TRACE_SPAN_POOL_SIZE;
+
+import datadog.trace.common.writer.Writer;
+import java.util.List;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Creates, tags and finishes spans which are released straight away, as the serializer would once
+ * they have been written. Compares pooled (pool size > 0) and non-pooled span tags, run with {@code
+ * -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+public class SpanLifecycle {
+
+  CoreTracer tracer;
+
+  @Param({"0", "1024"})
+  int poolSize;
+
+  @Param({"4", "16"})
+  int tags;
+
+  @Setup(Level.Trial)
+  public void init(Blackhole blackhole) {
+    Properties properties = new Properties();
+    properties.setProperty(TRACE_SPAN_POOL_SIZE, String.valueOf(poolSize));
+    tracer =
+        CoreTracer.builder()
+            .withProperties(properties)
+            .writer(new ReleasingWriter(blackhole))
+            .strictTraceWrites(true)
+            .build();
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    tracer.close();
+  }
+
+  @Threads(1)
+  @Benchmark
+  public void spanLifecycle1() {
+    spanLifecycle();
+  }
+
+  @Threads(8)
+  @Benchmark
+  public void spanLifecycle8() {
+    spanLifecycle();
+  }
+
+  private void spanLifecycle() {
+    DDSpan span = (DDSpan) tracer.buildSpan("operation").start();
+    for (int i = 0; i < tags; ++i) {
+      span.setTag(TAG_NAMES[i], i);
+    }
+    span.finish();
+  }
+
+  private static final String[] TAG_NAMES = new String[16];
+
+  static {
+    for (int i = 0; i < TAG_NAMES.length; ++i) {
+      TAG_NAMES[i] = "tag." + i;
+    }
+  }
+
+  private static final class ReleasingWriter implements Writer {
+    private final Blackhole blackhole;
+
+    ReleasingWriter(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(List<DDSpan> trace) {
+      blackhole.consume(trace);
+      for (DDSpan span : trace) {
+        span.releaseTags();
+      }
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public boolean flush() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void incrementDropCounts(int spanCount) {}
+  }
+}
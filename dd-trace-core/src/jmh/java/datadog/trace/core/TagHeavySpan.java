@@ -0,0 +1,119 @@
+package datadog.trace.core;
+
+import datadog.communication.serialization.msgpack.MsgPackWriter;
+import datadog.trace.api.DDId;
+import datadog.trace.api.sampling.PrioritySampling;
+import datadog.trace.api.sampling.SamplingMechanism;
+import datadog.trace.bootstrap.instrumentation.api.AgentTracer.NoopPathwayContext;
+import datadog.trace.common.writer.LoggingWriter;
+import datadog.trace.common.writer.ddagent.TraceMapperV0_4;
+import datadog.trace.common.writer.ddagent.TraceMapperV0_5;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Setting and serializing spans with many tags, half of them strings and half of them metrics.
+ * {@link #setTagsHashMap()} is the cost of setting the same tags in the map the span tags used to be
+ * stored in.
+ */
+@State(Scope.Benchmark)
+public class TagHeavySpan {
+
+  private static final int SPAN_COUNT = 100;
+
+  private static final TraceMapperV0_4 mapperV4 = new TraceMapperV0_4();
+  private static final TraceMapperV0_5 mapperV5 = new TraceMapperV0_5();
+  private static final CoreTracer tracer =
+      CoreTracer.builder().writer(new LoggingWriter()).strictTraceWrites(true).build();
+
+  @Param({"32", "64"})
+  int tags;
+
+  private String[] tagNames;
+  private final List<DDSpan> spans = new ArrayList<>(SPAN_COUNT);
+  private MsgPackWriter writer;
+
+  @Setup(Level.Trial)
+  public void init(Blackhole blackhole) {
+    writer = new MsgPackWriter(new BlackholeBuffer(blackhole));
+    tagNames = new String[tags];
+    for (int i = 0; i < tags; ++i) {
+      tagNames[i] = "tag." + i;
+    }
+    for (int i = 1; i <= SPAN_COUNT; ++i) {
+      DDSpan span = createSpan(i);
+      setTags(span.context());
+      spans.add(span);
+    }
+  }
+
+  @Benchmark
+  public Object setTags() {
+    DDSpanContext context = createSpan(1).context();
+    setTags(context);
+    return context;
+  }
+
+  @Benchmark
+  public Object setTagsHashMap() {
+    Map<String, Object> map = new HashMap<>(tags * 4 / 3 + 1);
+    for (int i = 0; i < tags; i += 2) {
+      map.put(tagNames[i], "value");
+      map.put(tagNames[i + 1], (double) i);
+    }
+    return map;
+  }
+
+  @Benchmark
+  public void serializeV4() {
+    mapperV4.map(spans, writer);
+  }
+
+  @Benchmark
+  public void serializeV5() {
+    mapperV5.map(spans, writer);
+  }
+
+  private void setTags(DDSpanContext context) {
+    for (int i = 0; i < tags; i += 2) {
+      context.setTag(tagNames[i], "value");
+      context.setMetric(tagNames[i + 1], (double) i);
+    }
+  }
+
+  private static DDSpan createSpan(int iter) {
+    final DDId traceId = DDId.from(iter);
+    final PendingTrace trace = tracer.createTrace(traceId);
+    return DDSpan.create(
+        System.currentTimeMillis() * 1000,
+        new DDSpanContext(
+            traceId,
+            DDId.from(1000 + iter),
+            DDId.ZERO,
+            null,
+            "service",
+            "operation",
+            "resource",
+            PrioritySampling.SAMPLER_KEEP,
+            SamplingMechanism.DEFAULT,
+            null,
+            Collections.<String, String>emptyMap(),
+            false,
+            "type",
+            0,
+            trace,
+            null,
+            NoopPathwayContext.INSTANCE,
+            false));
+  }
+}
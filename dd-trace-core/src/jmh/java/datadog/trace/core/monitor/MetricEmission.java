@@ -0,0 +1,119 @@
+package datadog.trace.core.monitor;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import datadog.trace.api.StatsDClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Emits a counter increment per call from several threads, either formatting a StatsD message per
+ * call, as the StatsD client does before queueing it, or updating the handle of an aggregated
+ * counter flushed once per iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(4)
+public class MetricEmission {
+
+  private static final String[] TAGS = {"priority:sampler_keep"};
+
+  private StatsDClient statsd;
+  private StatsDAggregator aggregator;
+  private StatsDAggregator.Counter counter;
+
+  @Setup(Level.Trial)
+  public void init() {
+    statsd = new FormattingStatsDClient();
+    aggregator = new StatsDAggregator(statsd);
+    counter = aggregator.counter("queue.enqueued.traces", TAGS);
+  }
+
+  @TearDown(Level.Iteration)
+  public void flush() {
+    aggregator.flush();
+  }
+
+  @Benchmark
+  public void perCall() {
+    statsd.count("queue.enqueued.traces", 1, TAGS);
+  }
+
+  @Benchmark
+  public void aggregated() {
+    counter.inc();
+  }
+
+  /** Formats each metric like a DogStatsD message, and only counts the characters formatted. */
+  private static final class FormattingStatsDClient implements StatsDClient {
+    // racy, only there so the messages are used
+    long formatted;
+
+    private void send(String metricName, String value, String type, String... tags) {
+      StringBuilder message =
+          new StringBuilder("datadog.tracer.").append(metricName).append(':').append(value);
+      message.append('|').append(type);
+      if (tags.length > 0) {
+        message.append("|#").append(tags[0]);
+        for (int i = 1; i < tags.length; ++i) {
+          message.append(',').append(tags[i]);
+        }
+      }
+      formatted += message.toString().length();
+    }
+
+    @Override
+    public void incrementCounter(String metricName, String... tags) {
+      send(metricName, "1", "c", tags);
+    }
+
+    @Override
+    public void count(String metricName, long delta, String... tags) {
+      send(metricName, Long.toString(delta), "c", tags);
+    }
+
+    @Override
+    public void gauge(String metricName, long value, String... tags) {
+      send(metricName, Long.toString(value), "g", tags);
+    }
+
+    @Override
+    public void gauge(String metricName, double value, String... tags) {
+      send(metricName, Double.toString(value), "g", tags);
+    }
+
+    @Override
+    public void histogram(String metricName, long value, String... tags) {
+      send(metricName, Long.toString(value), "h", tags);
+    }
+
+    @Override
+    public void histogram(String metricName, double value, String... tags) {
+      send(metricName, Double.toString(value), "h", tags);
+    }
+
+    @Override
+    public void serviceCheck(
+        String serviceCheckName, String status, String message, String... tags) {}
+
+    @Override
+    public void error(Exception error) {}
+
+    @Override
+    public int getErrorCount() {
+      return 0;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,104 @@
+package datadog.trace.core.scopemanager;
+
+import datadog.trace.api.StatsDClient;
+import datadog.trace.bootstrap.instrumentation.api.AgentScope;
+import datadog.trace.bootstrap.instrumentation.api.AgentSpan;
+import datadog.trace.bootstrap.instrumentation.api.ScopeSource;
+import datadog.trace.common.writer.LoggingWriter;
+import datadog.trace.core.CoreTracer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Spawns a million virtual threads which each activate and close a scope, then wait until all of
+ * them have done so, with and without the scope manager's virtual thread mode. The heap used while
+ * all the threads are parked is reported as the {@code parkedHeapMB} counter, run with {@code -prof
+ * gc} to see the allocation rate. Needs Java 21, or Java 19 with {@code --enable-preview}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VirtualThreadScopes {
+
+  private static final CoreTracer tracer =
+      CoreTracer.builder().writer(new LoggingWriter()).strictTraceWrites(true).build();
+
+  @Param({"false", "true"})
+  boolean virtualThreadMode;
+
+  @Param({"1000000"})
+  int threads;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class HeapUsage {
+    /** Megabytes of heap used while all the threads are parked. */
+    public long parkedHeapMB;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      parkedHeapMB = 0;
+    }
+  }
+
+  private ContinuableScopeManager scopeManager;
+  private AgentSpan span;
+  private ExecutorService executor;
+
+  @Setup(Level.Trial)
+  public void init() throws Exception {
+    scopeManager =
+        new ContinuableScopeManager(0, StatsDClient.NO_OP, false, true, virtualThreadMode);
+    // never finished, so the tracer doesn't write it
+    span = tracer.buildSpan("operation").start();
+    // not compiled against Java 21
+    executor =
+        (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+  }
+
+  @TearDown(Level.Trial)
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public long spawn(HeapUsage heapUsage) throws InterruptedException {
+    final CountDownLatch activated = new CountDownLatch(threads);
+    final CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < threads; ++i) {
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              AgentScope scope = scopeManager.activate(span, ScopeSource.INSTRUMENTATION);
+              scope.close();
+              activated.countDown();
+              try {
+                release.await();
+              } catch (InterruptedException ignored) {
+              }
+            }
+          });
+    }
+    activated.await();
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    long used = runtime.totalMemory() - runtime.freeMemory();
+    heapUsage.parkedHeapMB = used >> 20;
+    release.countDown();
+    return used;
+  }
+}
@@ -214,11 +214,16 @@ public class CiTestCycleMapperV1 implements RemoteMapper {
 
     @Override
     public RequestBody toRequest() {
+      return msgpackRequestBodyOf(toByteBuffers());
+    }
+
+    @Override
+    public List<ByteBuffer> toByteBuffers() {
       // If traceCount is 0, we write a map with 0 elements in MsgPack format.
       if (traceCount() == 0) {
-        return msgpackRequestBodyOf(Collections.singletonList(msgpackMapHeader(0)));
+        return Collections.singletonList(msgpackMapHeader(0));
       } else {
-        return msgpackRequestBodyOf(Collections.singletonList(body));
+        return Collections.singletonList(body);
       }
     }
   }
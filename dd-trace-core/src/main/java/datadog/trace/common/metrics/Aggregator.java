@@ -2,7 +2,6 @@ package datadog.trace.common.metrics;
 
 import static datadog.trace.common.metrics.Batch.REPORT;
 import static datadog.trace.common.metrics.ConflatingMetricsAggregator.POISON_PILL;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import datadog.trace.core.util.LRUCache;
 import java.util.Iterator;
@@ -10,11 +9,17 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jctools.maps.NonBlockingHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Aggregates the batches of a shard. The aggregates are only ever touched by the shard's thread:
+ * when a {@link Report} is requested, the thread swaps the aggregated metrics out for empty ones
+ * and hands them over to the report, and the last shard to contribute writes the report.
+ */
 final class Aggregator implements Runnable {
 
   private static final Logger log = LoggerFactory.getLogger(Aggregator.class);
@@ -24,24 +29,20 @@ final class Aggregator implements Runnable {
   private final LRUCache<MetricKey, AggregateMetric> aggregates;
   private final NonBlockingHashMap<MetricKey, Batch> pending;
   private final Set<MetricKey> commonKeys;
-  private final MetricWriter writer;
-  // the reporting interval controls how much history will be buffered
-  // when the agent is unresponsive (only 10 pending requests will be
-  // buffered by OkHttpSink)
-  private final long reportingIntervalNanos;
+  // the metrics swapped out by reports, handed back once written
+  private final Queue<AggregateMetric> recycledMetrics = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Report> requestedReport = new AtomicReference<>();
+  private final int shard;
 
   private boolean dirty;
 
   Aggregator(
-      MetricWriter writer,
       Queue<Batch> batchPool,
       BlockingQueue<Batch> inbox,
       NonBlockingHashMap<MetricKey, Batch> pending,
       final Set<MetricKey> commonKeys,
       int maxAggregates,
-      long reportingInterval,
-      TimeUnit reportingIntervalTimeUnit) {
-    this.writer = writer;
+      int shard) {
     this.batchPool = batchPool;
     this.inbox = inbox;
     this.commonKeys = commonKeys;
@@ -49,13 +50,23 @@ final class Aggregator implements Runnable {
         new LRUCache<>(
             new CommonKeyCleaner(commonKeys), maxAggregates * 4 / 3, 0.75f, maxAggregates);
     this.pending = pending;
-    this.reportingIntervalNanos = reportingIntervalTimeUnit.toNanos(reportingInterval);
+    this.shard = shard;
   }
 
   public void clearAggregates() {
     this.aggregates.clear();
   }
 
+  /**
+   * Requests the shard's contribution to the report, which is made once the batches already in the
+   * inbox are aggregated.
+   */
+  void requestReport(Report report) {
+    requestedReport.set(report);
+    // wakes the thread up, when the inbox is full the request is seen after the next batch instead
+    inbox.offer(REPORT);
+  }
+
   @Override
   public void run() {
     Thread currentThread = Thread.currentThread();
@@ -63,11 +74,9 @@ final class Aggregator implements Runnable {
       try {
         Batch batch = inbox.take();
         if (batch == POISON_PILL) {
-          report(wallClockTime());
+          contributeToRequestedReport();
           break;
-        } else if (batch == REPORT) {
-          report(wallClockTime());
-        } else {
+        } else if (batch != REPORT) {
           MetricKey key = batch.getKey();
           // important that it is still *this* batch pending, must not remove otherwise
           pending.remove(key, batch);
@@ -81,6 +90,7 @@ final class Aggregator implements Runnable {
           // return the batch for reuse
           batchPool.offer(batch);
         }
+        contributeToRequestedReport();
       } catch (InterruptedException e) {
         currentThread.interrupt();
       } catch (Throwable error) {
@@ -90,30 +100,27 @@ final class Aggregator implements Runnable {
     log.debug("metrics aggregator exited");
   }
 
-  private void report(long when) {
-    boolean skipped = true;
+  private void contributeToRequestedReport() {
+    Report report = requestedReport.getAndSet(null);
+    if (null == report) {
+      return;
+    }
+    int count = 0;
+    MetricKey[] keys = null;
+    AggregateMetric[] metrics = null;
     if (dirty) {
-      try {
-        expungeStaleAggregates();
-        if (!aggregates.isEmpty()) {
-          skipped = false;
-          writer.startBucket(aggregates.size(), when, reportingIntervalNanos);
-          for (Map.Entry<MetricKey, AggregateMetric> aggregate : aggregates.entrySet()) {
-            writer.add(aggregate.getKey(), aggregate.getValue());
-            aggregate.getValue().clear();
-          }
-          // note that this may do IO and block
-          writer.finishBucket();
-        }
-      } catch (Throwable error) {
-        writer.reset();
-        log.debug("Error publishing metrics. Dropping payload", error);
-      }
       dirty = false;
+      expungeStaleAggregates();
+      keys = new MetricKey[aggregates.size()];
+      metrics = new AggregateMetric[aggregates.size()];
+      for (Map.Entry<MetricKey, AggregateMetric> aggregate : aggregates.entrySet()) {
+        keys[count] = aggregate.getKey();
+        AggregateMetric recycled = recycledMetrics.poll();
+        metrics[count] = aggregate.setValue(null != recycled ? recycled : new AggregateMetric());
+        ++count;
+      }
     }
-    if (skipped) {
-      log.debug("skipped metrics reporting because no points have changed");
-    }
+    report.contribute(shard, count, keys, metrics, recycledMetrics);
   }
 
   private void expungeStaleAggregates() {
@@ -128,10 +135,6 @@ final class Aggregator implements Runnable {
     }
   }
 
-  private long wallClockTime() {
-    return MILLISECONDS.toNanos(System.currentTimeMillis());
-  }
-
   private static final class CommonKeyCleaner
       implements LRUCache.ExpiryListener<MetricKey, AggregateMetric> {
 
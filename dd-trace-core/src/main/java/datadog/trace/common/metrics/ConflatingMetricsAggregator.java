@@ -4,10 +4,11 @@ import static datadog.communication.ddagent.DDAgentFeaturesDiscovery.V6_METRICS_
 import static datadog.trace.api.Functions.UTF8_ENCODE;
 import static datadog.trace.common.metrics.AggregateMetric.ERROR_TAG;
 import static datadog.trace.common.metrics.AggregateMetric.TOP_LEVEL_TAG;
-import static datadog.trace.common.metrics.Batch.REPORT;
 import static datadog.trace.util.AgentThreadFactory.AgentThread.METRICS_AGGREGATOR;
 import static datadog.trace.util.AgentThreadFactory.THREAD_JOIN_TIMOUT_MS;
 import static datadog.trace.util.AgentThreadFactory.newAgentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import datadog.communication.ddagent.DDAgentFeaturesDiscovery;
@@ -28,12 +29,22 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jctools.maps.NonBlockingHashMap;
 import org.jctools.queues.MpscBlockingConsumerArrayQueue;
 import org.jctools.queues.SpmcArrayQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Aggregates the durations of top level and measured spans into metrics keyed by {@link MetricKey}.
+ *
+ * <p>Spans are conflated into {@link Batch batches} on the publishing threads, and the batches are
+ * aggregated on a background thread. When there are many distinct keys, a single aggregator thread
+ * can't keep up, so the keys can be sharded between several aggregator threads, each with its own
+ * inbox and aggregates. The aggregates of all shards are then reported in one bucket, written by
+ * the last shard to hand its aggregates over to the {@link Report}.
+ */
 public final class ConflatingMetricsAggregator implements MetricsAggregator, EventListener {
 
   private static final Logger log = LoggerFactory.getLogger(ConflatingMetricsAggregator.class);
@@ -44,16 +55,21 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
   private static final DDCache<String, UTF8BytesString> SERVICE_NAMES =
       DDCaches.newFixedSizeCache(32);
 
+  private static final ThreadLocal<MetricKeyProbe> PROBES =
+      new ThreadLocal<MetricKeyProbe>() {
+        @Override
+        protected MetricKeyProbe initialValue() {
+          return new MetricKeyProbe();
+        }
+      };
+
   static final Batch POISON_PILL = Batch.NULL;
 
   private final Set<String> ignoredResources;
-  private final Queue<Batch> batchPool;
-  private final NonBlockingHashMap<MetricKey, Batch> pending;
-  private final NonBlockingHashMap<MetricKey, MetricKey> keys;
-  private final Thread thread;
-  private final BlockingQueue<Batch> inbox;
+  private final Shard[] shards;
   private final Sink sink;
-  private final Aggregator aggregator;
+  private final MetricWriter metricWriter;
+  private final AtomicReference<Report> lastReport = new AtomicReference<>();
   private final long reportingInterval;
   private final TimeUnit reportingIntervalTimeUnit;
   private final DDAgentFeaturesDiscovery features;
@@ -74,7 +90,8 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
             false,
             DEFAULT_HEADERS),
         config.getTracerMetricsMaxAggregates(),
-        config.getTracerMetricsMaxPending());
+        config.getTracerMetricsMaxPending(),
+        config.getTracerMetricsAggregatorShards());
   }
 
   ConflatingMetricsAggregator(
@@ -84,7 +101,27 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
       Sink sink,
       int maxAggregates,
       int queueSize) {
-    this(wellKnownTags, ignoredResources, features, sink, maxAggregates, queueSize, 10, SECONDS);
+    this(wellKnownTags, ignoredResources, features, sink, maxAggregates, queueSize, 1);
+  }
+
+  ConflatingMetricsAggregator(
+      WellKnownTags wellKnownTags,
+      Set<String> ignoredResources,
+      DDAgentFeaturesDiscovery features,
+      Sink sink,
+      int maxAggregates,
+      int queueSize,
+      int shardCount) {
+    this(
+        ignoredResources,
+        features,
+        sink,
+        new SerializingMetricWriter(wellKnownTags, sink),
+        maxAggregates,
+        queueSize,
+        10,
+        SECONDS,
+        shardCount);
   }
 
   ConflatingMetricsAggregator(
@@ -116,24 +153,40 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
       int queueSize,
       long reportingInterval,
       TimeUnit timeUnit) {
+    this(
+        ignoredResources,
+        features,
+        sink,
+        metricWriter,
+        maxAggregates,
+        queueSize,
+        reportingInterval,
+        timeUnit,
+        1);
+  }
+
+  ConflatingMetricsAggregator(
+      Set<String> ignoredResources,
+      DDAgentFeaturesDiscovery features,
+      Sink sink,
+      MetricWriter metricWriter,
+      int maxAggregates,
+      int queueSize,
+      long reportingInterval,
+      TimeUnit timeUnit,
+      int shardCount) {
     this.ignoredResources = ignoredResources;
-    this.inbox = new MpscBlockingConsumerArrayQueue<>(queueSize);
-    this.batchPool = new SpmcArrayQueue<>(maxAggregates);
-    this.pending = new NonBlockingHashMap<>(maxAggregates * 4 / 3);
-    this.keys = new NonBlockingHashMap<>();
     this.features = features;
     this.sink = sink;
-    this.aggregator =
-        new Aggregator(
-            metricWriter,
-            batchPool,
-            inbox,
-            pending,
-            keys.keySet(),
-            maxAggregates,
-            reportingInterval,
-            timeUnit);
-    this.thread = newAgentThread(METRICS_AGGREGATOR, aggregator);
+    this.metricWriter = metricWriter;
+    this.shards = new Shard[Math.max(shardCount, 1)];
+    // each shard gets its share of the aggregates, but a full inbox
+    int maxShardAggregates = Math.max(maxAggregates / shards.length, 1);
+    for (int i = 0; i < shards.length; ++i) {
+      shards[i] =
+          new Shard(
+              shards.length == 1 ? null : String.valueOf(i), i, maxShardAggregates, queueSize);
+    }
     this.reportingInterval = reportingInterval;
     this.reportingIntervalTimeUnit = timeUnit;
   }
@@ -145,7 +198,9 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
     }
     if (features.supportsMetrics()) {
       sink.register(this);
-      thread.start();
+      for (Shard shard : shards) {
+        shard.thread.start();
+      }
       cancellation =
           AgentTaskScheduler.INSTANCE.scheduleAtFixedRate(
               new ReportTask(),
@@ -161,16 +216,29 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
 
   @Override
   public boolean report() {
-    boolean published;
-    int attempts = 0;
-    do {
-      published = inbox.offer(REPORT);
-      ++attempts;
-    } while (!published && attempts < 10);
-    if (!published) {
-      log.debug("Skipped metrics reporting because the queue is full");
+    return null != requestReport();
+  }
+
+  /** @return the report requested from all shards, or {@code null} if one is still in progress */
+  Report requestReport() {
+    Report previous = lastReport.get();
+    if (null != previous && !previous.isDone()) {
+      log.debug("Skipped metrics reporting because the previous report is still in progress");
+      return null;
+    }
+    Report report =
+        new Report(
+            metricWriter,
+            MILLISECONDS.toNanos(System.currentTimeMillis()),
+            reportingIntervalTimeUnit.toNanos(reportingInterval),
+            shards.length);
+    if (!lastReport.compareAndSet(previous, report)) {
+      return null;
     }
-    return published;
+    for (Shard shard : shards) {
+      shard.aggregator.requestReport(report);
+    }
+    return report;
   }
 
   @Override
@@ -192,18 +260,32 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
   }
 
   private boolean publish(CoreSpan<?> span, boolean isTopLevel) {
-    MetricKey newKey =
-        new MetricKey(
-            span.getResourceName(),
-            SERVICE_NAMES.computeIfAbsent(span.getServiceName(), UTF8_ENCODE),
-            span.getOperationName(),
-            span.getType(),
-            span.getHttpStatusCode());
+    CharSequence resourceName = span.getResourceName();
+    String serviceName = span.getServiceName();
+    CharSequence operationName = span.getOperationName();
+    CharSequence type = span.getType();
+    short httpStatusCode = span.getHttpStatusCode();
+    // most spans have a key which is already known, look it up without allocating a new one
+    MetricKeyProbe probe =
+        PROBES.get().set(resourceName, serviceName, operationName, type, httpStatusCode);
+    Shard shard = shardFor(probe.hashCode());
+    MetricKey key = shard.keys.get(probe);
+    probe.clear();
+    NonBlockingHashMap<MetricKey, Batch> pending = shard.pending;
     boolean isNewKey = false;
-    MetricKey key = keys.putIfAbsent(newKey, newKey);
     if (null == key) {
-      key = newKey;
-      isNewKey = true;
+      MetricKey newKey =
+          new MetricKey(
+              resourceName,
+              SERVICE_NAMES.computeIfAbsent(serviceName, UTF8_ENCODE),
+              operationName,
+              type,
+              httpStatusCode);
+      key = shard.keys.putIfAbsent(newKey, newKey);
+      if (null == key) {
+        key = newKey;
+        isNewKey = true;
+      }
     }
     long tag = (span.getError() > 0 ? ERROR_TAG : 0L) | (isTopLevel ? TOP_LEVEL_TAG : 0L);
     long durationNanos = span.getDurationNano();
@@ -222,18 +304,25 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
       key = batch.getKey();
       isNewKey = false;
     }
-    batch = newBatch(key);
+    batch = newBatch(shard.batchPool, key);
     batch.add(tag, durationNanos);
     // overwrite the last one if present, it was already full
     // or had been consumed by the time we tried to add to it
     pending.put(key, batch);
     // must offer to the queue after adding to pending
-    inbox.offer(batch);
+    shard.inbox.offer(batch);
     // force keep keys we haven't seen before or errors
     return isNewKey || span.getError() > 0;
   }
 
-  private Batch newBatch(MetricKey key) {
+  private Shard shardFor(int keyHash) {
+    if (shards.length == 1) {
+      return shards[0];
+    }
+    return shards[(keyHash & Integer.MAX_VALUE) % shards.length];
+  }
+
+  private static Batch newBatch(Queue<Batch> batchPool, MetricKey key) {
     Batch batch = batchPool.poll();
     if (null == batch) {
       return new Batch(key);
@@ -245,14 +334,38 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
     if (null != cancellation) {
       cancellation.cancel();
     }
-    inbox.offer(POISON_PILL);
+    // the aggregates left are reported as the shards stop
+    requestFinalReport();
+    for (Shard shard : shards) {
+      shard.inbox.offer(POISON_PILL);
+    }
+  }
+
+  /** Requests a last report, once the report in progress, if any, is written. */
+  private void requestFinalReport() {
+    long deadline = System.nanoTime() + MILLISECONDS.toNanos(THREAD_JOIN_TIMOUT_MS);
+    try {
+      while (null == requestReport()) {
+        Report inProgress = lastReport.get();
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0
+            || (null != inProgress && !inProgress.await(remaining, NANOSECONDS))) {
+          log.debug("Skipped the final metrics report because the previous one didn't complete");
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   @Override
   public void close() {
     stop();
     try {
-      thread.join(THREAD_JOIN_TIMOUT_MS);
+      for (Shard shard : shards) {
+        shard.thread.join(THREAD_JOIN_TIMOUT_MS);
+      }
     } catch (InterruptedException ignored) {
     }
   }
@@ -282,11 +395,32 @@ public final class ConflatingMetricsAggregator implements MetricsAggregator, Eve
       if (null != cancellation) {
         cancellation.cancel();
       }
-      this.thread.interrupt();
-      this.pending.clear();
-      this.batchPool.clear();
-      this.inbox.clear();
-      this.aggregator.clearAggregates();
+      for (Shard shard : shards) {
+        shard.thread.interrupt();
+        shard.pending.clear();
+        shard.batchPool.clear();
+        shard.inbox.clear();
+        shard.aggregator.clearAggregates();
+      }
+    }
+  }
+
+  private static final class Shard {
+    final BlockingQueue<Batch> inbox;
+    final Queue<Batch> batchPool;
+    final NonBlockingHashMap<MetricKey, Batch> pending;
+    final NonBlockingHashMap<MetricKey, MetricKey> keys;
+    final Aggregator aggregator;
+    final Thread thread;
+
+    Shard(String name, int index, int maxAggregates, int queueSize) {
+      this.inbox = new MpscBlockingConsumerArrayQueue<>(queueSize);
+      this.batchPool = new SpmcArrayQueue<>(maxAggregates);
+      this.pending = new NonBlockingHashMap<>(maxAggregates * 4 / 3);
+      this.keys = new NonBlockingHashMap<>();
+      this.aggregator =
+          new Aggregator(batchPool, inbox, pending, keys.keySet(), maxAggregates, index);
+      this.thread = newAgentThread(METRICS_AGGREGATOR, name, aggregator);
     }
   }
 
@@ -24,14 +24,19 @@ public final class MetricKey {
     this.operationName = null == operationName ? EMPTY : UTF8BytesString.create(operationName);
     this.type = null == type ? EMPTY : UTF8BytesString.create(type);
     this.httpStatusCode = httpStatusCode;
+    this.hash =
+        hash(
+            this.resource.hashCode(),
+            this.service.hashCode(),
+            this.operationName.hashCode(),
+            this.type.hashCode(),
+            httpStatusCode);
+  }
+
+  static int hash(int resource, int service, int operationName, int type, int httpStatusCode) {
     // unrolled polynomial hashcode which avoids allocating varargs
     // the constants are 31^4, 31^3, 31^2, 31^1, 31^0
-    this.hash =
-        923521 * this.resource.hashCode()
-            + 29791 * this.service.hashCode()
-            + 961 * this.operationName.hashCode()
-            + 31 * this.type.hashCode()
-            + httpStatusCode;
+    return 923521 * resource + 29791 * service + 961 * operationName + 31 * type + httpStatusCode;
   }
 
   public UTF8BytesString getResource() {
@@ -71,6 +76,29 @@ public final class MetricKey {
     return false;
   }
 
+  /** @return whether this is the key a {@link MetricKeyProbe} with these fields stands for */
+  boolean matches(
+      int hash,
+      CharSequence resource,
+      CharSequence service,
+      CharSequence operationName,
+      CharSequence type,
+      int httpStatusCode) {
+    return this.hash == hash
+        && this.httpStatusCode == httpStatusCode
+        && contentEquals(this.resource, resource)
+        && contentEquals(this.service, service)
+        && contentEquals(this.operationName, operationName)
+        && contentEquals(this.type, type);
+  }
+
+  private static boolean contentEquals(UTF8BytesString field, CharSequence value) {
+    if (null == value) {
+      return field.length() == 0;
+    }
+    return field == value || field.toString().contentEquals(value);
+  }
+
   @Override
   public int hashCode() {
     return hash;
@@ -0,0 +1,72 @@
+package datadog.trace.common.metrics;
+
+import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString;
+
+/**
+ * A mutable stand-in for a {@link MetricKey}, which allows looking up the key of a span without
+ * allocating a key, or encoding its fields, when the key is already known.
+ *
+ * <p>A probe is equal to the key with the same fields, but keys aren't equal to probes, so probes
+ * must only ever be the argument of lookups, and must not be stored.
+ */
+final class MetricKeyProbe {
+
+  private CharSequence resource;
+  private CharSequence service;
+  private CharSequence operationName;
+  private CharSequence type;
+  private int httpStatusCode;
+  private int hash;
+
+  MetricKeyProbe set(
+      CharSequence resource,
+      CharSequence service,
+      CharSequence operationName,
+      CharSequence type,
+      int httpStatusCode) {
+    this.resource = resource;
+    this.service = service;
+    this.operationName = operationName;
+    this.type = type;
+    this.httpStatusCode = httpStatusCode;
+    this.hash =
+        MetricKey.hash(
+            hash(resource), hash(service), hash(operationName), hash(type), httpStatusCode);
+    return this;
+  }
+
+  /** Drops the references to the span's fields. */
+  void clear() {
+    this.resource = null;
+    this.service = null;
+    this.operationName = null;
+    this.type = null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof MetricKey
+        && ((MetricKey) o)
+            .matches(hash, resource, service, operationName, type, httpStatusCode);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /** Same as the hash code of the {@link UTF8BytesString} the key would hold. */
+  private static int hash(CharSequence sequence) {
+    if (null == sequence) {
+      return 0;
+    }
+    if (sequence instanceof String || sequence instanceof UTF8BytesString) {
+      return sequence.hashCode();
+    }
+    int hash = 0;
+    for (int i = 0; i < sequence.length(); ++i) {
+      hash = 31 * hash + sequence.charAt(i);
+    }
+    return hash;
+  }
+}
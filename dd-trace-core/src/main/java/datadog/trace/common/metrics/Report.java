@@ -0,0 +1,104 @@
+package datadog.trace.common.metrics;
+
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A report of the aggregates of all the shards, in a single bucket. Each shard's thread contributes
+ * the metrics it swapped out of its aggregates, and the thread of the last shard to contribute
+ * writes the bucket, so the writer is only used by one thread at a time and no shard waits for
+ * another. Only one report is in progress at a time.
+ */
+final class Report {
+
+  private static final Logger log = LoggerFactory.getLogger(Report.class);
+
+  private final MetricWriter writer;
+  private final long when;
+  private final long reportingIntervalNanos;
+  private final int[] counts;
+  private final MetricKey[][] keys;
+  private final AggregateMetric[][] metrics;
+  private final Queue<?>[] recycledMetrics;
+  private final AtomicInteger remaining;
+  private final CountDownLatch written = new CountDownLatch(1);
+
+  Report(MetricWriter writer, long when, long reportingIntervalNanos, int shards) {
+    this.writer = writer;
+    this.when = when;
+    this.reportingIntervalNanos = reportingIntervalNanos;
+    this.counts = new int[shards];
+    this.keys = new MetricKey[shards][];
+    this.metrics = new AggregateMetric[shards][];
+    this.recycledMetrics = new Queue<?>[shards];
+    this.remaining = new AtomicInteger(shards);
+  }
+
+  /** Hands over the metrics of a shard, writing the report when it's the last shard to do so. */
+  void contribute(
+      int shard,
+      int count,
+      MetricKey[] keys,
+      AggregateMetric[] metrics,
+      Queue<AggregateMetric> recycledMetrics) {
+    this.counts[shard] = count;
+    this.keys[shard] = keys;
+    this.metrics[shard] = metrics;
+    this.recycledMetrics[shard] = recycledMetrics;
+    // the decrement publishes the contribution to the thread which writes the report
+    if (remaining.decrementAndGet() == 0) {
+      try {
+        write();
+      } finally {
+        written.countDown();
+      }
+    }
+  }
+
+  boolean isDone() {
+    return written.getCount() == 0;
+  }
+
+  /** @return whether the report was written, or skipped as empty, within the timeout */
+  boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    return written.await(timeout, unit);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void write() {
+    int count = 0;
+    for (int shardCount : counts) {
+      count += shardCount;
+    }
+    if (count == 0) {
+      log.debug("skipped metrics reporting because no points have changed");
+      return;
+    }
+    try {
+      writer.startBucket(count, when, reportingIntervalNanos);
+      for (int shard = 0; shard < counts.length; ++shard) {
+        for (int i = 0; i < counts[shard]; ++i) {
+          writer.add(keys[shard][i], metrics[shard][i]);
+        }
+      }
+      // note that this may do IO and block, but the shards keep aggregating meanwhile
+      writer.finishBucket();
+    } catch (Throwable error) {
+      writer.reset();
+      log.debug("Error publishing metrics. Dropping payload", error);
+    } finally {
+      for (int shard = 0; shard < counts.length; ++shard) {
+        Queue<AggregateMetric> recycled = (Queue<AggregateMetric>) recycledMetrics[shard];
+        for (int i = 0; i < counts[shard]; ++i) {
+          AggregateMetric metric = metrics[shard][i];
+          metric.clear();
+          recycled.offer(metric);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package datadog.trace.common.sampling;
+
+import datadog.trace.api.cache.DDCache;
+import datadog.trace.api.cache.DDCaches;
+import datadog.trace.api.function.Function;
+import datadog.trace.common.sampling.SamplingRule.AlwaysMatchesSamplingRule;
+import datadog.trace.common.sampling.SamplingRule.OperationSamplingRule;
+import datadog.trace.common.sampling.SamplingRule.PatternMatchSamplingRule;
+import datadog.trace.common.sampling.SamplingRule.ServiceSamplingRule;
+import datadog.trace.core.CoreSpan;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first of a list of sampling rules which matches a span, without evaluating the rules
+ * one by one for each span.
+ *
+ * <p>Service and operation rules only depend on the span's service or operation name, so the first
+ * matching rule is the first of the first service rule matching the service name, the first
+ * operation rule matching the operation name, and the first rule which always matches. The first
+ * matching rule for a name is computed once and cached. Computing it doesn't need regular
+ * expressions for the usual rules: literal names are looked up in a map, and names ending or
+ * starting with {@code .*} are matched as prefixes or suffixes.
+ *
+ * <p>Rules of other types may depend on anything, so they are still evaluated for each span, but
+ * only when they come before the first matching rule found as above.
+ */
+final class SamplingRuleMatcher<T extends CoreSpan<T>> {
+
+  private static final int NO_MATCH = Integer.MAX_VALUE;
+  private static final String WILDCARD = ".*";
+
+  private final List<SamplingRule<T>> rules;
+  private final NameMatcher serviceMatcher;
+  private final NameMatcher operationMatcher;
+  private final DDCache<String, Integer> serviceMatches = DDCaches.newFixedSizeCache(256);
+  private final DDCache<String, Integer> operationMatches = DDCaches.newFixedSizeCache(256);
+  private final int firstAlwaysMatching;
+  // the indexes of the rules which are evaluated for each span, in order
+  private final int[] dynamicRules;
+
+  SamplingRuleMatcher(List<SamplingRule<T>> rules) {
+    this.rules = rules;
+    this.serviceMatcher = new NameMatcher();
+    this.operationMatcher = new NameMatcher();
+    int firstAlwaysMatching = NO_MATCH;
+    List<Integer> dynamicRules = new ArrayList<>();
+    for (int i = 0; i < rules.size(); ++i) {
+      SamplingRule<T> rule = rules.get(i);
+      Class<?> type = rule.getClass();
+      if (type == ServiceSamplingRule.class) {
+        serviceMatcher.add(i, ((PatternMatchSamplingRule<T>) rule).getRegex());
+      } else if (type == OperationSamplingRule.class) {
+        operationMatcher.add(i, ((PatternMatchSamplingRule<T>) rule).getRegex());
+      } else if (type == AlwaysMatchesSamplingRule.class) {
+        firstAlwaysMatching = Math.min(firstAlwaysMatching, i);
+      } else {
+        dynamicRules.add(i);
+      }
+    }
+    this.firstAlwaysMatching = firstAlwaysMatching;
+    this.dynamicRules = new int[dynamicRules.size()];
+    for (int i = 0; i < this.dynamicRules.length; ++i) {
+      this.dynamicRules[i] = dynamicRules.get(i);
+    }
+  }
+
+  /** @return the first rule matching the span, or null if none does */
+  SamplingRule<T> firstMatch(T span) {
+    int first = firstAlwaysMatching;
+    if (!serviceMatcher.isEmpty()) {
+      first = Math.min(first, firstMatch(serviceMatches, serviceMatcher, span.getServiceName()));
+    }
+    if (!operationMatcher.isEmpty()) {
+      CharSequence operationName = span.getOperationName();
+      first =
+          Math.min(
+              first,
+              firstMatch(
+                  operationMatches,
+                  operationMatcher,
+                  null == operationName ? null : operationName.toString()));
+    }
+    for (int rule : dynamicRules) {
+      if (rule > first) {
+        break;
+      }
+      if (rules.get(rule).matches(span)) {
+        return rules.get(rule);
+      }
+    }
+    return first == NO_MATCH ? null : rules.get(first);
+  }
+
+  private static int firstMatch(
+      DDCache<String, Integer> matches, NameMatcher matcher, String name) {
+    // null never matches, as with the rules themselves
+    return null == name ? NO_MATCH : matches.computeIfAbsent(name, matcher);
+  }
+
+  /** Finds the index of the first rule matching a name. */
+  private static final class NameMatcher implements Function<String, Integer> {
+    // the first rule of each literal name
+    private final Map<String, Integer> literals = new HashMap<>();
+    // the rules which need more than a lookup, in order
+    private final List<NameRule> rules = new ArrayList<>();
+    private boolean empty = true;
+
+    void add(int index, String regex) {
+      empty = false;
+      String literal = literal(regex);
+      if (null != literal) {
+        if (!literals.containsKey(literal)) {
+          literals.put(literal, index);
+        }
+        return;
+      }
+      if (regex.length() > WILDCARD.length()) {
+        String prefix = literal(regex.substring(0, regex.length() - WILDCARD.length()));
+        if (null != prefix && regex.endsWith(WILDCARD)) {
+          rules.add(new NameRule(index, prefix, null, null));
+          return;
+        }
+        String suffix = literal(regex.substring(WILDCARD.length()));
+        if (null != suffix && regex.startsWith(WILDCARD)) {
+          rules.add(new NameRule(index, null, suffix, null));
+          return;
+        }
+      } else if (regex.equals(WILDCARD)) {
+        rules.add(new NameRule(index, "", null, null));
+        return;
+      }
+      rules.add(new NameRule(index, null, null, Pattern.compile(regex)));
+    }
+
+    boolean isEmpty() {
+      return empty;
+    }
+
+    @Override
+    public Integer apply(String name) {
+      Integer literal = literals.get(name);
+      int first = null == literal ? NO_MATCH : literal;
+      for (NameRule rule : rules) {
+        if (rule.index > first) {
+          break;
+        }
+        if (rule.matches(name)) {
+          return rule.index;
+        }
+      }
+      return first;
+    }
+
+    /**
+     * @return the string matched by the regular expression if it only matches one, with the escaped
+     *     characters unescaped, null otherwise
+     */
+    private static String literal(String regex) {
+      StringBuilder literal = null;
+      for (int i = 0; i < regex.length(); ++i) {
+        char c = regex.charAt(i);
+        if (c == '\\') {
+          // an escaped character which isn't a letter or a digit stands for itself
+          if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+            return null;
+          }
+          if (null == literal) {
+            literal = new StringBuilder(regex.length()).append(regex, 0, i);
+          }
+          literal.append(regex.charAt(++i));
+        } else if ("^$.|?*+()[]{}".indexOf(c) >= 0) {
+          return null;
+        } else if (null != literal) {
+          literal.append(c);
+        }
+      }
+      return null == literal ? regex : literal.toString();
+    }
+  }
+
+  private static final class NameRule {
+    final int index;
+    final String prefix;
+    final String suffix;
+    final Pattern pattern;
+
+    NameRule(int index, String prefix, String suffix, Pattern pattern) {
+      this.index = index;
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.pattern = pattern;
+    }
+
+    boolean matches(String name) {
+      if (null != prefix) {
+        return name.startsWith(prefix) && noLineTerminator(name, prefix.length(), name.length());
+      }
+      if (null != suffix) {
+        return name.endsWith(suffix)
+            && noLineTerminator(name, 0, name.length() - suffix.length());
+      }
+      return pattern.matcher(name).matches();
+    }
+
+    /** {@code .*} doesn't match line terminators. */
+    private static boolean noLineTerminator(String name, int from, int to) {
+      for (int i = from; i < to; ++i) {
+        char c = name.charAt(i);
+        if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -40,6 +40,9 @@ public class DDAgentWriter extends RemoteWriter {
     boolean traceAgentV05Enabled = Config.get().isTraceAgentV05Enabled();
     boolean metricsReportingEnabled = Config.get().isTracerMetricsEnabled();
     boolean alwaysFlush = false;
+    int serializerShards = 1;
+    int asyncSendBuffers = 0;
+    boolean directBuffers = false;
 
     private DDAgentApi agentApi;
     private Prioritization prioritization;
@@ -120,6 +123,21 @@ public class DDAgentWriter extends RemoteWriter {
       return this;
     }
 
+    public DDAgentWriterBuilder serializerShards(int serializerShards) {
+      this.serializerShards = serializerShards;
+      return this;
+    }
+
+    public DDAgentWriterBuilder asyncSendBuffers(int asyncSendBuffers) {
+      this.asyncSendBuffers = asyncSendBuffers;
+      return this;
+    }
+
+    public DDAgentWriterBuilder directBuffers(boolean directBuffers) {
+      this.directBuffers = directBuffers;
+      return this;
+    }
+
     public DDAgentWriter build() {
       final HttpUrl agentUrl = HttpUrl.get("http://" + agentHost + ":" + traceAgentPort);
       final OkHttpClient client =
@@ -136,14 +154,25 @@ public class DDAgentWriter extends RemoteWriter {
             new DDAgentApi(client, agentUrl, featureDiscovery, monitoring, metricsReportingEnabled);
       }
 
-      final DDAgentMapperDiscovery mapperDiscovery = new DDAgentMapperDiscovery(featureDiscovery);
-      final PayloadDispatcher dispatcher =
-          new PayloadDispatcher(mapperDiscovery, agentApi, healthMetrics, monitoring);
+      // each shard serializes with its own mapper, but they all send through the same api
+      final PayloadDispatcher[] dispatchers = new PayloadDispatcher[Math.max(serializerShards, 1)];
+      for (int i = 0; i < dispatchers.length; ++i) {
+        dispatchers[i] =
+            new PayloadDispatcher(
+                new DDAgentMapperDiscovery(featureDiscovery),
+                agentApi,
+                healthMetrics,
+                monitoring,
+                asyncSendBuffers,
+                directBuffers,
+                dispatchers.length == 1 ? null : String.valueOf(i));
+      }
+      final PayloadDispatcher dispatcher = dispatchers[0];
       final TraceProcessingWorker traceProcessingWorker =
           new TraceProcessingWorker(
               traceBufferSize,
               healthMetrics,
-              dispatcher,
+              dispatchers,
               featureDiscovery,
               null == prioritization ? FAST_LANE : prioritization,
               flushFrequencySeconds,
@@ -159,6 +188,8 @@ public class DDAgentWriter extends RemoteWriter {
     }
   }
 
+  private final DDAgentApi agentApi;
+
   private DDAgentWriter(
       DDAgentFeaturesDiscovery discovery,
       DDAgentApi api,
@@ -167,6 +198,14 @@ public class DDAgentWriter extends RemoteWriter {
       TraceProcessingWorker worker,
       boolean alwaysFlush) {
     super(api, worker, dispatcher, healthMetrics, alwaysFlush);
+    this.agentApi = api;
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    // nothing is sent anymore once the worker is closed
+    agentApi.close();
   }
 
   private DDAgentWriter(
@@ -16,6 +16,8 @@ public class MultiWriter implements Writer {
   private static final Pattern COMMA_PATTERN = Pattern.compile(",", Pattern.LITERAL);
 
   private final Writer[] writers;
+  /** The writers which release the tags of the spans they serialized, see DDSpan#releaseTags */
+  private final int releasingWriters;
 
   public MultiWriter(
       Config config,
@@ -33,10 +35,22 @@ public class MultiWriter implements Writer {
           WriterFactory.createWriter(config, commObjects, sampler, statsDClient, writerConfig);
       i++;
     }
+    this.releasingWriters = countReleasingWriters(writers);
   }
 
   public MultiWriter(Writer[] writers) {
     this.writers = writers.clone();
+    this.releasingWriters = countReleasingWriters(this.writers);
+  }
+
+  private static int countReleasingWriters(final Writer[] writers) {
+    int releasingWriters = 0;
+    for (Writer writer : writers) {
+      if (writer instanceof RemoteWriter) {
+        releasingWriters++;
+      }
+    }
+    return releasingWriters;
   }
 
   @Override
@@ -50,11 +64,23 @@ public class MultiWriter implements Writer {
 
   @Override
   public void write(List<DDSpan> trace) {
+    if (releasingWriters > 0) {
+      // one reference per remote writer, which releases the tags once it has serialized the
+      // trace, and one held until every writer has been given the trace
+      for (DDSpan span : trace) {
+        span.retainTags(releasingWriters);
+      }
+    }
     for (Writer writer : writers) {
       if (writer != null) {
         writer.write(trace);
       }
     }
+    if (releasingWriters > 0) {
+      for (DDSpan span : trace) {
+        span.releaseTags();
+      }
+    }
   }
 
   @Override
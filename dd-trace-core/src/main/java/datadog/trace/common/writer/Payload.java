@@ -10,6 +10,7 @@ import static datadog.communication.serialization.msgpack.MsgPackWriter.MAP32;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import okhttp3.RequestBody;
 
 public abstract class Payload {
@@ -51,12 +52,27 @@ public abstract class Payload {
     return droppedSpans;
   }
 
+  /**
+   * Returns a payload which doesn't share any buffer owned by the mapper which created it, so it
+   * can still be sent after the mapper has been reset. The body is never copied, whoever supplied
+   * it remains responsible for it.
+   */
+  public Payload detach() {
+    return this;
+  }
+
   public abstract int sizeInBytes();
 
   public abstract void writeTo(WritableByteChannel channel) throws IOException;
 
   public abstract RequestBody toRequest();
 
+  /**
+   * The buffers making up the serialized payload, in order, so they can be written to a connection
+   * without being copied. Writing them changes their positions.
+   */
+  public abstract List<ByteBuffer> toByteBuffers();
+
   protected int msgpackArrayHeaderSize(int count) {
     if (count < 0x10) {
       return 1;
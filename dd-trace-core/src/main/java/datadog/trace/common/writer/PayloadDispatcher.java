@@ -2,10 +2,11 @@ package datadog.trace.common.writer;
 
 import datadog.communication.monitor.Monitoring;
 import datadog.communication.monitor.Recording;
-import datadog.communication.serialization.ByteBufferConsumer;
 import datadog.communication.serialization.FlushingBuffer;
+import datadog.communication.serialization.HandoffByteBufferConsumer;
 import datadog.communication.serialization.WritableFormatter;
 import datadog.communication.serialization.msgpack.MsgPackWriter;
+import datadog.trace.common.writer.ddagent.FlushEvent;
 import datadog.trace.core.CoreSpan;
 import datadog.trace.core.monitor.HealthMetrics;
 import java.nio.ByteBuffer;
@@ -15,7 +16,14 @@ import org.jctools.counters.FixedSizeStripedLongCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PayloadDispatcher implements ByteBufferConsumer {
+/**
+ * Serializes traces into payloads and sends them to the {@link RemoteApi}.
+ *
+ * <p>By default payloads are sent on the serializing thread as soon as a buffer is full. When
+ * configured with send buffers, payloads are handed off to a {@link PayloadSender} instead so that
+ * serialization isn't held up by I/O.
+ */
+public class PayloadDispatcher implements HandoffByteBufferConsumer {
 
   private static final Logger log = LoggerFactory.getLogger(PayloadDispatcher.class);
 
@@ -23,8 +31,12 @@ public class PayloadDispatcher implements ByteBufferConsumer {
   private final RemoteMapperDiscovery mapperDiscovery;
   private final HealthMetrics healthMetrics;
   private final Monitoring monitoring;
+  private final int sendBuffers;
+  private final boolean directBuffers;
+  private final String shardName;
 
   private Recording batchTimer;
+  private PayloadSender sender;
   private RemoteMapper mapper;
   private WritableFormatter packer;
 
@@ -38,10 +50,42 @@ public class PayloadDispatcher implements ByteBufferConsumer {
       RemoteApi api,
       HealthMetrics healthMetrics,
       Monitoring monitoring) {
+    this(mapperDiscovery, api, healthMetrics, monitoring, 0, false);
+  }
+
+  public PayloadDispatcher(
+      RemoteMapperDiscovery mapperDiscovery,
+      RemoteApi api,
+      HealthMetrics healthMetrics,
+      Monitoring monitoring,
+      int sendBuffers,
+      boolean directBuffers) {
+    this(mapperDiscovery, api, healthMetrics, monitoring, sendBuffers, directBuffers, null);
+  }
+
+  /**
+   * @param sendBuffers the number of buffers payloads can be serialized into while another payload
+   *     is being sent, 0 to send synchronously from the serializing thread.
+   * @param directBuffers whether to serialize into direct buffers, for transports which can write
+   *     them to the connection without copying.
+   * @param shardName suffix of the name of the sender thread, to tell apart the senders of the
+   *     serializer shards, or null when there is a single shard.
+   */
+  public PayloadDispatcher(
+      RemoteMapperDiscovery mapperDiscovery,
+      RemoteApi api,
+      HealthMetrics healthMetrics,
+      Monitoring monitoring,
+      int sendBuffers,
+      boolean directBuffers,
+      String shardName) {
     this.mapperDiscovery = mapperDiscovery;
     this.api = api;
     this.healthMetrics = healthMetrics;
     this.monitoring = monitoring;
+    this.sendBuffers = sendBuffers;
+    this.directBuffers = directBuffers;
+    this.shardName = shardName;
   }
 
   void flush() {
@@ -50,6 +94,25 @@ public class PayloadDispatcher implements ByteBufferConsumer {
     }
   }
 
+  /**
+   * Defers syncing a flush event until every payload flushed so far has actually been sent.
+   *
+   * @return false if payloads are sent synchronously and the caller should sync the event itself.
+   */
+  boolean syncWhenSent(FlushEvent event) {
+    if (null == sender) {
+      return false;
+    }
+    sender.syncWhenSent(event);
+    return true;
+  }
+
+  void close() {
+    if (null != sender) {
+      sender.close();
+    }
+  }
+
   public void onDroppedTrace(int spanCount) {
     droppedSpanCount.inc(spanCount);
     droppedTraceCount.inc();
@@ -57,10 +120,9 @@ public class PayloadDispatcher implements ByteBufferConsumer {
 
   void addTrace(List<? extends CoreSpan<?>> trace) {
     selectMapper();
-    // the call below is blocking and will trigger IO if a flush is necessary
-    // there are alternative approaches to avoid blocking here, such as
-    // introducing an unbound queue and another thread to do the IO
-    // however, we can't block the application threads from here.
+    // this runs on the serializer thread, never on an application thread: when the buffer fills
+    // up, the payload is handed to the sender, waiting for a free buffer if they are all in use,
+    // or, without send buffers, sent synchronously from this thread
     if (null == mapper || !packer.format(trace, mapper)) {
       healthMetrics.onFailedPublish(trace.get(0).samplingPriority());
     }
@@ -76,7 +138,23 @@ public class PayloadDispatcher implements ByteBufferConsumer {
       if (null != mapper && null == packer) {
         this.batchTimer =
             monitoring.newTimer("tracer.trace.buffer.fill.time", "endpoint:" + mapper.endpoint());
-        this.packer = new MsgPackWriter(new FlushingBuffer(mapper.messageBufferSize(), this));
+        if (sendBuffers > 0) {
+          this.sender =
+              new PayloadSender(
+                  api,
+                  healthMetrics,
+                  mapper.messageBufferSize(),
+                  sendBuffers,
+                  directBuffers,
+                  shardName);
+          this.packer = new MsgPackWriter(new FlushingBuffer(this));
+        } else if (directBuffers) {
+          this.packer =
+              new MsgPackWriter(
+                  new FlushingBuffer(ByteBuffer.allocateDirect(mapper.messageBufferSize()), this));
+        } else {
+          this.packer = new MsgPackWriter(new FlushingBuffer(mapper.messageBufferSize(), this));
+        }
         batchTimer.start();
       }
     }
@@ -90,11 +168,18 @@ public class PayloadDispatcher implements ByteBufferConsumer {
         .withDroppedTraces(droppedTraceCount.getAndReset());
   }
 
+  @Override
+  public ByteBuffer nextBuffer() {
+    return sender.nextBuffer();
+  }
+
   @Override
   public void accept(int messageCount, ByteBuffer buffer) {
     // the packer calls this when the buffer is full,
     // or when the packer is flushed at a heartbeat
-    if (messageCount > 0) {
+    if (null != sender) {
+      handOff(messageCount, buffer);
+    } else if (messageCount > 0) {
       batchTimer.reset();
       Payload payload = newPayload(messageCount, buffer);
       final int sizeInBytes = payload.sizeInBytes();
@@ -115,4 +200,13 @@ public class PayloadDispatcher implements ByteBufferConsumer {
       }
     }
   }
+
+  private void handOff(int messageCount, ByteBuffer buffer) {
+    batchTimer.reset();
+    // the buffer belongs to the sender now, and the mapper can be reused straight away
+    Payload payload = newPayload(messageCount, buffer).detach();
+    mapper.reset();
+    healthMetrics.onSerialize(payload.sizeInBytes());
+    sender.send(payload, buffer);
+  }
 }
@@ -0,0 +1,232 @@
+package datadog.trace.common.writer;
+
+import static datadog.trace.util.AgentThreadFactory.AgentThread.TRACE_PAYLOAD_SENDER;
+import static datadog.trace.util.AgentThreadFactory.THREAD_JOIN_TIMOUT_MS;
+import static datadog.trace.util.AgentThreadFactory.newAgentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import datadog.trace.common.writer.ddagent.FlushEvent;
+import datadog.trace.core.monitor.HealthMetrics;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends serialized payloads on a dedicated thread, so that serialization can carry on while a
+ * payload is in flight.
+ *
+ * <p>Payloads are serialized into a small pool of pre-allocated buffers. Once a buffer is full it
+ * is handed to the sender thread, and returned to the pool once its payload has been sent. When no
+ * buffer is free the serializer waits for a short while (back-pressure), after which the oldest
+ * payload which hasn't been sent yet is dropped to reclaim its buffer.
+ */
+final class PayloadSender implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(PayloadSender.class);
+
+  private static final long BACK_PRESSURE_TIMEOUT_MS = 100;
+
+  private static final class PendingPayload {
+    final Payload payload;
+    final ByteBuffer buffer;
+
+    PendingPayload(Payload payload, ByteBuffer buffer) {
+      this.payload = payload;
+      this.buffer = buffer;
+    }
+  }
+
+  private static final class PendingFlush {
+    final FlushEvent event;
+    final long target;
+    final AtomicBoolean synced = new AtomicBoolean();
+
+    PendingFlush(FlushEvent event, long target) {
+      this.event = event;
+      this.target = target;
+    }
+
+    void sync() {
+      if (synced.compareAndSet(false, true)) {
+        event.sync();
+      }
+    }
+  }
+
+  private final RemoteApi api;
+  private final HealthMetrics healthMetrics;
+  private final int bufferSize;
+  private final boolean direct;
+  private final BlockingQueue<ByteBuffer> freeBuffers;
+  private final BlockingQueue<PendingPayload> pendingPayloads;
+  private final ConcurrentLinkedQueue<PendingFlush> pendingFlushes = new ConcurrentLinkedQueue<>();
+  // payloads handed over and payloads sent or dropped, used to know when a flush has completed
+  private final AtomicLong handedOver = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final Thread senderThread;
+
+  PayloadSender(
+      RemoteApi api,
+      HealthMetrics healthMetrics,
+      int bufferSize,
+      int bufferCount,
+      boolean direct,
+      String shardName) {
+    this.api = api;
+    this.healthMetrics = healthMetrics;
+    this.bufferSize = bufferSize;
+    this.direct = direct;
+    this.freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+    this.pendingPayloads = new ArrayBlockingQueue<>(bufferCount);
+    for (int i = 0; i < bufferCount; ++i) {
+      freeBuffers.offer(allocate());
+    }
+    this.senderThread = newAgentThread(TRACE_PAYLOAD_SENDER, shardName, this);
+    this.senderThread.start();
+  }
+
+  /** Called by the serializer to hand over a payload, whose body is a buffer from the pool. */
+  void send(Payload payload, ByteBuffer buffer) {
+    handedOver.incrementAndGet();
+    if (!pendingPayloads.offer(new PendingPayload(payload, buffer))) {
+      // there are never more pending payloads than buffers, unless a buffer leaked into the pool
+      drop(payload);
+      buffer.clear();
+      freeBuffers.offer(buffer);
+    }
+  }
+
+  /** Called by the serializer when it needs a buffer to continue serializing into. */
+  ByteBuffer nextBuffer() {
+    ByteBuffer buffer = freeBuffers.poll();
+    if (null != buffer) {
+      return buffer;
+    }
+    healthMetrics.onSendBackPressure();
+    try {
+      buffer = freeBuffers.poll(BACK_PRESSURE_TIMEOUT_MS, MILLISECONDS);
+      if (null == buffer) {
+        buffer = reclaimOldest();
+      }
+      if (null == buffer) {
+        // every buffer is in flight
+        buffer = freeBuffers.take();
+      }
+      return buffer;
+    } catch (InterruptedException e) {
+      // shutting down: rather than leaving the pool, drop a pending payload to continue, or wait
+      // for the payload in flight, whose send is bounded by the client's timeout
+      buffer = freeBuffers.poll();
+      if (null == buffer) {
+        buffer = reclaimOldest();
+      }
+      while (null == buffer) {
+        try {
+          buffer = freeBuffers.take();
+        } catch (InterruptedException ignored) {
+        }
+      }
+      Thread.currentThread().interrupt();
+      return buffer;
+    }
+  }
+
+  /** @return the buffer of the oldest payload which wasn't sent yet, dropped, or null if none */
+  private ByteBuffer reclaimOldest() {
+    PendingPayload oldest = pendingPayloads.poll();
+    if (null == oldest) {
+      return null;
+    }
+    drop(oldest.payload);
+    oldest.buffer.clear();
+    return oldest.buffer;
+  }
+
+  private void drop(Payload payload) {
+    healthMetrics.onDroppedPayload(payload.traceCount(), payload.sizeInBytes());
+    completed.incrementAndGet();
+    syncCompletedFlushes();
+  }
+
+  private ByteBuffer allocate() {
+    return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+  }
+
+  /** Syncs the flush event once every payload handed over so far has been sent. */
+  void syncWhenSent(FlushEvent event) {
+    PendingFlush flush = new PendingFlush(event, handedOver.get());
+    pendingFlushes.offer(flush);
+    // the sender may have caught up before the flush was registered
+    if (completed.get() >= flush.target) {
+      flush.sync();
+      pendingFlushes.remove(flush);
+    }
+  }
+
+  void close() {
+    senderThread.interrupt();
+    try {
+      senderThread.join(THREAD_JOIN_TIMOUT_MS);
+    } catch (InterruptedException ignored) {
+    }
+  }
+
+  @Override
+  public void run() {
+    Thread thread = Thread.currentThread();
+    try {
+      while (!thread.isInterrupted()) {
+        PendingPayload pending = pendingPayloads.take();
+        try {
+          sendPayload(pending.payload);
+        } catch (Throwable e) {
+          log.debug("Error while sending payload", e);
+        } finally {
+          pending.buffer.clear();
+          freeBuffers.offer(pending.buffer);
+          completed.incrementAndGet();
+          syncCompletedFlushes();
+        }
+      }
+    } catch (InterruptedException e) {
+      thread.interrupt();
+    }
+    log.debug("Datadog trace payload sender exited. Sending traces stopped");
+  }
+
+  private void sendPayload(Payload payload) {
+    final int messageCount = payload.traceCount();
+    final int sizeInBytes = payload.sizeInBytes();
+    RemoteApi.Response response = api.sendSerializedTraces(payload);
+    if (response.success()) {
+      if (log.isDebugEnabled()) {
+        log.debug("Successfully sent {} traces to the API", messageCount);
+      }
+      healthMetrics.onSend(messageCount, sizeInBytes, response);
+    } else {
+      if (log.isDebugEnabled()) {
+        log.debug(
+            "Failed to send {} traces of size {} bytes to the API", messageCount, sizeInBytes);
+      }
+      healthMetrics.onFailedSend(messageCount, sizeInBytes, response);
+    }
+  }
+
+  private void syncCompletedFlushes() {
+    long done = completed.get();
+    Iterator<PendingFlush> it = pendingFlushes.iterator();
+    while (it.hasNext()) {
+      PendingFlush flush = it.next();
+      if (done >= flush.target) {
+        flush.sync();
+        it.remove();
+      }
+    }
+  }
+}
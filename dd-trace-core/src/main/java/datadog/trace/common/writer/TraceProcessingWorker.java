@@ -26,16 +26,16 @@ import org.slf4j.LoggerFactory;
  *
  * <p>publishing to the buffer will not block the calling thread, but instead will return false if
  * the buffer is full. This is to avoid impacting an application thread.
+ *
+ * <p>When created with more than one {@link PayloadDispatcher} the worker is sharded: traces are
+ * partitioned by trace id across one serializer thread per dispatcher, each with its own queues,
+ * so serialization can scale beyond a single thread. The shards share the same {@link RemoteApi}.
  */
 public class TraceProcessingWorker implements AutoCloseable {
 
   private static final Logger log = LoggerFactory.getLogger(TraceProcessingWorker.class);
 
-  private final PrioritizationStrategy prioritizationStrategy;
-  private final MpscBlockingConsumerArrayQueue<Object> primaryQueue;
-  private final MpscBlockingConsumerArrayQueue<Object> secondaryQueue;
-  private final TraceSerializingHandler serializingHandler;
-  private final Thread serializerThread;
+  private final Shard[] shards;
   private final int capacity;
 
   public TraceProcessingWorker(
@@ -46,28 +46,61 @@ public class TraceProcessingWorker implements AutoCloseable {
       final Prioritization prioritization,
       final long flushInterval,
       final TimeUnit timeUnit) {
+    this(
+        capacity,
+        healthMetrics,
+        new PayloadDispatcher[] {dispatcher},
+        droppingPolicy,
+        prioritization,
+        flushInterval,
+        timeUnit);
+  }
+
+  /**
+   * @param capacity the total capacity, split evenly between the shards
+   * @param dispatchers one dispatcher per shard
+   */
+  public TraceProcessingWorker(
+      final int capacity,
+      final HealthMetrics healthMetrics,
+      final PayloadDispatcher[] dispatchers,
+      final DroppingPolicy droppingPolicy,
+      final Prioritization prioritization,
+      final long flushInterval,
+      final TimeUnit timeUnit) {
     this.capacity = capacity;
-    this.primaryQueue = createQueue(capacity);
-    this.secondaryQueue = createQueue(capacity);
-    this.prioritizationStrategy =
-        prioritization.create(primaryQueue, secondaryQueue, droppingPolicy);
-    this.serializingHandler =
-        new TraceSerializingHandler(
-            primaryQueue, secondaryQueue, healthMetrics, dispatcher, flushInterval, timeUnit);
-    this.serializerThread = newAgentThread(TRACE_PROCESSOR, serializingHandler);
+    this.shards = new Shard[dispatchers.length];
+    int shardCapacity =
+        dispatchers.length == 1 ? capacity : Math.max(capacity / dispatchers.length, 2);
+    for (int i = 0; i < dispatchers.length; ++i) {
+      shards[i] =
+          new Shard(
+              dispatchers.length > 1 ? i : -1,
+              shardCapacity,
+              healthMetrics,
+              dispatchers[i],
+              droppingPolicy,
+              prioritization,
+              flushInterval,
+              timeUnit);
+    }
   }
 
   public void start() {
-    this.serializerThread.start();
+    for (Shard shard : shards) {
+      shard.serializerThread.start();
+    }
   }
 
   public boolean flush(long timeout, TimeUnit timeUnit) {
-    CountDownLatch latch = new CountDownLatch(1);
+    CountDownLatch latch = new CountDownLatch(shards.length);
     FlushEvent flush = new FlushEvent(latch);
-    boolean offered;
-    do {
-      offered = primaryQueue.offer(flush);
-    } while (!offered && serializerThread.isAlive());
+    for (Shard shard : shards) {
+      boolean offered;
+      do {
+        offered = shard.primaryQueue.offer(flush);
+      } while (!offered && shard.serializerThread.isAlive());
+    }
     try {
       return latch.await(timeout, timeUnit);
     } catch (InterruptedException e) {
@@ -78,16 +111,21 @@ public class TraceProcessingWorker implements AutoCloseable {
 
   @Override
   public void close() {
-    serializerThread.interrupt();
-    try {
-      serializerThread.join(THREAD_JOIN_TIMOUT_MS);
-    } catch (InterruptedException ignored) {
+    for (Shard shard : shards) {
+      shard.serializerThread.interrupt();
+    }
+    for (Shard shard : shards) {
+      try {
+        shard.serializerThread.join(THREAD_JOIN_TIMOUT_MS);
+      } catch (InterruptedException ignored) {
+      }
+      shard.dispatcher.close();
     }
   }
 
   public <T extends CoreSpan<T>> boolean publish(
       T root, int samplingPriority, final List<T> trace) {
-    return prioritizationStrategy.publish(root, samplingPriority, trace);
+    return shardFor(root).prioritizationStrategy.publish(root, samplingPriority, trace);
   }
 
   public int getCapacity() {
@@ -96,13 +134,58 @@ public class TraceProcessingWorker implements AutoCloseable {
 
   public long getRemainingCapacity() {
     // only advertise primary capacity (partly to keep test which aims to saturate the queue happy)
-    return primaryQueue.remainingCapacity();
+    long remaining = 0;
+    for (Shard shard : shards) {
+      remaining += shard.primaryQueue.remainingCapacity();
+    }
+    return remaining;
+  }
+
+  private <T extends CoreSpan<T>> Shard shardFor(T root) {
+    if (shards.length == 1) {
+      return shards[0];
+    }
+    return shards[(root.getTraceId().hashCode() & Integer.MAX_VALUE) % shards.length];
   }
 
   private static MpscBlockingConsumerArrayQueue<Object> createQueue(int capacity) {
     return new MpscBlockingConsumerArrayQueue<>(capacity);
   }
 
+  private static final class Shard {
+    final MpscBlockingConsumerArrayQueue<Object> primaryQueue;
+    final MpscBlockingConsumerArrayQueue<Object> secondaryQueue;
+    final PrioritizationStrategy prioritizationStrategy;
+    final PayloadDispatcher dispatcher;
+    final Thread serializerThread;
+
+    Shard(
+        final int index,
+        final int capacity,
+        final HealthMetrics healthMetrics,
+        final PayloadDispatcher dispatcher,
+        final DroppingPolicy droppingPolicy,
+        final Prioritization prioritization,
+        final long flushInterval,
+        final TimeUnit timeUnit) {
+      this.primaryQueue = createQueue(capacity);
+      this.secondaryQueue = createQueue(capacity);
+      this.dispatcher = dispatcher;
+      this.prioritizationStrategy =
+          prioritization.create(primaryQueue, secondaryQueue, droppingPolicy);
+      TraceSerializingHandler serializingHandler =
+          new TraceSerializingHandler(
+              primaryQueue, secondaryQueue, healthMetrics, dispatcher, flushInterval, timeUnit);
+      if (index < 0) {
+        this.serializerThread = newAgentThread(TRACE_PROCESSOR, serializingHandler);
+      } else {
+        serializingHandler.reportQueueDepthAs(index);
+        this.serializerThread =
+            newAgentThread(TRACE_PROCESSOR, String.valueOf(index), serializingHandler);
+      }
+    }
+  }
+
   public static class TraceSerializingHandler
       implements Runnable, MessagePassingQueue.Consumer<Object> {
 
@@ -113,6 +196,7 @@ public class TraceProcessingWorker implements AutoCloseable {
     private final boolean doTimeFlush;
     private final PayloadDispatcher payloadDispatcher;
     private long lastTicks;
+    private int shard = -1;
 
     public TraceSerializingHandler(
         final MpscBlockingConsumerArrayQueue<Object> primaryQueue,
@@ -134,6 +218,11 @@ public class TraceProcessingWorker implements AutoCloseable {
       }
     }
 
+    /** Report the depth of the queues to the health metrics under this shard index. */
+    void reportQueueDepthAs(int shard) {
+      this.shard = shard;
+    }
+
     @SuppressWarnings("unchecked")
     public void onEvent(Object event) {
       // publish an incomplete batch if
@@ -144,9 +233,15 @@ public class TraceProcessingWorker implements AutoCloseable {
           List<DDSpan> trace = (List<DDSpan>) event;
           // TODO populate `_sample_rate` metric in a way that accounts for lost/dropped traces
           payloadDispatcher.addTrace(trace);
+          // the spans have been serialized, so their tags can be reused if spans are pooled
+          for (DDSpan span : trace) {
+            span.releaseTags();
+          }
         } else if (event instanceof FlushEvent) {
           payloadDispatcher.flush();
-          ((FlushEvent) event).sync();
+          if (!payloadDispatcher.syncWhenSent((FlushEvent) event)) {
+            ((FlushEvent) event).sync();
+          }
         }
       } catch (final Throwable e) {
         if (log.isDebugEnabled()) {
@@ -199,6 +294,9 @@ public class TraceProcessingWorker implements AutoCloseable {
     private void flushIfNecessary() {
       if (shouldFlush()) {
         payloadDispatcher.flush();
+        if (shard >= 0) {
+          healthMetrics.onShardQueueDepth(shard, primaryQueue.size(), secondaryQueue.size());
+        }
       }
     }
 
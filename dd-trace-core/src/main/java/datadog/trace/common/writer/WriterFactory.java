@@ -11,7 +11,9 @@ import static datadog.trace.common.writer.ddagent.Prioritization.ENSURE_TRACE;
 import static datadog.trace.common.writer.ddagent.Prioritization.FAST_LANE;
 
 import datadog.common.container.ServerlessInfo;
+import datadog.common.socket.SocketUtils;
 import datadog.communication.ddagent.SharedCommunicationObjects;
+import datadog.communication.http.ChannelHttpClient;
 import datadog.trace.api.Config;
 import datadog.trace.api.StatsDClient;
 import datadog.trace.api.intake.TrackType;
@@ -22,6 +24,7 @@ import datadog.trace.common.writer.ddintake.DDIntakeApi;
 import datadog.trace.common.writer.ddintake.DDIntakeTrackTypeResolver;
 import datadog.trace.core.monitor.HealthMetrics;
 import datadog.trace.util.Strings;
+import java.util.concurrent.TimeUnit;
 import okhttp3.HttpUrl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -115,9 +118,20 @@ public class WriterFactory {
         }
       }
 
+      // named pipes are only reachable through OkHttp
+      boolean directTransport =
+          config.isTraceAgentDirectTransport() && null == config.getAgentNamedPipe();
+      ChannelHttpClient directClient =
+          directTransport
+              ? new ChannelHttpClient(
+                  commObjects.agentUrl,
+                  SocketUtils.discoverApmSocket(config),
+                  TimeUnit.SECONDS.toMillis(config.getAgentTimeout()))
+              : null;
       DDAgentApi ddAgentApi =
           new DDAgentApi(
               commObjects.okHttpClient,
+              directClient,
               commObjects.agentUrl,
               commObjects.featuresDiscovery,
               commObjects.monitoring,
@@ -131,6 +145,9 @@ public class WriterFactory {
               .healthMetrics(new HealthMetrics(statsDClient))
               .monitoring(commObjects.monitoring)
               .alwaysFlush(alwaysFlush)
+              .serializerShards(config.getTraceSerializerShards())
+              .asyncSendBuffers(config.getTraceAsyncSendBuffers())
+              .directBuffers(directTransport)
               .build();
     }
 
@@ -6,6 +6,7 @@ import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import datadog.communication.ddagent.DDAgentFeaturesDiscovery;
+import datadog.communication.http.ChannelHttpClient;
 import datadog.communication.monitor.Counter;
 import datadog.communication.monitor.Monitoring;
 import datadog.communication.monitor.Recording;
@@ -15,11 +16,12 @@ import datadog.trace.common.writer.RemoteResponseListener;
 import datadog.trace.core.DDTraceCoreInfo;
 import datadog.trace.relocate.api.IOLogger;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -41,17 +43,23 @@ public class DDAgentApi implements RemoteApi {
   private static final String DATADOG_DROPPED_TRACE_COUNT = "Datadog-Client-Dropped-P0-Traces";
   private static final String DATADOG_DROPPED_SPAN_COUNT = "Datadog-Client-Dropped-P0-Spans";
   private static final String DATADOG_AGENT_STATE = "Datadog-Agent-State";
+  private static final String MSGPACK = "application/msgpack";
 
-  private final List<RemoteResponseListener> responseListeners = new ArrayList<>();
+  // payloads may be sent concurrently when trace serialization is sharded
+  private final CopyOnWriteArrayList<RemoteResponseListener> responseListeners =
+      new CopyOnWriteArrayList<>();
   private final boolean metricsEnabled;
 
-  private long totalTraces = 0;
-  private long receivedTraces = 0;
-  private long sentTraces = 0;
-  private long failedTraces = 0;
+  private final AtomicLong totalTraces = new AtomicLong();
+  private final AtomicLong receivedTraces = new AtomicLong();
+  private final AtomicLong sentTraces = new AtomicLong();
+  private final AtomicLong failedTraces = new AtomicLong();
 
   private final Recording sendPayloadTimer;
   private final Counter agentErrorCounter;
+  // payload bytes copied between the serialization buffers and the socket by the direct
+  // transport, OkHttp's copies aren't visible so they aren't counted
+  private final Counter copiedBytesCounter;
 
   private static final JsonAdapter<Map<String, Map<String, Number>>> RESPONSE_ADAPTER =
       new Moshi.Builder()
@@ -64,6 +72,8 @@ public class DDAgentApi implements RemoteApi {
 
   private final DDAgentFeaturesDiscovery featuresDiscovery;
   private final OkHttpClient httpClient;
+  // when set, payloads are written straight from their buffers to the connection
+  private final ChannelHttpClient directClient;
   private final HttpUrl agentUrl;
   private final Map<String, String> headers;
 
@@ -75,11 +85,23 @@ public class DDAgentApi implements RemoteApi {
       DDAgentFeaturesDiscovery featuresDiscovery,
       Monitoring monitoring,
       boolean metricsEnabled) {
+    this(client, null, agentUrl, featuresDiscovery, monitoring, metricsEnabled);
+  }
+
+  public DDAgentApi(
+      OkHttpClient client,
+      ChannelHttpClient directClient,
+      HttpUrl agentUrl,
+      DDAgentFeaturesDiscovery featuresDiscovery,
+      Monitoring monitoring,
+      boolean metricsEnabled) {
     this.featuresDiscovery = featuresDiscovery;
     this.agentUrl = agentUrl;
     this.httpClient = client;
+    this.directClient = directClient;
     this.sendPayloadTimer = monitoring.newTimer("trace.agent.send.time");
     this.agentErrorCounter = monitoring.newCounter("trace.agent.error.counter");
+    this.copiedBytesCounter = monitoring.newCounter("trace.agent.send.bytes.copied");
     this.metricsEnabled = metricsEnabled;
 
     this.headers = new HashMap<>();
@@ -88,8 +110,13 @@ public class DDAgentApi implements RemoteApi {
   }
 
   public void addResponseListener(final RemoteResponseListener listener) {
-    if (!responseListeners.contains(listener)) {
-      responseListeners.add(listener);
+    responseListeners.addIfAbsent(listener);
+  }
+
+  /** Closes the connections kept alive by the direct transport, if any. */
+  public void close() {
+    if (null != directClient) {
+      directClient.close();
     }
   }
 
@@ -107,6 +134,9 @@ public class DDAgentApi implements RemoteApi {
     }
 
     HttpUrl tracesUrl = agentUrl.resolve(tracesEndpoint);
+    if (null != directClient) {
+      return sendDirect(payload, tracesUrl);
+    }
     try {
       final Request request =
           prepareRequest(tracesUrl, headers)
@@ -118,8 +148,8 @@ public class DDAgentApi implements RemoteApi {
                   metricsEnabled && featuresDiscovery.supportsMetrics() ? "true" : "")
               .put(payload.toRequest())
               .build();
-      this.totalTraces += payload.traceCount();
-      this.receivedTraces += payload.traceCount();
+      this.totalTraces.addAndGet(payload.traceCount());
+      this.receivedTraces.addAndGet(payload.traceCount());
       try (final Recording recording = sendPayloadTimer.start();
           final okhttp3.Response response = httpClient.newCall(request).execute()) {
         handleAgentChange(response.header(DATADOG_AGENT_STATE));
@@ -129,22 +159,7 @@ public class DDAgentApi implements RemoteApi {
           return Response.failed(response.code());
         }
         countAndLogSuccessfulSend(payload.traceCount(), sizeInBytes);
-        String responseString = null;
-        try {
-          responseString = getResponseBody(response);
-          if (!"".equals(responseString) && !"OK".equalsIgnoreCase(responseString)) {
-            final Map<String, Map<String, Number>> parsedResponse =
-                RESPONSE_ADAPTER.fromJson(responseString);
-            final String endpoint = tracesUrl.toString();
-            for (final RemoteResponseListener listener : responseListeners) {
-              listener.onResponse(endpoint, parsedResponse);
-            }
-          }
-          return Response.success(response.code(), responseString);
-        } catch (final IOException e) {
-          log.debug("Failed to parse DD agent response: {}", responseString, e);
-          return Response.success(response.code(), e);
-        }
+        return onSuccess(response.code(), getResponseBody(response), tracesUrl);
       }
     } catch (final IOException e) {
       countAndLogFailedSend(payload.traceCount(), sizeInBytes, null, e);
@@ -152,6 +167,59 @@ public class DDAgentApi implements RemoteApi {
     }
   }
 
+  private Response sendDirect(final Payload payload, final HttpUrl tracesUrl) {
+    final int sizeInBytes = payload.sizeInBytes();
+    final Map<String, String> requestHeaders = new HashMap<>(headers);
+    requestHeaders.put(X_DATADOG_TRACE_COUNT, Integer.toString(payload.traceCount()));
+    requestHeaders.put(DATADOG_DROPPED_TRACE_COUNT, Long.toString(payload.droppedTraces()));
+    requestHeaders.put(DATADOG_DROPPED_SPAN_COUNT, Long.toString(payload.droppedSpans()));
+    requestHeaders.put(
+        DATADOG_CLIENT_COMPUTED_STATS,
+        metricsEnabled && featuresDiscovery.supportsMetrics() ? "true" : "");
+    this.totalTraces.addAndGet(payload.traceCount());
+    this.receivedTraces.addAndGet(payload.traceCount());
+    try (final Recording recording = sendPayloadTimer.start()) {
+      final ChannelHttpClient.Response response =
+          directClient.put(
+              tracesUrl.encodedPath(), MSGPACK, requestHeaders, payload.toByteBuffers());
+      copiedBytesCounter.increment((int) response.copiedBytes());
+      handleAgentChange(response.header(DATADOG_AGENT_STATE));
+      final String responseString = response.body().trim();
+      if (response.code() != 200) {
+        agentErrorCounter.incrementErrorCount(response.message(), payload.traceCount());
+        countAndLogFailedSend(
+            payload.traceCount(),
+            sizeInBytes,
+            new IOLogger.Response(response.code(), response.message(), responseString),
+            responseString,
+            null);
+        return Response.failed(response.code());
+      }
+      countAndLogSuccessfulSend(payload.traceCount(), sizeInBytes);
+      return onSuccess(response.code(), responseString, tracesUrl);
+    } catch (final IOException e) {
+      countAndLogFailedSend(payload.traceCount(), sizeInBytes, null, e);
+      return Response.failed(e);
+    }
+  }
+
+  private Response onSuccess(final int code, final String responseString, final HttpUrl tracesUrl) {
+    try {
+      if (!"".equals(responseString) && !"OK".equalsIgnoreCase(responseString)) {
+        final Map<String, Map<String, Number>> parsedResponse =
+            RESPONSE_ADAPTER.fromJson(responseString);
+        final String endpoint = tracesUrl.toString();
+        for (final RemoteResponseListener listener : responseListeners) {
+          listener.onResponse(endpoint, parsedResponse);
+        }
+      }
+      return Response.success(code, responseString);
+    } catch (final IOException e) {
+      log.debug("Failed to parse DD agent response: {}", responseString, e);
+      return Response.success(code, e);
+    }
+  }
+
   private void handleAgentChange(String state) {
     String previous = featuresDiscovery.state();
     if (!Objects.equals(state, previous)) {
@@ -161,7 +229,7 @@ public class DDAgentApi implements RemoteApi {
 
   private void countAndLogSuccessfulSend(final int traceCount, final int sizeInBytes) {
     // count the successful traces
-    this.sentTraces += traceCount;
+    this.sentTraces.addAndGet(traceCount);
 
     ioLogger.success(createSendLogMessage(traceCount, sizeInBytes, "Success"));
   }
@@ -171,14 +239,24 @@ public class DDAgentApi implements RemoteApi {
       final int sizeInBytes,
       final okhttp3.Response response,
       final IOException outer) {
-    // count the failed traces
-    this.failedTraces += traceCount;
     // these are used to catch and log if there is a failure in debug logging the response body
     String agentError = getResponseBody(response);
+    countAndLogFailedSend(
+        traceCount, sizeInBytes, toLoggerResponse(response, agentError), agentError, outer);
+  }
+
+  private void countAndLogFailedSend(
+      final int traceCount,
+      final int sizeInBytes,
+      final IOLogger.Response response,
+      final String agentError,
+      final IOException outer) {
+    // count the failed traces
+    this.failedTraces.addAndGet(traceCount);
     String sendErrorString =
         createSendLogMessage(traceCount, sizeInBytes, agentError.isEmpty() ? "Error" : agentError);
 
-    ioLogger.error(sendErrorString, toLoggerResponse(response, agentError), outer);
+    ioLogger.error(sendErrorString, response, outer);
   }
 
   private static IOLogger.Response toLoggerResponse(okhttp3.Response response, String body) {
@@ -209,13 +287,13 @@ public class DDAgentApi implements RemoteApi {
         + ")"
         + " traces to the DD agent."
         + " Total: "
-        + this.totalTraces
+        + this.totalTraces.get()
         + ", Received: "
-        + this.receivedTraces
+        + this.receivedTraces.get()
         + ", Sent: "
-        + this.sentTraces
+        + this.sentTraces.get()
         + ", Failed: "
-        + this.failedTraces
+        + this.failedTraces.get()
         + ".";
   }
 }
@@ -4,10 +4,12 @@ import static datadog.communication.http.OkHttpUtils.msgpackRequestBodyOf;
 
 import datadog.communication.serialization.Writable;
 import datadog.trace.bootstrap.instrumentation.api.InstrumentationTags;
+import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString;
 import datadog.trace.common.writer.Payload;
 import datadog.trace.core.CoreSpan;
 import datadog.trace.core.Metadata;
 import datadog.trace.core.MetadataConsumer;
+import datadog.trace.core.TagMap;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
@@ -28,7 +30,8 @@ public final class TraceMapperV0_4 implements TraceMapper {
     this(5 << 20);
   }
 
-  private static final class MetaWriter extends MetadataConsumer {
+  private static final class MetaWriter extends MetadataConsumer
+      implements TagMap.TagVisitor, TagMap.MetricVisitor {
 
     private Writable writable;
     private boolean writeSamplingPriority;
@@ -45,9 +48,11 @@ public final class TraceMapperV0_4 implements TraceMapper {
 
     @Override
     public void accept(Metadata metadata) {
+      final TagMap tags = metadata.getTags();
       int metaSize =
           metadata.getBaggage().size()
-              + metadata.getTags().size()
+              + tags.size()
+              - tags.metricCount()
               + (null == metadata.getHttpStatusCode() ? 0 : 1)
               + (null == metadata.getOrigin() ? 0 : 1)
               + 1;
@@ -55,13 +60,8 @@ public final class TraceMapperV0_4 implements TraceMapper {
           (writeSamplingPriority && metadata.hasSamplingPriority() ? 1 : 0)
               + (metadata.measured() ? 1 : 0)
               + (metadata.topLevel() ? 1 : 0)
+              + tags.metricCount()
               + 1;
-      for (Map.Entry<String, Object> tag : metadata.getTags().entrySet()) {
-        if (tag.getValue() instanceof Number) {
-          ++metricsSize;
-          --metaSize;
-        }
-      }
       writable.writeUTF8(METRICS);
       writable.startMap(metricsSize);
       if (writeSamplingPriority && metadata.hasSamplingPriority()) {
@@ -78,12 +78,7 @@ public final class TraceMapperV0_4 implements TraceMapper {
       }
       writable.writeUTF8(THREAD_ID);
       writable.writeLong(metadata.getThreadId());
-      for (Map.Entry<String, Object> entry : metadata.getTags().entrySet()) {
-        if (entry.getValue() instanceof Number) {
-          writable.writeString(entry.getKey(), null);
-          writable.writeObject(entry.getValue(), null);
-        }
-      }
+      tags.forEachMetric(this);
 
       writable.writeUTF8(META);
       writable.startMap(metaSize);
@@ -104,12 +99,43 @@ public final class TraceMapperV0_4 implements TraceMapper {
         writable.writeUTF8(ORIGIN_KEY);
         writable.writeString(metadata.getOrigin(), null);
       }
-      for (Map.Entry<String, Object> entry : metadata.getTags().entrySet()) {
-        if (!(entry.getValue() instanceof Number)) {
-          writable.writeString(entry.getKey(), null);
-          writable.writeObjectString(entry.getValue(), null);
-        }
-      }
+      tags.forEachTag(this);
+    }
+
+    @Override
+    public void visit(UTF8BytesString key, Object value) {
+      writable.writeUTF8(key);
+      writable.writeObjectString(value, null);
+    }
+
+    @Override
+    public void visitInt(UTF8BytesString key, int value) {
+      writable.writeUTF8(key);
+      writable.writeInt(value);
+    }
+
+    @Override
+    public void visitLong(UTF8BytesString key, long value) {
+      writable.writeUTF8(key);
+      writable.writeLong(value);
+    }
+
+    @Override
+    public void visitFloat(UTF8BytesString key, float value) {
+      writable.writeUTF8(key);
+      writable.writeFloat(value);
+    }
+
+    @Override
+    public void visitDouble(UTF8BytesString key, double value) {
+      writable.writeUTF8(key);
+      writable.writeDouble(value);
+    }
+
+    @Override
+    public void visitNumber(UTF8BytesString key, Number value) {
+      writable.writeUTF8(key);
+      writable.writeObject(value, null);
     }
   }
 
@@ -197,7 +223,12 @@ public final class TraceMapperV0_4 implements TraceMapper {
 
     @Override
     public RequestBody toRequest() {
-      return msgpackRequestBodyOf(Arrays.asList(msgpackArrayHeader(traceCount()), body));
+      return msgpackRequestBodyOf(toByteBuffers());
+    }
+
+    @Override
+    public List<ByteBuffer> toByteBuffers() {
+      return Arrays.asList(msgpackArrayHeader(traceCount()), body);
     }
   }
 }
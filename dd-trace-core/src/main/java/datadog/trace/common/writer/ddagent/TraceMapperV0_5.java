@@ -13,6 +13,7 @@ import datadog.trace.common.writer.Payload;
 import datadog.trace.core.CoreSpan;
 import datadog.trace.core.Metadata;
 import datadog.trace.core.MetadataConsumer;
+import datadog.trace.core.TagMap;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
@@ -141,6 +142,18 @@ public final class TraceMapperV0_5 implements TraceMapper {
       this.stringCount = stringCount;
     }
 
+    @Override
+    public Payload detach() {
+      // the dictionary is a view of the mapper's buffer which is overwritten after a reset
+      ByteBuffer copy = ByteBuffer.allocate(dictionary.remaining());
+      copy.put(dictionary.duplicate());
+      copy.flip();
+      return new PayloadV0_5(copy, stringCount)
+          .withBody(traceCount(), body)
+          .withDroppedTraces(droppedTraces())
+          .withDroppedSpans(droppedSpans());
+    }
+
     @Override
     public int sizeInBytes() {
       return 1
@@ -152,7 +165,7 @@ public final class TraceMapperV0_5 implements TraceMapper {
 
     @Override
     public void writeTo(WritableByteChannel channel) throws IOException {
-      for (ByteBuffer buffer : toList()) {
+      for (ByteBuffer buffer : toByteBuffers()) {
         while (buffer.hasRemaining()) {
           channel.write(buffer);
         }
@@ -161,10 +174,11 @@ public final class TraceMapperV0_5 implements TraceMapper {
 
     @Override
     public RequestBody toRequest() {
-      return msgpackRequestBodyOf(toList());
+      return msgpackRequestBodyOf(toByteBuffers());
     }
 
-    private List<ByteBuffer> toList() {
+    @Override
+    public List<ByteBuffer> toByteBuffers() {
       return Arrays.asList(
           // msgpack array header with 2 elements (FIXARRAY | 2)
           ByteBuffer.allocate(1).put(0, (byte) 0x92),
@@ -175,7 +189,8 @@ public final class TraceMapperV0_5 implements TraceMapper {
     }
   }
 
-  private final class MetaWriter extends MetadataConsumer {
+  private final class MetaWriter extends MetadataConsumer
+      implements TagMap.TagVisitor, TagMap.MetricVisitor {
 
     private Writable writable;
     private boolean writeSamplingPriority;
@@ -192,9 +207,11 @@ public final class TraceMapperV0_5 implements TraceMapper {
 
     @Override
     public void accept(Metadata metadata) {
+      final TagMap tags = metadata.getTags();
       int metaSize =
           metadata.getBaggage().size()
-              + metadata.getTags().size()
+              + tags.size()
+              - tags.metricCount()
               + (null == metadata.getHttpStatusCode() ? 0 : 1)
               + (null == metadata.getOrigin() ? 0 : 1)
               + 1;
@@ -202,13 +219,8 @@ public final class TraceMapperV0_5 implements TraceMapper {
           (writeSamplingPriority && metadata.hasSamplingPriority() ? 1 : 0)
               + (metadata.measured() ? 1 : 0)
               + (metadata.topLevel() ? 1 : 0)
+              + tags.metricCount()
               + 1;
-      for (Map.Entry<String, Object> tag : metadata.getTags().entrySet()) {
-        if (tag.getValue() instanceof Number) {
-          ++metricsSize;
-          --metaSize;
-        }
-      }
       writable.startMap(metaSize);
       // we don't need to deduplicate any overlap between tags and baggage here
       // since they will be accumulated into maps in the same order downstream,
@@ -227,12 +239,7 @@ public final class TraceMapperV0_5 implements TraceMapper {
         writeDictionaryEncoded(writable, ORIGIN_KEY);
         writeDictionaryEncoded(writable, metadata.getOrigin());
       }
-      for (Map.Entry<String, Object> entry : metadata.getTags().entrySet()) {
-        if (!(entry.getValue() instanceof Number)) {
-          writeDictionaryEncoded(writable, entry.getKey());
-          writeDictionaryEncoded(writable, entry.getValue());
-        }
-      }
+      tags.forEachTag(this);
       writable.startMap(metricsSize);
       if (writeSamplingPriority && metadata.hasSamplingPriority()) {
         writeDictionaryEncoded(writable, SAMPLING_PRIORITY_KEY);
@@ -248,12 +255,43 @@ public final class TraceMapperV0_5 implements TraceMapper {
       }
       writeDictionaryEncoded(writable, THREAD_ID);
       writable.writeLong(metadata.getThreadId());
-      for (Map.Entry<String, Object> entry : metadata.getTags().entrySet()) {
-        if (entry.getValue() instanceof Number) {
-          writeDictionaryEncoded(writable, entry.getKey());
-          writable.writeObject(entry.getValue(), null);
-        }
-      }
+      tags.forEachMetric(this);
+    }
+
+    @Override
+    public void visit(UTF8BytesString key, Object value) {
+      writeDictionaryEncoded(writable, key);
+      writeDictionaryEncoded(writable, value);
+    }
+
+    @Override
+    public void visitInt(UTF8BytesString key, int value) {
+      writeDictionaryEncoded(writable, key);
+      writable.writeInt(value);
+    }
+
+    @Override
+    public void visitLong(UTF8BytesString key, long value) {
+      writeDictionaryEncoded(writable, key);
+      writable.writeLong(value);
+    }
+
+    @Override
+    public void visitFloat(UTF8BytesString key, float value) {
+      writeDictionaryEncoded(writable, key);
+      writable.writeFloat(value);
+    }
+
+    @Override
+    public void visitDouble(UTF8BytesString key, double value) {
+      writeDictionaryEncoded(writable, key);
+      writable.writeDouble(value);
+    }
+
+    @Override
+    public void visitNumber(UTF8BytesString key, Number value) {
+      writeDictionaryEncoded(writable, key);
+      writable.writeObject(value, null);
     }
   }
 }
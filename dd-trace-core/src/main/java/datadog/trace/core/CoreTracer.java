@@ -45,12 +45,14 @@ import datadog.trace.common.metrics.MetricsAggregator;
 import datadog.trace.common.sampling.PrioritySampler;
 import datadog.trace.common.sampling.Sampler;
 import datadog.trace.common.writer.DDAgentWriter;
+import datadog.trace.common.writer.RemoteWriter;
 import datadog.trace.common.writer.Writer;
 import datadog.trace.common.writer.WriterFactory;
 import datadog.trace.common.writer.ddintake.DDIntakeTraceInterceptor;
 import datadog.trace.context.ScopeListener;
 import datadog.trace.core.datastreams.DataStreamsCheckpointer;
 import datadog.trace.core.datastreams.StubDataStreamsCheckpointer;
+import datadog.trace.core.monitor.ProcessHealthMetrics;
 import datadog.trace.core.monitor.MonitoringImpl;
 import datadog.trace.core.propagation.ExtractedContext;
 import datadog.trace.core.propagation.HttpCodec;
@@ -114,6 +116,7 @@ public class CoreTracer implements AgentTracer.TracerAPI {
   private volatile long counterDrift;
 
   private final PendingTraceBuffer pendingTraceBuffer;
+  private final ProcessHealthMetrics processHealthMetrics;
 
   /** Default service name if none provided on the trace or span */
   final String serviceName;
@@ -160,6 +163,9 @@ public class CoreTracer implements AgentTracer.TracerAPI {
    */
   private final TagInterceptor tagInterceptor;
 
+  /** Recycled span tags, null unless span pooling is enabled */
+  private final TagMapPool tagMapPool;
+
   private final SortedSet<TraceInterceptor> interceptors =
       new ConcurrentSkipListSet<>(
           new Comparator<TraceInterceptor>() {
@@ -476,7 +482,8 @@ public class CoreTracer implements AgentTracer.TracerAPI {
               config.getScopeDepthLimit(),
               this.statsDClient,
               config.isScopeStrictMode(),
-              config.isScopeInheritAsyncPropagation());
+              config.isScopeInheritAsyncPropagation(),
+              config.isScopeVirtualThreadMode());
       this.scopeManager = csm;
 
     } else {
@@ -501,14 +508,28 @@ public class CoreTracer implements AgentTracer.TracerAPI {
       this.writer = writer;
     }
 
-    this.pendingTraceBuffer =
-        strictTraceWrites
-            ? PendingTraceBuffer.discarding()
-            : PendingTraceBuffer.delaying(this.timeSource);
+    if (strictTraceWrites) {
+      this.pendingTraceBuffer = PendingTraceBuffer.discarding();
+    } else if (this.writer instanceof RemoteWriter) {
+      // the writer's health metrics are started and closed along with it
+      this.pendingTraceBuffer =
+          PendingTraceBuffer.delaying(this.timeSource, ((RemoteWriter) this.writer).healthMetrics);
+    } else {
+      this.pendingTraceBuffer = PendingTraceBuffer.delaying(this.timeSource);
+    }
     pendingTraceFactory =
-        new PendingTrace.Factory(this, pendingTraceBuffer, this.timeSource, strictTraceWrites);
+        new PendingTrace.Factory(
+            this,
+            pendingTraceBuffer,
+            this.timeSource,
+            strictTraceWrites,
+            config.getTracePendingSpanStripes(),
+            config.getTraceSpanStreamingChunkSize());
     pendingTraceBuffer.start();
 
+    this.processHealthMetrics = new ProcessHealthMetrics(this.statsDClient);
+    processHealthMetrics.start();
+
     this.writer.start();
 
     metricsAggregator = createMetricsAggregator(config, sharedCommunicationObjects);
@@ -536,6 +557,8 @@ public class CoreTracer implements AgentTracer.TracerAPI {
 
     this.tagInterceptor =
         null == tagInterceptor ? new TagInterceptor(new RuleFlags(config)) : tagInterceptor;
+    this.tagMapPool =
+        config.getTraceSpanPoolSize() > 0 ? new TagMapPool(config.getTraceSpanPoolSize()) : null;
 
     if (config.isCiVisibilityEnabled()) {
       addTraceInterceptor(CiVisibilityTraceInterceptor.INSTANCE);
@@ -708,6 +731,10 @@ public class CoreTracer implements AgentTracer.TracerAPI {
     return tagInterceptor;
   }
 
+  TagMapPool getTagMapPool() {
+    return tagMapPool;
+  }
+
   public int getPartialFlushMinSpans() {
     return partialFlushMinSpans;
   }
@@ -943,6 +970,7 @@ public class CoreTracer implements AgentTracer.TracerAPI {
   @Override
   public void close() {
     pendingTraceBuffer.close();
+    processHealthMetrics.close();
     writer.close();
     statsDClient.close();
     metricsAggregator.close();
@@ -735,6 +735,23 @@ public class DDSpan
     context.processTagsAndBaggage(consumer);
   }
 
+  /**
+   * Called before the span is handed to several writers, so its tags are only released once each
+   * of the {@code references} more writers has released them.
+   */
+  public void retainTags(final int references) {
+    context.retainTags(references);
+  }
+
+  /**
+   * Called once the span has been serialized, returns its tags to the tracer's pool when span
+   * pooling is enabled and no other writer still has to serialize the span. The span must not be
+   * used afterwards: its tags are gone.
+   */
+  public void releaseTags() {
+    context.releaseTags();
+  }
+
   @Override
   public boolean isError() {
     return context.getErrorFlag();
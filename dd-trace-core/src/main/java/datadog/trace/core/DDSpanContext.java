@@ -46,6 +46,8 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
       DDCaches.newFixedSizeCache(256);
 
   private static final Map<String, String> EMPTY_BAGGAGE = Collections.emptyMap();
+  // never written to, handed to the serializers in place of released tags
+  private static final TagMap NO_TAGS = new TagMap(0);
 
   /** The collection of all span related to this one */
   private final PendingTrace trace;
@@ -74,7 +76,16 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
    * rather read and accessed in a serial fashion on thread after thread. The synchronization can
    * then be wrapped around bulk operations to minimize the costly atomic operations.
    */
-  private final Map<String, Object> unsafeTags;
+  private final TagMap unsafeTags;
+
+  /** Where {@link #unsafeTags} came from and is returned to, null unless span pooling is enabled */
+  private final TagMapPool tagMapPool;
+
+  /** Set, with the tags lock held, once the tags have been returned to the pool */
+  private volatile boolean tagsReleased;
+
+  /** How many writers still have to serialize the span before its tags can be released */
+  private int tagReferences = 1; // guarded by the tags lock
 
   /** The service name is required, otherwise the span are dropped by the agent */
   private volatile String serviceName;
@@ -171,10 +182,12 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
     assert pathwayContext != null;
     this.pathwayContext = pathwayContext;
 
-    // The +1 is the magic number from the tags below that we set at the end,
-    // and "* 4 / 3" is to make sure that we don't resize immediately
-    final int capacity = Math.max((tagsSize <= 0 ? 3 : (tagsSize + 1)) * 4 / 3, 8);
-    this.unsafeTags = new HashMap<>(capacity);
+    // The +1 is the magic number from the tags below that we set at the end
+    final int expectedTags = tagsSize <= 0 ? 3 : (tagsSize + 1);
+    final CoreTracer tracer = trace.getTracer();
+    this.tagMapPool = null == tracer ? null : tracer.getTagMapPool();
+    this.unsafeTags =
+        null == tagMapPool ? new TagMap(expectedTags) : tagMapPool.acquire(expectedTags);
 
     setServiceName(serviceName);
     this.operationName = operationName;
@@ -477,7 +490,41 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
 
   public void setMetric(final CharSequence key, final Number value) {
     synchronized (unsafeTags) {
-      unsafeSetTag(key.toString(), value);
+      if (!ignoreReleasedTags()) {
+        unsafeSetTag(key.toString(), value);
+      }
+    }
+  }
+
+  public void setMetric(final CharSequence key, final int value) {
+    synchronized (unsafeTags) {
+      if (!ignoreReleasedTags()) {
+        unsafeTags.setInt(key.toString(), value);
+      }
+    }
+  }
+
+  public void setMetric(final CharSequence key, final long value) {
+    synchronized (unsafeTags) {
+      if (!ignoreReleasedTags()) {
+        unsafeTags.setLong(key.toString(), value);
+      }
+    }
+  }
+
+  public void setMetric(final CharSequence key, final float value) {
+    synchronized (unsafeTags) {
+      if (!ignoreReleasedTags()) {
+        unsafeTags.setFloat(key.toString(), value);
+      }
+    }
+  }
+
+  public void setMetric(final CharSequence key, final double value) {
+    synchronized (unsafeTags) {
+      if (!ignoreReleasedTags()) {
+        unsafeTags.setDouble(key.toString(), value);
+      }
     }
   }
 
@@ -490,11 +537,15 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
   public void setTag(final String tag, final Object value) {
     if (null == value || "".equals(value)) {
       synchronized (unsafeTags) {
-        unsafeTags.remove(tag);
+        if (!ignoreReleasedTags()) {
+          unsafeTags.remove(tag);
+        }
       }
     } else if (!trace.getTracer().getTagInterceptor().interceptTag(this, tag, value)) {
       synchronized (unsafeTags) {
-        unsafeSetTag(tag, value);
+        if (!ignoreReleasedTags()) {
+          unsafeSetTag(tag, value);
+        }
       }
     }
   }
@@ -506,6 +557,9 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
 
     TagInterceptor tagInterceptor = trace.getTracer().getTagInterceptor();
     synchronized (unsafeTags) {
+      if (ignoreReleasedTags()) {
+        return;
+      }
       for (final Map.Entry<String, ?> tag : map.entrySet()) {
         if (!tagInterceptor.interceptTag(this, tag.getKey(), tag.getValue())) {
           unsafeSetTag(tag.getKey(), tag.getValue());
@@ -515,7 +569,7 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
   }
 
   void unsafeSetTag(final String tag, final Object value) {
-    unsafeTags.put(tag, value);
+    unsafeTags.set(tag, value);
   }
 
   Object getTag(final String key) {
@@ -542,12 +596,13 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
    * @return the value associated with the tag
    */
   public Object unsafeGetTag(final String tag) {
-    return unsafeTags.get(tag);
+    return tagsReleased ? null : unsafeTags.get(tag);
   }
 
   public Map<String, Object> getTags() {
     synchronized (unsafeTags) {
-      Map<String, Object> tags = new HashMap<>(unsafeTags);
+      Map<String, Object> tags =
+          tagsReleased ? new HashMap<String, Object>() : new HashMap<>(unsafeTags);
       tags.put(DDTags.THREAD_ID, threadId);
       tags.put(DDTags.THREAD_NAME, threadName.toString());
       if (samplingDecision != SamplingDecision.UNSET_UNKNOWN) {
@@ -566,7 +621,7 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
           new Metadata(
               threadId,
               threadName,
-              unsafeTags,
+              tagsReleased ? NO_TAGS : unsafeTags,
               baggageItems,
               (samplingDecision != SamplingDecision.UNSET_UNKNOWN
                   ? SamplingDecision.priority(samplingDecision)
@@ -579,6 +634,48 @@ public class DDSpanContext implements AgentSpan.Context, RequestContext<Object>,
     }
   }
 
+  /**
+   * Adds references to the tags, for writers sharing the span: the tags are only released once
+   * {@link #releaseTags()} has been called once more per added reference.
+   */
+  void retainTags(final int references) {
+    if (null == tagMapPool) {
+      return;
+    }
+    synchronized (unsafeTags) {
+      if (!tagsReleased) {
+        tagReferences += references;
+      }
+    }
+  }
+
+  /**
+   * Returns the tags to the pool they were taken from, once the span has been serialized by every
+   * writer. Tags set afterwards are ignored and tags read afterwards are missing, so this must only
+   * be called once nothing else will use the span.
+   */
+  void releaseTags() {
+    if (null == tagMapPool) {
+      return;
+    }
+    synchronized (unsafeTags) {
+      if (tagsReleased || --tagReferences > 0) {
+        return;
+      }
+      tagsReleased = true;
+    }
+    // every access to the tags checks the flag with the lock held, so nothing will touch them now
+    tagMapPool.release(unsafeTags);
+  }
+
+  private boolean ignoreReleasedTags() {
+    if (tagsReleased) {
+      log.debug("Ignoring tags set on span {} after it was written", spanId);
+      return true;
+    }
+    return false;
+  }
+
   @Override
   public String toString() {
     final StringBuilder s =
@@ -0,0 +1,206 @@
+package datadog.trace.core;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the finished spans of a {@link PendingTrace} until they are written.
+ *
+ * <p>The default implementation keeps every span in a single {@link ConcurrentLinkedDeque}. For
+ * traces with a very high fan-out, where many threads finish spans of the same trace at the same
+ * time, the striped implementation spreads the spans over several independent stripes so that
+ * finishing threads don't all contend on the same head.
+ */
+abstract class FinishedSpans implements Iterable<DDSpan> {
+
+  static FinishedSpans create(int stripes) {
+    return stripes > 1 ? new Striped(stripes) : new Queued();
+  }
+
+  /** Adds a finished span. May be called concurrently from any thread. */
+  abstract void add(DDSpan span);
+
+  abstract boolean isEmpty();
+
+  /**
+   * Removes every span currently held and adds it to {@code trace}. Spans added concurrently may or
+   * may not be drained, but will never be lost.
+   *
+   * @return the number of spans drained.
+   */
+  abstract int drainTo(List<DDSpan> trace);
+
+  /** @return Long.MAX_VALUE if no spans finished. */
+  abstract long oldestFinishedTime();
+
+  static long finishTime(DDSpan span) {
+    return span.getStartTime() + span.getDurationNano();
+  }
+
+  static final class Queued extends FinishedSpans {
+    private final ConcurrentLinkedDeque<DDSpan> spans = new ConcurrentLinkedDeque<>();
+
+    @Override
+    void add(DDSpan span) {
+      spans.addFirst(span);
+    }
+
+    @Override
+    boolean isEmpty() {
+      return spans.isEmpty();
+    }
+
+    @Override
+    int drainTo(List<DDSpan> trace) {
+      int drained = 0;
+      DDSpan span = spans.pollFirst();
+      while (null != span) {
+        trace.add(span);
+        ++drained;
+        span = spans.pollFirst();
+      }
+      return drained;
+    }
+
+    @Override
+    long oldestFinishedTime() {
+      long oldest = Long.MAX_VALUE;
+      for (DDSpan span : spans) {
+        oldest = Math.min(oldest, finishTime(span));
+      }
+      return oldest;
+    }
+
+    @Override
+    public Iterator<DDSpan> iterator() {
+      return spans.iterator();
+    }
+  }
+
+  /**
+   * Spans are pushed onto one of several lock-free stacks, selected by the finishing thread. Each
+   * node carries the minimum finish time of the stack below it, so the oldest finish time is found
+   * by looking at the stack heads only, and a whole stripe is drained with a single swap.
+   */
+  static final class Striped extends FinishedSpans {
+
+    private static final class Node {
+      final DDSpan span;
+      final Node next;
+      final long minFinishTime;
+
+      Node(DDSpan span, Node next) {
+        this.span = span;
+        this.next = next;
+        long finishTime = finishTime(span);
+        this.minFinishTime = null == next ? finishTime : Math.min(finishTime, next.minFinishTime);
+      }
+    }
+
+    private final AtomicReferenceArray<Node> stripes;
+    private final int mask;
+
+    Striped(int stripes) {
+      // round up to a power of two so the stripe can be selected with a mask
+      int size = Integer.highestOneBit(stripes - 1) << 1;
+      this.stripes = new AtomicReferenceArray<>(size);
+      this.mask = size - 1;
+    }
+
+    @Override
+    void add(DDSpan span) {
+      int index = stripeIndex();
+      Node head;
+      Node node;
+      do {
+        head = stripes.get(index);
+        node = new Node(span, head);
+      } while (!stripes.compareAndSet(index, head, node));
+    }
+
+    @Override
+    boolean isEmpty() {
+      for (int i = 0; i < stripes.length(); ++i) {
+        if (null != stripes.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    int drainTo(List<DDSpan> trace) {
+      int drained = 0;
+      for (int i = 0; i < stripes.length(); ++i) {
+        if (null != stripes.get(i)) {
+          Node node = stripes.getAndSet(i, null);
+          while (null != node) {
+            trace.add(node.span);
+            ++drained;
+            node = node.next;
+          }
+        }
+      }
+      return drained;
+    }
+
+    @Override
+    long oldestFinishedTime() {
+      long oldest = Long.MAX_VALUE;
+      for (int i = 0; i < stripes.length(); ++i) {
+        Node head = stripes.get(i);
+        if (null != head) {
+          oldest = Math.min(oldest, head.minFinishTime);
+        }
+      }
+      return oldest;
+    }
+
+    /** Weakly consistent, like the iterators of the concurrent collections. */
+    @Override
+    public Iterator<DDSpan> iterator() {
+      return new Iterator<DDSpan>() {
+        private int stripe = 0;
+        private Node next = advance(null);
+
+        private Node advance(Node current) {
+          Node node = null == current ? null : current.next;
+          while (null == node && stripe < stripes.length()) {
+            node = stripes.get(stripe++);
+          }
+          return node;
+        }
+
+        @Override
+        public boolean hasNext() {
+          return null != next;
+        }
+
+        @Override
+        public DDSpan next() {
+          if (null == next) {
+            throw new NoSuchElementException();
+          }
+          Node current = next;
+          next = advance(current);
+          return current.span;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    private int stripeIndex() {
+      long id = Thread.currentThread().getId();
+      // spread the thread id bits, thread ids are usually small and sequential
+      int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+      return (hash ^ (hash >>> 16)) & mask;
+    }
+  }
+}
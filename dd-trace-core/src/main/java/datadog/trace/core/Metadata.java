@@ -9,7 +9,7 @@ public final class Metadata {
   private final long threadId;
   private final UTF8BytesString threadName;
   private final UTF8BytesString httpStatusCode;
-  private final Map<String, Object> tags;
+  private final TagMap tags;
   private final Map<String, String> baggage;
 
   private final int samplingPriority;
@@ -20,7 +20,7 @@ public final class Metadata {
   public Metadata(
       long threadId,
       UTF8BytesString threadName,
-      Map<String, Object> tags,
+      TagMap tags,
       Map<String, String> baggage,
       int samplingPriority,
       boolean measured,
@@ -54,7 +54,7 @@ public final class Metadata {
     return threadName;
   }
 
-  public Map<String, Object> getTags() {
+  public TagMap getTags() {
     return tags;
   }
 
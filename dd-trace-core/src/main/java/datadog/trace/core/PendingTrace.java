@@ -2,12 +2,12 @@ package datadog.trace.core;
 
 import datadog.communication.monitor.Recording;
 import datadog.trace.api.DDId;
+import datadog.trace.api.sampling.PrioritySampling;
 import datadog.trace.api.time.TimeSource;
 import datadog.trace.bootstrap.instrumentation.api.AgentScope;
 import datadog.trace.bootstrap.instrumentation.api.AgentTrace;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
  *       <ul>
  *         <li>pending ref count == 0 && trace not already written
  *         <li>not root span && size exceeds partial flush
+ *         <li>not root span && size reaches the streaming chunk size && sampling decision made
  *       </ul>
  *   <li>Delayed Write
  *       <ul>
@@ -32,6 +33,12 @@ import org.slf4j.LoggerFactory;
  * </ul>
  *
  * Delayed write is handled by PendingTraceBuffer. <br>
+ *
+ * <p>In span-streaming mode, enabled by a streaming chunk size above 0, finished spans are written
+ * in chunks of that size as soon as the sampling decision is made, so that a trace running for
+ * hours only holds a chunk of finished spans at a time. Child spans only refer to their parent by
+ * id, so once a chunk is written nothing of it is kept, except the root span, which is needed to
+ * sample the remaining chunks.
  */
 public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
 
@@ -42,20 +49,50 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
     private final PendingTraceBuffer pendingTraceBuffer;
     private final TimeSource timeSource;
     private final boolean strictTraceWrites;
+    private final int spanStripes;
+    private final int streamingChunkSize;
 
     Factory(
         CoreTracer tracer,
         PendingTraceBuffer pendingTraceBuffer,
         TimeSource timeSource,
         boolean strictTraceWrites) {
+      this(tracer, pendingTraceBuffer, timeSource, strictTraceWrites, 0);
+    }
+
+    Factory(
+        CoreTracer tracer,
+        PendingTraceBuffer pendingTraceBuffer,
+        TimeSource timeSource,
+        boolean strictTraceWrites,
+        int spanStripes) {
+      this(tracer, pendingTraceBuffer, timeSource, strictTraceWrites, spanStripes, 0);
+    }
+
+    Factory(
+        CoreTracer tracer,
+        PendingTraceBuffer pendingTraceBuffer,
+        TimeSource timeSource,
+        boolean strictTraceWrites,
+        int spanStripes,
+        int streamingChunkSize) {
       this.tracer = tracer;
       this.pendingTraceBuffer = pendingTraceBuffer;
       this.timeSource = timeSource;
       this.strictTraceWrites = strictTraceWrites;
+      this.spanStripes = spanStripes;
+      this.streamingChunkSize = streamingChunkSize;
     }
 
     PendingTrace create(@Nonnull DDId traceId) {
-      return new PendingTrace(tracer, traceId, pendingTraceBuffer, timeSource, strictTraceWrites);
+      return new PendingTrace(
+          tracer,
+          traceId,
+          pendingTraceBuffer,
+          timeSource,
+          strictTraceWrites,
+          streamingChunkSize,
+          FinishedSpans.create(spanStripes));
     }
   }
 
@@ -66,10 +103,11 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
   private final PendingTraceBuffer pendingTraceBuffer;
   private final TimeSource timeSource;
   private final boolean strictTraceWrites;
+  private final int streamingChunkSize;
 
-  private final ConcurrentLinkedDeque<DDSpan> finishedSpans = new ConcurrentLinkedDeque<>();
+  private final FinishedSpans finishedSpans;
 
-  // We must maintain a separate count because ConcurrentLinkedDeque.size() is a linear operation.
+  // We must maintain a separate count because FinishedSpans can't report its size cheaply.
   private volatile int completedSpanCount = 0;
   private static final AtomicIntegerFieldUpdater<PendingTrace> COMPLETED_SPAN_COUNT =
       AtomicIntegerFieldUpdater.newUpdater(PendingTrace.class, "completedSpanCount");
@@ -108,12 +146,16 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
       @Nonnull DDId traceId,
       @Nonnull PendingTraceBuffer pendingTraceBuffer,
       @Nonnull TimeSource timeSource,
-      boolean strictTraceWrites) {
+      boolean strictTraceWrites,
+      int streamingChunkSize,
+      @Nonnull FinishedSpans finishedSpans) {
     this.tracer = tracer;
     this.traceId = traceId;
     this.pendingTraceBuffer = pendingTraceBuffer;
     this.timeSource = timeSource;
     this.strictTraceWrites = strictTraceWrites;
+    this.streamingChunkSize = streamingChunkSize;
+    this.finishedSpans = finishedSpans;
   }
 
   CoreTracer getTracer() {
@@ -165,7 +207,7 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
   }
 
   PublishState onPublish(final DDSpan span) {
-    finishedSpans.addFirst(span);
+    finishedSpans.add(span);
     // There is a benign race here where the span added above can get written out by a writer in
     // progress before the count has been incremented. It's being taken care of in the internal
     // write method.
@@ -181,11 +223,7 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
   /** @return Long.MAX_VALUE if no spans finished. */
   @Override
   public long oldestFinishedTime() {
-    long oldest = Long.MAX_VALUE;
-    for (DDSpan span : finishedSpans) {
-      oldest = Math.min(oldest, span.getStartTime() + span.getDurationNano());
-    }
-    return oldest;
+    return finishedSpans.oldestFinishedTime();
   }
 
   /**
@@ -205,6 +243,7 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
   enum PublishState {
     WRITTEN,
     PARTIAL_FLUSH,
+    STREAMED,
     ROOT_BUFFERED,
     BUFFERED,
     PENDING
@@ -227,8 +266,12 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
       return PublishState.ROOT_BUFFERED;
     } else if (0 < partialFlushMinSpans && partialFlushMinSpans < size()) {
       // Trace is getting too big, write anything completed.
-      partialFlush();
+      partialFlush(partialFlushMinSpans);
       return PublishState.PARTIAL_FLUSH;
+    } else if (0 < streamingChunkSize && streamingChunkSize <= size() && decideSampling()) {
+      // The chunk of spans is sampled like the rest of the trace, write it.
+      partialFlush(streamingChunkSize - 1);
+      return PublishState.STREAMED;
     } else if (rootSpanWritten) {
       // Late arrival span ... delay write
       pendingTraceBuffer.enqueue(this);
@@ -237,9 +280,25 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
     return PublishState.PENDING;
   }
 
+  /**
+   * Makes the sampling decision on the root span when it wasn't made yet, like when the trace is
+   * written or propagated, so the chunks written before the root span finishes are sampled like the
+   * rest of the trace.
+   *
+   * @return whether the trace is sampled with a decided priority
+   */
+  private boolean decideSampling() {
+    DDSpan root = rootSpan;
+    if (null == root) {
+      return false;
+    }
+    tracer.setSamplingPriorityIfNecessary(root);
+    return root.context().getSamplingPriority() != PrioritySampling.UNSET;
+  }
+
   /** Important to note: may be called multiple times. */
-  private void partialFlush() {
-    int size = write(true);
+  private void partialFlush(int minSpans) {
+    int size = write(true, minSpans);
     if (log.isDebugEnabled()) {
       log.debug("t_id={} -> wrote partial trace of size {}", traceId, size);
     }
@@ -248,10 +307,11 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
   /** Important to note: may be called multiple times. */
   @Override
   public void write() {
-    write(false);
+    write(false, 0);
   }
 
-  private int write(boolean isPartial) {
+  /** Partial writes only write the finished spans when there are more than {@code minSpans}. */
+  private int write(boolean isPartial, int minSpans) {
     if (!finishedSpans.isEmpty()) {
       try (Recording recording = tracer.writeTimer()) {
         // Only one writer at a time
@@ -267,13 +327,9 @@ public class PendingTrace implements AgentTrace, PendingTraceBuffer.Element {
           // the completedSpanCount has not yet been incremented. This means that eventually the
           // count(s) will be incremented, and any new spans added during the period that the count
           // was negative will be written by someone even if we don't write them right now.
-          if (size > 0 && (!isPartial || size > tracer.getPartialFlushMinSpans())) {
+          if (size > 0 && (!isPartial || size > minSpans)) {
             trace = new ArrayList<>(size);
-            DDSpan span = finishedSpans.pollFirst();
-            while (null != span) {
-              trace.add(span);
-              span = finishedSpans.pollFirst();
-            }
+            finishedSpans.drainTo(trace);
           } else {
             trace = EMPTY;
           }
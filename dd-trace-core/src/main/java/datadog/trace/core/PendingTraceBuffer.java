@@ -3,11 +3,16 @@ package datadog.trace.core;
 import static datadog.trace.util.AgentThreadFactory.AgentThread.TRACE_MONITOR;
 import static datadog.trace.util.AgentThreadFactory.THREAD_JOIN_TIMOUT_MS;
 import static datadog.trace.util.AgentThreadFactory.newAgentThread;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+import datadog.trace.api.StatsDClient;
 import datadog.trace.api.time.TimeSource;
+import datadog.trace.core.monitor.HealthMetrics;
+import datadog.trace.util.TimerWheel;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpscArrayQueue;
 import org.jctools.queues.MpscBlockingConsumerArrayQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,27 +39,47 @@ public abstract class PendingTraceBuffer implements AutoCloseable {
     boolean setEnqueued(boolean enqueued);
   }
 
+  /**
+   * Buffers traces until they can be written.
+   *
+   * <p>Traces are handed over to the worker thread through a bounded queue. The worker keeps each
+   * trace in a {@link TimerWheel}, due at the next time it needs to be checked, so it only looks at
+   * the traces which are due, instead of cycling every buffered trace through the queue. Up to
+   * {@link #MAX_BUFFERED_TRACES} are kept in the wheel.
+   *
+   * <p>Traces which don't fit in the queue are handed over through an overflow queue of the same
+   * size instead, and written by the worker as soon as it gets to them, so application threads
+   * never write traces themselves. Traces which don't fit in either queue, when the worker is
+   * stalled, are dropped rather than buffered without bound.
+   */
   private static class DelayingPendingTraceBuffer extends PendingTraceBuffer {
     private static final long FORCE_SEND_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
     private static final long SEND_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(500);
-    private static final long SLEEP_TIME_MS = 100;
+    // how long a trace which is still being referenced waits before being checked again
+    private static final long RECHECK_DELAY_NS = SEND_DELAY_NS / 4;
+    private static final int MAX_BUFFERED_TRACES = 1 << 16;
+    private static final long DEPTH_REPORT_INTERVAL_NS = TimeUnit.SECONDS.toNanos(10);
 
     private final MpscBlockingConsumerArrayQueue<Element> queue;
+    private final MessagePassingQueue<Element> overflow;
+    private final TimerWheel wheel;
     private final Thread worker;
     private final TimeSource timeSource;
+    private final HealthMetrics healthMetrics;
 
     private volatile boolean closed = false;
     private final AtomicInteger flushCounter = new AtomicInteger(0);
 
-    /** if the queue is full, pendingTrace trace will be written immediately. */
+    /** if the queue is full, pendingTrace trace will be written once the worker gets to it. */
     @Override
     public void enqueue(Element pendingTrace) {
       if (pendingTrace.setEnqueued(true)) {
         if (!queue.offer(pendingTrace)) {
-          // Mark it as not in the queue
-          pendingTrace.setEnqueued(false);
-          // Queue is full, so we can't buffer this trace, write it out directly instead.
-          pendingTrace.write();
+          // Queue is full, so we can't buffer this trace, the worker writes it out directly.
+          if (!overflow.offer(pendingTrace)) {
+            pendingTrace.setEnqueued(false);
+            healthMetrics.onDroppedPendingTrace();
+          }
         }
       }
     }
@@ -104,15 +129,6 @@ public abstract class PendingTraceBuffer implements AutoCloseable {
       }
     }
 
-    private static final class WriteDrain implements MessagePassingQueue.Consumer<Element> {
-      private static final WriteDrain WRITE_DRAIN = new WriteDrain();
-
-      @Override
-      public void accept(Element pendingTrace) {
-        pendingTrace.write();
-      }
-    }
-
     private static final class FlushElement implements Element {
       static FlushElement FLUSH_ELEMENT = new FlushElement();
 
@@ -140,53 +156,117 @@ public abstract class PendingTraceBuffer implements AutoCloseable {
       }
     }
 
-    private final class Worker implements Runnable {
+    /** The next check of a buffered trace, reused while the trace stays in the wheel. */
+    private static final class Check extends TimerWheel.Timer {
+      final Element pendingTrace;
+
+      Check(Element pendingTrace) {
+        this.pendingTrace = pendingTrace;
+      }
+    }
+
+    private final class Worker implements Runnable, MessagePassingQueue.Consumer<Element> {
+      private boolean flushRequested;
+      private long lastDepthReport;
 
       @Override
       public void run() {
         try {
           while (!closed && !Thread.currentThread().isInterrupted()) {
-
-            Element pendingTrace = queue.take(); // block until available.
-
-            if (pendingTrace instanceof FlushElement) {
+            Element pendingTrace;
+            long wakeUp = wheel.nextWakeUp();
+            if (wakeUp == Long.MAX_VALUE) {
+              pendingTrace = queue.take(); // block until available.
+            } else {
+              // wait for new traces until the next check is due
+              long wait = wakeUp - timeSource.getNanoTicks();
+              pendingTrace = wait > 0 ? queue.poll(wait, NANOSECONDS) : queue.poll();
+            }
+            if (null != pendingTrace) {
+              accept(pendingTrace);
               // Since this is an MPSC queue, the drain needs to be called on the consumer thread
-              queue.drain(WriteDrain.WRITE_DRAIN);
+              queue.drain(this);
+            }
+            // only filled when the queue is full, which wakes the worker up
+            while (null != (pendingTrace = overflow.poll())) {
+              healthMetrics.onForcedPendingTraceWrite(true);
+              writeNow(pendingTrace);
+            }
+            if (flushRequested) {
+              flushRequested = false;
+              wheel.expireAll();
+              for (TimerWheel.Timer check; null != (check = wheel.poll()); ) {
+                writeNow(((Check) check).pendingTrace);
+              }
               flushCounter.incrementAndGet();
-              continue;
             }
-
-            // The element is no longer in the queue
-            pendingTrace.setEnqueued(false);
-
-            long oldestFinishedTime = pendingTrace.oldestFinishedTime();
-
-            long finishTimestampMillis = TimeUnit.NANOSECONDS.toMillis(oldestFinishedTime);
-            if (finishTimestampMillis <= timeSource.getCurrentTimeMillis() - FORCE_SEND_DELAY_MS) {
-              // Root span is getting old. Send the trace to avoid being discarded by agent.
-              pendingTrace.write();
-              continue;
+            long now = timeSource.getNanoTicks();
+            wheel.advance(now);
+            for (TimerWheel.Timer check; null != (check = wheel.poll()); ) {
+              check(((Check) check).pendingTrace, (Check) check, now);
             }
-
-            if (pendingTrace.lastReferencedNanosAgo(SEND_DELAY_NS)) {
-              // Trace has been unmodified long enough, go ahead and write whatever is finished.
-              pendingTrace.write();
-            } else {
-              // Trace is too new.  Requeue it and sleep to avoid a hot loop.
-              enqueue(pendingTrace);
-              Thread.sleep(SLEEP_TIME_MS);
+            if (now - lastDepthReport >= DEPTH_REPORT_INTERVAL_NS) {
+              lastDepthReport = now;
+              healthMetrics.onPendingTraceBufferDepth(wheel.size());
             }
           }
         } catch (InterruptedException e) {
           Thread.currentThread().interrupt();
         }
       }
+
+      @Override
+      public void accept(Element pendingTrace) {
+        if (pendingTrace instanceof FlushElement) {
+          // everything drained along with the flush request is written straight away
+          flushRequested = true;
+        } else if (flushRequested) {
+          writeNow(pendingTrace);
+        } else {
+          check(pendingTrace, null, timeSource.getNanoTicks());
+        }
+      }
+
+      /** Writes the trace if it's ready or too old, otherwise schedules its next check. */
+      private void check(Element pendingTrace, Check check, long nowNanoTicks) {
+        long finishTimestampMillis =
+            TimeUnit.NANOSECONDS.toMillis(pendingTrace.oldestFinishedTime());
+        long forceSendInMillis =
+            finishTimestampMillis + FORCE_SEND_DELAY_MS - timeSource.getCurrentTimeMillis();
+        if (forceSendInMillis <= 0) {
+          // Root span is getting old. Send the trace to avoid being discarded by agent.
+          healthMetrics.onForcedPendingTraceWrite(false);
+          writeNow(pendingTrace);
+        } else if (pendingTrace.lastReferencedNanosAgo(SEND_DELAY_NS)) {
+          // Trace has been unmodified long enough, go ahead and write whatever is finished.
+          writeNow(pendingTrace);
+        } else if (wheel.size() >= MAX_BUFFERED_TRACES) {
+          healthMetrics.onForcedPendingTraceWrite(true);
+          writeNow(pendingTrace);
+        } else {
+          // Trace is too new, look at it again later. It stays marked as enqueued meanwhile.
+          wheel.add(
+              null != check ? check : new Check(pendingTrace),
+              nowNanoTicks
+                  + Math.min(RECHECK_DELAY_NS, TimeUnit.MILLISECONDS.toNanos(forceSendInMillis)));
+        }
+      }
     }
 
-    public DelayingPendingTraceBuffer(int bufferSize, TimeSource timeSource) {
+    private static void writeNow(Element pendingTrace) {
+      // The element is no longer buffered
+      pendingTrace.setEnqueued(false);
+      pendingTrace.write();
+    }
+
+    public DelayingPendingTraceBuffer(
+        int bufferSize, TimeSource timeSource, HealthMetrics healthMetrics) {
       this.queue = new MpscBlockingConsumerArrayQueue<>(bufferSize);
+      this.overflow = new MpscArrayQueue<>(bufferSize);
       this.worker = newAgentThread(TRACE_MONITOR, new Worker());
       this.timeSource = timeSource;
+      this.healthMetrics = healthMetrics;
+      this.wheel = new TimerWheel(timeSource.getNanoTicks());
     }
   }
 
@@ -210,7 +290,11 @@ public abstract class PendingTraceBuffer implements AutoCloseable {
   }
 
   public static PendingTraceBuffer delaying(TimeSource timeSource) {
-    return new DelayingPendingTraceBuffer(BUFFER_SIZE, timeSource);
+    return delaying(timeSource, new HealthMetrics(StatsDClient.NO_OP));
+  }
+
+  public static PendingTraceBuffer delaying(TimeSource timeSource, HealthMetrics healthMetrics) {
+    return new DelayingPendingTraceBuffer(BUFFER_SIZE, timeSource, healthMetrics);
   }
 
   public static PendingTraceBuffer discarding() {
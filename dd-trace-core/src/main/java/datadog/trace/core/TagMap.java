@@ -0,0 +1,381 @@
+package datadog.trace.core;
+
+import datadog.trace.api.Functions;
+import datadog.trace.api.cache.DDCache;
+import datadog.trace.api.cache.DDCaches;
+import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The tags of a span, stored in flat arrays with open addressing (linear probing) instead of a node
+ * per entry, and with numbers stored unboxed.
+ *
+ * <p>Like the {@link java.util.HashMap} it replaces, this isn't thread-safe: {@link DDSpanContext}
+ * guards it. The serializers walk the tags with {@link #forEachTag(TagVisitor)} and {@link
+ * #forEachMetric(MetricVisitor)}, which neither copy the map nor box metrics, and give them keys
+ * already encoded as UTF-8. Other code can use it as a regular {@link Map}, but its views don't
+ * support removal.
+ */
+public final class TagMap extends AbstractMap<String, Object> {
+
+  private static final DDCache<String, UTF8BytesString> UTF8_KEYS =
+      DDCaches.newFixedSizeCache(512);
+
+  private static final byte OBJECT = 0;
+  // a Number which isn't one of the types below
+  private static final byte NUMBER = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+
+  public interface TagVisitor {
+    void visit(UTF8BytesString key, Object value);
+  }
+
+  public interface MetricVisitor {
+    void visitInt(UTF8BytesString key, int value);
+
+    void visitLong(UTF8BytesString key, long value);
+
+    void visitFloat(UTF8BytesString key, float value);
+
+    void visitDouble(UTF8BytesString key, double value);
+
+    void visitNumber(UTF8BytesString key, Number value);
+  }
+
+  private String[] keys;
+  private Object[] objects;
+  // allocated when the first unboxed number is set
+  private long[] numbers;
+  private byte[] kinds;
+  private int size;
+  private int metricCount;
+
+  public TagMap() {
+    this(8);
+  }
+
+  public TagMap(int expectedSize) {
+    allocate(tableSizeFor(expectedSize));
+  }
+
+  /** @return the number of tags which are numbers, i.e. metrics */
+  public int metricCount() {
+    return metricCount;
+  }
+
+  /** Sets a tag without boxing the previous value like {@link #put(String, Object)} does. */
+  public void set(String key, Object value) {
+    if (value instanceof Number) {
+      Class<?> type = value.getClass();
+      if (type == Integer.class) {
+        setInt(key, (Integer) value);
+      } else if (type == Long.class) {
+        setLong(key, (Long) value);
+      } else if (type == Double.class) {
+        setDouble(key, (Double) value);
+      } else if (type == Float.class) {
+        setFloat(key, (Float) value);
+      } else {
+        setObject(key, NUMBER, value);
+      }
+    } else {
+      setObject(key, OBJECT, value);
+    }
+  }
+
+  public void setInt(String key, int value) {
+    setNumber(key, INT, value);
+  }
+
+  public void setLong(String key, long value) {
+    setNumber(key, LONG, value);
+  }
+
+  public void setFloat(String key, float value) {
+    setNumber(key, FLOAT, Float.floatToRawIntBits(value));
+  }
+
+  public void setDouble(String key, double value) {
+    setNumber(key, DOUBLE, Double.doubleToRawLongBits(value));
+  }
+
+  private void setObject(String key, byte kind, Object value) {
+    // claim the slot first, the arrays may be replaced when the table grows
+    int slot = slotFor(key, kind);
+    objects[slot] = value;
+  }
+
+  private void setNumber(String key, byte kind, long bits) {
+    if (null == numbers) {
+      numbers = new long[keys.length];
+    }
+    int slot = slotFor(key, kind);
+    objects[slot] = null;
+    numbers[slot] = bits;
+  }
+
+  /** Finds or claims the slot for the key, and records the kind of value it will hold. */
+  private int slotFor(String key, byte kind) {
+    int slot = indexOf(key);
+    if (slot < 0) {
+      if ((size + 1) * 4 > keys.length * 3) {
+        resize();
+        slot = indexOf(key);
+      }
+      slot = ~slot;
+      keys[slot] = key;
+      ++size;
+    } else if (kinds[slot] != OBJECT) {
+      --metricCount;
+    }
+    kinds[slot] = kind;
+    if (kind != OBJECT) {
+      ++metricCount;
+    }
+    return slot;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    Object previous = get(key);
+    set(key, value);
+    return previous;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    int slot = indexOf((String) key);
+    return slot < 0 ? null : valueAt(slot);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String && indexOf((String) key) >= 0;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+    int slot = indexOf((String) key);
+    if (slot < 0) {
+      return null;
+    }
+    Object previous = valueAt(slot);
+    if (kinds[slot] != OBJECT) {
+      --metricCount;
+    }
+    --size;
+    // shift back the entries which probed past the removed slot, so lookups don't stop early
+    int mask = keys.length - 1;
+    int free = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      String moved = keys[next];
+      if (null == moved) {
+        break;
+      }
+      int home = hash(moved) & mask;
+      boolean stays = free <= next ? free < home && home <= next : free < home || home <= next;
+      if (!stays) {
+        keys[free] = moved;
+        objects[free] = objects[next];
+        kinds[free] = kinds[next];
+        if (null != numbers) {
+          numbers[free] = numbers[next];
+        }
+        free = next;
+      }
+    }
+    keys[free] = null;
+    objects[free] = null;
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, null);
+      Arrays.fill(objects, null);
+      size = 0;
+      metricCount = 0;
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Visits every tag which isn't a number. */
+  public void forEachTag(TagVisitor visitor) {
+    for (int i = 0; i < keys.length; ++i) {
+      if (null != keys[i] && kinds[i] == OBJECT) {
+        visitor.visit(UTF8_KEYS.computeIfAbsent(keys[i], Functions.UTF8_ENCODE), objects[i]);
+      }
+    }
+  }
+
+  /** Visits every tag which is a number. */
+  public void forEachMetric(MetricVisitor visitor) {
+    if (metricCount == 0) {
+      return;
+    }
+    for (int i = 0; i < keys.length; ++i) {
+      if (null != keys[i] && kinds[i] != OBJECT) {
+        UTF8BytesString key = UTF8_KEYS.computeIfAbsent(keys[i], Functions.UTF8_ENCODE);
+        switch (kinds[i]) {
+          case INT:
+            visitor.visitInt(key, (int) numbers[i]);
+            break;
+          case LONG:
+            visitor.visitLong(key, numbers[i]);
+            break;
+          case FLOAT:
+            visitor.visitFloat(key, Float.intBitsToFloat((int) numbers[i]));
+            break;
+          case DOUBLE:
+            visitor.visitDouble(key, Double.longBitsToDouble(numbers[i]));
+            break;
+          default:
+            visitor.visitNumber(key, (Number) objects[i]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new Iterator<Map.Entry<String, Object>>() {
+          private int next = advance(0);
+
+          private int advance(int from) {
+            int i = from;
+            while (i < keys.length && null == keys[i]) {
+              ++i;
+            }
+            return i;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next < keys.length;
+          }
+
+          @Override
+          public Map.Entry<String, Object> next() {
+            if (next >= keys.length) {
+              throw new NoSuchElementException();
+            }
+            int slot = next;
+            next = advance(slot + 1);
+            return new SimpleImmutableEntry<>(keys[slot], valueAt(slot));
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private Object valueAt(int slot) {
+    switch (kinds[slot]) {
+      case INT:
+        return (int) numbers[slot];
+      case LONG:
+        return numbers[slot];
+      case FLOAT:
+        return Float.intBitsToFloat((int) numbers[slot]);
+      case DOUBLE:
+        return Double.longBitsToDouble(numbers[slot]);
+      default:
+        return objects[slot];
+    }
+  }
+
+  /** @return the slot of the key, or the complement of the slot it would be inserted into */
+  private int indexOf(String key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (true) {
+      String candidate = keys[slot];
+      if (null == candidate) {
+        return ~slot;
+      }
+      if (candidate.equals(key)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void resize() {
+    String[] oldKeys = keys;
+    Object[] oldObjects = objects;
+    long[] oldNumbers = numbers;
+    byte[] oldKinds = kinds;
+    allocate(oldKeys.length << 1);
+    if (null != oldNumbers) {
+      numbers = new long[keys.length];
+    }
+    for (int i = 0; i < oldKeys.length; ++i) {
+      if (null != oldKeys[i]) {
+        int slot = ~indexOf(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        objects[slot] = oldObjects[i];
+        kinds[slot] = oldKinds[i];
+        if (null != oldNumbers) {
+          numbers[slot] = oldNumbers[i];
+        }
+      }
+    }
+  }
+
+  private void allocate(int tableSize) {
+    keys = new String[tableSize];
+    objects = new Object[tableSize];
+    kinds = new byte[tableSize];
+    numbers = null;
+  }
+
+  private static int hash(String key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int tableSizeFor(int expectedSize) {
+    // keep the load factor under 3/4
+    int minimum = Math.max(expectedSize * 4 / 3 + 1, 8);
+    return Integer.highestOneBit(minimum - 1) << 1;
+  }
+}
@@ -0,0 +1,41 @@
+package datadog.trace.core;
+
+import org.jctools.queues.MpmcArrayQueue;
+
+/**
+ * Recycles the tag storage of spans once they have been serialized, so that spans created
+ * afterwards don't need to allocate (and grow) a new map each.
+ *
+ * <p>Tags are released on the serializer thread and acquired on application threads, so the pool is
+ * a bounded queue shared between all threads rather than a thread local cache. When the pool is
+ * empty a new map is allocated, and when it is full released maps are left to the garbage
+ * collector.
+ */
+final class TagMapPool {
+
+  /** Maps which held more tags than this have a large table, which isn't worth keeping around. */
+  static final int MAX_POOLED_TAGS = 64;
+
+  private final MpmcArrayQueue<TagMap> pool;
+
+  TagMapPool(int capacity) {
+    this.pool = new MpmcArrayQueue<>(Math.max(capacity, 2));
+  }
+
+  TagMap acquire(int expectedSize) {
+    TagMap tags = pool.relaxedPoll();
+    return null == tags ? new TagMap(expectedSize) : tags;
+  }
+
+  /** The map must not be used by the caller after it has been released. */
+  void release(TagMap tags) {
+    if (tags.size() <= MAX_POOLED_TAGS) {
+      tags.clear();
+      pool.relaxedOffer(tags);
+    }
+  }
+
+  int size() {
+    return pool.size();
+  }
+}
@@ -15,8 +15,7 @@ import datadog.trace.util.AgentTaskScheduler;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import org.jctools.counters.CountersFactory;
-import org.jctools.counters.FixedSizeStripedLongCounter;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Callback for monitoring the health of the DDAgentWriter. Provides hooks for major lifecycle
@@ -29,50 +28,71 @@ import org.jctools.counters.FixedSizeStripedLongCounter;
  *   <li>serializing
  *   <li>sending to agent
  * </ul>
+ *
+ * <p>The metrics updated many times per interval are aggregated in process and sent once per
+ * interval.
  */
 public class HealthMetrics implements AutoCloseable {
 
-  private static final IntFunction<String[]> STATUS_TAGS =
+  private static final IntFunction<String[]> SHARD_TAGS =
       new IntFunction<String[]>() {
         @Override
-        public String[] apply(int httpStatus) {
-          return new String[] {"status:" + httpStatus};
+        public String[] apply(int shard) {
+          return new String[] {"shard:" + shard};
         }
       };
 
   private static final String[] NO_TAGS = new String[0];
-  private final RadixTreeCache<String[]> statusTagsCache =
-      new RadixTreeCache<>(16, 32, STATUS_TAGS, 200, 400);
+  private static final String[] USER_DROP_TAG = new String[] {"priority:user_drop"};
+  private static final String[] USER_KEEP_TAG = new String[] {"priority:user_keep"};
+  private static final String[] SAMPLER_DROP_TAG = new String[] {"priority:sampler_drop"};
+  private static final String[] SAMPLER_KEEP_TAG = new String[] {"priority:sampler_keep"};
+  private static final String[] UNSET_TAG = new String[] {"priority:unset"};
+  private static final String[] BUFFER_FULL_TAG = new String[] {"reason:buffer_full"};
+  private static final String[] EXPIRED_TAG = new String[] {"reason:expired"};
+
+  // covers the standard HTTP statuses
+  private static final int MAX_STATUS = 600;
+
+  private final RadixTreeCache<String[]> shardTagsCache = new RadixTreeCache<>(4, 16, SHARD_TAGS);
 
   private final AtomicBoolean started = new AtomicBoolean(false);
   private volatile AgentTaskScheduler.Scheduled<HealthMetrics> cancellation;
 
-  private final FixedSizeStripedLongCounter userDropEnqueuedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter userKeepEnqueuedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter samplerDropEnqueuedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter samplerKeepEnqueuedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter unsetPriorityEnqueuedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-
-  private final FixedSizeStripedLongCounter userDropDroppedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter userKeepDroppedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter samplerDropDroppedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter samplerKeepDroppedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-  private final FixedSizeStripedLongCounter unsetPriorityDroppedTraces =
-      CountersFactory.createFixedSizeStripedCounter(8);
-
-  private final FixedSizeStripedLongCounter enqueuedSpans =
-      CountersFactory.createFixedSizeStripedCounter(8);
+  private final StatsDAggregator.Counter userDropEnqueuedTraces;
+  private final StatsDAggregator.Counter userKeepEnqueuedTraces;
+  private final StatsDAggregator.Counter samplerDropEnqueuedTraces;
+  private final StatsDAggregator.Counter samplerKeepEnqueuedTraces;
+  private final StatsDAggregator.Counter unsetPriorityEnqueuedTraces;
+
+  private final StatsDAggregator.Counter userDropDroppedTraces;
+  private final StatsDAggregator.Counter userKeepDroppedTraces;
+  private final StatsDAggregator.Counter samplerDropDroppedTraces;
+  private final StatsDAggregator.Counter samplerKeepDroppedTraces;
+  private final StatsDAggregator.Counter unsetPriorityDroppedTraces;
+
+  private final StatsDAggregator.Counter enqueuedSpans;
+  private final StatsDAggregator.Counter enqueuedBytes;
+
+  private final StatsDAggregator.Counter blockedSends;
+  private final StatsDAggregator.Counter droppedPayloads;
+  private final StatsDAggregator.Counter droppedPayloadTraces;
+
+  private final StatsDAggregator.Counter fullPendingTraceWrites;
+  private final StatsDAggregator.Counter expiredPendingTraceWrites;
+  private final StatsDAggregator.Gauge bufferedPendingTraces;
+  private final StatsDAggregator.Counter droppedPendingTraces;
+
+  private final StatsDAggregator.Counter apiRequests;
+  private final StatsDAggregator.Counter apiErrors;
+  private final StatsDAggregator.Counter flushedTraces;
+  private final StatsDAggregator.Counter flushedBytes;
+  // registered the first time each status is received
+  private final AtomicReferenceArray<StatsDAggregator.Counter> apiResponses =
+      new AtomicReferenceArray<>(MAX_STATUS);
 
   private final StatsDClient statsd;
+  private final StatsDAggregator aggregator;
   private final long interval;
   private final TimeUnit units;
 
@@ -90,8 +110,38 @@ public class HealthMetrics implements AutoCloseable {
 
   public HealthMetrics(final StatsDClient statsd, long interval, TimeUnit units) {
     this.statsd = statsd;
+    this.aggregator = new StatsDAggregator(statsd);
     this.interval = interval;
     this.units = units;
+
+    userDropEnqueuedTraces = aggregator.counter("queue.enqueued.traces", USER_DROP_TAG);
+    userKeepEnqueuedTraces = aggregator.counter("queue.enqueued.traces", USER_KEEP_TAG);
+    samplerDropEnqueuedTraces = aggregator.counter("queue.enqueued.traces", SAMPLER_DROP_TAG);
+    samplerKeepEnqueuedTraces = aggregator.counter("queue.enqueued.traces", SAMPLER_KEEP_TAG);
+    unsetPriorityEnqueuedTraces = aggregator.counter("queue.enqueued.traces", UNSET_TAG);
+
+    userDropDroppedTraces = aggregator.counter("queue.dropped.traces", USER_DROP_TAG);
+    userKeepDroppedTraces = aggregator.counter("queue.dropped.traces", USER_KEEP_TAG);
+    samplerDropDroppedTraces = aggregator.counter("queue.dropped.traces", SAMPLER_DROP_TAG);
+    samplerKeepDroppedTraces = aggregator.counter("queue.dropped.traces", SAMPLER_KEEP_TAG);
+    unsetPriorityDroppedTraces = aggregator.counter("queue.dropped.traces", UNSET_TAG);
+
+    enqueuedSpans = aggregator.counter("queue.enqueued.spans", NO_TAGS);
+    enqueuedBytes = aggregator.counter("queue.enqueued.bytes", NO_TAGS);
+
+    blockedSends = aggregator.counter("send.queue.blocked", NO_TAGS);
+    droppedPayloads = aggregator.counter("send.queue.dropped.payloads", NO_TAGS);
+    droppedPayloadTraces = aggregator.counter("send.queue.dropped.traces", NO_TAGS);
+
+    fullPendingTraceWrites = aggregator.counter("pending.traces.forced_writes", BUFFER_FULL_TAG);
+    expiredPendingTraceWrites = aggregator.counter("pending.traces.forced_writes", EXPIRED_TAG);
+    bufferedPendingTraces = aggregator.gauge("pending.traces.buffered", NO_TAGS);
+    droppedPendingTraces = aggregator.counter("pending.traces.dropped", NO_TAGS);
+
+    apiRequests = aggregator.counter("api.requests.total", NO_TAGS);
+    apiErrors = aggregator.counter("api.errors.total", NO_TAGS);
+    flushedTraces = aggregator.counter("flush.traces.total", NO_TAGS);
+    flushedBytes = aggregator.counter("flush.bytes.total", NO_TAGS);
   }
 
   public void onStart(final int queueCapacity) {
@@ -139,6 +189,35 @@ public class HealthMetrics implements AutoCloseable {
     }
   }
 
+  /** Reported periodically by each serializer thread when the trace processing is sharded. */
+  public void onShardQueueDepth(final int shard, final int primaryDepth, final int secondaryDepth) {
+    String[] tags = shardTagsCache.get(shard);
+    statsd.gauge("queue.shard.primary.length", primaryDepth, tags);
+    statsd.gauge("queue.shard.secondary.length", secondaryDepth, tags);
+  }
+
+  /** Reported periodically by the pending trace buffer's worker thread. */
+  public void onPendingTraceBufferDepth(final int bufferedTraces) {
+    bufferedPendingTraces.set(bufferedTraces);
+  }
+
+  /**
+   * A pending trace was written without waiting for it to stop being referenced, because the
+   * pending trace buffer was full or because its oldest finished span was getting too old.
+   */
+  public void onForcedPendingTraceWrite(final boolean bufferFull) {
+    if (bufferFull) {
+      fullPendingTraceWrites.inc();
+    } else {
+      expiredPendingTraceWrites.inc();
+    }
+  }
+
+  /** A pending trace was dropped because the pending trace buffer's worker didn't keep up. */
+  public void onDroppedPendingTrace() {
+    droppedPendingTraces.inc();
+  }
+
   public void onScheduleFlush(final boolean previousIncomplete) {
     // not recorded
   }
@@ -148,7 +227,18 @@ public class HealthMetrics implements AutoCloseable {
   public void onSerialize(final int serializedSizeInBytes) {
     // DQH - Because of Java tracer's 2 phase acceptance and serialization scheme, this doesn't
     // map precisely
-    statsd.count("queue.enqueued.bytes", serializedSizeInBytes, NO_TAGS);
+    enqueuedBytes.inc(serializedSizeInBytes);
+  }
+
+  /** Serialization had to wait because every send buffer was still owned by the sender. */
+  public void onSendBackPressure() {
+    blockedSends.inc();
+  }
+
+  /** A serialized payload was discarded before being sent to reclaim its buffer. */
+  public void onDroppedPayload(final int traceCount, final int sizeInBytes) {
+    droppedPayloads.inc();
+    droppedPayloadTraces.inc(traceCount);
   }
 
   public void onFailedSerialize(final List<DDSpan> trace, final Throwable optionalCause) {
@@ -168,20 +258,44 @@ public class HealthMetrics implements AutoCloseable {
 
   private void onSendAttempt(
       final int traceCount, final int sizeInBytes, final RemoteApi.Response response) {
-    statsd.incrementCounter("api.requests.total", NO_TAGS);
-    statsd.count("flush.traces.total", traceCount, NO_TAGS);
+    apiRequests.inc();
+    flushedTraces.inc(traceCount);
     // TODO: missing queue.spans (# of spans being sent)
-    statsd.count("flush.bytes.total", sizeInBytes, NO_TAGS);
+    flushedBytes.inc(sizeInBytes);
 
     if (response.exception() != null) {
       // covers communication errors -- both not receiving a response or
       // receiving malformed response (even when otherwise successful)
-      statsd.incrementCounter("api.errors.total", NO_TAGS);
+      apiErrors.inc();
     }
 
     if (response.status() != null) {
-      statsd.incrementCounter("api.responses.total", statusTagsCache.get(response.status()));
+      int status = response.status();
+      if (status >= 0 && status < MAX_STATUS) {
+        apiResponses(status).inc();
+      } else {
+        statsd.incrementCounter("api.responses.total", "status:" + status);
+      }
+    }
+  }
+
+  private StatsDAggregator.Counter apiResponses(final int status) {
+    StatsDAggregator.Counter counter = apiResponses.get(status);
+    if (null == counter) {
+      synchronized (apiResponses) {
+        counter = apiResponses.get(status);
+        if (null == counter) {
+          counter = aggregator.counter("api.responses.total", "status:" + status);
+          apiResponses.set(status, counter);
+        }
+      }
     }
+    return counter;
+  }
+
+  /** Sends the metrics aggregated since the previous flush. */
+  void flush() {
+    aggregator.flush();
   }
 
   @Override
@@ -189,56 +303,14 @@ public class HealthMetrics implements AutoCloseable {
     if (null != cancellation) {
       cancellation.cancel();
     }
+    // sends what was counted since the last periodic flush, before the client is closed
+    flush();
   }
 
   private static class Flush implements AgentTaskScheduler.Task<HealthMetrics> {
-
-    private static final String[] USER_DROP_TAG = new String[] {"priority:user_drop"};
-    private static final String[] USER_KEEP_TAG = new String[] {"priority:user_keep"};
-    private static final String[] SAMPLER_DROP_TAG = new String[] {"priority:sampler_drop"};
-    private static final String[] SAMPLER_KEEP_TAG = new String[] {"priority:sampler_keep"};
-    private static final String[] UNSET_TAG = new String[] {"priority:unset"};
-
     @Override
     public void run(HealthMetrics target) {
-      reportIfChanged(
-          target.statsd, "queue.enqueued.traces", target.userDropEnqueuedTraces, USER_DROP_TAG);
-      reportIfChanged(
-          target.statsd, "queue.enqueued.traces", target.userKeepEnqueuedTraces, USER_KEEP_TAG);
-      reportIfChanged(
-          target.statsd,
-          "queue.enqueued.traces",
-          target.samplerDropEnqueuedTraces,
-          SAMPLER_DROP_TAG);
-      reportIfChanged(
-          target.statsd,
-          "queue.enqueued.traces",
-          target.samplerKeepEnqueuedTraces,
-          SAMPLER_KEEP_TAG);
-      reportIfChanged(
-          target.statsd, "queue.enqueued.traces", target.unsetPriorityEnqueuedTraces, UNSET_TAG);
-      reportIfChanged(
-          target.statsd, "queue.dropped.traces", target.userDropDroppedTraces, USER_DROP_TAG);
-      reportIfChanged(
-          target.statsd, "queue.dropped.traces", target.userKeepDroppedTraces, USER_KEEP_TAG);
-      reportIfChanged(
-          target.statsd, "queue.dropped.traces", target.samplerDropDroppedTraces, SAMPLER_DROP_TAG);
-      reportIfChanged(
-          target.statsd, "queue.dropped.traces", target.samplerKeepDroppedTraces, SAMPLER_KEEP_TAG);
-      reportIfChanged(
-          target.statsd, "queue.dropped.traces", target.unsetPriorityDroppedTraces, UNSET_TAG);
-      reportIfChanged(target.statsd, "queue.enqueued.spans", target.enqueuedSpans, NO_TAGS);
-    }
-
-    private void reportIfChanged(
-        StatsDClient statsDClient,
-        String aspect,
-        FixedSizeStripedLongCounter counter,
-        String[] tags) {
-      long count = counter.getAndReset();
-      if (count > 0) {
-        statsDClient.count(aspect, count, tags);
-      }
+      target.flush();
     }
   }
 }
@@ -0,0 +1,115 @@
+package datadog.trace.core.monitor;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import datadog.trace.api.StatsDClient;
+import datadog.trace.api.cache.CacheStats;
+import datadog.trace.util.AgentTaskScheduler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports the health of the resources shared by the whole process: the cache of normalized SQL
+ * statements and the agent task schedulers. Their statistics are reset each time they are reported,
+ * so the tracer owns the single instance reporting them, apart from the {@link HealthMetrics} of
+ * its writer.
+ */
+public class ProcessHealthMetrics implements AutoCloseable {
+
+  private static final String[] NO_TAGS = new String[0];
+
+  private final AtomicBoolean started = new AtomicBoolean(false);
+  private volatile AgentTaskScheduler.Scheduled<ProcessHealthMetrics> cancellation;
+
+  private final StatsDAggregator.Counter sqlCacheHits;
+  private final StatsDAggregator.Counter sqlCacheMisses;
+  private final StatsDAggregator.Counter sqlCacheEvictions;
+  private final StatsDAggregator.Gauge sqlCacheBytes;
+
+  private final StatsDAggregator.Counter lateScheduledTasks;
+  private final StatsDAggregator.Gauge maxScheduledTaskLateness;
+
+  private final StatsDAggregator aggregator;
+  private final CacheStats sqlCache;
+  private final Iterable<AgentTaskScheduler> schedulers;
+  private final long interval;
+  private final TimeUnit units;
+
+  public ProcessHealthMetrics(final StatsDClient statsd) {
+    this(
+        statsd,
+        CacheStats.NORMALIZED_SQL,
+        AgentTaskScheduler.runningSchedulers(),
+        30,
+        SECONDS);
+  }
+
+  ProcessHealthMetrics(
+      final StatsDClient statsd,
+      final CacheStats sqlCache,
+      final Iterable<AgentTaskScheduler> schedulers,
+      long interval,
+      TimeUnit units) {
+    this.aggregator = new StatsDAggregator(statsd);
+    this.sqlCache = sqlCache;
+    this.schedulers = schedulers;
+    this.interval = interval;
+    this.units = units;
+
+    sqlCacheHits = aggregator.counter("jdbc.sql_cache.hits", NO_TAGS);
+    sqlCacheMisses = aggregator.counter("jdbc.sql_cache.misses", NO_TAGS);
+    sqlCacheEvictions = aggregator.counter("jdbc.sql_cache.evictions", NO_TAGS);
+    sqlCacheBytes = aggregator.gauge("jdbc.sql_cache.bytes", NO_TAGS);
+
+    lateScheduledTasks = aggregator.counter("scheduler.tasks.late", NO_TAGS);
+    maxScheduledTaskLateness = aggregator.gauge("scheduler.lateness.max_ms", NO_TAGS);
+  }
+
+  public void start() {
+    if (started.compareAndSet(false, true)) {
+      cancellation =
+          AgentTaskScheduler.INSTANCE.scheduleAtFixedRate(
+              new Flush(), this, interval, interval, units);
+    }
+  }
+
+  /** Sends the statistics collected since the previous flush. */
+  void flush() {
+    sqlCacheHits.inc(sqlCache.getAndResetHits());
+    sqlCacheMisses.inc(sqlCache.getAndResetMisses());
+    sqlCacheEvictions.inc(sqlCache.getAndResetEvictions());
+    // nothing is reported when no JDBC statement was ever cached
+    long sqlCacheWeight = sqlCache.weight();
+    if (sqlCacheWeight > 0) {
+      sqlCacheBytes.set(sqlCacheWeight);
+    }
+    long lateTasks = 0;
+    long maxLateness = 0;
+    for (AgentTaskScheduler scheduler : schedulers) {
+      lateTasks += scheduler.getAndResetLateTasks();
+      maxLateness = Math.max(maxLateness, scheduler.getAndResetMaxLatenessNanos());
+    }
+    if (lateTasks > 0) {
+      lateScheduledTasks.inc(lateTasks);
+      maxScheduledTaskLateness.set(NANOSECONDS.toMillis(maxLateness));
+    }
+    aggregator.flush();
+  }
+
+  @Override
+  public void close() {
+    if (null != cancellation) {
+      cancellation.cancel();
+    }
+    // sends what was counted since the last periodic flush, before the client is closed
+    flush();
+  }
+
+  private static class Flush implements AgentTaskScheduler.Task<ProcessHealthMetrics> {
+    @Override
+    public void run(ProcessHealthMetrics target) {
+      target.flush();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package datadog.trace.core.monitor;
+
+import datadog.trace.api.StatsDClient;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jctools.counters.CountersFactory;
+import org.jctools.counters.FixedSizeStripedLongCounter;
+
+/**
+ * Aggregates metrics in process and sends them to StatsD once per flush, instead of formatting and
+ * queueing a message for each update. Each metric is registered once with its name and tags, and
+ * the returned handle is updated without allocating: counters add to striped cells, so concurrent
+ * updates don't contend, and gauges keep the last value set. A flush sends the metrics updated
+ * since the previous flush one after the other, which the StatsD client packs into as few
+ * datagrams as possible.
+ */
+public final class StatsDAggregator {
+
+  private final StatsDClient statsd;
+  private final List<Counter> counters = new CopyOnWriteArrayList<>();
+  private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+  public StatsDAggregator(final StatsDClient statsd) {
+    this.statsd = statsd;
+  }
+
+  /** Registers a counter, which reports the sum of its increments since the previous flush. */
+  public Counter counter(final String name, final String... tags) {
+    Counter counter = new Counter(name, tags);
+    counters.add(counter);
+    return counter;
+  }
+
+  /** Registers a gauge, which reports the last value set since the previous flush. */
+  public Gauge gauge(final String name, final String... tags) {
+    Gauge gauge = new Gauge(name, tags);
+    gauges.add(gauge);
+    return gauge;
+  }
+
+  /** Sends the metrics which changed since the previous flush. */
+  public void flush() {
+    for (Counter counter : counters) {
+      long count = counter.cells.getAndReset();
+      if (count > 0) {
+        statsd.count(counter.name, count, counter.tags);
+      }
+    }
+    for (Gauge gauge : gauges) {
+      long value = gauge.value.getAndSet(Gauge.UNSET);
+      if (value != Gauge.UNSET) {
+        statsd.gauge(gauge.name, value, gauge.tags);
+      }
+    }
+  }
+
+  public static final class Counter {
+    private final String name;
+    private final String[] tags;
+    private final FixedSizeStripedLongCounter cells =
+        CountersFactory.createFixedSizeStripedCounter(8);
+
+    Counter(final String name, final String[] tags) {
+      this.name = name;
+      this.tags = tags;
+    }
+
+    public void inc() {
+      cells.inc();
+    }
+
+    public void inc(final long delta) {
+      cells.inc(delta);
+    }
+  }
+
+  public static final class Gauge {
+    static final long UNSET = Long.MIN_VALUE;
+
+    private final String name;
+    private final String[] tags;
+    private final AtomicLong value = new AtomicLong(UNSET);
+
+    Gauge(final String name, final String[] tags) {
+      this.name = name;
+      this.tags = tags;
+    }
+
+    public void set(final long value) {
+      this.value.lazySet(value);
+    }
+  }
+}
@@ -49,17 +49,13 @@ class B3HttpCodec {
         setter.set(carrier, TRACE_ID_KEY, injectedTraceId);
         setter.set(carrier, SPAN_ID_KEY, injectedSpanId);
 
-        final StringBuilder injectedB3Id = new StringBuilder(100);
-        injectedB3Id.append(injectedTraceId).append('-').append(injectedSpanId);
-
+        String injectedSamplingPriority = null;
         if (context.lockSamplingPriority()) {
-          final String injectedSamplingPriority =
-              convertSamplingPriority(context.getSamplingPriority());
+          injectedSamplingPriority = convertSamplingPriority(context.getSamplingPriority());
           setter.set(carrier, SAMPLING_PRIORITY_KEY, injectedSamplingPriority);
-
-          injectedB3Id.append('-').append(injectedSamplingPriority);
         }
-        setter.set(carrier, B3_KEY, injectedB3Id.toString());
+        setter.set(
+            carrier, B3_KEY, b3Id(injectedTraceId, injectedSpanId, injectedSamplingPriority));
 
         log.debug("{} - B3 parent context injected - {}", context.getTraceId(), injectedTraceId);
       } catch (final NumberFormatException e) {
@@ -73,19 +69,46 @@ class B3HttpCodec {
     private String convertSamplingPriority(final int samplingPriority) {
       return samplingPriority > 0 ? SAMPLING_PRIORITY_ACCEPT : SAMPLING_PRIORITY_DROP;
     }
+
+    /** The ids' strings are cached, so the b3 header is built from them without a builder. */
+    private String b3Id(final String traceId, final String spanId, final String samplingPriority) {
+      int length = traceId.length() + 1 + spanId.length();
+      if (null != samplingPriority) {
+        length += 1 + samplingPriority.length();
+      }
+      final char[] b3Id = new char[length];
+      traceId.getChars(0, traceId.length(), b3Id, 0);
+      int offset = traceId.length();
+      b3Id[offset++] = '-';
+      spanId.getChars(0, spanId.length(), b3Id, offset);
+      offset += spanId.length();
+      if (null != samplingPriority) {
+        b3Id[offset++] = '-';
+        samplingPriority.getChars(0, samplingPriority.length(), b3Id, offset);
+      }
+      return new String(b3Id);
+    }
   }
 
   public static HttpCodec.Extractor newExtractor(final Map<String, String> tagMapping) {
-    return new TagContextExtractor(
-        tagMapping,
-        new ContextInterpreter.Factory() {
-          @Override
-          protected ContextInterpreter construct(final Map<String, String> mapping) {
-            return new B3ContextInterpreter(mapping);
-          }
-        });
+    return new TagContextExtractor(tagMapping, INTERPRETER_FACTORY);
   }
 
+  static final ContextInterpreter.Factory INTERPRETER_FACTORY =
+      new ContextInterpreter.Factory() {
+        @Override
+        protected ContextInterpreter construct(final Map<String, String> mapping) {
+          return new B3ContextInterpreter(mapping);
+        }
+      };
+
+  /** The headers read by the interpreter, besides tagged headers and forwarding headers. */
+  static final String[] EXTRACTED_HEADERS = {
+    TRACE_ID_KEY, SPAN_ID_KEY, SAMPLING_PRIORITY_KEY, B3_KEY
+  };
+
+  static final String[] EXTRACTED_HEADER_PREFIXES = {};
+
   private static class B3ContextInterpreter extends ContextInterpreter {
 
     private static final int TRACE_ID = 0;
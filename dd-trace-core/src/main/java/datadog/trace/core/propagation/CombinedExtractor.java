@@ -0,0 +1,183 @@
+package datadog.trace.core.propagation;
+
+import static datadog.trace.core.propagation.ContextInterpreter.LOG_EXTRACT_HEADER_NAMES;
+import static datadog.trace.core.propagation.HttpCodec.FORWARDED_KEY;
+import static datadog.trace.core.propagation.HttpCodec.X_FORWARDED_FOR_KEY;
+import static datadog.trace.core.propagation.HttpCodec.X_FORWARDED_HOST_KEY;
+import static datadog.trace.core.propagation.HttpCodec.X_FORWARDED_PORT_KEY;
+import static datadog.trace.core.propagation.HttpCodec.X_FORWARDED_PROTO_KEY;
+
+import datadog.trace.api.PropagationStyle;
+import datadog.trace.bootstrap.instrumentation.api.AgentPropagation;
+import datadog.trace.bootstrap.instrumentation.api.TagContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts the context of several propagation styles in a single walk over the carrier's headers,
+ * with the same result as a {@link HttpCodec.CompoundExtractor} of the styles' extractors.
+ *
+ * <p>Most headers of a request aren't read by any style, so each header is first looked up among
+ * the headers known by the styles, and only handed to the interpreters of the styles which read
+ * it. The interpreters still decide what to do with the headers they are handed.
+ */
+final class CombinedExtractor implements HttpCodec.Extractor {
+
+  private static final Logger log = LoggerFactory.getLogger(CombinedExtractor.class);
+
+  private static final String[] FORWARDED_HEADERS = {
+    FORWARDED_KEY, X_FORWARDED_PROTO_KEY, X_FORWARDED_HOST_KEY, X_FORWARDED_FOR_KEY,
+    X_FORWARDED_PORT_KEY
+  };
+
+  private final int styleCount;
+  // the styles reading each known header, as bits of the styles' indexes
+  private final KnownHeaders knownHeaders;
+  private final String[][] prefixes;
+  private final ThreadLocal<Dispatcher> dispatcher;
+
+  CombinedExtractor(
+      Collection<PropagationStyle> styles, final Map<String, String> taggedHeaders) {
+    final List<ContextInterpreter.Factory> factories = new ArrayList<>(styles.size());
+    List<String[]> prefixes = new ArrayList<>(styles.size());
+    Map<String, Integer> headers = new HashMap<>();
+    for (PropagationStyle style : styles) {
+      String[] extractedHeaders;
+      String[] extractedPrefixes;
+      switch (style) {
+        case DATADOG:
+          factories.add(DatadogHttpCodec.INTERPRETER_FACTORY);
+          extractedHeaders = DatadogHttpCodec.EXTRACTED_HEADERS;
+          extractedPrefixes = DatadogHttpCodec.EXTRACTED_HEADER_PREFIXES;
+          break;
+        case B3:
+          factories.add(B3HttpCodec.INTERPRETER_FACTORY);
+          extractedHeaders = B3HttpCodec.EXTRACTED_HEADERS;
+          extractedPrefixes = B3HttpCodec.EXTRACTED_HEADER_PREFIXES;
+          break;
+        case HAYSTACK:
+          factories.add(HaystackHttpCodec.INTERPRETER_FACTORY);
+          extractedHeaders = HaystackHttpCodec.EXTRACTED_HEADERS;
+          extractedPrefixes = HaystackHttpCodec.EXTRACTED_HEADER_PREFIXES;
+          break;
+        case XRAY:
+          factories.add(XRayHttpCodec.INTERPRETER_FACTORY);
+          extractedHeaders = XRayHttpCodec.EXTRACTED_HEADERS;
+          extractedPrefixes = XRayHttpCodec.EXTRACTED_HEADER_PREFIXES;
+          break;
+        default:
+          log.debug("No implementation found to extract propagation style: {}", style);
+          continue;
+      }
+      int bit = 1 << (factories.size() - 1);
+      addHeaders(headers, extractedHeaders, bit);
+      addHeaders(headers, FORWARDED_HEADERS, bit);
+      for (String taggedHeader : taggedHeaders.keySet()) {
+        addHeader(headers, taggedHeader.trim(), bit);
+      }
+      prefixes.add(extractedPrefixes);
+    }
+    this.styleCount = factories.size();
+    this.knownHeaders = KnownHeaders.build(headers);
+    this.prefixes = prefixes.toArray(new String[0][]);
+    this.dispatcher =
+        new ThreadLocal<Dispatcher>() {
+          @Override
+          protected Dispatcher initialValue() {
+            ContextInterpreter[] interpreters = new ContextInterpreter[factories.size()];
+            for (int i = 0; i < interpreters.length; ++i) {
+              interpreters[i] = factories.get(i).create(taggedHeaders);
+            }
+            return new Dispatcher(CombinedExtractor.this, interpreters);
+          }
+        };
+  }
+
+  private static void addHeaders(Map<String, Integer> headers, String[] names, int bit) {
+    for (String name : names) {
+      addHeader(headers, name, bit);
+    }
+  }
+
+  private static void addHeader(Map<String, Integer> headers, String name, int bit) {
+    Integer bits = headers.get(name);
+    headers.put(name, null == bits ? bit : bits | bit);
+  }
+
+  @Override
+  public <C> TagContext extract(final C carrier, final AgentPropagation.ContextVisitor<C> getter) {
+    if (styleCount == 0) {
+      return null;
+    }
+    Dispatcher dispatcher = this.dispatcher.get().reset();
+    getter.forEachKey(carrier, dispatcher);
+    TagContext context = null;
+    for (ContextInterpreter interpreter : dispatcher.interpreters) {
+      context = interpreter.build();
+      // Use incomplete TagContext only as last resort
+      if (context instanceof ExtractedContext) {
+        return context;
+      }
+    }
+    return context;
+  }
+
+  /** @return the styles reading the header, as bits of the styles' indexes */
+  int stylesReading(String header) {
+    int styles = knownHeaders.get(header);
+    for (int i = 0; i < prefixes.length; ++i) {
+      for (String prefix : prefixes[i]) {
+        if (header.regionMatches(true, 0, prefix, 0, prefix.length())) {
+          styles |= 1 << i;
+          break;
+        }
+      }
+    }
+    return styles;
+  }
+
+  private static final class Dispatcher implements AgentPropagation.KeyClassifier {
+    private final CombinedExtractor extractor;
+    final ContextInterpreter[] interpreters;
+    private final int allStyles;
+    // the styles whose interpreters don't want any more headers
+    private int stopped;
+
+    Dispatcher(CombinedExtractor extractor, ContextInterpreter[] interpreters) {
+      this.extractor = extractor;
+      this.interpreters = interpreters;
+      this.allStyles = (1 << interpreters.length) - 1;
+    }
+
+    Dispatcher reset() {
+      for (ContextInterpreter interpreter : interpreters) {
+        interpreter.reset();
+      }
+      stopped = 0;
+      return this;
+    }
+
+    @Override
+    public boolean accept(String key, String value) {
+      if (null == key || key.isEmpty()) {
+        return true;
+      }
+      // the interpreters log the names of the headers they are handed
+      int styles = LOG_EXTRACT_HEADER_NAMES ? allStyles : extractor.stylesReading(key);
+      styles &= ~stopped;
+      while (styles != 0) {
+        int style = Integer.numberOfTrailingZeros(styles);
+        styles &= styles - 1;
+        if (!interpreters[style].accept(key, value)) {
+          stopped |= 1 << style;
+        }
+      }
+      return stopped != allStyles;
+    }
+  }
+}
@@ -60,16 +60,24 @@ class DatadogHttpCodec {
   }
 
   public static HttpCodec.Extractor newExtractor(final Map<String, String> tagMapping) {
-    return new TagContextExtractor(
-        tagMapping,
-        new ContextInterpreter.Factory() {
-          @Override
-          protected ContextInterpreter construct(Map<String, String> mapping) {
-            return new DatadogContextInterpreter(mapping);
-          }
-        });
+    return new TagContextExtractor(tagMapping, INTERPRETER_FACTORY);
   }
 
+  static final ContextInterpreter.Factory INTERPRETER_FACTORY =
+      new ContextInterpreter.Factory() {
+        @Override
+        protected ContextInterpreter construct(Map<String, String> mapping) {
+          return new DatadogContextInterpreter(mapping);
+        }
+      };
+
+  /** The headers read by the interpreter, besides tagged headers and forwarding headers. */
+  static final String[] EXTRACTED_HEADERS = {
+    TRACE_ID_KEY, SPAN_ID_KEY, SAMPLING_PRIORITY_KEY, ORIGIN_KEY, X_AMZN_TRACE_ID
+  };
+
+  static final String[] EXTRACTED_HEADER_PREFIXES = {OT_BAGGAGE_PREFIX};
+
   private static class DatadogContextInterpreter extends ContextInterpreter {
 
     private static final int TRACE_ID = 0;
@@ -102,16 +102,22 @@ class HaystackHttpCodec {
   }
 
   public static HttpCodec.Extractor newExtractor(final Map<String, String> tagMapping) {
-    return new TagContextExtractor(
-        tagMapping,
-        new ContextInterpreter.Factory() {
-          @Override
-          protected ContextInterpreter construct(Map<String, String> mapping) {
-            return new HaystackContextInterpreter(mapping);
-          }
-        });
+    return new TagContextExtractor(tagMapping, INTERPRETER_FACTORY);
   }
 
+  static final ContextInterpreter.Factory INTERPRETER_FACTORY =
+      new ContextInterpreter.Factory() {
+        @Override
+        protected ContextInterpreter construct(Map<String, String> mapping) {
+          return new HaystackContextInterpreter(mapping);
+        }
+      };
+
+  /** The headers read by the interpreter, besides tagged headers and forwarding headers. */
+  static final String[] EXTRACTED_HEADERS = {TRACE_ID_KEY, SPAN_ID_KEY, PARENT_ID_KEY};
+
+  static final String[] EXTRACTED_HEADER_PREFIXES = {OT_BAGGAGE_PREFIX};
+
   private static class HaystackContextInterpreter extends ContextInterpreter {
 
     private static final String BAGGAGE_PREFIX_LC = "baggage-";
@@ -80,27 +80,7 @@ public class HttpCodec {
 
   public static Extractor createExtractor(
       final Config config, final Map<String, String> taggedHeaders) {
-    final List<Extractor> extractors = new ArrayList<>();
-    for (final PropagationStyle style : config.getPropagationStylesToExtract()) {
-      switch (style) {
-        case DATADOG:
-          extractors.add(DatadogHttpCodec.newExtractor(taggedHeaders));
-          break;
-        case B3:
-          extractors.add(B3HttpCodec.newExtractor(taggedHeaders));
-          break;
-        case HAYSTACK:
-          extractors.add(HaystackHttpCodec.newExtractor(taggedHeaders));
-          break;
-        case XRAY:
-          extractors.add(XRayHttpCodec.newExtractor(taggedHeaders));
-          break;
-        default:
-          log.debug("No implementation found to extract propagation style: {}", style);
-          break;
-      }
-    }
-    return new CompoundExtractor(extractors);
+    return new CombinedExtractor(config.getPropagationStylesToExtract(), taggedHeaders);
   }
 
   public static class CompoundInjector implements Injector {
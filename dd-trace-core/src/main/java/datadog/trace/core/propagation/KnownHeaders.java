@@ -0,0 +1,94 @@
+package datadog.trace.core.propagation;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps a fixed set of header names, ignoring case, to values, with a perfect hash: every name has
+ * a slot of its own, so looking a header up takes one hash of the header and at most one
+ * comparison.
+ */
+final class KnownHeaders {
+
+  private static final int MAX_SEEDS = 1 << 12;
+
+  private final String[] names;
+  private final int[] values;
+  private final int seed;
+  private final int mask;
+  // bit n is set if there's a name of n characters (or more for the last bit)
+  private final long lengths;
+
+  /** @param headers the values of the names, names only differing by case are merged */
+  static KnownHeaders build(Map<String, Integer> headers) {
+    Map<String, Integer> merged = new LinkedHashMap<>();
+    for (Map.Entry<String, Integer> header : headers.entrySet()) {
+      String name = header.getKey().toLowerCase(Locale.ROOT);
+      Integer value = merged.get(name);
+      merged.put(name, null == value ? header.getValue() : value | header.getValue());
+    }
+    String[] names = merged.keySet().toArray(new String[0]);
+    int size = Integer.highestOneBit(Math.max(1, names.length) * 2 - 1) << 1;
+    while (true) {
+      for (int seed = 0; seed < MAX_SEEDS; ++seed) {
+        KnownHeaders known = tryBuild(names, merged, size, seed);
+        if (null != known) {
+          return known;
+        }
+      }
+      size <<= 1;
+    }
+  }
+
+  private static KnownHeaders tryBuild(
+      String[] names, Map<String, Integer> values, int size, int seed) {
+    String[] slots = new String[size];
+    int[] slotValues = new int[size];
+    long lengths = 0;
+    for (String name : names) {
+      int slot = hash(seed, name) & (size - 1);
+      if (null != slots[slot]) {
+        return null;
+      }
+      slots[slot] = name;
+      slotValues[slot] = values.get(name);
+      lengths |= 1L << Math.min(name.length(), 63);
+    }
+    return new KnownHeaders(slots, slotValues, seed, size - 1, lengths);
+  }
+
+  private KnownHeaders(String[] names, int[] values, int seed, int mask, long lengths) {
+    this.names = names;
+    this.values = values;
+    this.seed = seed;
+    this.mask = mask;
+    this.lengths = lengths;
+  }
+
+  /** @return the value of the header, or 0 if it isn't known */
+  int get(String header) {
+    int length = header.length();
+    if ((lengths & (1L << Math.min(length, 63))) == 0) {
+      return 0;
+    }
+    int slot = hash(seed, header) & mask;
+    String name = names[slot];
+    return null != name && name.length() == length && name.regionMatches(true, 0, header, 0, length)
+        ? values[slot]
+        : 0;
+  }
+
+  /** Hashes the lower case form of ASCII names, without allocating it. */
+  private static int hash(int seed, String name) {
+    int hash = seed;
+    for (int i = 0; i < name.length(); ++i) {
+      char c = name.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      hash = 31 * hash + c;
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
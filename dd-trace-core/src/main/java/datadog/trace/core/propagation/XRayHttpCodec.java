@@ -41,6 +41,11 @@ class XRayHttpCodec {
 
   static final int MAX_ADDITIONAL_BYTES = 256;
 
+  private static final String PARENT_PART = ';' + PARENT_PREFIX;
+  private static final String SAMPLED_PART = ';' + SAMPLED_PREFIX;
+  private static final int IDS_LENGTH = DD_ROOT_PREFIX.length() + PARENT_PART.length() + 32;
+  private static final int SAMPLED_LENGTH = SAMPLED_PART.length() + 1;
+
   private XRayHttpCodec() {
     // This class should not be created. This also makes code coverage checks happy.
   }
@@ -52,25 +57,28 @@ class XRayHttpCodec {
     @Override
     public <C> void inject(DDSpanContext context, C carrier, AgentPropagation.Setter<C> setter) {
 
-      StringBuilder buf =
-          new StringBuilder()
-              .append(DD_ROOT_PREFIX)
-              .append(context.getTraceId().toHexStringPadded(16))
-              .append(';' + PARENT_PREFIX)
-              .append(context.getSpanId().toHexStringPadded(16));
-
+      // the ids are written in place, only the rarer additional parts need a builder
+      char[] ids = new char[IDS_LENGTH + SAMPLED_LENGTH];
+      int length = writeIds(context, ids);
       if (context.lockSamplingPriority()) {
-        buf.append(';' + SAMPLED_PREFIX)
-            .append(convertSamplingPriority(context.getSamplingPriority()));
+        SAMPLED_PART.getChars(0, SAMPLED_PART.length(), ids, length);
+        length += SAMPLED_PART.length();
+        ids[length++] = convertSamplingPriority(context.getSamplingPriority());
       }
 
+      CharSequence origin = context.getOrigin();
+      long e2eStart = context.getEndToEndStartTime();
+      if (origin == null && e2eStart <= 0 && context.getBaggageItems().isEmpty()) {
+        setter.set(carrier, X_AMZN_TRACE_ID, new String(ids, 0, length));
+        return;
+      }
+
+      StringBuilder buf = new StringBuilder(length + MAX_ADDITIONAL_BYTES).append(ids, 0, length);
       int maxCapacity = buf.length() + MAX_ADDITIONAL_BYTES;
 
-      CharSequence origin = context.getOrigin();
       if (origin != null) {
         additionalPart(buf, ORIGIN_KEY, origin.toString(), maxCapacity);
       }
-      long e2eStart = context.getEndToEndStartTime();
       if (e2eStart > 0) {
         additionalPart(
             buf, E2E_START_KEY, Long.toString(NANOSECONDS.toMillis(e2eStart)), maxCapacity);
@@ -85,6 +93,13 @@ class XRayHttpCodec {
       setter.set(carrier, X_AMZN_TRACE_ID, buf.toString());
     }
 
+    private int writeIds(DDSpanContext context, char[] ids) {
+      DD_ROOT_PREFIX.getChars(0, DD_ROOT_PREFIX.length(), ids, 0);
+      int length = context.getTraceId().writeHexPadded(ids, DD_ROOT_PREFIX.length());
+      PARENT_PART.getChars(0, PARENT_PART.length(), ids, length);
+      return context.getSpanId().writeHexPadded(ids, length + PARENT_PART.length());
+    }
+
     private boolean isReserved(String key) {
       return ROOT.equals(key) || PARENT.equals(key) || SAMPLED.equals(key) || SELF.equals(key);
     }
@@ -101,16 +116,22 @@ class XRayHttpCodec {
   }
 
   public static HttpCodec.Extractor newExtractor(Map<String, String> tagMapping) {
-    return new TagContextExtractor(
-        tagMapping,
-        new ContextInterpreter.Factory() {
-          @Override
-          protected ContextInterpreter construct(Map<String, String> mapping) {
-            return new XRayContextInterpreter(mapping);
-          }
-        });
+    return new TagContextExtractor(tagMapping, INTERPRETER_FACTORY);
   }
 
+  static final ContextInterpreter.Factory INTERPRETER_FACTORY =
+      new ContextInterpreter.Factory() {
+        @Override
+        protected ContextInterpreter construct(Map<String, String> mapping) {
+          return new XRayContextInterpreter(mapping);
+        }
+      };
+
+  /** The headers read by the interpreter, besides tagged headers and forwarding headers. */
+  static final String[] EXTRACTED_HEADERS = {X_AMZN_TRACE_ID};
+
+  static final String[] EXTRACTED_HEADER_PREFIXES = {};
+
   static class XRayContextInterpreter extends ContextInterpreter {
 
     private XRayContextInterpreter(Map<String, String> taggedHeaders) {
@@ -171,31 +192,47 @@ class XRayHttpCodec {
         if (endPart < 0) {
           endPart = length;
         }
-        String part = value.substring(startPart, endPart).trim();
-        if (part.startsWith(DD_ROOT_PREFIX)) {
+        // trim the part without copying it, only the values which are kept are copied
+        int start = startPart;
+        int end = endPart;
+        while (start < end && value.charAt(start) <= ' ') {
+          ++start;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+          --end;
+        }
+        if (value.startsWith(DD_ROOT_PREFIX, start)) {
           if (interpreter.traceId == null || interpreter.traceId == DDId.ZERO) {
-            interpreter.traceId = DDId.fromHexWithOriginal(part.substring(DD_ROOT_PREFIX.length()));
+            interpreter.traceId =
+                DDId.fromHexWithOriginal(value.substring(start + DD_ROOT_PREFIX.length(), end));
           }
-        } else if (part.startsWith(PARENT_PREFIX)) {
+        } else if (value.startsWith(PARENT_PREFIX, start)) {
           if (interpreter.spanId == null || interpreter.spanId == DDId.ZERO) {
-            interpreter.spanId = DDId.fromHexWithOriginal(part.substring(PARENT_PREFIX.length()));
+            interpreter.spanId =
+                DDId.fromHexWithOriginal(value.substring(start + PARENT_PREFIX.length(), end));
           }
-        } else if (part.startsWith(SAMPLED_PREFIX)) {
+        } else if (value.startsWith(SAMPLED_PREFIX, start)) {
           if (interpreter.samplingPriority == PrioritySampling.UNSET) {
-            interpreter.samplingPriority =
-                convertSamplingPriority(part.charAt(SAMPLED_PREFIX.length()));
+            int sampled = start + SAMPLED_PREFIX.length();
+            if (sampled >= end) {
+              // a sampling decision without a value makes the whole header invalid
+              interpreter.invalidateContext();
+              return;
+            }
+            interpreter.samplingPriority = convertSamplingPriority(value.charAt(sampled));
           }
-        } else if (part.startsWith(SELF_PREFIX)) {
+        } else if (value.startsWith(SELF_PREFIX, start)) {
           // Self is added by load-balancers and should be ignored
-        } else if (part.startsWith(ORIGIN_PREFIX)) {
-          interpreter.origin = part.substring(ORIGIN_PREFIX.length());
-        } else if (part.startsWith(E2E_START_PREFIX)) {
+        } else if (value.startsWith(ORIGIN_PREFIX, start)) {
+          interpreter.origin = value.substring(start + ORIGIN_PREFIX.length(), end);
+        } else if (value.startsWith(E2E_START_PREFIX, start)) {
           interpreter.endToEndStartTime =
-              extractEndToEndStartTime(part.substring(E2E_START_PREFIX.length()));
+              extractEndToEndStartTime(value.substring(start + E2E_START_PREFIX.length(), end));
         } else {
-          int eqIndex = part.indexOf('=');
-          if (eqIndex > 0) {
-            addBaggageItem(interpreter, part.substring(0, eqIndex), part.substring(eqIndex + 1));
+          int eqIndex = value.indexOf('=', start);
+          if (eqIndex > start && eqIndex < end) {
+            addBaggageItem(
+                interpreter, value.substring(start, eqIndex), value.substring(eqIndex + 1, end));
           }
         }
         startPart = endPart + 1;
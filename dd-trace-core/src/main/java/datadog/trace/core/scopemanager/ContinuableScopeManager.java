@@ -17,7 +17,10 @@ import datadog.trace.bootstrap.instrumentation.api.AttachableWrapper;
 import datadog.trace.bootstrap.instrumentation.api.ScopeSource;
 import datadog.trace.context.ScopeListener;
 import datadog.trace.util.AgentTaskScheduler;
-import java.util.ArrayDeque;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -40,13 +43,12 @@ import org.slf4j.LoggerFactory;
 public final class ContinuableScopeManager implements AgentScopeManager {
 
   static final Logger log = LoggerFactory.getLogger(ContinuableScopeManager.class);
-  final ThreadLocal<ScopeStack> tlsScopeStack =
-      new ThreadLocal<ScopeStack>() {
-        @Override
-        protected final ScopeStack initialValue() {
-          return new ScopeStack();
-        }
-      };
+  // stacks are only allocated once a scope is activated on the thread, see scopeStack()
+  final ThreadLocal<ScopeStack> tlsScopeStack = new ThreadLocal<>();
+
+  private static final ScopeStack EMPTY_SCOPE_STACK = new ScopeStack(null);
+
+  private static final MethodHandle IS_VIRTUAL = isVirtualMethod();
 
   static final long iterationKeepAlive =
       SECONDS.toMillis(Config.get().getScopeIterationKeepAlive());
@@ -60,17 +62,33 @@ public final class ContinuableScopeManager implements AgentScopeManager {
   private final int depthLimit;
   private final boolean strictMode;
   private final boolean inheritAsyncPropagation;
+  private final boolean virtualThreadMode;
 
   public ContinuableScopeManager(
       final int depthLimit,
       final StatsDClient statsDClient,
       final boolean strictMode,
       final boolean inheritAsyncPropagation) {
+    this(depthLimit, statsDClient, strictMode, inheritAsyncPropagation, false);
+  }
+
+  /**
+   * @param virtualThreadMode when true, the scope stack of a virtual thread is released as soon as
+   *     its last scope is closed, so the many virtual threads which are parked, or which are done,
+   *     don't each keep a stack
+   */
+  public ContinuableScopeManager(
+      final int depthLimit,
+      final StatsDClient statsDClient,
+      final boolean strictMode,
+      final boolean inheritAsyncPropagation,
+      final boolean virtualThreadMode) {
 
     this.depthLimit = depthLimit == 0 ? Integer.MAX_VALUE : depthLimit;
     this.statsDClient = statsDClient;
     this.strictMode = strictMode;
     this.inheritAsyncPropagation = inheritAsyncPropagation;
+    this.virtualThreadMode = virtualThreadMode && null != IS_VIRTUAL;
     this.scopeListeners = new CopyOnWriteArrayList<>();
     this.extendedScopeListeners = new CopyOnWriteArrayList<>();
   }
@@ -152,7 +170,7 @@ public final class ContinuableScopeManager implements AgentScopeManager {
 
   @Override
   public void closePrevious(final boolean finishSpan) {
-    ScopeStack scopeStack = scopeStack();
+    ScopeStack scopeStack = peekScopeStack();
 
     // close any immediately previous iteration scope
     final ContinuableScope top = scopeStack.top;
@@ -202,12 +220,12 @@ public final class ContinuableScopeManager implements AgentScopeManager {
 
   @Override
   public AgentScope active() {
-    return scopeStack().active();
+    return peekScopeStack().active();
   }
 
   @Override
   public AgentSpan activeSpan() {
-    final ContinuableScope active = scopeStack().active();
+    final ContinuableScope active = peekScopeStack().active();
     return active == null ? null : active.span;
   }
 
@@ -237,7 +255,38 @@ public final class ContinuableScopeManager implements AgentScopeManager {
   }
 
   ScopeStack scopeStack() {
-    return this.tlsScopeStack.get();
+    ScopeStack scopeStack = tlsScopeStack.get();
+    if (null == scopeStack) {
+      scopeStack =
+          new ScopeStack(
+              virtualThreadMode && isVirtual(Thread.currentThread()) ? tlsScopeStack : null);
+      tlsScopeStack.set(scopeStack);
+    }
+    return scopeStack;
+  }
+
+  /** Returns the thread's stack for reading, without allocating one when there's none yet. */
+  private ScopeStack peekScopeStack() {
+    ScopeStack scopeStack = tlsScopeStack.get();
+    return null != scopeStack ? scopeStack : EMPTY_SCOPE_STACK;
+  }
+
+  private static boolean isVirtual(Thread thread) {
+    try {
+      return (boolean) IS_VIRTUAL.invokeExact(thread);
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+  /** {@code Thread.isVirtual()} is only available from Java 19. */
+  private static MethodHandle isVirtualMethod() {
+    try {
+      return MethodHandles.publicLookup()
+          .findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+    } catch (Throwable e) {
+      return null;
+    }
   }
 
   private static class ContinuableScope implements AgentScope, AttachableWrapper {
@@ -471,13 +520,25 @@ public final class ContinuableScopeManager implements AgentScopeManager {
    * cleanup() is called to ensure the invariant
    */
   static final class ScopeStack {
-    private final ArrayDeque<ContinuableScope> stack = new ArrayDeque<>(); // previous scopes
+    private static final int INITIAL_CAPACITY = 16;
+    private static final ContinuableScope[] NO_SCOPES = new ContinuableScope[0];
+
+    // previous scopes, the most recent last, only allocated once there's more than one scope
+    private ContinuableScope[] stack = NO_SCOPES;
+    private int size;
+
+    // the thread local to remove this stack from once it's empty, null to keep it
+    private final ThreadLocal<ScopeStack> releaseFrom;
 
     ContinuableScope top; // current scope
 
     // set by background task when a root iteration scope remains unclosed for too long
     volatile ContinuableScope overdueRootScope;
 
+    ScopeStack(final ThreadLocal<ScopeStack> releaseFrom) {
+      this.releaseFrom = releaseFrom;
+    }
+
     ContinuableScope active() {
       // avoid attaching further spans to the root scope when it's been marked as overdue
       return top != overdueRootScope ? top : null;
@@ -491,7 +552,7 @@ public final class ContinuableScopeManager implements AgentScopeManager {
         // no longer alive -- trigger listener & null out
         curScope.onProperClose();
         changedTop = true;
-        curScope = stack.poll();
+        curScope = pop();
       }
       if (curScope != null && curScope == overdueRootScope) {
         // we know this scope is the last on the stack and is overdue
@@ -504,17 +565,33 @@ public final class ContinuableScopeManager implements AgentScopeManager {
           curScope.afterActivated();
         }
       }
+      if (top == null && null != releaseFrom) {
+        // the next activation on this thread allocates a new stack
+        releaseFrom.remove();
+      }
     }
 
     /** Marks a new scope as current, pushing the previous onto the stack */
     void push(final ContinuableScope scope) {
       if (top != null) {
-        stack.push(top);
+        if (size == stack.length) {
+          stack = Arrays.copyOf(stack, Math.max(INITIAL_CAPACITY, size * 2));
+        }
+        stack[size++] = top;
       }
       top = scope;
       scope.afterActivated();
     }
 
+    private ContinuableScope pop() {
+      if (size == 0) {
+        return null;
+      }
+      ContinuableScope scope = stack[--size];
+      stack[size] = null;
+      return scope;
+    }
+
     /** Fast check to see if the expectedScope is on top */
     boolean checkTop(final ContinuableScope expectedScope) {
       return expectedScope.equals(top);
@@ -534,7 +611,8 @@ public final class ContinuableScopeManager implements AgentScopeManager {
       top.clearReferences();
       top.span.finishWithEndToEnd();
       // now do the same for any previous iteration scopes ahead of the expected scope
-      for (ContinuableScope scope : stack) {
+      for (int i = size - 1; i >= 0; --i) {
+        final ContinuableScope scope = stack[i];
         if (scope.source() != ScopeSource.ITERATION.id()) {
           return expectedScope.equals(scope);
         } else {
@@ -547,12 +625,13 @@ public final class ContinuableScopeManager implements AgentScopeManager {
 
     /** Returns the current depth, including the top scope */
     int depth() {
-      return top != null ? 1 + stack.size() : 0;
+      return top != null ? 1 + size : 0;
     }
 
     // DQH - regrettably needed for pre-existing tests
     void clear() {
-      stack.clear();
+      Arrays.fill(stack, 0, size, null);
+      size = 0;
       top = null;
     }
   }
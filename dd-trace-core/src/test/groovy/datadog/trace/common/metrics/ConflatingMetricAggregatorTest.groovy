@@ -48,7 +48,7 @@ class ConflatingMetricAggregatorTest extends DDSpecification {
 
     aggregator.publish([new SimpleSpan("", "", "", "", false, false, false, 0, 0, HTTP_OK)])
     when:
-    reportAndWaitUntilEmpty(aggregator)
+    reportAndWait(aggregator)
     then:
     0 * sink._
 
@@ -85,7 +85,7 @@ class ConflatingMetricAggregatorTest extends DDSpecification {
       new SimpleSpan("", "",
       "measured, not ignored, but child of ignored, so should be ignored", "", true, true, false, 0, 0, HTTP_OK)
     ])
-    reportAndWaitUntilEmpty(aggregator)
+    reportAndWait(aggregator)
     then:
     0 * sink._
 
@@ -320,7 +320,7 @@ class ConflatingMetricAggregatorTest extends DDSpecification {
     1 * writer.finishBucket()
 
     when:
-    reportAndWaitUntilEmpty(aggregator)
+    reportAndWait(aggregator)
 
     then: "aggregate not updated in cycle is not reported"
     0 * writer.finishBucket()
@@ -365,6 +365,85 @@ class ConflatingMetricAggregatorTest extends DDSpecification {
     aggregator.close()
   }
 
+  def "sharded aggregators report the aggregates of all shards in one bucket"() {
+    setup:
+    int maxAggregates = 40
+    MetricWriter writer = Mock(MetricWriter)
+    Sink sink = Stub(Sink)
+    DDAgentFeaturesDiscovery features = Mock(DDAgentFeaturesDiscovery)
+    features.supportsMetrics() >> true
+    ConflatingMetricsAggregator aggregator = new ConflatingMetricsAggregator(empty,
+      features, sink, writer, maxAggregates, queueSize, reportingInterval, SECONDS, 4)
+    long duration = 100
+    aggregator.start()
+
+    when:
+    CountDownLatch latch = new CountDownLatch(1)
+    for (int i = 0; i < 20; ++i) {
+      for (int j = 0; j < 2; ++j) {
+        aggregator.publish([
+          new SimpleSpan("service" + i, "operation", "resource", "type", false, true, false, 0, duration, HTTP_OK)
+        ])
+      }
+    }
+    aggregator.report()
+    latch.await(2, SECONDS)
+
+    then:
+    1 * writer.startBucket(20, _, SECONDS.toNanos(reportingInterval))
+    for (int i = 0; i < 20; ++i) {
+      1 * writer.add(new MetricKey("resource", "service" + i, "operation", "type", HTTP_OK), {
+        it.getHitCount() == 2 && it.getDuration() == 2 * duration
+      })
+    }
+    1 * writer.finishBucket() >> { latch.countDown() }
+
+    cleanup:
+    aggregator.close()
+  }
+
+  def "the final report is written after the report in progress"() {
+    setup:
+    int maxAggregates = 10
+    MetricWriter writer = Mock(MetricWriter)
+    Sink sink = Stub(Sink)
+    DDAgentFeaturesDiscovery features = Mock(DDAgentFeaturesDiscovery)
+    features.supportsMetrics() >> true
+    ConflatingMetricsAggregator aggregator = new ConflatingMetricsAggregator(empty,
+      features, sink, writer, maxAggregates, queueSize, reportingInterval, SECONDS)
+    long duration = 100
+    aggregator.start()
+    CountDownLatch writing = new CountDownLatch(1)
+    CountDownLatch written = new CountDownLatch(1)
+
+    when:
+    aggregator.publish([
+      new SimpleSpan("service0", "operation", "resource", "type", false, true, false, 0, duration, HTTP_OK)
+    ])
+    aggregator.report()
+    assert writing.await(2, SECONDS)
+    // published while the first report is still being written
+    aggregator.publish([
+      new SimpleSpan("service1", "operation", "resource", "type", false, true, false, 0, duration, HTTP_OK)
+    ])
+    Thread closing = Thread.start {
+      aggregator.close()
+    }
+    // lets closing find the first report in progress
+    Thread.sleep(100)
+    written.countDown()
+    closing.join(5000)
+
+    then:
+    2 * writer.startBucket(1, _, _)
+    1 * writer.add(new MetricKey("resource", "service0", "operation", "type", HTTP_OK), _)
+    1 * writer.add(new MetricKey("resource", "service1", "operation", "type", HTTP_OK), _)
+    2 * writer.finishBucket() >> {
+      writing.countDown()
+      written.await(2, SECONDS)
+    }
+  }
+
   def "aggregator should force keep the first of each key it sees"() {
     setup:
     int maxAggregates = 10
@@ -434,17 +513,14 @@ class ConflatingMetricAggregatorTest extends DDSpecification {
     aggregator.close()
   }
 
-  def reportAndWaitUntilEmpty(ConflatingMetricsAggregator aggregator) {
-    waitUntilEmpty(aggregator)
-    aggregator.report()
-    waitUntilEmpty(aggregator)
-  }
-
-
-  def waitUntilEmpty(ConflatingMetricsAggregator aggregator) {
-    int i = 0
-    while (!aggregator.inbox.isEmpty() && i++ < 100) {
-      Thread.sleep(10)
+  def reportAndWait(ConflatingMetricsAggregator aggregator) {
+    // reports are requested behind the batches already published, and complete once written
+    Report report = aggregator.requestReport()
+    while (report == null) {
+      // a periodic report is in progress, the next one is requested once it completes
+      assert aggregator.lastReport.get().await(2, SECONDS)
+      report = aggregator.requestReport()
     }
+    assert report.await(2, SECONDS)
   }
 }
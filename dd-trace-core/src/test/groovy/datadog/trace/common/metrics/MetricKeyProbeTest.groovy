@@ -0,0 +1,39 @@
+package datadog.trace.common.metrics
+
+import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString
+import datadog.trace.test.util.DDSpecification
+import org.jctools.maps.NonBlockingHashMap
+
+class MetricKeyProbeTest extends DDSpecification {
+
+  def "probe finds the key with the same fields"() {
+    setup:
+    def key = new MetricKey(resource, service, operation, type, 200)
+    def keys = new NonBlockingHashMap<MetricKey, MetricKey>()
+    keys.put(key, key)
+
+    when:
+    def probe = new MetricKeyProbe().set(resource, service, operation, type, 200)
+
+    then:
+    probe.hashCode() == key.hashCode()
+    keys.get(probe).is(key)
+    keys.get(new MetricKeyProbe().set(resource, service, operation, type, 500)) == null
+    keys.get(new MetricKeyProbe().set("other", service, operation, type, 200)) == null
+
+    where:
+    resource                            | service                         | operation | type
+    "resource"                          | "service"                       | "op"      | "type"
+    UTF8BytesString.create("resource")  | UTF8BytesString.create("svc")   | "op"      | null
+    new StringBuilder("GET /resources") | "service"                       | null      | ""
+    null                                | null                            | null      | null
+  }
+
+  def "null and empty fields are the same"() {
+    setup:
+    def key = new MetricKey(null, "", null, "", 0)
+
+    expect:
+    new MetricKeyProbe().set("", null, "", null, 0).equals(key)
+  }
+}
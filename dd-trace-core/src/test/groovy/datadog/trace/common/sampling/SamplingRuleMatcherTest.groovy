@@ -0,0 +1,72 @@
+package datadog.trace.common.sampling
+
+import datadog.trace.common.writer.ListWriter
+import datadog.trace.core.DDSpan
+import datadog.trace.core.test.DDCoreSpecification
+
+class SamplingRuleMatcherTest extends DDCoreSpecification {
+
+  def "finds the same rule as evaluating the rules in order"() {
+    setup:
+    def tracer = tracerBuilder().writer(new ListWriter()).build()
+    List<SamplingRule<DDSpan>> rules = [
+      new SamplingRule.ServiceSamplingRule<DDSpan>("service-a", new DeterministicSampler<DDSpan>(0.1)),
+      new SamplingRule.OperationSamplingRule<DDSpan>("http\\.request", new DeterministicSampler<DDSpan>(0.2)),
+      new SamplingRule.ServiceSamplingRule<DDSpan>("service-.*", new DeterministicSampler<DDSpan>(0.3)),
+      new SamplingRule.OperationSamplingRule<DDSpan>(".*\\.query", new DeterministicSampler<DDSpan>(0.4)),
+      new SamplingRule.ServiceSamplingRule<DDSpan>("[xy]-service", new DeterministicSampler<DDSpan>(0.5)),
+      new SamplingRule<DDSpan>(new DeterministicSampler<DDSpan>(0.6)) {
+        @Override
+        boolean matches(DDSpan span) {
+          return span.getTag("custom") != null
+        }
+      },
+      new SamplingRule.AlwaysMatchesSamplingRule<DDSpan>(new DeterministicSampler<DDSpan>(0.7)),
+      new SamplingRule.ServiceSamplingRule<DDSpan>("never-reached", new DeterministicSampler<DDSpan>(0.8))
+    ]
+    def matcher = new SamplingRuleMatcher<DDSpan>(rules)
+
+    when:
+    def span = tracer.buildSpan(operation).withServiceName(service).withTag("custom", custom).start()
+    def expected = rules.find { it.matches(span) }
+
+    then:
+    // twice, to use the cached matches
+    matcher.firstMatch(span).is(expected)
+    matcher.firstMatch(span).is(expected)
+    expected.getSampler().getSampleRate() == rate
+
+    cleanup:
+    tracer.close()
+
+    where:
+    service         | operation      | custom | rate
+    "service-a"     | "http.request" | null   | 0.1
+    "service-b"     | "http.request" | null   | 0.2
+    "service-b"     | "db.query"     | null   | 0.3
+    "other"         | "db.query"     | null   | 0.4
+    "other"         | "db.queryx"    | null   | 0.7
+    "x-service"     | "op"           | null   | 0.5
+    "z-service"     | "op"           | "yes"  | 0.6
+    "z-service"     | "op"           | null   | 0.7
+    "never-reached" | "op"           | null   | 0.7
+  }
+
+  def "no rule matches"() {
+    setup:
+    def tracer = tracerBuilder().writer(new ListWriter()).build()
+    def matcher = new SamplingRuleMatcher<DDSpan>([
+      new SamplingRule.ServiceSamplingRule<DDSpan>("service", new DeterministicSampler<DDSpan>(0.1)),
+      new SamplingRule.OperationSamplingRule<DDSpan>("operation.*", new DeterministicSampler<DDSpan>(0.2))
+    ])
+
+    when:
+    def span = tracer.buildSpan("other").withServiceName("other-service").start()
+
+    then:
+    matcher.firstMatch(span) == null
+
+    cleanup:
+    tracer.close()
+  }
+}
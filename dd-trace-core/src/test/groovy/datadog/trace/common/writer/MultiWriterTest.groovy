@@ -1,9 +1,17 @@
 package datadog.trace.common.writer
 
+import datadog.communication.ddagent.DDAgentFeaturesDiscovery
+import datadog.trace.common.writer.ddagent.DDAgentApi
 import datadog.trace.core.DDSpan
-import datadog.trace.test.util.DDSpecification
+import datadog.trace.core.monitor.HealthMetrics
+import datadog.trace.core.test.DDCoreSpecification
 
-class MultiWriterTest extends DDSpecification {
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static datadog.trace.common.writer.ddagent.Prioritization.FAST_LANE
+
+class MultiWriterTest extends DDCoreSpecification {
 
   def "test that multi writer delegates to all"() {
     setup:
@@ -66,4 +74,50 @@ class MultiWriterTest extends DDSpecification {
     1 * mockW2.incrementDropCounts(0)
     0 * _
   }
+
+  def "pooled tags are released once every writer serialized the trace"() {
+    setup:
+    injectSysConfig("dd.trace.span.pool.size", "16")
+    def firstTags = []
+    def secondTags = []
+    def firstWriterDone = new CountDownLatch(1)
+    def first = remoteWriter(Mock(PayloadDispatcher) {
+      addTrace(_) >> { List<DDSpan> trace -> firstTags << trace[0].tags }
+    })
+    def second = remoteWriter(Mock(PayloadDispatcher) {
+      addTrace(_) >> { List<DDSpan> trace ->
+        // serializes the trace after the first writer is done with it
+        firstWriterDone.await()
+        secondTags << trace[0].tags
+      }
+    })
+    def writer = new MultiWriter([first, second] as Writer[])
+    writer.start()
+    def tracer = tracerBuilder().writer(writer).build()
+
+    when:
+    def span = tracer.buildSpan("fakeOperation").start()
+    span.setTag("some.tag", "some value")
+    span.finish()
+    first.flush()
+    firstWriterDone.countDown()
+    second.flush()
+
+    then:
+    firstTags[0]["some.tag"] == "some value"
+    secondTags[0]["some.tag"] == "some value"
+    tracer.getTagMapPool().size() == 1
+
+    cleanup:
+    writer.close()
+    tracer.close()
+  }
+
+  private remoteWriter(PayloadDispatcher dispatcher) {
+    def worker = new TraceProcessingWorker(10, Stub(HealthMetrics), dispatcher, {
+      false
+    }, FAST_LANE, 100, TimeUnit.SECONDS)
+    return new DDAgentWriter(Stub(DDAgentFeaturesDiscovery), Stub(DDAgentApi), Stub(HealthMetrics),
+      dispatcher, worker)
+  }
 }
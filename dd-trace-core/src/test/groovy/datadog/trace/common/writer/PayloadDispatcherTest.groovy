@@ -8,6 +8,7 @@ import datadog.trace.bootstrap.instrumentation.api.AgentTracer.NoopPathwayContex
 import datadog.trace.common.writer.ddagent.DDAgentApi
 import datadog.communication.ddagent.DDAgentFeaturesDiscovery
 import datadog.trace.common.writer.ddagent.DDAgentMapperDiscovery
+import datadog.trace.common.writer.ddagent.FlushEvent
 import datadog.trace.core.CoreTracer
 import datadog.trace.core.DDSpan
 import datadog.trace.core.DDSpanContext
@@ -19,6 +20,7 @@ import spock.lang.Shared
 import spock.lang.Timeout
 
 import java.nio.ByteBuffer
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 
@@ -80,6 +82,85 @@ class PayloadDispatcherTest extends DDSpecification {
     "v0.5/traces" | 100
   }
 
+  @Timeout(5)
+  def "should send payloads asynchronously and sync flush once sent (direct buffers: #directBuffers)"() {
+    setup:
+    HealthMetrics healthMetrics = Mock(HealthMetrics)
+    DDAgentFeaturesDiscovery discovery = Mock(DDAgentFeaturesDiscovery)
+    discovery.getTraceEndpoint() >> traceEndpoint
+    DDAgentApi api = Mock(DDAgentApi)
+    PayloadDispatcher dispatcher = new PayloadDispatcher(new DDAgentMapperDiscovery(discovery), api, healthMetrics, monitoring, 2, directBuffers)
+    List<DDSpan> trace = [realSpan()]
+    CountDownLatch latch = new CountDownLatch(1)
+
+    when:
+    for (int i = 0; i < traceCount; ++i) {
+      dispatcher.addTrace(trace)
+    }
+    dispatcher.flush()
+    boolean deferred = dispatcher.syncWhenSent(new FlushEvent(latch))
+    latch.await()
+
+    then:
+    deferred
+    1 * healthMetrics.onSerialize({ it > 0 })
+    1 * api.sendSerializedTraces({ it.traceCount() == traceCount }) >> RemoteApi.Response.success(200)
+    1 * healthMetrics.onSend(traceCount, { it > 0 }, _)
+
+    cleanup:
+    dispatcher.close()
+
+    where:
+    traceEndpoint | traceCount | directBuffers
+    "v0.4/traces" | 1          | false
+    "v0.4/traces" | 100        | true
+    "v0.5/traces" | 1          | true
+    "v0.5/traces" | 100        | false
+  }
+
+  @Timeout(5)
+  def "interrupted serializers reclaim the buffer of a pending payload rather than allocating one"() {
+    setup:
+    HealthMetrics healthMetrics = Mock(HealthMetrics)
+    CountDownLatch sending = new CountDownLatch(1)
+    CountDownLatch sent = new CountDownLatch(1)
+    RemoteApi api = Stub(RemoteApi) {
+      sendSerializedTraces(_) >> {
+        sending.countDown()
+        sent.await()
+        return RemoteApi.Response.success(200)
+      }
+    }
+    PayloadSender sender = new PayloadSender(api, healthMetrics, 1024, 2, false, null)
+    ByteBuffer first = sender.nextBuffer()
+    ByteBuffer second = sender.nextBuffer()
+    Payload inFlight = Stub(Payload) {
+      traceCount() >> 1
+      sizeInBytes() >> 10
+    }
+    Payload pending = Stub(Payload) {
+      traceCount() >> 2
+      sizeInBytes() >> 20
+    }
+
+    when:
+    sender.send(inFlight, first)
+    sending.await()
+    sender.send(pending, second)
+    Thread.currentThread().interrupt()
+    ByteBuffer reclaimed = sender.nextBuffer()
+    boolean interrupted = Thread.interrupted()
+
+    then:
+    reclaimed.is(second)
+    interrupted
+    1 * healthMetrics.onDroppedPayload(2, 20)
+
+    cleanup:
+    sent.countDown()
+    sender.close()
+  }
+
   def "should report failed request to monitor"() {
     setup:
     HealthMetrics healthMetrics = Mock(HealthMetrics)
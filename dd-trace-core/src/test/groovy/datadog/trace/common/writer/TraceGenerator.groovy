@@ -8,6 +8,7 @@ import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString
 import datadog.trace.core.CoreSpan
 import datadog.trace.core.Metadata
 import datadog.trace.core.MetadataConsumer
+import datadog.trace.core.TagMap
 
 import java.util.concurrent.ThreadLocalRandom
 import java.util.concurrent.TimeUnit
@@ -165,11 +166,17 @@ class TraceGenerator {
       this.measured = measured
       this.samplingPriority = samplingPriority
       this.metadata = new Metadata(Thread.currentThread().getId(),
-        UTF8BytesString.create(Thread.currentThread().getName()), tags, baggage, samplingPriority, measured, topLevel,
+        UTF8BytesString.create(Thread.currentThread().getName()), tagMap(tags), baggage, samplingPriority, measured, topLevel,
         statusCode == 0 ? null : UTF8BytesString.create(Integer.toString(statusCode)), origin)
       this.httpStatusCode = (short) statusCode
     }
 
+    private static TagMap tagMap(Map<String, Object> tags) {
+      TagMap tagMap = new TagMap(tags.size())
+      tagMap.putAll(tags)
+      return tagMap
+    }
+
     @Override
     PojoSpan getLocalRootSpan() {
       return this
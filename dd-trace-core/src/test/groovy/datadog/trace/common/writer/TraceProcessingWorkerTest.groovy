@@ -1,5 +1,6 @@
 package datadog.trace.common.writer
 
+import datadog.trace.api.DDId
 import datadog.trace.api.StatsDClient
 import datadog.trace.core.DDSpan
 import datadog.trace.core.monitor.HealthMetrics
@@ -95,14 +96,14 @@ class TraceProcessingWorkerTest extends DDSpecification {
     when: "there is pending work it is completed before a flush"
     // processing this span will throw an exception, but it should be caught
     // and not disrupt the flush
-    worker.primaryQueue.offer([Mock(DDSpan)])
+    worker.shards[0].primaryQueue.offer([Mock(DDSpan)])
     worker.start()
     boolean flushed = worker.flush(10, TimeUnit.SECONDS)
 
     then: "the flush succeeds, triggers a dispatch, and the queue is empty"
     flushed
     flushCount.get() == 1
-    worker.primaryQueue.isEmpty()
+    worker.shards[0].primaryQueue.isEmpty()
 
     cleanup:
     worker.close()
@@ -214,7 +215,7 @@ class TraceProcessingWorkerTest extends DDSpecification {
     worker.start()
     worker.close()
     int queueSize = 0
-    while (worker.primaryQueue.offer([Mock(DDSpan)])) {
+    while (worker.shards[0].primaryQueue.offer([Mock(DDSpan)])) {
       queueSize++
     }
 
@@ -224,4 +225,55 @@ class TraceProcessingWorkerTest extends DDSpecification {
     !flushed
   }
 
+  def "sharded worker partitions traces by trace id and flushes every shard"() {
+    setup:
+    int shardCount = 4
+    AtomicInteger flushCount = new AtomicInteger()
+    List<List<DDId>> received = (0..<shardCount).collect {
+      Collections.synchronizedList([])
+    }
+    PayloadDispatcher[] dispatchers = (0..<shardCount).collect { int shard ->
+      PayloadDispatcher dispatcher = Mock(PayloadDispatcher)
+      dispatcher.addTrace(_) >> { List<List<DDSpan>> args ->
+        received[shard].add(args[0][0].getTraceId())
+      }
+      dispatcher.flush() >> {
+        flushCount.incrementAndGet()
+      }
+      return dispatcher
+    } as PayloadDispatcher[]
+    HealthMetrics healthMetrics = Mock(HealthMetrics)
+    TraceProcessingWorker worker = new TraceProcessingWorker(100, healthMetrics,
+      dispatchers, {
+        false
+      }, FAST_LANE, 100, TimeUnit.SECONDS) // prevent heartbeats from helping the flush happen
+    worker.start()
+
+    when: "traces are submitted twice"
+    int submitted = 0
+    for (int i = 0; i < 2; ++i) {
+      for (int id = 1; id <= 20; ++id) {
+        DDSpan root = Stub(DDSpan)
+        root.getTraceId() >> DDId.from(id)
+        submitted += worker.publish(root, SAMPLER_KEEP, [root]) ? 1 : 0
+      }
+    }
+    boolean flushed = worker.flush(10, TimeUnit.SECONDS)
+
+    then: "every shard is flushed and each trace id always lands on the same shard"
+    flushed
+    flushCount.get() == shardCount
+    submitted == 40
+    received.sum { it.size() } == 40
+    received.count { !it.isEmpty() } > 1
+    (0..<shardCount).every { int shard ->
+      received[shard].every { DDId id ->
+        (0..<shardCount).every { other -> other == shard || !received[other].contains(id) }
+      }
+    }
+    worker.getCapacity() == 100
+
+    cleanup:
+    worker.close()
+  }
 }
@@ -12,6 +12,7 @@ import datadog.trace.api.sampling.SamplingMechanism
 import datadog.trace.common.writer.DDAgentWriter
 import datadog.trace.common.writer.ListWriter
 import datadog.trace.common.writer.LoggingWriter
+import datadog.trace.core.propagation.CombinedExtractor
 import datadog.trace.core.propagation.DatadogHttpCodec
 import datadog.trace.core.propagation.HttpCodec
 import datadog.trace.core.test.DDCoreSpecification
@@ -42,7 +43,7 @@ class CoreTracerTest extends DDCoreSpecification {
     tracer.statsDClient != null && tracer.statsDClient != StatsDClient.NO_OP
 
     tracer.injector instanceof HttpCodec.CompoundInjector
-    tracer.extractor instanceof HttpCodec.CompoundExtractor
+    tracer.extractor instanceof CombinedExtractor
 
     cleanup:
     tracer.close()
@@ -249,6 +249,38 @@ class DDSpanContextTest extends DDCoreSpecification {
     top.finish()
   }
 
+  def "released tags are recycled and no longer visible through the span"() {
+    setup:
+    injectSysConfig("dd.trace.span.pool.size", "16")
+    def pooledTracer = tracerBuilder().writer(writer).build()
+    def span = pooledTracer.buildSpan("fakeOperation").start()
+    def context = (DDSpanContext) span.context()
+    context.setTag("some.tag", "asdf")
+    span.finish()
+    writer.waitForTraces(1)
+
+    when:
+    span.releaseTags()
+    context.setTag("late.tag", "value")
+
+    then:
+    context.getTag("some.tag") == null
+    context.getTag("late.tag") == null
+    assertTagmap(context.getTags(), [:], true)
+    pooledTracer.getTagMapPool().size() == 1
+
+    when:
+    span.releaseTags()
+    def next = (DDSpanContext) pooledTracer.buildSpan("fakeOperation").start().context()
+
+    then: "releasing twice doesn't pool the tags twice, and the next span starts without tags"
+    pooledTracer.getTagMapPool().size() == 0
+    next.getTag("some.tag") == null
+
+    cleanup:
+    pooledTracer.close()
+  }
+
   private static String dataTag(String tag) {
     "_dd.${tag}.json"
   }
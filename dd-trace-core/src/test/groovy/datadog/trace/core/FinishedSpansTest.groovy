@@ -0,0 +1,100 @@
+package datadog.trace.core
+
+import datadog.trace.test.util.DDSpecification
+
+import java.util.concurrent.CountDownLatch
+
+class FinishedSpansTest extends DDSpecification {
+
+  def "spans are drained once"() {
+    setup:
+    def spans = FinishedSpans.create(stripes)
+    def first = span(10, 5)
+    def second = span(20, 5)
+
+    expect:
+    spans.isEmpty()
+    spans.oldestFinishedTime() == Long.MAX_VALUE
+
+    when:
+    spans.add(first)
+    spans.add(second)
+
+    then:
+    !spans.isEmpty()
+    spans.asList() as Set == [first, second] as Set
+    spans.oldestFinishedTime() == 15
+
+    when:
+    def trace = []
+    def drained = spans.drainTo(trace)
+
+    then:
+    drained == 2
+    trace as Set == [first, second] as Set
+    spans.isEmpty()
+    spans.oldestFinishedTime() == Long.MAX_VALUE
+    spans.drainTo([]) == 0
+
+    where:
+    stripes << [0, 1, 4, 7]
+  }
+
+  def "oldest finished time is maintained across stripes"() {
+    setup:
+    def spans = FinishedSpans.create(8)
+    def threads = (1..8).collect { i ->
+      def finished = span(100 * i, i)
+      Thread.start {
+        spans.add(finished)
+      }
+    }
+    threads*.join()
+
+    expect:
+    spans.oldestFinishedTime() == 101
+    spans.asList().size() == 8
+  }
+
+  def "concurrent adds are never lost"() {
+    setup:
+    def spans = FinishedSpans.create(stripes)
+    def threadCount = 8
+    def spansPerThread = 1000
+    def finished = span(0, 1)
+    def start = new CountDownLatch(1)
+    def drained = Collections.synchronizedList([])
+    def threads = (1..threadCount).collect {
+      Thread.start {
+        start.await()
+        for (int i = 0; i < spansPerThread; i++) {
+          spans.add(finished)
+          if (i % 100 == 0) {
+            def partial = []
+            spans.drainTo(partial)
+            drained.addAll(partial)
+          }
+        }
+      }
+    }
+
+    when:
+    start.countDown()
+    threads*.join()
+    spans.drainTo(drained)
+
+    then:
+    drained.size() == threadCount * spansPerThread
+    spans.isEmpty()
+
+    where:
+    stripes << [0, 16]
+  }
+
+  def span(long startTime, long duration) {
+    def span = Mock(DDSpan)
+    span.getStartTime() >> startTime
+    span.getDurationNano() >> duration
+    return span
+  }
+}
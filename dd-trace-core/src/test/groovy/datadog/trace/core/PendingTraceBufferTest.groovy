@@ -10,6 +10,7 @@ import datadog.trace.api.time.SystemTimeSource
 import datadog.trace.bootstrap.instrumentation.api.AgentTracer.NoopPathwayContext
 import datadog.trace.bootstrap.instrumentation.api.ScopeSource
 import datadog.trace.context.TraceScope
+import datadog.trace.core.monitor.HealthMetrics
 import datadog.trace.core.scopemanager.ContinuableScopeManager
 import datadog.trace.test.util.DDSpecification
 import spock.lang.Subject
@@ -18,6 +19,7 @@ import spock.util.concurrent.PollingConditions
 
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
 
 import static datadog.trace.core.PendingTraceBuffer.BUFFER_SIZE
@@ -159,7 +161,7 @@ class PendingTraceBufferTest extends DDSpecification {
 
   }
 
-  def "buffer full yields immediate write"() {
+  def "buffer full hands the trace over to the worker"() {
     setup:
     // Don't start the buffer thread
 
@@ -178,21 +180,59 @@ class PendingTraceBufferTest extends DDSpecification {
     _ * tracer.onFinish(_)
     0 * _
 
-    when:
+    when: "the trace doesn't fit in the queue"
     def pendingTrace = factory.create(DDId.ONE)
     addContinuation(newSpanOf(pendingTrace)).finish()
 
-    then:
+    then: "it isn't written on the application thread"
     1 * bufferSpy.enqueue(_)
-    1 * tracer.writeTimer() >> Monitoring.DISABLED.newTimer("")
-    1 * tracer.write({ it.size() == 1 })
     _ * tracer.getPartialFlushMinSpans() >> 10
     _ * tracer.mapServiceName(_)
     1 * tracer.onStart(_)
-    2 * tracer.getTimeWithNanoTicks(_)
+    _ * tracer.getTimeWithNanoTicks(_)
     1 * tracer.onFinish(_)
     0 * _
-    pendingTrace.isEnqueued == 0
+    buffer.overflow.size() == 1
+    pendingTrace.isEnqueued == 1
+
+    when: "the worker processes the buffer"
+    buffer.start()
+    new PollingConditions(timeout: 3, initialDelay: 0, delay: 0.1, factor: 1).eventually {
+      assert pendingTrace.isEnqueued == 0
+    }
+
+    then: "the worker writes it"
+    _ * tracer.writeTimer() >> Monitoring.DISABLED.newTimer("")
+    (1.._) * tracer.write({ it.size() == 1 })
+    buffer.overflow.isEmpty()
+  }
+
+  def "traces are dropped when the overflow is full too"() {
+    setup:
+    def healthMetrics = Mock(HealthMetrics)
+    def stalled = PendingTraceBuffer.delaying(SystemTimeSource.INSTANCE, healthMetrics)
+    def buffered = Stub(PendingTraceBuffer.Element) {
+      setEnqueued(_) >> true
+    }
+    def dropped = Mock(PendingTraceBuffer.Element)
+    // Don't start the buffer thread
+
+    when:
+    (2 * BUFFER_SIZE).times {
+      stalled.enqueue(buffered)
+    }
+    stalled.enqueue(dropped)
+
+    then:
+    stalled.queue.size() == BUFFER_SIZE
+    stalled.overflow.size() == BUFFER_SIZE
+    1 * dropped.setEnqueued(true) >> true
+    1 * dropped.setEnqueued(false) >> true
+    1 * healthMetrics.onDroppedPendingTrace()
+    0 * dropped.write()
+
+    cleanup:
+    stalled.close()
   }
 
   def "continuation allows adding after root finished"() {
@@ -387,6 +427,106 @@ class PendingTraceBufferTest extends DDSpecification {
     }
   }
 
+  def "buffered traces are checked again until they can be written"() {
+    setup:
+    def healthMetrics = Mock(HealthMetrics)
+    def delayingBuffer = PendingTraceBuffer.delaying(SystemTimeSource.INSTANCE, healthMetrics)
+    delayingBuffer.start()
+    def referenced = new AtomicBoolean(true)
+    def checks = new AtomicInteger(0)
+    def writes = new CountDownLatch(1)
+    def element = new PendingTraceBuffer.Element() {
+        @Override
+        long oldestFinishedTime() {
+          return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+        }
+
+        @Override
+        boolean lastReferencedNanosAgo(long nanos) {
+          checks.incrementAndGet()
+          return !referenced.get()
+        }
+
+        @Override
+        void write() {
+          writes.countDown()
+        }
+
+        @Override
+        DDSpan getRootSpan() {
+          return null
+        }
+
+        @Override
+        boolean setEnqueued(boolean enqueued) {
+          return true
+        }
+      }
+
+    when:
+    delayingBuffer.enqueue(element)
+
+    then:
+    new PollingConditions(timeout: 3, initialDelay: 0, delay: 0.05, factor: 1).eventually {
+      assert checks.get() >= 2
+    }
+    writes.count == 1
+
+    when:
+    referenced.set(false)
+
+    then:
+    writes.await(3, TimeUnit.SECONDS)
+    delayingBuffer.wheel.size() == 0
+
+    cleanup:
+    delayingBuffer.close()
+  }
+
+  def "old traces are forced out of the buffer"() {
+    setup:
+    def healthMetrics = Mock(HealthMetrics)
+    def delayingBuffer = PendingTraceBuffer.delaying(SystemTimeSource.INSTANCE, healthMetrics)
+    def written = new CountDownLatch(1)
+    def element = new PendingTraceBuffer.Element() {
+        @Override
+        long oldestFinishedTime() {
+          return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - 6000)
+        }
+
+        @Override
+        boolean lastReferencedNanosAgo(long nanos) {
+          return false
+        }
+
+        @Override
+        void write() {
+          written.countDown()
+        }
+
+        @Override
+        DDSpan getRootSpan() {
+          return null
+        }
+
+        @Override
+        boolean setEnqueued(boolean enqueued) {
+          return true
+        }
+      }
+
+    when:
+    delayingBuffer.enqueue(element)
+    delayingBuffer.start()
+    written.await()
+
+    then:
+    1 * healthMetrics.onForcedPendingTraceWrite(false)
+
+    cleanup:
+    delayingBuffer.close()
+  }
+
   def addContinuation(DDSpan span) {
     def scope = scopeManager.activate(span, ScopeSource.INSTRUMENTATION, true)
     continuations << scope.capture()
@@ -3,6 +3,7 @@ package datadog.trace.core
 import ch.qos.logback.classic.Level
 import ch.qos.logback.classic.Logger
 import datadog.trace.api.Checkpointer
+import datadog.trace.api.sampling.PrioritySampling
 import datadog.trace.common.writer.ListWriter
 import datadog.trace.core.test.DDCoreSpecification
 import org.slf4j.LoggerFactory
@@ -13,6 +14,7 @@ import java.util.concurrent.TimeUnit
 import static datadog.trace.api.Checkpointer.END
 import static datadog.trace.api.Checkpointer.SPAN
 import static datadog.trace.api.config.TracerConfig.PARTIAL_FLUSH_MIN_SPANS
+import static datadog.trace.api.config.TracerConfig.TRACE_SPAN_STREAMING_CHUNK_SIZE
 
 abstract class PendingTraceTestBase extends DDCoreSpecification {
 
@@ -207,6 +209,75 @@ abstract class PendingTraceTestBase extends DDCoreSpecification {
     quickTracer.close()
   }
 
+  def "span streaming writes chunks sampled with the root span"() {
+    when:
+    injectSysConfig(TRACE_SPAN_STREAMING_CHUNK_SIZE, "2")
+    def streamingTracer = tracerBuilder().writer(writer).build()
+    def rootSpan = streamingTracer.buildSpan("root").start()
+    def trace = rootSpan.context().trace
+    def child1 = streamingTracer.buildSpan("child1").asChildOf(rootSpan).start()
+    def child2 = streamingTracer.buildSpan("child2").asChildOf(rootSpan).start()
+    def child3 = streamingTracer.buildSpan("child3").asChildOf(rootSpan).start()
+    def child4 = streamingTracer.buildSpan("child4").asChildOf(rootSpan).start()
+    child1.finish()
+
+    then: "spans are held until there are enough for a chunk"
+    trace.finishedSpans.asList() == [child1]
+    rootSpan.samplingPriority == null
+    writer == []
+
+    when: "the first chunk makes the sampling decision"
+    child2.finish()
+    writer.waitForTraces(1)
+
+    then:
+    rootSpan.samplingPriority != null
+    trace.pendingReferenceCount == 3
+    trace.finishedSpans.isEmpty()
+    writer == [[child2, child1]]
+
+    when:
+    child3.finish()
+    child4.finish()
+    writer.waitForTraces(2)
+
+    then:
+    trace.finishedSpans.isEmpty()
+    writer == [[child2, child1], [child4, child3]]
+
+    when:
+    rootSpan.finish()
+    writer.waitForTraces(3)
+
+    then:
+    trace.pendingReferenceCount == 0
+    writer == [[child2, child1], [child4, child3], [rootSpan]]
+
+    cleanup:
+    streamingTracer.close()
+  }
+
+  def "span streaming keeps a sampling priority set before the first chunk"() {
+    when:
+    injectSysConfig(TRACE_SPAN_STREAMING_CHUNK_SIZE, "2")
+    def streamingTracer = tracerBuilder().writer(writer).build()
+    def rootSpan = streamingTracer.buildSpan("root").start()
+    rootSpan.setSamplingPriority(PrioritySampling.USER_KEEP)
+    def child1 = streamingTracer.buildSpan("child1").asChildOf(rootSpan).start()
+    def child2 = streamingTracer.buildSpan("child2").asChildOf(rootSpan).start()
+    child1.finish()
+    child2.finish()
+    writer.waitForTraces(1)
+
+    then:
+    rootSpan.samplingPriority == PrioritySampling.USER_KEEP
+    writer == [[child2, child1]]
+
+    cleanup:
+    rootSpan.finish()
+    streamingTracer.close()
+  }
+
   def "partial flush concurrency test"() {
     // reduce logging noise
     def logger = (Logger) LoggerFactory.getLogger("datadog.trace")
@@ -0,0 +1,132 @@
+package datadog.trace.core
+
+import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString
+import datadog.trace.test.util.DDSpecification
+
+class TagMapTest extends DDSpecification {
+
+  def "behaves like a map"() {
+    setup:
+    def tags = new TagMap()
+    def expected = [:]
+
+    when:
+    for (int i = 0; i < count; ++i) {
+      def value = i % 5 == 0 ? i : i % 5 == 1 ? (long) i : i % 5 == 2 ? (double) i : i % 5 == 3 ? (float) i : "value" + i
+      tags.put("tag." + i, value)
+      expected.put("tag." + i, value)
+    }
+
+    then:
+    tags == expected
+    tags.size() == count
+    tags.metricCount() == count - (int) (count / 5)
+
+    when: "every other tag is removed"
+    for (int i = 0; i < count; i += 2) {
+      tags.remove("tag." + i)
+      expected.remove("tag." + i)
+    }
+
+    then:
+    tags == expected
+    tags.size() == expected.size()
+    for (int i = 0; i < count; ++i) {
+      assert tags.containsKey("tag." + i) == (i % 2 == 1)
+    }
+
+    when:
+    tags.clear()
+
+    then:
+    tags.isEmpty()
+    tags.metricCount() == 0
+    tags.get("tag.1") == null
+
+    where:
+    count << [0, 1, 7, 100]
+  }
+
+  def "replacing a value updates the metric count"() {
+    setup:
+    def tags = new TagMap()
+
+    when:
+    tags.setDouble("key", 1.0d)
+
+    then:
+    tags.metricCount() == 1
+    tags.get("key") == 1.0d
+
+    when:
+    tags.set("key", "value")
+
+    then:
+    tags.metricCount() == 0
+    tags.get("key") == "value"
+
+    when:
+    tags.set("key", BigDecimal.ONE)
+
+    then:
+    tags.metricCount() == 1
+    tags.get("key") == BigDecimal.ONE
+  }
+
+  def "visits tags and metrics separately without boxing"() {
+    setup:
+    def tags = new TagMap()
+    tags.set("string", "value")
+    tags.setInt("int", 1)
+    tags.setLong("long", 2L)
+    tags.setFloat("float", 3.0f)
+    tags.setDouble("double", 4.0d)
+    tags.set("number", BigInteger.TEN)
+    def visited = [:]
+    def tagVisitor = new TagMap.TagVisitor() {
+        @Override
+        void visit(UTF8BytesString key, Object value) {
+          visited.put(key.toString(), value)
+        }
+      }
+    def metricVisitor = new TagMap.MetricVisitor() {
+        @Override
+        void visitInt(UTF8BytesString key, int value) {
+          visited.put(key.toString(), "int:" + value)
+        }
+
+        @Override
+        void visitLong(UTF8BytesString key, long value) {
+          visited.put(key.toString(), "long:" + value)
+        }
+
+        @Override
+        void visitFloat(UTF8BytesString key, float value) {
+          visited.put(key.toString(), "float:" + value)
+        }
+
+        @Override
+        void visitDouble(UTF8BytesString key, double value) {
+          visited.put(key.toString(), "double:" + value)
+        }
+
+        @Override
+        void visitNumber(UTF8BytesString key, Number value) {
+          visited.put(key.toString(), "number:" + value)
+        }
+      }
+
+    when:
+    tags.forEachTag(tagVisitor)
+
+    then:
+    visited == ["string": "value"]
+
+    when:
+    visited.clear()
+    tags.forEachMetric(metricVisitor)
+
+    then:
+    visited == ["int": "int:1", "long": "long:2", "float": "float:3.0", "double": "double:4.0", "number": "number:10"]
+  }
+}
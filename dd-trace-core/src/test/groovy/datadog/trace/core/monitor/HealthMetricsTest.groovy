@@ -43,6 +43,20 @@ class HealthMetricsTest extends DDSpecification {
     0 * _
   }
 
+  def "test close sends what was counted since the last flush"() {
+    setup:
+    def healthMetrics = new HealthMetrics(statsD, 30, TimeUnit.SECONDS)
+    healthMetrics.start()
+    healthMetrics.onFailedPublish(PrioritySampling.USER_DROP)
+
+    when:
+    healthMetrics.close()
+
+    then:
+    1 * statsD.count('queue.dropped.traces', 1, "priority:user_drop")
+    0 * _
+  }
+
   def "test onPublish"() {
     setup:
     def latch = new CountDownLatch(trace.isEmpty() ? 1 : 2)
@@ -116,13 +130,20 @@ class HealthMetricsTest extends DDSpecification {
   def "test onSerialize"() {
     when:
     healthMetrics.onSerialize(bytes)
+    healthMetrics.onSerialize(bytes)
+
+    then:
+    0 * _
+
+    when:
+    healthMetrics.flush()
 
     then:
-    1 * statsD.count('queue.enqueued.bytes', bytes)
+    1 * statsD.count('queue.enqueued.bytes', 2 * bytes)
     0 * _
 
     where:
-    bytes = ThreadLocalRandom.current().nextInt(10000)
+    bytes = ThreadLocalRandom.current().nextInt(1, 10000)
   }
 
   def "test onFailedSerialize"() {
@@ -136,16 +157,17 @@ class HealthMetricsTest extends DDSpecification {
   def "test onSend"() {
     when:
     healthMetrics.onSend(traceCount, sendSize, response)
+    healthMetrics.flush()
 
     then:
-    1 * statsD.incrementCounter('api.requests.total')
+    1 * statsD.count('api.requests.total', 1)
     1 * statsD.count('flush.traces.total', traceCount)
     1 * statsD.count('flush.bytes.total', sendSize)
     if (response.exception()) {
-      1 * statsD.incrementCounter('api.errors.total')
+      1 * statsD.count('api.errors.total', 1)
     }
     if (response.status()) {
-      1 * statsD.incrementCounter('api.responses.total', ["status:${response.status()}"])
+      1 * statsD.count('api.responses.total', 1, ["status:${response.status()}"])
     }
     0 * _
 
@@ -164,16 +186,17 @@ class HealthMetricsTest extends DDSpecification {
   def "test onFailedSend"() {
     when:
     healthMetrics.onFailedSend(traceCount, sendSize, response)
+    healthMetrics.flush()
 
     then:
-    1 * statsD.incrementCounter('api.requests.total')
+    1 * statsD.count('api.requests.total', 1)
     1 * statsD.count('flush.traces.total', traceCount)
     1 * statsD.count('flush.bytes.total', sendSize)
     if (response.exception()) {
-      1 * statsD.incrementCounter('api.errors.total')
+      1 * statsD.count('api.errors.total', 1)
     }
     if (response.status()) {
-      1 * statsD.incrementCounter('api.responses.total', ["status:${response.status()}"])
+      1 * statsD.count('api.responses.total', 1, ["status:${response.status()}"])
     }
     0 * _
 
@@ -0,0 +1,110 @@
+package datadog.trace.core.monitor
+
+import datadog.trace.api.StatsDClient
+import datadog.trace.api.cache.CacheStats
+import datadog.trace.test.util.DDSpecification
+import datadog.trace.util.AgentTaskScheduler
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static datadog.trace.util.AgentThreadFactory.AgentThread.TASK_SCHEDULER
+
+class ProcessHealthMetricsTest extends DDSpecification {
+  def statsD = Mock(StatsDClient)
+  def sqlCache = new CacheStats()
+  def scheduler = new AgentTaskScheduler(TASK_SCHEDULER)
+
+  def cleanup() {
+    scheduler.shutdown(5, TimeUnit.SECONDS)
+  }
+
+  def "test nothing is reported without activity"() {
+    setup:
+    def metrics = new ProcessHealthMetrics(statsD, sqlCache, [scheduler], 30, TimeUnit.SECONDS)
+
+    when:
+    metrics.flush()
+
+    then:
+    0 * _
+  }
+
+  def "test sql cache statistics"() {
+    setup:
+    def metrics = new ProcessHealthMetrics(statsD, sqlCache, [scheduler], 30, TimeUnit.SECONDS)
+    sqlCache.recordMiss()
+    sqlCache.recordInsertion(100)
+    sqlCache.recordHit()
+    sqlCache.recordHit()
+
+    when:
+    metrics.flush()
+
+    then:
+    1 * statsD.count('jdbc.sql_cache.hits', 2)
+    1 * statsD.count('jdbc.sql_cache.misses', 1)
+    1 * statsD.gauge('jdbc.sql_cache.bytes', 100)
+    0 * _
+
+    when:
+    sqlCache.recordEviction(100)
+    metrics.flush()
+
+    then:
+    1 * statsD.count('jdbc.sql_cache.evictions', 1)
+    0 * _
+  }
+
+  def "test close sends what was counted since the last flush"() {
+    setup:
+    def metrics = new ProcessHealthMetrics(statsD, sqlCache, [scheduler], 30, TimeUnit.SECONDS)
+    metrics.start()
+    sqlCache.recordHit()
+
+    when:
+    metrics.close()
+
+    then:
+    1 * statsD.count('jdbc.sql_cache.hits', 1)
+    0 * _
+  }
+
+  def "test late scheduled tasks"() {
+    setup:
+    def metrics = new ProcessHealthMetrics(statsD, sqlCache, [scheduler], 30, TimeUnit.SECONDS)
+    def latch = new CountDownLatch(1)
+    def task = new AgentTaskScheduler.Task<CountDownLatch>() {
+        @Override
+        void run(CountDownLatch target) {
+          target.countDown()
+        }
+      }
+    // keeps the worker busy past the time the next task is scheduled for
+    scheduler.execute { sleep(300) }
+    scheduler.schedule(task, latch, 10, TimeUnit.MILLISECONDS)
+
+    when:
+    latch.await(5, TimeUnit.SECONDS)
+    metrics.flush()
+
+    then:
+    1 * statsD.count('scheduler.tasks.late', { it >= 1 })
+    1 * statsD.gauge('scheduler.lateness.max_ms', { it >= 100 })
+    0 * _
+  }
+
+  def "test running schedulers are reported"() {
+    when:
+    scheduler.execute {}
+
+    then:
+    AgentTaskScheduler.runningSchedulers().contains(scheduler)
+
+    when:
+    scheduler.shutdown(5, TimeUnit.SECONDS)
+
+    then:
+    !AgentTaskScheduler.runningSchedulers().contains(scheduler)
+  }
+}
@@ -0,0 +1,57 @@
+package datadog.trace.core.monitor
+
+import datadog.trace.api.StatsDClient
+import datadog.trace.test.util.DDSpecification
+
+class StatsDAggregatorTest extends DDSpecification {
+
+  def "counters report the sum of their increments once per flush"() {
+    setup:
+    StatsDClient statsd = Mock(StatsDClient)
+    def aggregator = new StatsDAggregator(statsd)
+    def counter = aggregator.counter("my_counter", "tag:value")
+    def untouched = aggregator.counter("other_counter")
+
+    when:
+    counter.inc()
+    counter.inc(41)
+
+    then:
+    0 * _
+
+    when:
+    aggregator.flush()
+
+    then:
+    1 * statsd.count("my_counter", 42, ["tag:value"])
+    0 * _
+
+    when:
+    aggregator.flush()
+
+    then:
+    0 * _
+  }
+
+  def "gauges report the last value set once per flush"() {
+    setup:
+    StatsDClient statsd = Mock(StatsDClient)
+    def aggregator = new StatsDAggregator(statsd)
+    def gauge = aggregator.gauge("my_gauge")
+
+    when:
+    gauge.set(1)
+    gauge.set(0)
+    aggregator.flush()
+
+    then:
+    1 * statsd.gauge("my_gauge", 0L, [])
+    0 * _
+
+    when:
+    aggregator.flush()
+
+    then:
+    0 * _
+  }
+}
@@ -0,0 +1,150 @@
+package datadog.trace.core.propagation
+
+import datadog.trace.api.PropagationStyle
+import datadog.trace.bootstrap.instrumentation.api.ContextVisitors
+import datadog.trace.bootstrap.instrumentation.api.TagContext
+import datadog.trace.test.util.DDSpecification
+
+import static datadog.trace.api.PropagationStyle.B3
+import static datadog.trace.api.PropagationStyle.DATADOG
+import static datadog.trace.api.PropagationStyle.HAYSTACK
+import static datadog.trace.api.PropagationStyle.XRAY
+
+class CombinedExtractorTest extends DDSpecification {
+
+  static final Map<String, String> TAGGED_HEADERS = ["SOME_HEADER": "some-tag", " Other-Header ": "other-tag"]
+
+  static final Map<String, Map<String, String>> REQUESTS = [
+    "datadog"  : [
+      "X-Datadog-Trace-Id"         : "1",
+      "x-datadog-parent-id"        : "2",
+      "X-DATADOG-SAMPLING-PRIORITY": "1",
+      "x-datadog-origin"           : "synthetics",
+      "ot-baggage-t0"              : "1000",
+      "OT-Baggage-Key"             : "value",
+      "some_header"                : "my-interesting-info",
+      "User-Agent"                 : "curl/7.64.1"
+    ],
+    "b3"       : [
+      "X-B3-TraceId": "a",
+      "X-B3-SpanId" : "b",
+      "X-B3-Sampled": "1",
+      "Accept"      : "*/*"
+    ],
+    "b3 single": [
+      "b3"          : "a-b-1",
+      "other-header": "other-info"
+    ],
+    "haystack" : [
+      "Trace-ID"     : "44617461-646f-6721-0000-000000000001",
+      "Span-ID"      : "44617461-646f-6721-0000-000000000002",
+      "Parent-ID"    : "44617461-646f-6721-0000-000000000003",
+      "Baggage-Item" : "value",
+      "Content-Type" : "text/plain"
+    ],
+    "xray"     : [
+      "X-Amzn-Trace-Id": "Root=1-00000000-00000000000000000000000a ; Parent=000000000000000b;Sampled=1;_dd.origin=synthetics;key=value"
+    ],
+    "forwarded": [
+      "Forwarded"        : "for=1.2.3.4",
+      "X-Forwarded-For"  : "1.2.3.4",
+      "X-Forwarded-Proto": "https",
+      "X-Forwarded-Host" : "example.com",
+      "X-Forwarded-Port" : "443",
+      "SOME_HEADER"      : "my-interesting-info"
+    ],
+    "invalid"  : [
+      "x-datadog-trace-id" : "abc",
+      "x-datadog-parent-id": "2",
+      "X-B3-TraceId"       : "a",
+      "X-B3-SpanId"        : "b"
+    ],
+    "none"     : [
+      "Host"  : "example.com",
+      "Accept": "*/*"
+    ]
+  ]
+
+  def "extracts the same context as the compound extractor for #request headers with #styles"() {
+    setup:
+    def combined = new CombinedExtractor(styles as LinkedHashSet, TAGGED_HEADERS)
+    def compound = new HttpCodec.CompoundExtractor(styles.collect {
+      extractor(it)
+    })
+    // the headers of all the styles can also come together
+    def headers = request == "all" ? REQUESTS.values().sum([:]) : REQUESTS[request]
+
+    when:
+    def expected = compound.extract(headers, ContextVisitors.stringValuesMap())
+    def actual = combined.extract(headers, ContextVisitors.stringValuesMap())
+
+    then:
+    same(actual, expected)
+    // the interpreters are reused
+    same(combined.extract(headers, ContextVisitors.stringValuesMap()), expected)
+
+    where:
+    [request, styles] << [
+      REQUESTS.keySet() + "all",
+      [[DATADOG], [B3], [HAYSTACK], [XRAY], [DATADOG, B3], [B3, DATADOG], [DATADOG, B3, HAYSTACK, XRAY], []]
+    ].combinations()
+  }
+
+  def "finds the styles reading a header whatever its case"() {
+    setup:
+    def extractor = new CombinedExtractor([DATADOG, B3, HAYSTACK] as LinkedHashSet, TAGGED_HEADERS)
+
+    expect:
+    extractor.stylesReading(header) == styles
+
+    where:
+    header                | styles
+    "x-datadog-trace-id"  | 0b001
+    "X-DATADOG-TRACE-ID"  | 0b001
+    "X-B3-TraceId"        | 0b010
+    "B3"                  | 0b010
+    "trace-id"            | 0b100
+    "baggage-key"         | 0b100
+    "OT-BAGGAGE-key"      | 0b001
+    "x-forwarded-for"     | 0b111
+    "some_header"         | 0b111
+    "other-header"        | 0b111
+    "x-datadog-trace-i"   | 0
+    "x-datadog-trace-idx" | 0
+    "user-agent"          | 0
+    ""                    | 0
+  }
+
+  private static HttpCodec.Extractor extractor(PropagationStyle style) {
+    switch (style) {
+      case DATADOG:
+        return DatadogHttpCodec.newExtractor(TAGGED_HEADERS)
+      case B3:
+        return B3HttpCodec.newExtractor(TAGGED_HEADERS)
+      case HAYSTACK:
+        return HaystackHttpCodec.newExtractor(TAGGED_HEADERS)
+      default:
+        return XRayHttpCodec.newExtractor(TAGGED_HEADERS)
+    }
+  }
+
+  private static boolean same(TagContext actual, TagContext expected) {
+    if (expected == null) {
+      assert actual == null
+      return true
+    }
+    assert actual.getClass() == expected.getClass()
+    assert actual.origin == expected.origin
+    assert actual.tags == expected.tags
+    assert actual.forwarded == expected.forwarded
+    assert actual.forwardedIp == expected.forwardedIp
+    if (expected instanceof ExtractedContext) {
+      assert actual.traceId == expected.traceId
+      assert actual.spanId == expected.spanId
+      assert actual.samplingPriority == expected.samplingPriority
+      assert actual.endToEndStartTime == expected.endToEndStartTime
+      assert actual.baggage == expected.baggage
+    }
+    return true
+  }
+}
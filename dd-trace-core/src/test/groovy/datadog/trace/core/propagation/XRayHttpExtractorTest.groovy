@@ -144,6 +144,22 @@ class XRayHttpExtractorTest extends DDSpecification {
     context == null
   }
 
+  def "extract http headers with an empty sampling decision"() {
+    setup:
+    def headers = [
+      "x-amzn-trace-Id"  : "Root=1-00000000-000000000000000000000001;Parent=0000000000000002;Sampled=$suffix",
+    ]
+
+    when:
+    TagContext context = extractor.extract(headers, ContextVisitors.stringValuesMap())
+
+    then:
+    context == null
+
+    where:
+    suffix << ["", " ", " ;Self=1-5759e988-bd862e3fe1be46a994272793"]
+  }
+
   def "extract http headers with non-Datadog X-Amzn-Trace-Id value"() {
     setup:
     def headers = [
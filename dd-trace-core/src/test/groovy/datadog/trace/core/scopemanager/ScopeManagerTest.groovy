@@ -944,6 +944,92 @@ class ScopeManagerTest extends DDCoreSpecification {
     true                | true
   }
 
+  def "closing a stale scope doesn't close a later activation of the same span"() {
+    setup:
+    def span = tracer.buildSpan("test").start()
+
+    when:
+    def scope = tracer.activateSpan(span)
+    scope.close()
+    def current = tracer.activateSpan(span)
+
+    then:
+    !current.is(scope)
+    scopeManager.active() == current
+    assertEvents([ACTIVATE, CLOSE, ACTIVATE])
+
+    when:
+    scope.close()
+
+    then:
+    1 * statsDClient.incrementCounter("scope.close.error")
+    scopeManager.active() == current
+    scopeManager.activeSpan() == span
+    assertEvents([ACTIVATE, CLOSE, ACTIVATE])
+
+    when:
+    current.close()
+
+    then:
+    scopeManager.active() == null
+    assertEvents([ACTIVATE, CLOSE, ACTIVATE, CLOSE])
+
+    cleanup:
+    span.finish()
+  }
+
+  def "scopes are closed in order at any depth"() {
+    setup:
+    def spans = (1..depth).collect { tracer.buildSpan("span" + it).start() }
+
+    when:
+    def scopes = spans.collect { tracer.activateSpan(it) }
+
+    then:
+    scopeManager.scopeStack().depth() == depth
+    scopeManager.activeSpan() == spans.last()
+
+    when:
+    for (int i = depth - 1; i > 0; --i) {
+      scopes[i].close()
+      assert scopeManager.activeSpan() == spans[i - 1]
+    }
+    scopes[0].close()
+
+    then:
+    scopeManager.scopeStack().depth() == 0
+    scopeManager.active() == null
+
+    cleanup:
+    spans.each { it.finish() }
+
+    where:
+    depth << [1, 16, 17, 64]
+  }
+
+  def "scope stacks are only allocated once a scope is activated"() {
+    setup:
+    def span = tracer.buildSpan("test").start()
+    def stacks = []
+
+    when:
+    Thread.start {
+      scopeManager.active()
+      scopeManager.activeSpan()
+      scopeManager.closePrevious(true)
+      stacks << scopeManager.tlsScopeStack.get()
+      tracer.activateSpan(span).close()
+      stacks << scopeManager.tlsScopeStack.get()
+    }.join()
+
+    then:
+    stacks[0] == null
+    stacks[1] != null
+
+    cleanup:
+    span.finish()
+  }
+
   boolean spanFinished(AgentSpan span) {
     return ((DDSpan) span)?.isFinished()
   }
@@ -7,6 +7,7 @@ import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString
 import datadog.trace.core.CoreSpan
 import datadog.trace.core.Metadata
 import datadog.trace.core.MetadataConsumer
+import datadog.trace.core.TagMap
 
 import java.util.concurrent.ThreadLocalRandom
 import java.util.concurrent.TimeUnit
@@ -154,7 +155,13 @@ class TraceGenerator {
       this.type = type
       this.measured = measured
       this.metadata = new Metadata(Thread.currentThread().getId(),
-        UTF8BytesString.create(Thread.currentThread().getName()), tags, baggage, UNSET, measured, topLevel, null, null)
+        UTF8BytesString.create(Thread.currentThread().getName()), tagMap(tags), baggage, UNSET, measured, topLevel, null, null)
+    }
+
+    private static TagMap tagMap(Map<String, Object> tags) {
+      TagMap tagMap = new TagMap(tags.size())
+      tagMap.putAll(tags)
+      return tagMap
     }
 
     @Override
@@ -0,0 +1,96 @@
+package datadog.trace.util;
+
+import static datadog.trace.util.AgentThreadFactory.AgentThread.TASK_SCHEDULER;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Schedules 100k periodic tasks, like one check per pooled thread, then cancels them all: with the
+ * timer wheels of the agent scheduler, and with a delay queue, through a scheduled executor which
+ * removes cancelled tasks, as baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+public class AgentTaskSchedulerBenchmark {
+
+  private static final int TASKS = 100_000;
+
+  @Param({"1", "4"})
+  int workers;
+
+  private AgentTaskScheduler scheduler;
+  private ScheduledThreadPoolExecutor executor;
+
+  private final AgentTaskScheduler.Scheduled<?>[] scheduled =
+      new AgentTaskScheduler.Scheduled<?>[TASKS];
+  private final ScheduledFuture<?>[] futures = new ScheduledFuture<?>[TASKS];
+
+  private static final AgentTaskScheduler.Task<Object> NOOP_TASK =
+      new AgentTaskScheduler.Task<Object>() {
+        @Override
+        public void run(final Object target) {}
+      };
+
+  private static final Runnable NOOP_RUNNABLE =
+      new Runnable() {
+        @Override
+        public void run() {}
+      };
+
+  @Setup(Level.Trial)
+  public void init() {
+    scheduler = new AgentTaskScheduler(TASK_SCHEDULER, workers);
+    executor = new ScheduledThreadPoolExecutor(workers);
+    executor.setRemoveOnCancelPolicy(true);
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    scheduler.shutdown(1, SECONDS);
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TASKS)
+  public Object timerWheel() {
+    Object target = new Object();
+    for (int i = 0; i < TASKS; i++) {
+      // spread over the next 10 seconds, the tasks never run
+      scheduled[i] =
+          scheduler.scheduleAtFixedRate(NOOP_TASK, target, 10_000 + i % 10_000, 1000, MILLISECONDS);
+    }
+    for (AgentTaskScheduler.Scheduled<?> task : scheduled) {
+      task.cancel();
+    }
+    return target;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TASKS)
+  public Object delayQueue() {
+    for (int i = 0; i < TASKS; i++) {
+      futures[i] =
+          executor.scheduleAtFixedRate(NOOP_RUNNABLE, 10_000 + i % 10_000, 1000, MILLISECONDS);
+    }
+    for (ScheduledFuture<?> future : futures) {
+      future.cancel(false);
+    }
+    return futures;
+  }
+}
@@ -27,6 +27,7 @@ import static datadog.trace.api.ConfigDefaults.DEFAULT_HTTP_SERVER_ERROR_STATUSE
 import static datadog.trace.api.ConfigDefaults.DEFAULT_HTTP_SERVER_ROUTE_BASED_NAMING;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_HTTP_SERVER_TAG_QUERY_STRING;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_INTEGRATIONS_ENABLED;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_JDBC_SQL_CACHE_SIZE;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_JMX_FETCH_ENABLED;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_JMX_FETCH_MULTIPLE_RUNTIME_SERVICES_ENABLED;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_JMX_FETCH_MULTIPLE_RUNTIME_SERVICES_LIMIT;
@@ -42,20 +43,28 @@ import static datadog.trace.api.ConfigDefaults.DEFAULT_RESOLVER_TYPE_POOL_SIZE;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_RUNTIME_CONTEXT_FIELD_INJECTION;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_SCOPE_DEPTH_LIMIT;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_SCOPE_ITERATION_KEEP_ALIVE;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_SCOPE_VIRTUAL_THREAD_MODE;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_SERIALVERSIONUID_FIELD_INJECTION;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_SERVICE_NAME;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_SERVLET_ROOT_CONTEXT_SERVICE_NAME;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_SITE;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACER_METRICS_AGGREGATOR_SHARDS;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_AGENT_DIRECT_TRANSPORT;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_AGENT_PORT;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_AGENT_V05_ENABLED;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_ANALYTICS_ENABLED;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_ANNOTATIONS;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_ASYNC_SEND_BUFFERS;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_ENABLED;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_EXECUTORS_ALL;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_METHODS;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_PENDING_SPAN_STRIPES;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_RATE_LIMIT;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_REPORT_HOSTNAME;
 import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_RESOLVER_ENABLED;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_SERIALIZER_SHARDS;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_SPAN_POOL_SIZE;
+import static datadog.trace.api.ConfigDefaults.DEFAULT_TRACE_SPAN_STREAMING_CHUNK_SIZE;
 import static datadog.trace.api.DDTags.HOST_TAG;
 import static datadog.trace.api.DDTags.INTERNAL_HOST_NAME;
 import static datadog.trace.api.DDTags.LANGUAGE_TAG_KEY;
@@ -102,6 +111,7 @@ import static datadog.trace.api.config.GeneralConfig.RUNTIME_METRICS_ENABLED;
 import static datadog.trace.api.config.GeneralConfig.SERVICE_NAME;
 import static datadog.trace.api.config.GeneralConfig.SITE;
 import static datadog.trace.api.config.GeneralConfig.TAGS;
+import static datadog.trace.api.config.GeneralConfig.TRACER_METRICS_AGGREGATOR_SHARDS;
 import static datadog.trace.api.config.GeneralConfig.TRACER_METRICS_BUFFERING_ENABLED;
 import static datadog.trace.api.config.GeneralConfig.TRACER_METRICS_ENABLED;
 import static datadog.trace.api.config.GeneralConfig.TRACER_METRICS_IGNORED_RESOURCES;
@@ -152,8 +162,12 @@ import static datadog.trace.api.config.ProfilingConfig.PROFILING_TAGS;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_TEMPLATE_OVERRIDE_FILE;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_COMPRESSION;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_COMPRESSION_DEFAULT;
+import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_COMPRESSION_LEVEL;
+import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_COMPRESSION_LEVEL_DEFAULT;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_PERIOD;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_PERIOD_DEFAULT;
+import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_PIPELINED;
+import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_PIPELINED_DEFAULT;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_SUMMARY_ON_413;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_SUMMARY_ON_413_DEFAULT;
 import static datadog.trace.api.config.ProfilingConfig.PROFILING_UPLOAD_TIMEOUT;
@@ -178,6 +192,7 @@ import static datadog.trace.api.config.TraceInstrumentationConfig.IGNITE_CACHE_I
 import static datadog.trace.api.config.TraceInstrumentationConfig.INTEGRATIONS_ENABLED;
 import static datadog.trace.api.config.TraceInstrumentationConfig.JDBC_CONNECTION_CLASS_NAME;
 import static datadog.trace.api.config.TraceInstrumentationConfig.JDBC_PREPARED_STATEMENT_CLASS_NAME;
+import static datadog.trace.api.config.TraceInstrumentationConfig.JDBC_SQL_CACHE_SIZE;
 import static datadog.trace.api.config.TraceInstrumentationConfig.JMS_PROPAGATION_DISABLED_QUEUES;
 import static datadog.trace.api.config.TraceInstrumentationConfig.JMS_PROPAGATION_DISABLED_TOPICS;
 import static datadog.trace.api.config.TraceInstrumentationConfig.KAFKA_CLIENT_BASE64_DECODING_ENABLED;
@@ -189,6 +204,7 @@ import static datadog.trace.api.config.TraceInstrumentationConfig.OSGI_SEARCH_DE
 import static datadog.trace.api.config.TraceInstrumentationConfig.PLAY_REPORT_HTTP_STATUS;
 import static datadog.trace.api.config.TraceInstrumentationConfig.RABBIT_PROPAGATION_DISABLED_EXCHANGES;
 import static datadog.trace.api.config.TraceInstrumentationConfig.RABBIT_PROPAGATION_DISABLED_QUEUES;
+import static datadog.trace.api.config.TraceInstrumentationConfig.RESOLVER_CACHE_DIR;
 import static datadog.trace.api.config.TraceInstrumentationConfig.RESOLVER_TYPE_POOL_SIZE;
 import static datadog.trace.api.config.TraceInstrumentationConfig.RESOLVER_USE_LOADCLASS;
 import static datadog.trace.api.config.TraceInstrumentationConfig.RUNTIME_CONTEXT_FIELD_INJECTION;
@@ -231,21 +247,28 @@ import static datadog.trace.api.config.TracerConfig.SCOPE_DEPTH_LIMIT;
 import static datadog.trace.api.config.TracerConfig.SCOPE_INHERIT_ASYNC_PROPAGATION;
 import static datadog.trace.api.config.TracerConfig.SCOPE_ITERATION_KEEP_ALIVE;
 import static datadog.trace.api.config.TracerConfig.SCOPE_STRICT_MODE;
+import static datadog.trace.api.config.TracerConfig.SCOPE_VIRTUAL_THREAD_MODE;
 import static datadog.trace.api.config.TracerConfig.SERVICE_MAPPING;
 import static datadog.trace.api.config.TracerConfig.SPAN_TAGS;
 import static datadog.trace.api.config.TracerConfig.SPLIT_BY_TAGS;
 import static datadog.trace.api.config.TracerConfig.TRACE_AGENT_ARGS;
+import static datadog.trace.api.config.TracerConfig.TRACE_AGENT_DIRECT_TRANSPORT;
 import static datadog.trace.api.config.TracerConfig.TRACE_AGENT_PATH;
 import static datadog.trace.api.config.TracerConfig.TRACE_AGENT_PORT;
 import static datadog.trace.api.config.TracerConfig.TRACE_AGENT_URL;
 import static datadog.trace.api.config.TracerConfig.TRACE_ANALYTICS_ENABLED;
+import static datadog.trace.api.config.TracerConfig.TRACE_ASYNC_SEND_BUFFERS;
 import static datadog.trace.api.config.TracerConfig.TRACE_HTTP_SERVER_PATH_RESOURCE_NAME_MAPPING;
+import static datadog.trace.api.config.TracerConfig.TRACE_PENDING_SPAN_STRIPES;
 import static datadog.trace.api.config.TracerConfig.TRACE_RATE_LIMIT;
 import static datadog.trace.api.config.TracerConfig.TRACE_REPORT_HOSTNAME;
 import static datadog.trace.api.config.TracerConfig.TRACE_RESOLVER_ENABLED;
 import static datadog.trace.api.config.TracerConfig.TRACE_SAMPLE_RATE;
 import static datadog.trace.api.config.TracerConfig.TRACE_SAMPLING_OPERATION_RULES;
 import static datadog.trace.api.config.TracerConfig.TRACE_SAMPLING_SERVICE_RULES;
+import static datadog.trace.api.config.TracerConfig.TRACE_SERIALIZER_SHARDS;
+import static datadog.trace.api.config.TracerConfig.TRACE_SPAN_POOL_SIZE;
+import static datadog.trace.api.config.TracerConfig.TRACE_SPAN_STREAMING_CHUNK_SIZE;
 import static datadog.trace.api.config.TracerConfig.TRACE_STRICT_WRITES_ENABLED;
 import static datadog.trace.api.config.TracerConfig.WRITER_TYPE;
 import static datadog.trace.util.CollectionUtils.tryMakeImmutableList;
@@ -365,8 +388,15 @@ public class Config {
   private final boolean scopeStrictMode;
   private final boolean scopeInheritAsyncPropagation;
   private final int scopeIterationKeepAlive;
+  private final boolean scopeVirtualThreadMode;
   private final int partialFlushMinSpans;
   private final boolean traceStrictWritesEnabled;
+  private final int tracePendingSpanStripes;
+  private final int traceSpanStreamingChunkSize;
+  private final int traceSerializerShards;
+  private final int traceAsyncSendBuffers;
+  private final int traceSpanPoolSize;
+  private final boolean traceAgentDirectTransport;
   private final boolean runtimeContextFieldInjection;
   private final boolean serialVersionUIDFieldInjection;
   private final boolean logExtractHeaderNames;
@@ -399,6 +429,7 @@ public class Config {
   private final boolean tracerMetricsBufferingEnabled;
   private final int tracerMetricsMaxAggregates;
   private final int tracerMetricsMaxPending;
+  private final int tracerMetricsAggregatorShards;
 
   private final boolean logsInjectionEnabled;
   private final boolean logsMDCTagsInjectionEnabled;
@@ -431,6 +462,8 @@ public class Config {
   private final String profilingTemplateOverrideFile;
   private final int profilingUploadTimeout;
   private final String profilingUploadCompression;
+  private final int profilingUploadCompressionLevel;
+  private final boolean profilingUploadPipelined;
   private final String profilingProxyHost;
   private final int profilingProxyPort;
   private final String profilingProxyUsername;
@@ -500,9 +533,11 @@ public class Config {
 
   private final boolean resolverUseLoadClassEnabled;
   private final int resolverTypePoolSize;
+  private final String resolverCacheDir;
 
   private final String jdbcPreparedStatementClassName;
   private final String jdbcConnectionClassName;
+  private final int jdbcSqlCacheSize;
 
   private final Set<String> grpcIgnoredInboundMethods;
   private final Set<String> grpcIgnoredOutboundMethods;
@@ -752,11 +787,33 @@ public class Config {
     scopeIterationKeepAlive =
         configProvider.getInteger(SCOPE_ITERATION_KEEP_ALIVE, DEFAULT_SCOPE_ITERATION_KEEP_ALIVE);
 
+    scopeVirtualThreadMode =
+        configProvider.getBoolean(SCOPE_VIRTUAL_THREAD_MODE, DEFAULT_SCOPE_VIRTUAL_THREAD_MODE);
+
     partialFlushMinSpans =
         configProvider.getInteger(PARTIAL_FLUSH_MIN_SPANS, DEFAULT_PARTIAL_FLUSH_MIN_SPANS);
 
     traceStrictWritesEnabled = configProvider.getBoolean(TRACE_STRICT_WRITES_ENABLED, false);
 
+    tracePendingSpanStripes =
+        configProvider.getInteger(TRACE_PENDING_SPAN_STRIPES, DEFAULT_TRACE_PENDING_SPAN_STRIPES);
+
+    traceSpanStreamingChunkSize =
+        configProvider.getInteger(
+            TRACE_SPAN_STREAMING_CHUNK_SIZE, DEFAULT_TRACE_SPAN_STREAMING_CHUNK_SIZE);
+
+    traceSerializerShards =
+        configProvider.getInteger(TRACE_SERIALIZER_SHARDS, DEFAULT_TRACE_SERIALIZER_SHARDS);
+
+    traceAsyncSendBuffers =
+        configProvider.getInteger(TRACE_ASYNC_SEND_BUFFERS, DEFAULT_TRACE_ASYNC_SEND_BUFFERS);
+
+    traceSpanPoolSize =
+        configProvider.getInteger(TRACE_SPAN_POOL_SIZE, DEFAULT_TRACE_SPAN_POOL_SIZE);
+
+    traceAgentDirectTransport =
+        configProvider.getBoolean(TRACE_AGENT_DIRECT_TRANSPORT, DEFAULT_TRACE_AGENT_DIRECT_TRANSPORT);
+
     runtimeContextFieldInjection =
         configProvider.getBoolean(
             RUNTIME_CONTEXT_FIELD_INJECTION, DEFAULT_RUNTIME_CONTEXT_FIELD_INJECTION);
@@ -832,6 +889,9 @@ public class Config {
         configProvider.getBoolean(TRACER_METRICS_BUFFERING_ENABLED, false);
     tracerMetricsMaxAggregates = configProvider.getInteger(TRACER_METRICS_MAX_AGGREGATES, 2048);
     tracerMetricsMaxPending = configProvider.getInteger(TRACER_METRICS_MAX_PENDING, 2048);
+    tracerMetricsAggregatorShards =
+        configProvider.getInteger(
+            TRACER_METRICS_AGGREGATOR_SHARDS, DEFAULT_TRACER_METRICS_AGGREGATOR_SHARDS);
 
     logsInjectionEnabled =
         configProvider.getBoolean(LOGS_INJECTION_ENABLED, DEFAULT_LOGS_INJECTION_ENABLED);
@@ -912,6 +972,11 @@ public class Config {
     profilingUploadCompression =
         configProvider.getString(
             PROFILING_UPLOAD_COMPRESSION, PROFILING_UPLOAD_COMPRESSION_DEFAULT);
+    profilingUploadCompressionLevel =
+        configProvider.getInteger(
+            PROFILING_UPLOAD_COMPRESSION_LEVEL, PROFILING_UPLOAD_COMPRESSION_LEVEL_DEFAULT);
+    profilingUploadPipelined =
+        configProvider.getBoolean(PROFILING_UPLOAD_PIPELINED, PROFILING_UPLOAD_PIPELINED_DEFAULT);
     profilingProxyHost = configProvider.getString(PROFILING_PROXY_HOST);
     profilingProxyPort =
         configProvider.getInteger(PROFILING_PROXY_PORT, PROFILING_PROXY_PORT_DEFAULT);
@@ -990,6 +1055,8 @@ public class Config {
 
     jdbcConnectionClassName = configProvider.getString(JDBC_CONNECTION_CLASS_NAME, "");
 
+    jdbcSqlCacheSize = configProvider.getInteger(JDBC_SQL_CACHE_SIZE, DEFAULT_JDBC_SQL_CACHE_SIZE);
+
     awsPropagationEnabled = isPropagationEnabled(true, "aws");
     sqsPropagationEnabled = awsPropagationEnabled && isPropagationEnabled(true, "sqs");
 
@@ -1050,6 +1117,7 @@ public class Config {
     resolverUseLoadClassEnabled = configProvider.getBoolean(RESOLVER_USE_LOADCLASS, true);
     resolverTypePoolSize =
         configProvider.getInteger(RESOLVER_TYPE_POOL_SIZE, DEFAULT_RESOLVER_TYPE_POOL_SIZE);
+    resolverCacheDir = configProvider.getString(RESOLVER_CACHE_DIR, null);
 
     cwsEnabled = configProvider.getBoolean(CWS_ENABLED, DEFAULT_CWS_ENABLED);
     cwsTlsRefresh = configProvider.getInteger(CWS_TLS_REFRESH, DEFAULT_CWS_TLS_REFRESH);
@@ -1265,6 +1333,10 @@ public class Config {
     return scopeIterationKeepAlive;
   }
 
+  public boolean isScopeVirtualThreadMode() {
+    return scopeVirtualThreadMode;
+  }
+
   public int getPartialFlushMinSpans() {
     return partialFlushMinSpans;
   }
@@ -1273,6 +1345,30 @@ public class Config {
     return traceStrictWritesEnabled;
   }
 
+  public int getTracePendingSpanStripes() {
+    return tracePendingSpanStripes;
+  }
+
+  public int getTraceSpanStreamingChunkSize() {
+    return traceSpanStreamingChunkSize;
+  }
+
+  public int getTraceSerializerShards() {
+    return traceSerializerShards;
+  }
+
+  public int getTraceAsyncSendBuffers() {
+    return traceAsyncSendBuffers;
+  }
+
+  public int getTraceSpanPoolSize() {
+    return traceSpanPoolSize;
+  }
+
+  public boolean isTraceAgentDirectTransport() {
+    return traceAgentDirectTransport;
+  }
+
   public boolean isRuntimeContextFieldInjection() {
     return runtimeContextFieldInjection;
   }
@@ -1381,6 +1477,10 @@ public class Config {
     return tracerMetricsMaxPending;
   }
 
+  public int getTracerMetricsAggregatorShards() {
+    return tracerMetricsAggregatorShards;
+  }
+
   public boolean isLogsInjectionEnabled() {
     return logsInjectionEnabled;
   }
@@ -1465,6 +1565,14 @@ public class Config {
     return profilingUploadCompression;
   }
 
+  public int getProfilingUploadCompressionLevel() {
+    return profilingUploadCompressionLevel;
+  }
+
+  public boolean isProfilingUploadPipelined() {
+    return profilingUploadPipelined;
+  }
+
   public String getProfilingProxyHost() {
     return profilingProxyHost;
   }
@@ -1697,6 +1805,10 @@ public class Config {
     return resolverTypePoolSize;
   }
 
+  public String getResolverCacheDir() {
+    return resolverCacheDir;
+  }
+
   public String getJdbcPreparedStatementClassName() {
     return jdbcPreparedStatementClassName;
   }
@@ -1705,6 +1817,10 @@ public class Config {
     return jdbcConnectionClassName;
   }
 
+  public int getJdbcSqlCacheSize() {
+    return jdbcSqlCacheSize;
+  }
+
   public Set<String> getGrpcIgnoredInboundMethods() {
     return grpcIgnoredInboundMethods;
   }
@@ -2377,10 +2493,24 @@ public class Config {
         + scopeInheritAsyncPropagation
         + ", scopeIterationKeepAlive="
         + scopeIterationKeepAlive
+        + ", scopeVirtualThreadMode="
+        + scopeVirtualThreadMode
         + ", partialFlushMinSpans="
         + partialFlushMinSpans
         + ", traceStrictWritesEnabled="
         + traceStrictWritesEnabled
+        + ", tracePendingSpanStripes="
+        + tracePendingSpanStripes
+        + ", traceSpanStreamingChunkSize="
+        + traceSpanStreamingChunkSize
+        + ", traceSerializerShards="
+        + traceSerializerShards
+        + ", traceAsyncSendBuffers="
+        + traceAsyncSendBuffers
+        + ", traceSpanPoolSize="
+        + traceSpanPoolSize
+        + ", traceAgentDirectTransport="
+        + traceAgentDirectTransport
         + ", runtimeContextFieldInjection="
         + runtimeContextFieldInjection
         + ", serialVersionUIDFieldInjection="
@@ -2430,6 +2560,8 @@ public class Config {
         + tracerMetricsMaxAggregates
         + ", tracerMetricsMaxPending="
         + tracerMetricsMaxPending
+        + ", tracerMetricsAggregatorShards="
+        + tracerMetricsAggregatorShards
         + ", logsInjectionEnabled="
         + logsInjectionEnabled
         + ", logsMDCTagsInjectionEnabled="
@@ -2479,6 +2611,10 @@ public class Config {
         + ", profilingUploadCompression='"
         + profilingUploadCompression
         + '\''
+        + ", profilingUploadCompressionLevel="
+        + profilingUploadCompressionLevel
+        + ", profilingUploadPipelined="
+        + profilingUploadPipelined
         + ", profilingProxyHost='"
         + profilingProxyHost
         + '\''
@@ -2550,12 +2686,17 @@ public class Config {
         + resolverUseLoadClassEnabled
         + ", resolverTypePoolSize="
         + resolverTypePoolSize
+        + ", resolverCacheDir='"
+        + resolverCacheDir
+        + '\''
         + ", jdbcPreparedStatementClassName='"
         + jdbcPreparedStatementClassName
         + '\''
         + ", jdbcConnectionClassName='"
         + jdbcConnectionClassName
         + '\''
+        + ", jdbcSqlCacheSize="
+        + jdbcSqlCacheSize
         + ", grpcIgnoredInboundMethods="
         + grpcIgnoredInboundMethods
         + ", grpcIgnoredOutboundMethods="
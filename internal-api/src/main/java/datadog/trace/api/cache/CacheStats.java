@@ -0,0 +1,52 @@
+package datadog.trace.api.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counts the hits, misses and evictions of a cache, and the weight of its entries. */
+public final class CacheStats {
+
+  /** The statistics of the cache of normalized SQL statements shared by the JDBC spans. */
+  public static final CacheStats NORMALIZED_SQL = new CacheStats();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong weight = new AtomicLong();
+
+  void recordHit() {
+    hits.incrementAndGet();
+  }
+
+  void recordMiss() {
+    misses.incrementAndGet();
+  }
+
+  void recordInsertion(int weight) {
+    this.weight.addAndGet(weight);
+  }
+
+  void recordEviction(int weight) {
+    evictions.incrementAndGet();
+    this.weight.addAndGet(-weight);
+  }
+
+  /** @return the number of hits since the last call */
+  public long getAndResetHits() {
+    return hits.getAndSet(0);
+  }
+
+  /** @return the number of misses since the last call */
+  public long getAndResetMisses() {
+    return misses.getAndSet(0);
+  }
+
+  /** @return the number of evictions since the last call */
+  public long getAndResetEvictions() {
+    return evictions.getAndSet(0);
+  }
+
+  /** @return the total weight of the entries currently in the cache */
+  public long weight() {
+    return weight.get();
+  }
+}
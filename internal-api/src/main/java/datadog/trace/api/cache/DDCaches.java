@@ -1,5 +1,7 @@
 package datadog.trace.api.cache;
 
+import datadog.trace.api.function.ToIntBiFunction;
+
 public final class DDCaches {
 
   private DDCaches() {}
@@ -43,4 +45,26 @@ public final class DDCaches {
   public static <K, V> DDCache<K, V> newUnboundedCache(final int initialCapacity) {
     return new CHMCache<>(initialCapacity);
   }
+
+  /**
+   * Creates a cache which cannot grow beyond a maximum total weight of its entries. Useful for
+   * caching values whose size varies a lot, like strings derived from user input, where a fixed
+   * number of entries bounds the space used poorly. Entries are admitted according to how often
+   * their keys were requested recently, so keys seen once don't displace popular ones.
+   *
+   * @param maxWeight the maximum total weight of the entries
+   * @param averageWeight the expected average weight of an entry, to size the cache's structures
+   * @param weigher the weight of an entry, for example its approximate size in bytes
+   * @param stats where the cache's hits, misses and evictions are counted
+   * @param <K> the key type
+   * @param <V> the value type
+   * @return the cache
+   */
+  public static <K, V> DDCache<K, V> newWeightedCache(
+      final long maxWeight,
+      final int averageWeight,
+      final ToIntBiFunction<? super K, ? super V> weigher,
+      final CacheStats stats) {
+    return new WeightedCache<>(maxWeight, averageWeight, weigher, stats);
+  }
 }
@@ -0,0 +1,78 @@
+package datadog.trace.api.cache;
+
+/**
+ * Estimates how often keys were requested recently, with a count-min sketch of 4-bit counters. Each
+ * key has a counter in each of four rows, and its frequency is the smallest of the four. All the
+ * counters are halved once the sketch has counted ten times as many requests as it has counters per
+ * row, so that keys which stopped being requested are eventually forgotten.
+ *
+ * <p>The counters are updated without synchronization: concurrent updates can lose increments,
+ * which only makes the estimates a little less precise.
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int MAX_SIZE = 1 << 24;
+
+  // each long holds 16 counters, 4 for each row
+  private final long[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  FrequencySketch(int expectedEntries) {
+    int size = Math.min(MAX_SIZE, Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1);
+    this.table = new long[size];
+    this.mask = size - 1;
+    this.sampleSize = 10 * size;
+  }
+
+  int frequency(int hash) {
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int row = 0; row < 4; ++row) {
+      int offset = (start + row) << 2;
+      int count = (int) ((table[indexOf(hash, row)] >>> offset) & 0xFL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  void increment(int hash) {
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int row = 0; row < 4; ++row) {
+      added |= incrementAt(indexOf(hash, row), (start + row) << 2);
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int index, int offset) {
+    long counter = 0xFL << offset;
+    long value = table[index];
+    // saturated counters aren't written, so the counters of popular keys stop being contended
+    if ((value & counter) != counter) {
+      table[index] = value + (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  private int indexOf(int hash, int row) {
+    long index = (hash + SEEDS[row]) * SEEDS[row];
+    index += index >>> 32;
+    return (int) index & mask;
+  }
+
+  private void reset() {
+    additions = 0;
+    for (int i = 0; i < table.length; ++i) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+  }
+}
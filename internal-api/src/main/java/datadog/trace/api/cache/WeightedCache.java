@@ -0,0 +1,140 @@
+package datadog.trace.api.cache;
+
+import datadog.trace.api.function.Function;
+import datadog.trace.api.function.ToIntBiFunction;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache bounded by the total weight of its entries rather than by their number, for values whose
+ * size varies a lot. Hits don't lock: they only count the request in a frequency sketch and mark
+ * the entry as read. Misses compute the value without locking too, and then lock to insert it.
+ *
+ * <p>New entries go to a small window, holding 1% of the weight, in insertion order. Entries pushed
+ * out of the window are only admitted into the main area when they were requested more often than
+ * the main area's next victim, as estimated by the sketch (TinyLFU admission), so that bursts of
+ * keys seen once don't flush out the keys which are used repeatedly. The main area's victims are
+ * chosen by the CLOCK algorithm: entries read since the hand last passed them get a second chance.
+ * Entries heavier than the main area are not cached.
+ */
+final class WeightedCache<K, V> implements DDCache<K, V> {
+
+  private final ConcurrentHashMap<K, Entry<K, V>> entries;
+  private final ToIntBiFunction<? super K, ? super V> weigher;
+  private final CacheStats stats;
+  private final FrequencySketch sketch;
+  private final long maxWindowWeight;
+  private final long maxMainWeight;
+
+  // guarded by this
+  private final ArrayDeque<Entry<K, V>> window = new ArrayDeque<>();
+  private final ArrayDeque<Entry<K, V>> main = new ArrayDeque<>();
+  private long windowWeight;
+  private long mainWeight;
+
+  WeightedCache(
+      long maxWeight,
+      int averageWeight,
+      ToIntBiFunction<? super K, ? super V> weigher,
+      CacheStats stats) {
+    int expectedEntries = (int) Math.min(Integer.MAX_VALUE, maxWeight / Math.max(1, averageWeight));
+    this.entries = new ConcurrentHashMap<>(Math.max(16, expectedEntries));
+    this.weigher = weigher;
+    this.stats = stats;
+    this.sketch = new FrequencySketch(expectedEntries);
+    this.maxWindowWeight = Math.max(1, maxWeight / 100);
+    this.maxMainWeight = Math.max(0, maxWeight - maxWindowWeight);
+  }
+
+  @Override
+  public V computeIfAbsent(K key, Function<K, ? extends V> func) {
+    if (null == key) {
+      return null;
+    }
+    int hash = key.hashCode();
+    sketch.increment(hash);
+    Entry<K, V> entry = entries.get(key);
+    if (null != entry) {
+      stats.recordHit();
+      if (!entry.read) {
+        entry.read = true;
+      }
+      return entry.value;
+    }
+    stats.recordMiss();
+    V value = func.apply(key);
+    if (null == value) {
+      return null;
+    }
+    int weight = Math.max(1, weigher.applyAsInt(key, value));
+    if (weight > maxMainWeight) {
+      return value;
+    }
+    entry = new Entry<>(key, value, hash, weight);
+    synchronized (this) {
+      Entry<K, V> winner = entries.putIfAbsent(key, entry);
+      if (null != winner) {
+        return winner.value;
+      }
+      stats.recordInsertion(weight);
+      window.addLast(entry);
+      windowWeight += weight;
+      while (windowWeight > maxWindowWeight) {
+        Entry<K, V> candidate = window.pollFirst();
+        windowWeight -= candidate.weight;
+        admit(candidate);
+      }
+    }
+    return value;
+  }
+
+  private void admit(Entry<K, V> candidate) {
+    while (mainWeight + candidate.weight > maxMainWeight) {
+      Entry<K, V> victim = nextVictim();
+      if (sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash)) {
+        evict(candidate);
+        return;
+      }
+      main.pollFirst();
+      mainWeight -= victim.weight;
+      evict(victim);
+    }
+    main.addLast(candidate);
+    mainWeight += candidate.weight;
+  }
+
+  /** Moves the hand past the entries read since it last passed them, clearing their mark. */
+  private Entry<K, V> nextVictim() {
+    for (int i = main.size(); i > 0; --i) {
+      Entry<K, V> head = main.peekFirst();
+      if (!head.read) {
+        return head;
+      }
+      head.read = false;
+      main.addLast(main.pollFirst());
+    }
+    // every entry was read again while the hand went round
+    return main.peekFirst();
+  }
+
+  private void evict(Entry<K, V> entry) {
+    entries.remove(entry.key, entry);
+    stats.recordEviction(entry.weight);
+  }
+
+  private static final class Entry<K, V> {
+    final K key;
+    final V value;
+    final int hash;
+    final int weight;
+    // racy, a lost mark only makes the entry less likely to stay
+    boolean read;
+
+    Entry(K key, V value, int hash, int weight) {
+      this.key = key;
+      this.value = value;
+      this.hash = hash;
+      this.weight = weight;
+    }
+  }
+}
@@ -0,0 +1,5 @@
+package datadog.trace.api.function;
+
+public interface ToIntBiFunction<T, U> {
+  int applyAsInt(T t, U u);
+}
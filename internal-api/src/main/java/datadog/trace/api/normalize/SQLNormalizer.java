@@ -1,10 +1,6 @@
 package datadog.trace.api.normalize;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 import datadog.trace.bootstrap.instrumentation.api.UTF8BytesString;
-import java.util.Arrays;
-import java.util.BitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,102 +11,107 @@ import org.slf4j.LoggerFactory;
  * will not remove literals in MySQL which are indistinguishable from object names. This is not an
  * obfuscator, and the strings produced by this class must be passed through obfuscation in the
  * trace agent.
+ *
+ * <p>The string is normalized in a single pass over its characters, which copies nothing until the
+ * first literal is found, so statements without literals are only encoded to UTF-8 when written.
  */
 public final class SQLNormalizer {
 
   private static final Logger log = LoggerFactory.getLogger(SQLNormalizer.class);
 
-  private static final BitSet NUMERIC_LITERAL_PREFIX = new BitSet();
-  private static final BitSet SPLITTERS = new BitSet();
+  private static final boolean[] NUMERIC_LITERAL_PREFIX = new boolean[128];
+  private static final boolean[] SPLITTERS = new boolean[128];
 
   static {
-    for (byte symbol :
-        new byte[] {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '-', '+', '.'}) {
-      int unsigned = symbol & 0xFF;
-      NUMERIC_LITERAL_PREFIX.set(unsigned);
+    for (char symbol :
+        new char[] {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '-', '+', '.'}) {
+      NUMERIC_LITERAL_PREFIX[symbol] = true;
     }
-    for (byte symbol : new byte[] {',', '(', ')', '|'}) {
-      int unsigned = symbol & 0xFF;
-      SPLITTERS.set(unsigned);
+    for (char symbol : new char[] {',', '(', ')', '|'}) {
+      SPLITTERS[symbol] = true;
     }
-    for (int i = 0; i < 256; ++i) {
-      if (Character.isWhitespace((char) i)) {
-        SPLITTERS.set(i);
+    for (char c = 0; c < 128; ++c) {
+      if (Character.isWhitespace(c)) {
+        SPLITTERS[c] = true;
       }
     }
   }
 
   public static UTF8BytesString normalize(String sql) {
-    byte[] utf8 = sql.getBytes(UTF_8);
     try {
-      BitSet splitters = findSplitterPositions(utf8);
-      int outputLength = utf8.length;
-      int end = outputLength;
-      int start = end > 0 ? splitters.previousSetBit(end - 1) : -1;
-      boolean modified = false;
-      // strip out anything ending with a quote (covers string and hex literals)
-      // or anything starting with a number, a quote, a decimal point, or a sign
-      while (end > 0 && start > 0) {
-        int sequenceStart = start + 1;
-        int sequenceEnd = end - 1;
-        if (sequenceEnd == sequenceStart) {
-          // single digit numbers can can be fixed in place
-          if (Character.isDigit(utf8[sequenceStart])) {
-            utf8[sequenceStart] = '?';
-            modified = true;
+      char[] normalized = null;
+      int outputLength = 0;
+      // the first character of the input not yet copied to the output
+      int copied = 0;
+      // sequences are only replaced after a splitter which isn't the first character
+      int previousSplitter = -1;
+      boolean quoted = false;
+      boolean escaped = false;
+      for (int i = 0; i <= sql.length(); ++i) {
+        if (i < sql.length()) {
+          char c = sql.charAt(i);
+          if (c == '\'' && !escaped) {
+            quoted = !quoted;
+            continue;
+          }
+          escaped = (c == '\\') & !escaped;
+          if (quoted || !isSplitter(c)) {
+            continue;
           }
-        } else if (sequenceStart < sequenceEnd) {
-          if (isQuoted(utf8, sequenceStart, sequenceEnd)
-              || isNumericLiteralPrefix(utf8[sequenceStart])
-              || isHexLiteralPrefix(utf8, sequenceStart, sequenceEnd)) {
-            int length = sequenceEnd - sequenceStart;
-            System.arraycopy(utf8, end, utf8, sequenceStart + 1, outputLength - end);
-            utf8[sequenceStart] = '?';
-            outputLength -= length;
-            modified = true;
+        }
+        // strip out anything ending with a quote (covers string and hex literals)
+        // or anything starting with a number, a quote, a decimal point, or a sign
+        int sequenceStart = previousSplitter + 1;
+        int sequenceEnd = i - 1;
+        if (previousSplitter > 0
+            && sequenceStart <= sequenceEnd
+            && isLiteral(sql, sequenceStart, sequenceEnd)) {
+          if (null == normalized) {
+            normalized = new char[sql.length()];
           }
+          int length = sequenceStart - copied;
+          sql.getChars(copied, sequenceStart, normalized, outputLength);
+          outputLength += length;
+          normalized[outputLength++] = '?';
+          copied = i;
         }
-        end = start;
-        start = splitters.previousSetBit(start - 1);
+        previousSplitter = i;
       }
-      if (modified) {
-        return UTF8BytesString.create(Arrays.copyOf(utf8, outputLength));
+      if (null != normalized) {
+        sql.getChars(copied, sql.length(), normalized, outputLength);
+        outputLength += sql.length() - copied;
+        return UTF8BytesString.create(new String(normalized, 0, outputLength));
       }
     } catch (Throwable paranoid) {
       log.debug("Error normalizing sql {}", sql, paranoid);
     }
-    return UTF8BytesString.create(sql, utf8);
+    return UTF8BytesString.create(sql);
   }
 
-  private static boolean isQuoted(byte[] utf8, int start, int end) {
-    return (utf8[start] == '\'' && utf8[end] == '\'');
+  private static boolean isLiteral(String sql, int start, int end) {
+    char first = sql.charAt(start);
+    if (start == end) {
+      // single digit numbers
+      return first >= '0' && first <= '9';
+    }
+    return isQuoted(sql, start, end)
+        || isNumericLiteralPrefix(first)
+        || isHexLiteralPrefix(sql, start, end);
   }
 
-  private static boolean isHexLiteralPrefix(byte[] utf8, int start, int end) {
-    return (utf8[start] | ' ') == 'x' && start + 1 < end && utf8[start + 1] == '\'';
+  private static boolean isQuoted(String sql, int start, int end) {
+    return (sql.charAt(start) == '\'' && sql.charAt(end) == '\'');
   }
 
-  private static boolean isNumericLiteralPrefix(byte symbol) {
-    return NUMERIC_LITERAL_PREFIX.get(symbol & 0xFF);
+  private static boolean isHexLiteralPrefix(String sql, int start, int end) {
+    return (sql.charAt(start) | ' ') == 'x' && start + 1 < end && sql.charAt(start + 1) == '\'';
   }
 
-  private static boolean isSplitter(byte symbol) {
-    return SPLITTERS.get(symbol & 0xFF);
+  private static boolean isNumericLiteralPrefix(char symbol) {
+    return symbol < 128 && NUMERIC_LITERAL_PREFIX[symbol];
   }
 
-  private static BitSet findSplitterPositions(byte[] utf8) {
-    BitSet positions = new BitSet(utf8.length);
-    boolean quoted = false;
-    boolean escaped = false;
-    for (int i = 0; i < utf8.length; ++i) {
-      byte b = utf8[i];
-      if (b == '\'' && !escaped) {
-        quoted = !quoted;
-      } else {
-        escaped = (b == '\\') & !escaped;
-        positions.set(i, !quoted & isSplitter(b));
-      }
-    }
-    return positions;
+  private static boolean isSplitter(char symbol) {
+    return symbol < 128 && SPLITTERS[symbol];
   }
 }
@@ -8,23 +8,38 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import datadog.trace.util.AgentThreadFactory.AgentThread;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.lang.ref.WeakReference;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs the periodic tasks of the agent. Each worker thread runs the tasks of its own {@link
+ * TimerWheel}, so scheduling and cancelling a task don't depend on the number of tasks and workers
+ * don't contend with each other.
+ */
 public final class AgentTaskScheduler implements Executor {
   private static final Logger log = LoggerFactory.getLogger(AgentTaskScheduler.class);
+
+  // the schedulers whose workers are running, their lateness is reported by the tracer
+  private static final Set<AgentTaskScheduler> RUNNING =
+      Collections.newSetFromMap(new ConcurrentHashMap<AgentTaskScheduler, Boolean>());
+
   public static final AgentTaskScheduler INSTANCE = new AgentTaskScheduler(TASK_SCHEDULER);
 
   private static final long SHUTDOWN_TIMEOUT = 5; // seconds
 
+  /** Tasks starting later than this after the time they were scheduled for are counted as late. */
+  private static final long LATE_THRESHOLD_NANOS = MILLISECONDS.toNanos(100);
+
   public interface Task<T> {
     void run(T target);
   }
@@ -44,6 +59,7 @@ public final class AgentTaskScheduler implements Executor {
 
   public static final class Scheduled<T> implements Target<T> {
     private volatile T referent;
+    private volatile PeriodicTask<T> periodicTask;
 
     private Scheduled(final T referent) {
       this.referent = referent;
@@ -56,6 +72,10 @@ public final class AgentTaskScheduler implements Executor {
 
     public void cancel() {
       referent = null;
+      final PeriodicTask<T> periodicTask = this.periodicTask;
+      if (periodicTask != null) {
+        periodicTask.shard.remove(periodicTask);
+      }
     }
   }
 
@@ -65,13 +85,33 @@ public final class AgentTaskScheduler implements Executor {
     }
   }
 
-  private final DelayQueue<PeriodicTask<?>> workQueue = new DelayQueue<>();
+  private final Shard[] shards;
+  private final AtomicInteger nextShard = new AtomicInteger();
   private final AgentThread agentThread;
-  private volatile Thread worker;
+  private volatile boolean started;
   private volatile boolean shutdown;
 
+  private final AtomicLong lateTasks = new AtomicLong();
+  private final AtomicLong maxLatenessNanos = new AtomicLong();
+
   public AgentTaskScheduler(final AgentThread agentThread) {
+    this(agentThread, 1);
+  }
+
+  /**
+   * @param agentThread the kind of the worker threads.
+   * @param workers the number of worker threads, tasks are spread over the workers when they are
+   *     scheduled.
+   */
+  public AgentTaskScheduler(final AgentThread agentThread, final int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Expected at least one worker, got " + workers);
+    }
     this.agentThread = agentThread;
+    this.shards = new Shard[workers];
+    for (int i = 0; i < workers; i++) {
+      shards[i] = new Shard();
+    }
   }
 
   @Override
@@ -82,7 +122,7 @@ public final class AgentTaskScheduler implements Executor {
   public <T> Scheduled<T> schedule(
       final Task<T> task, final T target, final long initialDelay, final TimeUnit unit) {
     final Scheduled<T> scheduled = new Scheduled<>(target);
-    scheduleTarget(task, scheduled, initialDelay, 0, unit);
+    scheduled.periodicTask = scheduleTarget(task, scheduled, initialDelay, 0, unit);
     return scheduled;
   }
 
@@ -116,7 +156,7 @@ public final class AgentTaskScheduler implements Executor {
       final long period,
       final TimeUnit unit) {
     final Scheduled<T> scheduled = new Scheduled<>(target);
-    scheduleTarget(task, scheduled, initialDelay, period, unit);
+    scheduled.periodicTask = scheduleTarget(task, scheduled, initialDelay, period, unit);
     return scheduled;
   }
 
@@ -129,8 +169,7 @@ public final class AgentTaskScheduler implements Executor {
     scheduleTarget(task, new WeakTarget<>(target), initialDelay, period, unit);
   }
 
-  @SuppressFBWarnings("JLM_JSR166_UTILCONCURRENT_MONITORENTER")
-  private <T> void scheduleTarget(
+  private <T> PeriodicTask<T> scheduleTarget(
       final Task<T> task,
       final Target<T> target,
       final long initialDelay,
@@ -138,18 +177,24 @@ public final class AgentTaskScheduler implements Executor {
       final TimeUnit unit) {
 
     if (target == null || target.get() == null) {
-      return;
+      return null;
     }
 
-    if (!shutdown && worker == null) {
-      synchronized (workQueue) {
-        if (!shutdown && worker == null) {
-          prepareWorkQueue();
+    if (!shutdown && !started) {
+      synchronized (shards) {
+        if (!shutdown && !started) {
           try {
-            worker = newAgentThread(agentThread, new Worker());
-            // register hook after worker is assigned, but before we start it
+            for (int i = 0; i < shards.length; i++) {
+              String nameSuffix = shards.length > 1 ? Integer.toString(i) : null;
+              shards[i].worker = newAgentThread(agentThread, nameSuffix, shards[i]);
+            }
+            // register hook after workers are assigned, but before we start them
             Runtime.getRuntime().addShutdownHook(new ShutdownHook());
-            worker.start();
+            for (Shard shard : shards) {
+              shard.worker.start();
+            }
+            started = true;
+            RUNNING.add(this);
           } catch (final IllegalStateException e) {
             shutdown = true; // couldn't add hook, JVM is shutting down
           }
@@ -158,25 +203,59 @@ public final class AgentTaskScheduler implements Executor {
     }
 
     if (!shutdown) {
-      workQueue.offer(new PeriodicTask<>(task, target, initialDelay, period, unit));
+      final PeriodicTask<T> periodicTask =
+          new PeriodicTask<>(task, target, unit.toNanos(period), nextShard());
+      periodicTask.shard.add(periodicTask, System.nanoTime() + unit.toNanos(initialDelay));
+      return periodicTask;
     } else {
       log.debug("Agent task scheduler is shutdown. Will not run {}", describeTask(task, target));
+      return null;
     }
   }
 
-  private void prepareWorkQueue() {
-    try {
-      // exercise 'poll' method to make sure all relevant queue synchronizer types are preloaded
-      // here rather than in the Worker when it calls 'take' - this avoids a potential loop-back
-      workQueue.poll(1, NANOSECONDS);
-    } catch (final InterruptedException e) {
-      // ignore, we only want to preload queue internals
+  private Shard nextShard() {
+    if (shards.length == 1) {
+      return shards[0];
     }
+    return shards[(nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length];
   }
 
   // for testing
   int taskCount() {
-    return workQueue.size();
+    int taskCount = 0;
+    for (Shard shard : shards) {
+      taskCount += shard.size();
+    }
+    return taskCount;
+  }
+
+  /**
+   * @return the number of tasks which started more than 100 milliseconds after the time they were
+   *     scheduled for, since the last call
+   */
+  public long getAndResetLateTasks() {
+    return lateTasks.getAndSet(0);
+  }
+
+  /** @return the longest delay in nanoseconds of the late tasks since the last call */
+  public long getAndResetMaxLatenessNanos() {
+    return maxLatenessNanos.getAndSet(0);
+  }
+
+  /** @return a live view of the schedulers which started their workers and aren't shutdown */
+  public static Collection<AgentTaskScheduler> runningSchedulers() {
+    return Collections.unmodifiableSet(RUNNING);
+  }
+
+  private void recordLateness(final long latenessNanos) {
+    if (latenessNanos > LATE_THRESHOLD_NANOS) {
+      lateTasks.incrementAndGet();
+      long maxLateness = maxLatenessNanos.get();
+      while (latenessNanos > maxLateness
+          && !maxLatenessNanos.compareAndSet(maxLateness, latenessNanos)) {
+        maxLateness = maxLatenessNanos.get();
+      }
+    }
   }
 
   public boolean isShutdown() {
@@ -196,14 +275,23 @@ public final class AgentTaskScheduler implements Executor {
 
   public void shutdown(final long timeout, final TimeUnit unit) {
     shutdown = true;
-    final Thread t = worker;
-    if (t != null) {
-      t.interrupt();
-      if (timeout > 0) {
-        try {
-          t.join(unit.toMillis(timeout));
-        } catch (final InterruptedException e) {
-          // continue shutdown...
+    RUNNING.remove(this);
+    for (Shard shard : shards) {
+      final Thread t = shard.worker;
+      if (t != null) {
+        t.interrupt();
+      }
+    }
+    if (timeout > 0) {
+      final long deadline = System.nanoTime() + unit.toNanos(timeout);
+      for (Shard shard : shards) {
+        final Thread t = shard.worker;
+        if (t != null) {
+          try {
+            NANOSECONDS.timedJoin(t, deadline - System.nanoTime());
+          } catch (final InterruptedException e) {
+            // continue shutdown...
+          }
         }
       }
     }
@@ -224,102 +312,114 @@ public final class AgentTaskScheduler implements Executor {
     }
   }
 
-  private final class Worker implements Runnable {
+  /**
+   * The timer wheel of a worker, guarded by the shard itself. The worker waits on the shard until
+   * its next task is due, and is notified when an earlier task is added.
+   */
+  private final class Shard implements Runnable {
+    private final TimerWheel wheel = new TimerWheel(System.nanoTime());
+    private volatile Thread worker;
+
+    private boolean waiting;
+    private long wakeUp;
+
+    synchronized void add(final PeriodicTask<?> task, final long deadline) {
+      wheel.add(task, deadline);
+      if (waiting && (wakeUp == Long.MAX_VALUE || deadline - wakeUp < 0)) {
+        notify();
+      }
+    }
+
+    synchronized void reschedule(final PeriodicTask<?> task) {
+      // checked while holding the lock, so a concurrent cancel either sees the task or stops it
+      if (task.target.get() != null) {
+        add(task, task.deadline + task.period);
+      }
+    }
+
+    synchronized void remove(final PeriodicTask<?> task) {
+      wheel.remove(task);
+    }
+
+    synchronized int size() {
+      return wheel.size();
+    }
+
     @Override
     public void run() {
       while (!shutdown) {
         PeriodicTask<?> work = null;
         try {
-          work = workQueue.take();
-          work.run();
+          work = take();
+          if (work != null) {
+            work.run();
+          }
+        } catch (final InterruptedException e) {
+          // check for shutdown
         } catch (final Throwable e) {
           if (work != null) {
             log.debug("Uncaught exception from {}", work, e);
           }
         } finally {
-          if (work != null && work.reschedule()) {
-            workQueue.offer(work);
+          if (work != null && work.period > 0) {
+            reschedule(work);
           }
         }
       }
-      workQueue.clear();
+      synchronized (this) {
+        wheel.clear();
+      }
       worker = null;
     }
-  }
 
-  private static final AtomicInteger TASK_SEQUENCE_GENERATOR = new AtomicInteger();
+    /** @return the next task due, or {@code null} when shutting down */
+    private synchronized PeriodicTask<?> take() throws InterruptedException {
+      while (!shutdown) {
+        final long now = System.nanoTime();
+        wheel.advance(now);
+        final TimerWheel.Timer expired = wheel.poll();
+        if (expired != null) {
+          return (PeriodicTask<?>) expired;
+        }
+        wakeUp = wheel.nextWakeUp();
+        waiting = true;
+        try {
+          if (wakeUp == Long.MAX_VALUE) {
+            wait();
+          } else {
+            NANOSECONDS.timedWait(this, wakeUp - now);
+          }
+        } finally {
+          waiting = false;
+        }
+      }
+      return null;
+    }
+  }
 
-  private static final class PeriodicTask<T> implements Delayed {
+  private final class PeriodicTask<T> extends TimerWheel.Timer {
 
     private final Task<T> task;
     private final Target<T> target;
     private final long period;
-    private final int taskSequence;
-
-    private long nextFireTime;
-
-    public PeriodicTask(
-        final Task<T> task,
-        final Target<T> target,
-        final long initialDelay,
-        final long period,
-        final TimeUnit unit) {
+    private final Shard shard;
 
+    PeriodicTask(
+        final Task<T> task, final Target<T> target, final long period, final Shard shard) {
       this.task = task;
       this.target = target;
-      this.period = unit.toNanos(period);
-      this.taskSequence = TASK_SEQUENCE_GENERATOR.getAndIncrement();
-
-      nextFireTime = System.nanoTime() + unit.toNanos(initialDelay);
+      this.period = period;
+      this.shard = shard;
     }
 
-    public void run() {
+    void run() {
       final T t = target.get();
       if (t != null) {
+        recordLateness(System.nanoTime() - deadline);
         task.run(t);
       }
     }
 
-    public boolean reschedule() {
-      if (period > 0 && target.get() != null) {
-        nextFireTime += period;
-        return true;
-      }
-      return false;
-    }
-
-    @Override
-    public long getDelay(final TimeUnit unit) {
-      return unit.convert(nextFireTime - System.nanoTime(), NANOSECONDS);
-    }
-
-    @Override
-    public int compareTo(final Delayed other) {
-      if (this == other) {
-        return 0;
-      }
-      long taskOrder;
-      if (other instanceof PeriodicTask<?>) {
-        final PeriodicTask<?> otherTask = (PeriodicTask<?>) other;
-        taskOrder = nextFireTime - otherTask.nextFireTime;
-        if (taskOrder == 0) {
-          taskOrder = taskSequence - otherTask.taskSequence;
-        }
-      } else {
-        taskOrder = getDelay(NANOSECONDS) - other.getDelay(NANOSECONDS);
-      }
-      return taskOrder < 0 ? -1 : (taskOrder > 0 ? 1 : 0);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-      try {
-        return obj == null ? false : (this.compareTo((Delayed) obj) != 0 ? false : true);
-      } catch (ClassCastException e) {
-        return false;
-      }
-    }
-
     @Override
     public String toString() {
       return describeTask(task, target);
@@ -16,7 +16,9 @@ public final class AgentThreadFactory implements ThreadFactory {
     TRACE_STARTUP("dd-agent-startup-datadog-tracer"),
     TRACE_MONITOR("dd-trace-monitor"),
     TRACE_PROCESSOR("dd-trace-processor"),
+    TRACE_PAYLOAD_SENDER("dd-trace-payload-sender"),
     TRACE_CASSANDRA_ASYNC_SESSION("dd-cassandra-session-executor"),
+    TYPE_CACHE_WRITER("dd-type-cache-writer"),
 
     METRICS_AGGREGATOR("dd-metrics-aggregator"),
     STATSD_CLIENT("dd-statsd-client"),
@@ -27,6 +29,7 @@ public final class AgentThreadFactory implements ThreadFactory {
     PROFILER_STARTUP("dd-agent-startup-datadog-profiler"),
     PROFILER_RECORDING_SCHEDULER("dd-profiler-recording-scheduler"),
     PROFILER_HTTP_DISPATCHER("dd-profiler-http-dispatcher"),
+    PROFILER_UPLOAD_COMPRESSOR("dd-profiler-upload-compressor"),
 
     APPSEC_HTTP_DISPATCHER("dd-appsec-http-dispatcher"),
 
@@ -68,7 +71,22 @@ public final class AgentThreadFactory implements ThreadFactory {
    * @param runnable work to run on the new thread.
    */
   public static Thread newAgentThread(final AgentThread agentThread, final Runnable runnable) {
-    final Thread thread = new Thread(AGENT_THREAD_GROUP, runnable, agentThread.threadName);
+    return newAgentThread(agentThread, null, runnable);
+  }
+
+  /**
+   * Constructs a new agent {@code Thread} as a daemon with a null ContextClassLoader. Use this
+   * variant when several threads of the same kind are running at the same time.
+   *
+   * @param agentThread the agent thread to create.
+   * @param nameSuffix appended to the thread name, may be null.
+   * @param runnable work to run on the new thread.
+   */
+  public static Thread newAgentThread(
+      final AgentThread agentThread, final String nameSuffix, final Runnable runnable) {
+    final String threadName =
+        null == nameSuffix ? agentThread.threadName : agentThread.threadName + "-" + nameSuffix;
+    final Thread thread = new Thread(AGENT_THREAD_GROUP, runnable, threadName);
     thread.setDaemon(true);
     thread.setContextClassLoader(null);
     thread.setUncaughtExceptionHandler(
@@ -0,0 +1,278 @@
+package datadog.trace.util;
+
+/**
+ * Hierarchical timer wheel: 4 levels of 64 buckets, with ticks of about a millisecond, covering
+ * about 4.6 hours; timers further away wait in an overflow bucket which is redistributed each time
+ * the top level wraps around. Timers are linked in their bucket so adding and removing a timer are
+ * constant time, and each level keeps a bitmask of its non-empty buckets so the next tick with work
+ * is found without scanning empty buckets.
+ *
+ * <p>A timer due at a tick which differs from the current tick in its {@code L}th group of 6 bits
+ * (and not above) goes in level {@code L}, where it waits until the start of its group, at which
+ * point the timers of the bucket are cascaded into the lower levels. Timers of level 0 expire when
+ * their tick is processed, and are then returned by {@link #poll()} in the order they expired.
+ *
+ * <p>Deadlines are rounded up to the next tick, so timers never expire early but can expire up to
+ * a tick late. Not thread-safe: the caller is expected to guard the wheel.
+ */
+public final class TimerWheel {
+  static final int TICK_SHIFT = 20; // 2^20 nanoseconds, about a millisecond
+  static final long TICK_NANOS = 1L << TICK_SHIFT;
+
+  private static final int LEVELS = 4;
+  private static final int LEVEL_SHIFT = 6;
+  private static final int BUCKETS = 1 << LEVEL_SHIFT;
+  private static final int BUCKET_MASK = BUCKETS - 1;
+  private static final long WHEEL_TICKS = 1L << LEVELS * LEVEL_SHIFT;
+
+  private static final int OVERFLOW = LEVELS * BUCKETS;
+  private static final int EXPIRED = OVERFLOW + 1;
+  private static final int UNLINKED = -1;
+
+  /** Node of the wheel, extended by the scheduled timers. */
+  public abstract static class Timer {
+    long deadline;
+    long deadlineTick;
+    int bucket = UNLINKED;
+    Timer prev;
+    Timer next;
+
+    boolean isLinked() {
+      return bucket != UNLINKED;
+    }
+  }
+
+  private static final class Sentinel extends Timer {
+    Sentinel() {
+      prev = next = this;
+    }
+  }
+
+  private final Sentinel[] buckets = new Sentinel[EXPIRED + 1];
+  private final long[] occupied = new long[LEVELS];
+  private final long origin;
+
+  /** Next tick to process. */
+  private long currentTick;
+
+  private int size;
+
+  public TimerWheel(final long now) {
+    this.origin = now;
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new Sentinel();
+    }
+    this.currentTick = tickAtOrBefore(now) + 1;
+  }
+
+  /** @return the number of timers in the wheel, expired or not */
+  public int size() {
+    return size;
+  }
+
+  /** Adds the timer, which expires immediately when its deadline has already passed. */
+  public void add(final Timer timer, final long deadline) {
+    timer.deadline = deadline;
+    timer.deadlineTick = tickAtOrAfter(deadline);
+    place(timer);
+    size++;
+  }
+
+  /** Removes the timer, expired or not, if it is in the wheel. */
+  public void remove(final Timer timer) {
+    if (timer.isLinked()) {
+      unlink(timer);
+      size--;
+    }
+  }
+
+  /** @return the first expired timer, or {@code null} when none has expired */
+  public Timer poll() {
+    Timer expired = buckets[EXPIRED].next;
+    if (expired instanceof Sentinel) {
+      return null;
+    }
+    unlink(expired);
+    size--;
+    return expired;
+  }
+
+  /** Processes the ticks elapsed up to now, moving the timers which are due to the expired list. */
+  public void advance(final long now) {
+    long nowTick = tickAtOrBefore(now);
+    // only the ticks with work are processed, the others are skipped
+    long eventTick;
+    while (size > 0 && (eventTick = nextEventTick()) <= nowTick) {
+      currentTick = eventTick;
+      processTick();
+      currentTick++;
+    }
+    if (currentTick <= nowTick) {
+      currentTick = nowTick + 1;
+    }
+  }
+
+  /**
+   * @return the time when a timer might expire, in {@link System#nanoTime()} terms, or {@link
+   *     Long#MAX_VALUE} when the wheel is empty; this time is in the past when there are expired
+   *     timers
+   */
+  public long nextWakeUp() {
+    if (size == 0) {
+      return Long.MAX_VALUE;
+    }
+    if (!(buckets[EXPIRED].next instanceof Sentinel)) {
+      return origin + ((currentTick - 1) << TICK_SHIFT);
+    }
+    return origin + (nextEventTick() << TICK_SHIFT);
+  }
+
+  /** Expires all the timers, whatever their deadline, so they can be {@linkplain #poll() polled}. */
+  public void expireAll() {
+    Sentinel expired = buckets[EXPIRED];
+    for (int bucket = 0; bucket < EXPIRED; bucket++) {
+      for (Timer timer = detach(bucket); timer != null; ) {
+        Timer next = timer.next;
+        append(expired, EXPIRED, timer);
+        timer = next;
+      }
+    }
+  }
+
+  /** Removes all the timers. */
+  public void clear() {
+    for (Sentinel sentinel : buckets) {
+      Timer timer = sentinel.next;
+      while (timer != sentinel) {
+        Timer next = timer.next;
+        timer.prev = timer.next = null;
+        timer.bucket = UNLINKED;
+        timer = next;
+      }
+      sentinel.prev = sentinel.next = sentinel;
+    }
+    for (int level = 0; level < LEVELS; level++) {
+      occupied[level] = 0;
+    }
+    size = 0;
+  }
+
+  private long tickAtOrBefore(final long nanos) {
+    return (nanos - origin) >> TICK_SHIFT;
+  }
+
+  private long tickAtOrAfter(final long nanos) {
+    return (nanos - origin + TICK_NANOS - 1) >> TICK_SHIFT;
+  }
+
+  /** @return the first tick, from the current one, which expires or cascades timers */
+  private long nextEventTick() {
+    long eventTick = Long.MAX_VALUE;
+    for (int level = 0; level < LEVELS; level++) {
+      int shift = level * LEVEL_SHIFT;
+      int group = (int) (currentTick >>> shift) & BUCKET_MASK;
+      // buckets before the current group are empty, they were cascaded
+      long pending = occupied[level] & (-1L << group);
+      if (pending != 0) {
+        long parentStart = (currentTick >>> (shift + LEVEL_SHIFT)) << (shift + LEVEL_SHIFT);
+        long tick = parentStart + ((long) Long.numberOfTrailingZeros(pending) << shift);
+        eventTick = Math.min(eventTick, Math.max(tick, currentTick));
+      }
+    }
+    if (!(buckets[OVERFLOW].next instanceof Sentinel)) {
+      eventTick = Math.min(eventTick, (currentTick + WHEEL_TICKS - 1) & -WHEEL_TICKS);
+    }
+    return eventTick;
+  }
+
+  private void processTick() {
+    long tick = currentTick;
+    if ((tick & WHEEL_TICKS - 1) == 0) {
+      cascade(OVERFLOW);
+    }
+    // the higher levels first, their timers can land in the buckets processed next
+    for (int level = LEVELS - 1; level > 0; level--) {
+      int shift = level * LEVEL_SHIFT;
+      if ((tick & (1L << shift) - 1) == 0) {
+        cascade(level * BUCKETS + ((int) (tick >>> shift) & BUCKET_MASK));
+      }
+    }
+    int bucket = (int) tick & BUCKET_MASK;
+    if ((occupied[0] & 1L << bucket) != 0) {
+      Sentinel expired = buckets[EXPIRED];
+      for (Timer timer = detach(bucket); timer != null; ) {
+        Timer next = timer.next;
+        append(expired, EXPIRED, timer);
+        timer = next;
+      }
+    }
+  }
+
+  /** Moves the timers of the bucket to the buckets they belong to now. */
+  private void cascade(final int bucket) {
+    for (Timer timer = detach(bucket); timer != null; ) {
+      Timer next = timer.next;
+      place(timer);
+      timer = next;
+    }
+  }
+
+  private void place(final Timer timer) {
+    long tick = timer.deadlineTick;
+    if (tick < currentTick) {
+      append(buckets[EXPIRED], EXPIRED, timer);
+      return;
+    }
+    long differentBits = tick ^ currentTick;
+    int level =
+        differentBits == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differentBits)) / LEVEL_SHIFT;
+    if (level >= LEVELS) {
+      append(buckets[OVERFLOW], OVERFLOW, timer);
+      return;
+    }
+    int bucket = level * BUCKETS + ((int) (tick >>> level * LEVEL_SHIFT) & BUCKET_MASK);
+    append(buckets[bucket], bucket, timer);
+    occupied[level] |= 1L << (bucket & BUCKET_MASK);
+  }
+
+  private static void append(final Sentinel sentinel, final int bucket, final Timer timer) {
+    timer.bucket = bucket;
+    timer.next = sentinel;
+    timer.prev = sentinel.prev;
+    sentinel.prev.next = timer;
+    sentinel.prev = timer;
+  }
+
+  private void unlink(final Timer timer) {
+    timer.prev.next = timer.next;
+    timer.next.prev = timer.prev;
+    int bucket = timer.bucket;
+    if (bucket < OVERFLOW && buckets[bucket].next instanceof Sentinel) {
+      occupied[bucket / BUCKETS] &= ~(1L << (bucket & BUCKET_MASK));
+    }
+    timer.prev = timer.next = null;
+    timer.bucket = UNLINKED;
+  }
+
+  /**
+   * Empties the bucket, returning its timers as a list linked by {@code next} and ending with
+   * {@code null}.
+   */
+  private Timer detach(final int bucket) {
+    Sentinel sentinel = buckets[bucket];
+    Timer first = sentinel.next;
+    if (first == sentinel) {
+      return null;
+    }
+    sentinel.prev.next = null;
+    sentinel.prev = sentinel.next = sentinel;
+    if (bucket < OVERFLOW) {
+      occupied[bucket / BUCKETS] &= ~(1L << (bucket & BUCKET_MASK));
+    }
+    for (Timer timer = first; timer != null; timer = timer.next) {
+      timer.prev = null;
+      timer.bucket = UNLINKED;
+    }
+    return first;
+  }
+}
@@ -0,0 +1,120 @@
+package datadog.trace.api.cache
+
+import datadog.trace.api.function.Function
+import datadog.trace.api.function.ToIntBiFunction
+import datadog.trace.test.util.DDSpecification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class WeightedCacheTest extends DDSpecification {
+
+  static final ToIntBiFunction<String, String> VALUE_LENGTH = { String key, String value ->
+    value.length()
+  } as ToIntBiFunction<String, String>
+
+  def "weighted cache should store and retrieve values"() {
+    setup:
+    def stats = new CacheStats()
+    def cache = DDCaches.newWeightedCache(1000, 10, VALUE_LENGTH, stats)
+    def creationCount = new AtomicInteger()
+    def function = new Counting(creationCount, 10)
+
+    when:
+    def first = cache.computeIfAbsent("one", function)
+    def second = cache.computeIfAbsent("one", function)
+    def other = cache.computeIfAbsent("two", function)
+
+    then:
+    first == "one_______"
+    second.is(first)
+    other == "two_______"
+    creationCount.get() == 2
+    stats.getAndResetHits() == 1
+    stats.getAndResetMisses() == 2
+    stats.getAndResetEvictions() == 0
+    stats.getAndResetHits() == 0
+    stats.weight() == 20
+    cache.computeIfAbsent(null, function) == null
+  }
+
+  def "weighted cache should stay within its maximum weight"() {
+    setup:
+    def stats = new CacheStats()
+    def cache = DDCaches.newWeightedCache(1000, 10, VALUE_LENGTH, stats)
+    def creationCount = new AtomicInteger()
+
+    when:
+    for (int i = 0; i < 1000; ++i) {
+      cache.computeIfAbsent("key" + i, new Counting(creationCount, 10 + i % 20))
+    }
+
+    then:
+    creationCount.get() == 1000
+    stats.weight() <= 1000
+    stats.getAndResetEvictions() > 0
+    stats.getAndResetMisses() == 1000
+  }
+
+  def "weighted cache should not cache values heavier than itself"() {
+    setup:
+    def stats = new CacheStats()
+    def cache = DDCaches.newWeightedCache(100, 10, VALUE_LENGTH, stats)
+    def creationCount = new AtomicInteger()
+    def function = new Counting(creationCount, 1000)
+
+    when:
+    cache.computeIfAbsent("heavy", function)
+    def value = cache.computeIfAbsent("heavy", function)
+
+    then:
+    value.length() == 1000
+    creationCount.get() == 2
+    stats.weight() == 0
+  }
+
+  def "weighted cache should keep frequently requested keys when many keys are requested once"() {
+    setup:
+    def stats = new CacheStats()
+    def cache = DDCaches.newWeightedCache(10000, 10, VALUE_LENGTH, stats)
+    def creationCount = new AtomicInteger()
+    def function = new Counting(creationCount, 100)
+    for (int i = 0; i < 50; ++i) {
+      for (int j = 0; j < 5; ++j) {
+        cache.computeIfAbsent("popular" + i, function)
+      }
+    }
+
+    when:
+    for (int i = 0; i < 1000; ++i) {
+      cache.computeIfAbsent("once" + i, function)
+    }
+    creationCount.set(0)
+    for (int i = 0; i < 50; ++i) {
+      cache.computeIfAbsent("popular" + i, function)
+    }
+
+    then:
+    creationCount.get() == 0
+    stats.weight() <= 10000
+  }
+
+  private class Counting implements Function<String, String> {
+    private final AtomicInteger count
+    private final int length
+
+    Counting(AtomicInteger count, int length) {
+      this.count = count
+      this.length = length
+    }
+
+    @Override
+    String apply(String key) {
+      count.incrementAndGet()
+      def value = new StringBuilder(key)
+      while (value.length() < length) {
+        value.append('_')
+      }
+      return value.toString()
+    }
+  }
+}
@@ -5,6 +5,7 @@ import datadog.trace.test.util.GCUtils
 import spock.lang.Retry
 
 import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -181,4 +182,39 @@ class AgentTaskSchedulerTest extends DDSpecification {
     scheduler.taskCount() == 0
     callCount.get() == 0
   }
+
+  def "test multiple workers"() {
+    setup:
+    def workers = new AgentTaskScheduler(TASK_SCHEDULER, 4)
+    def latch = new CountDownLatch(100)
+    def runs = new AtomicInteger()
+    def threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>())
+    def task = new AgentTaskScheduler.Task<CountDownLatch>() {
+        @Override
+        void run(CountDownLatch target) {
+          threads.add(Thread.currentThread())
+          runs.incrementAndGet()
+          target.countDown()
+        }
+      }
+    def cancelled = (1..100).collect {
+      workers.schedule(task, latch, 50, MILLISECONDS)
+    }
+
+    when:
+    (1..100).each {
+      workers.schedule(task, latch, it % 10, MILLISECONDS)
+    }
+    cancelled*.cancel()
+
+    then:
+    latch.await(500, MILLISECONDS)
+    threads*.name.toSet() == (0..3).collect { TASK_SCHEDULER.threadName + "-" + it }.toSet()
+    sleep(100)
+    runs.get() == 100
+    workers.taskCount() == 0
+
+    cleanup:
+    workers.shutdown(10, MILLISECONDS)
+  }
 }
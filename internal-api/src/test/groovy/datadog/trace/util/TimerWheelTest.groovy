@@ -0,0 +1,134 @@
+package datadog.trace.util
+
+import datadog.trace.test.util.DDSpecification
+
+import static java.util.concurrent.TimeUnit.HOURS
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static java.util.concurrent.TimeUnit.SECONDS
+
+class TimerWheelTest extends DDSpecification {
+
+  static class TestTimer extends TimerWheel.Timer {
+    final String name
+
+    TestTimer(String name) {
+      this.name = name
+    }
+  }
+
+  def start = System.nanoTime()
+  def wheel = new TimerWheel(start)
+
+  def "timers expire once their deadline has passed"() {
+    setup:
+    def timer = new TestTimer("timer")
+    wheel.add(timer, start + delay)
+
+    when:
+    wheel.advance(start + delay - TimerWheel.TICK_NANOS)
+
+    then:
+    wheel.poll() == null
+    wheel.size() == 1
+
+    when:
+    wheel.advance(start + delay + TimerWheel.TICK_NANOS)
+
+    then:
+    wheel.poll() == timer
+    wheel.poll() == null
+    wheel.size() == 0
+
+    where:
+    delay << [
+      MILLISECONDS.toNanos(5),
+      MILLISECONDS.toNanos(100),
+      SECONDS.toNanos(30),
+      HOURS.toNanos(1),
+      HOURS.toNanos(10)
+    ]
+  }
+
+  def "overdue timers expire right away"() {
+    setup:
+    def timer = new TestTimer("overdue")
+    wheel.advance(start + SECONDS.toNanos(1))
+
+    when:
+    wheel.add(timer, start)
+
+    then:
+    wheel.nextWakeUp() <= start + SECONDS.toNanos(1)
+    wheel.poll() == timer
+  }
+
+  def "timers expire in deadline order"() {
+    setup:
+    def timers = (1..100).collect { new TestTimer("timer-$it") }
+    timers.reverse().eachWithIndex { timer, i ->
+      wheel.add(timer, start + SECONDS.toNanos(100 - i))
+    }
+    def expired = []
+
+    when:
+    for (long now = start; wheel.size() > 0; now = wheel.nextWakeUp()) {
+      wheel.advance(now)
+      def timer
+      while ((timer = wheel.poll()) != null) {
+        expired << timer
+      }
+    }
+
+    then:
+    expired == timers
+  }
+
+  def "removed timers never expire"() {
+    setup:
+    def kept = new TestTimer("kept")
+    def removed = new TestTimer("removed")
+    wheel.add(kept, start + SECONDS.toNanos(1))
+    wheel.add(removed, start + SECONDS.toNanos(1))
+
+    when:
+    wheel.remove(removed)
+    wheel.remove(removed)
+    wheel.advance(start + SECONDS.toNanos(2))
+
+    then:
+    wheel.size() == 1
+    wheel.poll() == kept
+    wheel.poll() == null
+    wheel.nextWakeUp() == Long.MAX_VALUE
+  }
+
+  def "all timers can be expired at once"() {
+    setup:
+    def soon = new TestTimer("soon")
+    def later = new TestTimer("later")
+    def overflow = new TestTimer("overflow")
+    wheel.add(soon, start + MILLISECONDS.toNanos(5))
+    wheel.add(later, start + SECONDS.toNanos(30))
+    wheel.add(overflow, start + HOURS.toNanos(10))
+
+    when:
+    wheel.expireAll()
+
+    then:
+    wheel.size() == 3
+    [wheel.poll(), wheel.poll(), wheel.poll()] as Set == [soon, later, overflow] as Set
+    wheel.poll() == null
+    wheel.size() == 0
+    wheel.nextWakeUp() == Long.MAX_VALUE
+  }
+
+  def "the wake up time is not after the next deadline"() {
+    setup:
+    wheel.add(new TestTimer("later"), start + SECONDS.toNanos(60))
+    wheel.add(new TestTimer("sooner"), start + MILLISECONDS.toNanos(1500))
+
+    expect:
+    wheel.nextWakeUp() <= start + MILLISECONDS.toNanos(1500)
+    wheel.nextWakeUp() > start
+  }
+}
@@ -5,7 +5,9 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ByteChannel;
 import javax.net.SocketFactory;
+import jnr.unixsocket.UnixSocketAddress;
 import jnr.unixsocket.UnixSocketChannel;
 
 /**
@@ -22,6 +24,15 @@ public final class UnixDomainSocketFactory extends SocketFactory {
     this.path = path;
   }
 
+  /**
+   * Opens a connected, blocking, channel to the socket. Unlike the sockets created by this factory,
+   * the channel can be written to directly from (direct) byte buffers, without going through a
+   * stream.
+   */
+  public ByteChannel openChannel() throws IOException {
+    return UnixSocketChannel.open(new UnixSocketAddress(path));
+  }
+
   @Override
   public Socket createSocket() throws IOException {
     final UnixSocketChannel channel = UnixSocketChannel.open();